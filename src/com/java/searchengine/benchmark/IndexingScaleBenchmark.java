@@ -0,0 +1,166 @@
+package com.java.searchengine.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+
+import com.java.searchengine.buildindex.BuildIndexes;
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose End to end indexing benchmark over synthetic corpora of increasing size, recording indexing throughput,
+ *          peak heap and index size for each size to catch scaling regressions
+ */
+public class IndexingScaleBenchmark {
+
+    private static final int[] DEFAULT_DOCUMENT_COUNTS = { 10000, 100000, 1000000 };
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final File benchmarkFolder;
+    private final SyntheticCorpusGenerator generator;
+    private final int minDocumentLength;
+    private final int maxDocumentLength;
+
+
+    /**
+     * Constructor
+     * @param benchmarkFolder
+     *        folder for the generated corpora, their indexes and the results
+     * @param generator
+     *        generator for the synthetic corpora
+     * @param minDocumentLength
+     *        minimum number of words in a document
+     * @param maxDocumentLength
+     *        maximum number of words in a document
+     */
+    public IndexingScaleBenchmark (File benchmarkFolder, SyntheticCorpusGenerator generator, int minDocumentLength,
+            int maxDocumentLength) {
+
+        this.benchmarkFolder = benchmarkFolder;
+        this.generator = generator;
+        this.minDocumentLength = minDocumentLength;
+        this.maxDocumentLength = maxDocumentLength;
+    }
+
+
+    /**
+     * Index a corpus of the given size, generating the corpus unless already present
+     * @param documentCount
+     *        number of documents in the corpus
+     * @return line of results: documents, corpus MB, seconds, documents/s, MB/s, peak heap MB, index MB
+     * @throws IOException
+     */
+    public String run (int documentCount) throws IOException {
+
+        File corpusFolder = new File(benchmarkFolder, "corpus_" + documentCount);
+        File indexFolder = new File(benchmarkFolder, "indexes_" + documentCount);
+
+        if (!SyntheticCorpusGenerator.isGenerated(corpusFolder, documentCount)) {
+            System.out.println("Generating " + documentCount + " documents in " + corpusFolder.getPath());
+            FileUtils.deleteDirectory(corpusFolder);
+            generator.generate(corpusFolder, documentCount, minDocumentLength, maxDocumentLength);
+        }
+        FileUtils.deleteDirectory(indexFolder);
+
+        HashMap<String, String> properties = Utilities.relocateIndexProperties(Utilities.loadProperties(),
+                indexFolder.getPath());
+        properties.put("INPUT_CORPUS_PATH", corpusFolder.getPath());
+        BuildIndexes indexBuilder = new BuildIndexes(properties);
+
+        System.gc();
+        resetPeakHeapUsage();
+        long start = System.nanoTime();
+        indexBuilder.buildIndex();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double corpusMB = FileUtils.sizeOfDirectory(corpusFolder) / MB;
+        double indexMB = FileUtils.sizeOfDirectory(indexFolder) / MB;
+        double peakHeapMB = getPeakHeapUsage() / MB;
+
+        return String.format("%d\t%.1f\t%.2f\t%.0f\t%.2f\t%.1f\t%.1f", documentCount, corpusMB, seconds,
+                documentCount / seconds, corpusMB / seconds, peakHeapMB, indexMB);
+    }
+
+
+    private static void resetPeakHeapUsage () {
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+
+    /**
+     * @return sum of the peak usage of all the heap memory pools since the last reset
+     */
+    private static long getPeakHeapUsage () {
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+
+    /**
+     * Run the benchmark, appending the results to indexing_scale.txt in the benchmark folder
+     * @param args
+     *        [benchmark folder] [comma separated document counts] [min length] [max length] [vocabulary size]
+     *        [zipf exponent] [seed]
+     */
+    public static void main (String[] args) throws IOException {
+
+        File benchmarkFolder = new File(args.length > 0 ? args[0] : "benchmark");
+        int[] documentCounts = DEFAULT_DOCUMENT_COUNTS;
+        if (args.length > 1) {
+            String[] counts = args[1].split(",");
+            documentCounts = new int[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                documentCounts[i] = Integer.parseInt(counts[i].trim());
+            }
+        }
+        int minLength = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int maxLength = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int vocabularySize = args.length > 4 ? Integer.parseInt(args[4]) : 50000;
+        double exponent = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 42;
+
+        benchmarkFolder.mkdirs();
+        IndexingScaleBenchmark benchmark = new IndexingScaleBenchmark(benchmarkFolder, new SyntheticCorpusGenerator(
+                vocabularySize, exponent, seed), minLength, maxLength);
+
+        String heading = "documents\tcorpus_mb\tseconds\tdocs_per_s\tmb_per_s\tpeak_heap_mb\tindex_mb";
+        File resultFile = new File(benchmarkFolder, "indexing_scale.txt");
+        BufferedWriter resultWriter = new BufferedWriter(new FileWriter(resultFile, true));
+        resultWriter.write("# lengths " + minLength + "-" + maxLength + ", vocabulary " + vocabularySize + ", zipf "
+                + exponent + ", seed " + seed + ", max heap " + Runtime.getRuntime().maxMemory() / (1024 * 1024)
+                + " MB" + Constants.newline);
+        resultWriter.write(heading + Constants.newline);
+
+        StringBuilder summary = new StringBuilder(heading);
+        for (int documentCount : documentCounts) {
+            String result = benchmark.run(documentCount);
+            resultWriter.write(result + Constants.newline);
+            resultWriter.flush();
+            summary.append(Constants.newline).append(result);
+        }
+        resultWriter.close();
+
+        System.out.println(Constants.newline + summary);
+        System.out.println("Results appended to " + resultFile.getPath());
+    }
+}
@@ -0,0 +1,176 @@
+package com.java.searchengine.benchmark;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Fixed memory latency histogram in the style of HdrHistogram: values are kept in buckets of doubling size,
+ *          each split into linear sub buckets, so that every recorded value is resolved to the configured number of
+ *          significant decimal digits over the whole trackable range. Not thread safe, record into one histogram per
+ *          thread and add them up
+ */
+public class LatencyHistogram {
+
+    private final long highestTrackableValue;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+
+    private long totalCount = 0;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = 0;
+    private double sum = 0;
+
+
+    /**
+     * Constructor
+     * @param highestTrackableValue
+     *        highest value to be recorded, larger values are recorded as this value
+     * @param significantDigits
+     *        number of significant decimal digits to which values are resolved, 1 to 5
+     */
+    public LatencyHistogram (long highestTrackableValue, int significantDigits) {
+
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("Significant digits must be between 1 and 5: " + significantDigits);
+        }
+        this.highestTrackableValue = Math.max(highestTrackableValue, 2);
+
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        subBucketMask = subBucketCount - 1;
+        leadingZeroCountBase = 64 - subBucketCountMagnitude;
+
+        // Number of doubling buckets needed to cover the trackable range
+        long smallestUntrackableValue = subBucketCount;
+        int bucketCount = 1;
+        while (smallestUntrackableValue <= this.highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        counts = new long[(bucketCount + 1) << subBucketHalfCountMagnitude];
+    }
+
+
+    /**
+     * Record a value
+     * @param value
+     *        value to be recorded, negative values are recorded as 0
+     */
+    public void recordValue (long value) {
+
+        value = Math.min(Math.max(value, 0), highestTrackableValue);
+        counts[countsIndex(value)]++;
+        totalCount++;
+        sum += value;
+        minValue = Math.min(minValue, value);
+        maxValue = Math.max(maxValue, value);
+    }
+
+
+    /**
+     * Add all the values recorded in another histogram of the same configuration
+     * @param other
+     *        histogram to be added
+     */
+    public void add (LatencyHistogram other) {
+
+        if (other.counts.length != counts.length || other.subBucketHalfCount != subBucketHalfCount) {
+            throw new IllegalArgumentException("Histograms have different configurations");
+        }
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] += other.counts[index];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+
+    /**
+     * Get the value at a percentile, resolved to the highest value equivalent to it within the histogram precision
+     * @param percentile
+     *        percentile between 0 and 100
+     * @return value at or below which the given percentage of recorded values lie, 0 if nothing is recorded
+     */
+    public long getValueAtPercentile (double percentile) {
+
+        if (totalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int index = 0; index < counts.length; index++) {
+            cumulativeCount += counts[index];
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(index), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+
+    private int countsIndex (long value) {
+
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+
+    private long highestEquivalentValue (int index) {
+
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        long lowestEquivalentValue = (long) subBucketIndex << bucketIndex;
+        return lowestEquivalentValue + (1L << bucketIndex) - 1;
+    }
+
+
+    /**
+     * @return number of recorded values
+     */
+    public long getTotalCount () {
+
+        return totalCount;
+    }
+
+
+    /**
+     * @return mean of the recorded values, 0 if nothing is recorded
+     */
+    public double getMean () {
+
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+
+    /**
+     * @return smallest recorded value, 0 if nothing is recorded
+     */
+    public long getMinValue () {
+
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+
+    /**
+     * @return largest recorded value
+     */
+    public long getMaxValue () {
+
+        return maxValue;
+    }
+}
@@ -0,0 +1,303 @@
+package com.java.searchengine.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.metrics.PrometheusExporter;
+import com.java.searchengine.util.Utilities;
+import com.rank_documents.DocumentPreProcessor;
+import com.rank_documents.DocumentRanker;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Replay a query log against the ranker and report throughput and latency percentiles per scoring function.
+ *          Queries are issued by a fixed number of workers, each with its own ranker, either back to back (closed
+ *          loop) or at a fixed arrival rate (open loop). In open loop the latency of a query is measured from its
+ *          scheduled arrival, so time spent waiting for a free worker is included
+ */
+public class QueryLoadGenerator {
+
+    // Latencies are recorded in microseconds, up to one hour
+    private static final long HIGHEST_TRACKABLE_LATENCY = 3600L * 1000 * 1000;
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final DocumentRanker ranker;
+    private final List<String> queries;
+    private final int concurrency;
+    private final double arrivalRate;
+
+
+    /**
+     * Constructor
+     * @param ranker
+     *        pre processed ranker, workers are created from it
+     * @param queries
+     *        query log to be replayed, repeated as often as needed
+     * @param concurrency
+     *        number of worker threads
+     * @param arrivalRate
+     *        queries per second issued in open loop, 0 or less for closed loop
+     */
+    public QueryLoadGenerator (DocumentRanker ranker, List<String> queries, int concurrency, double arrivalRate) {
+
+        this.ranker = ranker;
+        this.queries = queries;
+        this.concurrency = Math.max(concurrency, 1);
+        this.arrivalRate = arrivalRate;
+    }
+
+
+    /**
+     * Run a given number of queries with a scoring function
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @param queryCount
+     *        number of queries to be run
+     * @return result of the run
+     * @throws InterruptedException
+     */
+    public LoadResult run (final String scoringFunction, final int queryCount) throws InterruptedException {
+
+        final AtomicLong nextQuery = new AtomicLong();
+        final AtomicLong failedQueries = new AtomicLong();
+        final AtomicLong approximateQueries = new AtomicLong();
+        final LatencyHistogram[] histograms = new LatencyHistogram[concurrency];
+        final long startNanos = System.nanoTime();
+        final double intervalNanos = arrivalRate > 0 ? 1e9 / arrivalRate : 0;
+
+        Thread[] workers = new Thread[concurrency];
+        for (int worker = 0; worker < concurrency; worker++) {
+            final DocumentRanker workerRanker = ranker.createWorker();
+            final LatencyHistogram histogram = new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY, SIGNIFICANT_DIGITS);
+            histograms[worker] = histogram;
+
+            workers[worker] = new Thread(new Runnable() {
+
+                @Override
+                public void run () {
+
+                    long query;
+                    while ((query = nextQuery.getAndIncrement()) < queryCount) {
+                        long issueNanos = System.nanoTime();
+                        if (intervalNanos > 0) {
+                            issueNanos = startNanos + (long) (query * intervalNanos);
+                            waitUntil(issueNanos);
+                        }
+                        try {
+                            workerRanker.rankDocumentsForQuery(queries.get((int) (query % queries.size())),
+                                    scoringFunction);
+                            histogram.recordValue((System.nanoTime() - issueNanos) / 1000);
+                            if (workerRanker.isLastQueryApproximate()) {
+                                approximateQueries.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            failedQueries.incrementAndGet();
+                        }
+                    }
+                }
+            }, "query-load-" + worker);
+            workers[worker].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        LatencyHistogram latencies = new LatencyHistogram(HIGHEST_TRACKABLE_LATENCY, SIGNIFICANT_DIGITS);
+        for (LatencyHistogram histogram : histograms) {
+            latencies.add(histogram);
+        }
+        return new LoadResult(scoringFunction, latencies, elapsedSeconds, failedQueries.get(),
+                approximateQueries.get());
+    }
+
+
+    private static void waitUntil (long nanos) {
+
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Read a query log: a topics xml file, or a text file with one query per line optionally preceded by a query id
+     * and a tab
+     * @param queryFile
+     *        query log
+     * @return queries in order
+     * @throws IOException
+     */
+    public static List<String> readQueries (File queryFile) throws IOException {
+
+        List<String> queries = new ArrayList<String>();
+        if (queryFile.getName().endsWith(Constants.XML_EXTENSION)) {
+            try {
+                Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(queryFile);
+                queries.addAll(new DocumentPreProcessor().parseAllXmlNodes(
+                        document.getElementsByTagName(Constants.SEARCH_QUERY_ROOT_XML_ELEMENT)).values());
+            } catch (Exception e) {
+                throw new IOException("Could not parse query xml " + queryFile.getAbsolutePath(), e);
+            }
+            return queries;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(queryFile));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String query = line.substring(line.indexOf(Constants.tab) + 1).trim();
+            if (!query.isEmpty()) {
+                queries.add(query);
+            }
+        }
+        reader.close();
+        return queries;
+    }
+
+
+    /**
+     * Replay a query log, appending the results to the given result file
+     * @param args
+     *        key=value options: queries (topics xml or text file, default QUERY_XML), functions (default 1,2,3,4,5),
+     *        concurrency (default 1), rate (queries per second, default 0 for closed loop), warmup (queries per
+     *        function, default one pass over the log), count (queries per function, default ten passes over the
+     *        log), cache (default false), output (default benchmark/query_load.txt)
+     */
+    public static void main (String[] args) throws IOException, InterruptedException {
+
+        HashMap<String, String> properties = Utilities.loadProperties();
+        HashMap<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        File queryFile = new File(getOption(options, "queries", properties.get("QUERY_XML")));
+        List<String> queries = readQueries(queryFile);
+        if (queries.isEmpty()) {
+            System.out.println("No queries found in " + queryFile.getAbsolutePath());
+            return;
+        }
+        String[] scoringFunctions = getOption(options, "functions", "1,2,3,4,5").split(",");
+        int concurrency = Utilities.parseIntProperty(options.get("concurrency"), 1);
+        double arrivalRate = Double.parseDouble(getOption(options, "rate", "0"));
+        int warmupCount = Utilities.parseIntProperty(options.get("warmup"), queries.size());
+        int queryCount = Utilities.parseIntProperty(options.get("count"), 10 * queries.size());
+        File resultFile = new File(getOption(options, "output", "benchmark/query_load.txt"));
+        DocumentRanker.setResultCaching("true".equalsIgnoreCase(options.get("cache")));
+
+        DocumentRanker ranker = new DocumentRanker();
+        ranker.rankingPreProcess(new DocumentPreProcessor(), properties.get("QUERY_XML"),
+                properties.get("STOP_WORDS_FILE"));
+        QueryLoadGenerator generator = new QueryLoadGenerator(ranker, queries, concurrency, arrivalRate);
+        PrometheusExporter metricsExporter = PrometheusExporter.startIfConfigured(properties);
+
+        String heading = "function\tqueries\tfailed\tapproximate\tqps\tmean_ms\tp50_ms\tp95_ms\tp99_ms\tp999_ms\tmax_ms";
+        StringBuilder report = new StringBuilder(heading);
+        for (String scoringFunction : scoringFunctions) {
+            scoringFunction = scoringFunction.trim();
+            generator.run(scoringFunction, warmupCount);
+            report.append(Constants.newline).append(generator.run(scoringFunction, queryCount));
+        }
+
+        String description = "# " + queryFile.getName() + " (" + queries.size() + " queries), concurrency "
+                + concurrency + ", " + (arrivalRate > 0 ? "open loop at " + arrivalRate + " qps" : "closed loop")
+                + ", warmup " + warmupCount + ", result cache " + ("true".equalsIgnoreCase(options.get("cache")));
+        System.out.println(Constants.newline + description + Constants.newline + report);
+
+        if (null != resultFile.getParentFile()) {
+            resultFile.getParentFile().mkdirs();
+        }
+        BufferedWriter resultWriter = new BufferedWriter(new FileWriter(resultFile, true));
+        resultWriter.write(description + Constants.newline + report + Constants.newline);
+        resultWriter.close();
+        System.out.println("Results appended to " + resultFile.getPath());
+        if (null != metricsExporter) {
+            metricsExporter.stop();
+        }
+    }
+
+
+    private static String getOption (HashMap<String, String> options, String key, String defaultValue) {
+
+        String value = options.get(key);
+        return null == value ? defaultValue : value;
+    }
+
+
+    /**
+     * Throughput and latency of one run
+     */
+    public static final class LoadResult {
+
+        private final String scoringFunction;
+        private final LatencyHistogram latencies;
+        private final double elapsedSeconds;
+        private final long failedQueries;
+        private final long approximateQueries;
+
+
+        LoadResult (String scoringFunction, LatencyHistogram latencies, double elapsedSeconds, long failedQueries,
+                long approximateQueries) {
+
+            this.scoringFunction = scoringFunction;
+            this.latencies = latencies;
+            this.elapsedSeconds = elapsedSeconds;
+            this.failedQueries = failedQueries;
+            this.approximateQueries = approximateQueries;
+        }
+
+
+        /**
+         * @return completed queries per second
+         */
+        public double getQueriesPerSecond () {
+
+            return elapsedSeconds > 0 ? latencies.getTotalCount() / elapsedSeconds : 0;
+        }
+
+
+        /**
+         * @return latencies of the completed queries in microseconds
+         */
+        public LatencyHistogram getLatencies () {
+
+            return latencies;
+        }
+
+
+        /**
+         * @return one tab separated line: function, queries, failed, approximate, qps and latencies in milliseconds
+         */
+        @Override
+        public String toString () {
+
+            return String.format("%s\t%d\t%d\t%d\t%.1f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f", scoringFunction,
+                    latencies.getTotalCount(), failedQueries, approximateQueries, getQueriesPerSecond(),
+                    latencies.getMean() / 1000.0, latencies.getValueAtPercentile(50) / 1000.0,
+                    latencies.getValueAtPercentile(95) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxValue() / 1000.0);
+        }
+    }
+}
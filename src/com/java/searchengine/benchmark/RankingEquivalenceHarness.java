@@ -0,0 +1,557 @@
+package com.java.searchengine.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
+import com.rank_documents.DocumentPreProcessor;
+import com.rank_documents.DocumentRanker;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Regression harness checking that a candidate engine ranks like the reference implementation. Both rank
+ *          the same topics on the same index (or two existing TREC run files are given), and for each topic the
+ *          scores of common documents are compared under a tolerance, along with Kendall's tau of the ranks and
+ *          overlap@k of the rankings. With relevance judgements (qrels) MAP and nDCG of both runs are reported as well
+ */
+public class RankingEquivalenceHarness {
+
+    private final double tolerance;
+    private final int depth;
+    private final int[] overlapCutoffs;
+    private final int ndcgCutoff;
+
+
+    /**
+     * Constructor
+     * @param tolerance
+     *        largest allowed score difference, relative to the reference score for scores above 1
+     * @param depth
+     *        number of top ranked documents compared per topic
+     * @param overlapCutoffs
+     *        cutoffs k for overlap@k
+     * @param ndcgCutoff
+     *        cutoff for nDCG
+     */
+    public RankingEquivalenceHarness (double tolerance, int depth, int[] overlapCutoffs, int ndcgCutoff) {
+
+        this.tolerance = tolerance;
+        this.depth = depth;
+        this.overlapCutoffs = overlapCutoffs;
+        this.ndcgCutoff = ndcgCutoff;
+    }
+
+
+    /**
+     * Rank all the topics with the reference implementation and the configured (candidate) engine
+     * @param ranker
+     *        pre processed ranker, configured as the candidate
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @param referenceRunFile
+     *        TREC run file for the reference ranking
+     * @param candidateRunFile
+     *        TREC run file for the candidate ranking
+     * @throws IOException
+     */
+    public static void writeRuns (DocumentRanker ranker, String scoringFunction, File referenceRunFile,
+            File candidateRunFile) throws IOException {
+
+        DocumentRanker reference = ranker.createReferenceWorker();
+        BufferedWriter referenceWriter = new BufferedWriter(new FileWriter(referenceRunFile));
+        BufferedWriter candidateWriter = new BufferedWriter(new FileWriter(candidateRunFile));
+
+        for (Map.Entry<String, String> query : ranker.getQueries().entrySet()) {
+            reference.writeOutput(query.getKey(), reference.rankDocumentsForQuery(query.getValue(), scoringFunction),
+                    referenceWriter);
+            ranker.writeOutput(query.getKey(), ranker.rankDocumentsForQuery(query.getValue(), scoringFunction),
+                    candidateWriter);
+        }
+        referenceWriter.close();
+        candidateWriter.close();
+    }
+
+
+    /**
+     * Compare two TREC run files topic by topic
+     * @param referenceRunFile
+     *        reference run
+     * @param candidateRunFile
+     *        candidate run
+     * @param qrels
+     *        relevance grade of judged documents keyed by topic, null if not available
+     * @param reportWriter
+     *        writer for the per topic report
+     * @return true if all the topics are equivalent within the tolerance
+     * @throws IOException
+     */
+    public boolean compare (File referenceRunFile, File candidateRunFile, HashMap<String, HashMap<String, Integer>> qrels,
+            BufferedWriter reportWriter) throws IOException {
+
+        LinkedHashMap<String, Ranking> referenceRun = readRun(referenceRunFile);
+        LinkedHashMap<String, Ranking> candidateRun = readRun(candidateRunFile);
+
+        StringBuilder heading = new StringBuilder("topic\tstatus\tcompared\tscore_mismatches\tmax_score_diff\tmissing"
+                + "\tkendall_tau");
+        for (int cutoff : overlapCutoffs) {
+            heading.append("\toverlap@").append(cutoff);
+        }
+        if (null != qrels) {
+            heading.append("\tap_reference\tap_candidate\tndcg@").append(ndcgCutoff).append("_reference\tndcg@")
+                    .append(ndcgCutoff).append("_candidate");
+        }
+        writeLine(reportWriter, heading.toString());
+
+        HashSet<String> topics = new HashSet<String>(referenceRun.keySet());
+        topics.addAll(candidateRun.keySet());
+        ArrayList<String> sortedTopics = new ArrayList<String>(topics);
+        Collections.sort(sortedTopics);
+
+        int failedTopics = 0;
+        double tauSum = 0;
+        double[] overlapSums = new double[overlapCutoffs.length];
+        double[] qualitySums = new double[4];
+
+        for (String topic : sortedTopics) {
+            Ranking reference = referenceRun.containsKey(topic) ? referenceRun.get(topic) : new Ranking();
+            Ranking candidate = candidateRun.containsKey(topic) ? candidateRun.get(topic) : new Ranking();
+            TopicComparison comparison = compareTopic(reference, candidate);
+            if (!comparison.isEquivalent()) {
+                failedTopics++;
+            }
+            tauSum += comparison.kendallTau;
+
+            StringBuilder line = new StringBuilder(topic).append('\t').append(comparison.isEquivalent() ? "ok" : "FAIL")
+                    .append('\t').append(comparison.compared).append('\t').append(comparison.scoreMismatches)
+                    .append('\t').append(String.format("%.3g", comparison.maxScoreDifference)).append('\t')
+                    .append(comparison.missing).append('\t').append(String.format("%.4f", comparison.kendallTau));
+            for (int i = 0; i < overlapCutoffs.length; i++) {
+                double overlap = overlapAt(reference, candidate, overlapCutoffs[i]);
+                overlapSums[i] += overlap;
+                line.append('\t').append(String.format("%.4f", overlap));
+            }
+            if (null != qrels) {
+                HashMap<String, Integer> judgements = qrels.containsKey(topic) ? qrels.get(topic)
+                        : new HashMap<String, Integer>();
+                double[] quality = { averagePrecision(reference, judgements), averagePrecision(candidate, judgements),
+                        ndcg(reference, judgements, ndcgCutoff), ndcg(candidate, judgements, ndcgCutoff) };
+                for (int i = 0; i < quality.length; i++) {
+                    qualitySums[i] += quality[i];
+                    line.append('\t').append(String.format("%.4f", quality[i]));
+                }
+            }
+            writeLine(reportWriter, line.toString());
+        }
+
+        int topicCount = Math.max(sortedTopics.size(), 1);
+        StringBuilder summary = new StringBuilder("all\t").append(failedTopics == 0 ? "ok" : "FAIL").append("\t\t\t\t")
+                .append(failedTopics).append(" failed\t").append(String.format("%.4f", tauSum / topicCount));
+        for (double overlapSum : overlapSums) {
+            summary.append('\t').append(String.format("%.4f", overlapSum / topicCount));
+        }
+        if (null != qrels) {
+            for (double qualitySum : qualitySums) {
+                summary.append('\t').append(String.format("%.4f", qualitySum / topicCount));
+            }
+        }
+        writeLine(reportWriter, summary.toString());
+        return failedTopics == 0;
+    }
+
+
+    /**
+     * Compare the top ranked documents of one topic. Documents in the top of either ranking but not in the top of the
+     * other are missing, unless the other ranking cut them off at a score no higher than its last one
+     */
+    TopicComparison compareTopic (Ranking reference, Ranking candidate) {
+
+        TopicComparison comparison = new TopicComparison();
+        int referenceDepth = Math.min(depth, reference.size());
+        int candidateDepth = Math.min(depth, candidate.size());
+        HashMap<String, Integer> referenceRanks = getRanks(reference, referenceDepth);
+        HashMap<String, Integer> candidateRanks = getRanks(candidate, candidateDepth);
+
+        // Rank of each document of either top in both rankings, documents out of a top rank after all of it
+        ArrayList<Integer> unionReferenceRanks = new ArrayList<Integer>();
+        ArrayList<Integer> unionCandidateRanks = new ArrayList<Integer>();
+        for (int rank = 0; rank < referenceDepth; rank++) {
+            String document = reference.documents.get(rank);
+            double referenceScore = reference.scores.get(rank);
+            Integer candidateRank = candidateRanks.get(document);
+            unionReferenceRanks.add(rank);
+            unionCandidateRanks.add(null == candidateRank ? candidateDepth : candidateRank);
+
+            if (null == candidateRank) {
+                if (!isCutOff(referenceScore, candidate, candidateDepth, reference.size())) {
+                    comparison.missing++;
+                }
+                continue;
+            }
+            double candidateScore = candidate.scores.get(candidateRank);
+            comparison.compared++;
+            if (Double.compare(referenceScore, candidateScore) != 0) {
+                comparison.maxScoreDifference = Math.max(comparison.maxScoreDifference, Math.abs(referenceScore
+                        - candidateScore));
+            }
+            if (!withinTolerance(referenceScore, candidateScore)) {
+                comparison.scoreMismatches++;
+            }
+        }
+        for (int rank = 0; rank < candidateDepth; rank++) {
+            String document = candidate.documents.get(rank);
+            if (referenceRanks.containsKey(document)) {
+                continue;
+            }
+            unionReferenceRanks.add(referenceDepth);
+            unionCandidateRanks.add(rank);
+            if (!isCutOff(candidate.scores.get(rank), reference, referenceDepth, candidate.size())) {
+                comparison.missing++;
+            }
+        }
+        comparison.kendallTau = kendallTau(unionReferenceRanks, unionCandidateRanks);
+        return comparison;
+    }
+
+
+    /**
+     * Whether a document of one ranking may legitimately be out of the top of the other ranking, which stops no later
+     * than the first ranking and whose last top document scores no lower
+     * @param score
+     *        score of the document in its ranking
+     * @param other
+     *        ranking without the document in its top
+     * @param otherDepth
+     *        number of top documents of the other ranking
+     * @param size
+     *        number of documents of the ranking of the document
+     */
+    private boolean isCutOff (double score, Ranking other, int otherDepth, int size) {
+
+        if (otherDepth == 0 || otherDepth > size) {
+            return false;
+        }
+        double cutoffScore = other.scores.get(otherDepth - 1);
+        return score <= cutoffScore || withinTolerance(score, cutoffScore);
+    }
+
+
+    /**
+     * @return rank of each of the top documents of a ranking, from 0
+     */
+    private static HashMap<String, Integer> getRanks (Ranking ranking, int topDepth) {
+
+        HashMap<String, Integer> ranks = new HashMap<String, Integer>();
+        for (int rank = 0; rank < topDepth; rank++) {
+            ranks.put(ranking.documents.get(rank), rank);
+        }
+        return ranks;
+    }
+
+
+    private boolean withinTolerance (double referenceScore, double candidateScore) {
+
+        if (Double.compare(referenceScore, candidateScore) == 0) {
+            return true;
+        }
+        return Math.abs(referenceScore - candidateScore) <= tolerance * Math.max(1.0, Math.abs(referenceScore));
+    }
+
+
+    /**
+     * Kendall's tau-b between the ranks of the same documents in two rankings, 1 for identical orderings. Documents
+     * out of the top of a ranking share the rank after it, and are tied in that ranking
+     */
+    static double kendallTau (List<Integer> referenceRanks, List<Integer> candidateRanks) {
+
+        int size = referenceRanks.size();
+        long concordant = 0;
+        long discordant = 0;
+        long referenceTies = 0;
+        long candidateTies = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                int referenceOrder = referenceRanks.get(i).compareTo(referenceRanks.get(j));
+                int candidateOrder = candidateRanks.get(i).compareTo(candidateRanks.get(j));
+                if (referenceOrder == 0 && candidateOrder == 0) {
+                    continue;
+                } else if (referenceOrder == 0) {
+                    referenceTies++;
+                } else if (candidateOrder == 0) {
+                    candidateTies++;
+                } else if (referenceOrder == candidateOrder) {
+                    concordant++;
+                } else {
+                    discordant++;
+                }
+            }
+        }
+        double denominator = Math.sqrt((double) (concordant + discordant + referenceTies)
+                * (concordant + discordant + candidateTies));
+        return denominator == 0 ? 1.0 : (concordant - discordant) / denominator;
+    }
+
+
+    /**
+     * Fraction of the reference top k documents also in the candidate top k
+     */
+    static double overlapAt (Ranking reference, Ranking candidate, int k) {
+
+        int cutoff = Math.min(k, reference.size());
+        if (cutoff == 0) {
+            return candidate.size() == 0 ? 1.0 : 0.0;
+        }
+        HashSet<String> candidateTop = new HashSet<String>(candidate.documents.subList(0,
+                Math.min(k, candidate.size())));
+        int common = 0;
+        for (String document : reference.documents.subList(0, cutoff)) {
+            if (candidateTop.contains(document)) {
+                common++;
+            }
+        }
+        return (double) common / cutoff;
+    }
+
+
+    /**
+     * Average precision of a ranking, documents with a grade above 0 are relevant
+     */
+    static double averagePrecision (Ranking ranking, HashMap<String, Integer> judgements) {
+
+        int relevantCount = 0;
+        for (int grade : judgements.values()) {
+            if (grade > 0) {
+                relevantCount++;
+            }
+        }
+        if (relevantCount == 0) {
+            return 0;
+        }
+        int relevantRetrieved = 0;
+        double precisionSum = 0;
+        for (int rank = 0; rank < ranking.size(); rank++) {
+            Integer grade = judgements.get(ranking.documents.get(rank));
+            if (null != grade && grade > 0) {
+                relevantRetrieved++;
+                precisionSum += (double) relevantRetrieved / (rank + 1);
+            }
+        }
+        return precisionSum / relevantCount;
+    }
+
+
+    /**
+     * Normalized discounted cumulative gain at a cutoff, with gain 2^grade - 1
+     */
+    static double ndcg (Ranking ranking, HashMap<String, Integer> judgements, int cutoff) {
+
+        double dcg = 0;
+        for (int rank = 0; rank < Math.min(cutoff, ranking.size()); rank++) {
+            Integer grade = judgements.get(ranking.documents.get(rank));
+            if (null != grade && grade > 0) {
+                dcg += (Math.pow(2, grade) - 1) / (Math.log(rank + 2) / Math.log(2));
+            }
+        }
+        Integer[] grades = judgements.values().toArray(new Integer[judgements.size()]);
+        Arrays.sort(grades, Collections.reverseOrder());
+        double idealDcg = 0;
+        for (int rank = 0; rank < Math.min(cutoff, grades.length) && grades[rank] > 0; rank++) {
+            idealDcg += (Math.pow(2, grades[rank]) - 1) / (Math.log(rank + 2) / Math.log(2));
+        }
+        return idealDcg == 0 ? 0 : dcg / idealDcg;
+    }
+
+
+    /**
+     * Read a TREC run file: topic Q0 document rank score tag
+     * @param runFile
+     *        run file
+     * @return ranking of each topic in rank order
+     * @throws IOException
+     */
+    public static LinkedHashMap<String, Ranking> readRun (File runFile) throws IOException {
+
+        LinkedHashMap<String, Ranking> run = new LinkedHashMap<String, Ranking>();
+        BufferedReader reader = new BufferedReader(new FileReader(runFile));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 5) {
+                continue;
+            }
+            Ranking ranking = run.get(tokens[0]);
+            if (null == ranking) {
+                ranking = new Ranking();
+                run.put(tokens[0], ranking);
+            }
+            ranking.add(tokens[2], Double.parseDouble(tokens[4]));
+        }
+        reader.close();
+        return run;
+    }
+
+
+    /**
+     * Read TREC relevance judgements: topic iteration document grade
+     * @param qrelsFile
+     *        qrels file
+     * @return grade of each judged document keyed by topic
+     * @throws IOException
+     */
+    public static HashMap<String, HashMap<String, Integer>> readQrels (File qrelsFile) throws IOException {
+
+        HashMap<String, HashMap<String, Integer>> qrels = new HashMap<String, HashMap<String, Integer>>();
+        BufferedReader reader = new BufferedReader(new FileReader(qrelsFile));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 4) {
+                continue;
+            }
+            HashMap<String, Integer> judgements = qrels.get(tokens[0]);
+            if (null == judgements) {
+                judgements = new HashMap<String, Integer>();
+                qrels.put(tokens[0], judgements);
+            }
+            judgements.put(tokens[2], Integer.parseInt(tokens[3]));
+        }
+        reader.close();
+        return qrels;
+    }
+
+
+    private static void writeLine (BufferedWriter reportWriter, String line) throws IOException {
+
+        System.out.println(line);
+        if (null != reportWriter) {
+            reportWriter.write(line + Constants.newline);
+        }
+    }
+
+
+    /**
+     * Compare the reference and the configured engine, or two existing run files. Exits with status 1 if any topic
+     * differs beyond the tolerance
+     * @param args
+     *        key=value options: reference and candidate (existing run files, otherwise both are ranked from the
+     *        index), functions (default 3,4,5), qrels, tolerance (default 1e-9), depth (default 1000), overlap
+     *        (default 10,100), ndcg (default 10), output (default benchmark/equivalence)
+     */
+    public static void main (String[] args) throws IOException {
+
+        HashMap<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        double tolerance = Double.parseDouble(getOption(options, "tolerance", "1e-9"));
+        int depth = Utilities.parseIntProperty(options.get("depth"), 1000);
+        String[] cutoffs = getOption(options, "overlap", "10,100").split(",");
+        int[] overlapCutoffs = new int[cutoffs.length];
+        for (int i = 0; i < cutoffs.length; i++) {
+            overlapCutoffs[i] = Integer.parseInt(cutoffs[i].trim());
+        }
+        int ndcgCutoff = Utilities.parseIntProperty(options.get("ndcg"), 10);
+        HashMap<String, HashMap<String, Integer>> qrels = options.containsKey("qrels") ? readQrels(new File(
+                options.get("qrels"))) : null;
+        File outputFolder = new File(getOption(options, "output", "benchmark/equivalence"));
+        outputFolder.mkdirs();
+
+        RankingEquivalenceHarness harness = new RankingEquivalenceHarness(tolerance, depth, overlapCutoffs,
+                ndcgCutoff);
+        boolean equivalent = true;
+        File reportFile = new File(outputFolder, "report.txt");
+        FileUtilities.initializeFile(reportFile);
+        BufferedWriter reportWriter = new BufferedWriter(new FileWriter(reportFile));
+
+        if (options.containsKey("reference") && options.containsKey("candidate")) {
+            equivalent = harness.compare(new File(options.get("reference")), new File(options.get("candidate")),
+                    qrels, reportWriter);
+        } else {
+            HashMap<String, String> properties = Utilities.loadProperties();
+            DocumentRanker ranker = new DocumentRanker();
+            ranker.rankingPreProcess(new DocumentPreProcessor(), properties.get("QUERY_XML"),
+                    properties.get("STOP_WORDS_FILE"));
+
+            for (String scoringFunction : getOption(options, "functions", "3,4,5").split(",")) {
+                scoringFunction = scoringFunction.trim();
+                File referenceRunFile = new File(outputFolder, "reference_" + scoringFunction + ".txt");
+                File candidateRunFile = new File(outputFolder, "candidate_" + scoringFunction + ".txt");
+                writeRuns(ranker, scoringFunction, referenceRunFile, candidateRunFile);
+
+                writeLine(reportWriter, Constants.newline + "# scoring function " + scoringFunction);
+                equivalent &= harness.compare(referenceRunFile, candidateRunFile, qrels, reportWriter);
+            }
+        }
+        reportWriter.close();
+        System.out.println(Constants.newline + (equivalent ? "Rankings are equivalent" : "Rankings differ")
+                + " within tolerance " + tolerance + ", report written to " + reportFile.getPath());
+        if (!equivalent) {
+            System.exit(1);
+        }
+    }
+
+
+    private static String getOption (HashMap<String, String> options, String key, String defaultValue) {
+
+        String value = options.get(key);
+        return null == value ? defaultValue : value;
+    }
+
+
+    /**
+     * Documents of one topic in rank order along with their scores
+     */
+    public static final class Ranking {
+
+        private final ArrayList<String> documents = new ArrayList<String>();
+        private final ArrayList<Double> scores = new ArrayList<Double>();
+
+
+        void add (String document, double score) {
+
+            documents.add(document);
+            scores.add(score);
+        }
+
+
+        int size () {
+
+            return documents.size();
+        }
+    }
+
+
+    /**
+     * Result of comparing the rankings of one topic
+     */
+    static final class TopicComparison {
+
+        private int compared;
+        private int scoreMismatches;
+        private int missing;
+        private double maxScoreDifference;
+        private double kendallTau = 1.0;
+
+
+        boolean isEquivalent () {
+
+            return scoreMismatches == 0 && missing == 0;
+        }
+    }
+}
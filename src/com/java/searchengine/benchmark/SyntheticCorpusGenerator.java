@@ -0,0 +1,191 @@
+package com.java.searchengine.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.java.searchengine.constants.Constants;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Generate a reproducible corpus of HTML documents with WARC and HTTP header blocks, as expected by
+ *          BuildIndexes.stripFileHeader, drawing words from a Zipf distributed vocabulary
+ */
+public class SyntheticCorpusGenerator {
+
+    private static final String[] CONSONANTS = { "b", "d", "f", "g", "k", "l", "m", "n", "p", "r", "s", "t", "v", "z" };
+    private static final String[] VOWELS = { "a", "e", "i", "o", "u" };
+    private static final int WORDS_PER_PARAGRAPH = 50;
+
+    private final String[] vocabulary;
+    private final double[] cumulativeProbability;
+    private final long seed;
+
+
+    /**
+     * Constructor
+     * @param vocabularySize
+     *        number of distinct words
+     * @param zipfExponent
+     *        exponent of the Zipf distribution, probability of the word of rank r is proportional to 1 / r^exponent
+     * @param seed
+     *        seed of the random generator, the same seed produces the same corpus
+     */
+    public SyntheticCorpusGenerator (int vocabularySize, double zipfExponent, long seed) {
+
+        this.seed = seed;
+        vocabulary = new String[vocabularySize];
+        cumulativeProbability = new double[vocabularySize];
+
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            vocabulary[rank] = buildWord(rank);
+            total += 1.0 / Math.pow(rank + 1, zipfExponent);
+            cumulativeProbability[rank] = total;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulativeProbability[rank] /= total;
+        }
+    }
+
+
+    /**
+     * Generate the corpus, one file per document
+     * @param corpusFolder
+     *        folder for the documents, created if missing
+     * @param documentCount
+     *        number of documents
+     * @param minDocumentLength
+     *        minimum number of words in a document
+     * @param maxDocumentLength
+     *        maximum number of words in a document
+     * @return total number of bytes written
+     * @throws IOException
+     */
+    public long generate (File corpusFolder, int documentCount, int minDocumentLength, int maxDocumentLength)
+            throws IOException {
+
+        corpusFolder.mkdirs();
+        Random random = new Random(seed);
+        long bytesWritten = 0;
+
+        for (int document = 0; document < documentCount; document++) {
+            String documentName = getDocumentName(document);
+            int length = minDocumentLength + random.nextInt(Math.max(maxDocumentLength - minDocumentLength, 0) + 1);
+            File documentFile = new File(corpusFolder, documentName);
+
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(documentFile),
+                    "UTF-8"));
+            writeHeader(writer, documentName);
+            writer.write("<html><head><title>" + vocabulary[sampleRank(random)] + "</title></head><body>");
+            for (int word = 0; word < length; word++) {
+                if (word % WORDS_PER_PARAGRAPH == 0) {
+                    writer.write(word == 0 ? "<p>" : "</p><p>");
+                } else {
+                    writer.write(' ');
+                }
+                writer.write(vocabulary[sampleRank(random)]);
+            }
+            writer.write("</p></body></html>" + Constants.newline);
+            writer.close();
+            bytesWritten += documentFile.length();
+        }
+        return bytesWritten;
+    }
+
+
+    /**
+     * Check whether the folder already holds a corpus of the given size generated by this class
+     * @param corpusFolder
+     *        corpus folder
+     * @param documentCount
+     *        number of documents
+     * @return true if the corpus can be reused
+     */
+    public static boolean isGenerated (File corpusFolder, int documentCount) {
+
+        String[] documents = corpusFolder.list();
+        return null != documents && documents.length == documentCount
+                && new File(corpusFolder, getDocumentName(documentCount - 1)).exists();
+    }
+
+
+    /**
+     * Write the WARC record header and the HTTP response header, each terminated by an empty line
+     */
+    private void writeHeader (BufferedWriter writer, String documentName) throws IOException {
+
+        writer.write("WARC/1.0" + Constants.newline);
+        writer.write("WARC-Type: response" + Constants.newline);
+        writer.write("WARC-Target-URI: http://synthetic.example/" + documentName + Constants.newline);
+        writer.write("WARC-TREC-ID: " + documentName + Constants.newline);
+        writer.write(Constants.newline);
+        writer.write("HTTP/1.1 200 OK" + Constants.newline);
+        writer.write("Content-Type: text/html; charset=UTF-8" + Constants.newline);
+        writer.write(Constants.newline);
+    }
+
+
+    /**
+     * Draw a word rank from the Zipf distribution
+     */
+    private int sampleRank (Random random) {
+
+        int rank = Arrays.binarySearch(cumulativeProbability, random.nextDouble());
+        rank = rank < 0 ? -rank - 1 : rank;
+        return Math.min(rank, cumulativeProbability.length - 1);
+    }
+
+
+    /**
+     * Build a distinct pronounceable word for a rank, so that words survive tokenizing and rarely collide on stemming
+     */
+    private static String buildWord (int rank) {
+
+        StringBuilder word = new StringBuilder();
+        int remaining = rank;
+        do {
+            int syllable = remaining % (CONSONANTS.length * VOWELS.length);
+            word.append(CONSONANTS[syllable / VOWELS.length]).append(VOWELS[syllable % VOWELS.length]);
+            remaining /= CONSONANTS.length * VOWELS.length;
+        } while (remaining > 0);
+        return word.append('x').toString();
+    }
+
+
+    /**
+     * @return name of the document with the given sequence number
+     */
+    static String getDocumentName (int document) {
+
+        return String.format("synthetic-%07d", document);
+    }
+
+
+    /**
+     * Generate a corpus from the command line
+     * @param args
+     *        corpus folder, document count, [min length, max length, vocabulary size, Zipf exponent, seed]
+     */
+    public static void main (String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.println("Usage: SyntheticCorpusGenerator <corpus folder> <document count> [min length] "
+                    + "[max length] [vocabulary size] [zipf exponent] [seed]");
+            return;
+        }
+        int minLength = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int maxLength = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int vocabularySize = args.length > 4 ? Integer.parseInt(args[4]) : 50000;
+        double exponent = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 42;
+
+        long bytes = new SyntheticCorpusGenerator(vocabularySize, exponent, seed).generate(new File(args[0]),
+                Integer.parseInt(args[1]), minLength, maxLength);
+        System.out.println(args[1] + " documents (" + bytes + " bytes) generated in " + args[0]);
+    }
+}
@@ -3,28 +3,37 @@ package com.java.searchengine.buildindex;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.tartarus.snowball.EnglishSnowballStemmerFactory;
 import org.tartarus.snowball.util.StemmerException;
 
-import com.google.code.externalsorting.ExternalSort;
-import com.java.searchengine.buildindex.comparator.DocIndexComparator;
+import com.java.searchengine.buildindex.sort.DocumentIndexSorter;
 import com.java.searchengine.constants.Constants;
+import com.java.searchengine.corpus.CorpusReader;
+import com.java.searchengine.docstore.DocumentNameStore;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.docstore.ForwardIndexWriter;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.metrics.DocumentIndexedEvent;
+import com.java.searchengine.metrics.MetricsRegistry;
+import com.java.searchengine.segment.SegmentInfo;
+import com.java.searchengine.segment.SegmentManifest;
+import com.java.searchengine.segment.SegmentMergeScheduler;
 import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
 
 /**
  * @author Swapnil Gupta
@@ -33,17 +42,36 @@ import com.java.searchengine.util.FileUtilities;
 public class BuildIndexes {
 
     private String corpusPath = "";
-    private static final String pattern = "\\w+(\\.?\\w+)*";
 
-    private File[] listOfFiles;
-    private EnglishSnowballStemmerFactory stemmer;
+    // Stages of indexing, parse, tokenize and stem are timed by the parse workers of the indexing pipeline and flush
+    // covers term id assignment and the writes
+    private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private static final MetricsRegistry.Timer totalTimer = metrics.timer("index.total");
+    private static final MetricsRegistry.Timer flushTimer = metrics.timer("index.flush");
+    private static final MetricsRegistry.Timer sortTimer = metrics.timer("index.sort");
+    private static final MetricsRegistry.Timer invertTimer = metrics.timer("index.invert");
+    private static final MetricsRegistry.Counter documentCounter = metrics.counter("index.documents");
+    private static final MetricsRegistry.Counter postingCounter = metrics.counter("index.postings");
+    private static final MetricsRegistry.Counter bytesReadCounter = metrics.counter("index.bytes_read");
+    private static final MetricsRegistry.Counter duplicateCounter = metrics.counter("index.duplicates");
+
+    private CorpusReader corpusReader;
+    private String corpusSlice;
 
     private HashSet<String> stopWords;
     private static HashMap<String, String> propertyKeyToFileLocation;
+    // Configuration with the index files in INDEX_FOLDER, relocated to the generation being indexed
+    private final HashMap<String, String> baseProperties;
+    private final IndexGenerations generations;
     private HashMap<String, Integer> termToItsCountInCorpus;
+    private ForwardIndexWriter forwardIndexWriter;
+    // Near duplicates of the documents indexed by this run, null if DEDUP_MODE is off
+    private NearDuplicateDetector duplicateDetector;
+    private BufferedWriter duplicateDocumentWriter;
 
     private int termsIdCounter = 0;
     private int docuemntIdCounter = 0;
+    private static SegmentMergeScheduler mergeScheduler;
 
 
     /**
@@ -53,64 +81,480 @@ public class BuildIndexes {
      */
     public BuildIndexes (HashMap<String, String> propertyKeyToFileLocation) {
 
-        BuildIndexes.propertyKeyToFileLocation = propertyKeyToFileLocation;
-        stemmer = EnglishSnowballStemmerFactory.getInstance();
+        baseProperties = propertyKeyToFileLocation;
+        generations = new IndexGenerations(new File(propertyKeyToFileLocation.get("INDEX_FOLDER")));
+        BuildIndexes.propertyKeyToFileLocation = generations.resolveProperties(propertyKeyToFileLocation);
         termToItsCountInCorpus = new HashMap<String, Integer>();
 
         corpusPath = propertyKeyToFileLocation.get("INPUT_CORPUS_PATH");
-        listOfFiles = FileUtilities.getFileHandlers(corpusPath);
+        corpusSlice = propertyKeyToFileLocation.get("CORPUS_SLICE");
         stopWords = FileUtilities.getFileWords(propertyKeyToFileLocation.get("STOP_WORDS_FILE"));
     }
 
 
     /**
-     * Driver function for building intermediate index's for the corpus
+     * Driver function for building intermediate index's for the corpus. The indexes are built in a new generation,
+     * which becomes the current generation once complete, so the current indexes are read undisturbed in the meantime.
+     * With DOC_REORDER name or bisection, the documents are renumbered into another generation before publishing, so
+     * that a single generation is published and the previous one is retained for the queries still ranking on it
      */
     public void buildIndex () {
 
         System.out.println("\nBuilding indexes....");
+        long start = totalTimer.start();
 
-        initializeOutputFiles();
-        buildForwardIndex();
-        externalSortDocumentIndex();
-        buildInvertedIndex();
-
+        String generation;
+        try {
+            generation = generations.createGeneration();
+        } catch (IOException e) {
+            System.err.println("Unable to build indexes as I/O exception occured");
+            return;
+        }
+        propertyKeyToFileLocation = generations.getGenerationProperties(baseProperties, generation);
+        boolean built = false;
+        try {
+            initializeOutputFiles();
+            // Documents of the segments are indexed again by the full build
+            new SegmentManifest(getSegmentFolder()).clear();
+            built = buildForwardIndex() && buildDocumentNameStore() && externalSortDocumentIndex()
+                    && buildInvertedIndex();
+            if (built && "true".equalsIgnoreCase(propertyKeyToFileLocation.get("IMPACT_INDEX"))) {
+                built = buildImpactIndex();
+            }
+        } finally {
+            totalTimer.stop(start);
+            // A stage failing part way, or throwing, leaves the generation incomplete
+            if (!built) {
+                System.err.println("Indexes of " + generation + " are incomplete, current indexes are kept");
+                generations.discardGeneration(generation);
+                propertyKeyToFileLocation = generations.resolveProperties(baseProperties);
+            }
+        }
+        if (!built) {
+            return;
+        }
+        if (DocumentReorderer.isEnabled(baseProperties)) {
+            generation = reorderDocuments(generation);
+        }
+        try {
+            generations.publish(generation);
+        } catch (IOException e) {
+            System.err.println("Unable to publish indexes of " + generation + " as I/O exception occured");
+            return;
+        }
         System.out.println("Indexes created in " + propertyKeyToFileLocation.get("INDEX_FOLDER")
                 + " folder in current directory");
+        printIndexingReport();
+    }
+
+
+    /**
+     * Driver function for indexing the documents added to the corpus since the indexes were built. The new documents
+     * are written to a new segment with its own term index and term info, the existing index files are only appended
+     * with the document and term id's and the forward index of the new documents. Segments are merged in the
+     * background, the whole corpus is indexed if there is no index yet
+     */
+    public void addDocuments () {
+
+        if (!isIndexBuilt()) {
+            buildIndex();
+            return;
+        }
+        System.out.println("\nAdding new documents to indexes....");
+        SegmentManifest manifest = new SegmentManifest(getSegmentFolder());
+        manifest.deleteUnreferencedSegments();
+        CorpusReader newDocuments = new CorpusReader(getCorpusFiles(), new File(corpusPath));
+        newDocuments.setExcludedNames(loadIndexedTermsAndDocuments());
+        int addedCount = addSegment(manifest, newDocuments);
+        if (addedCount == 0) {
+            System.out.println("No new documents found in " + corpusPath);
+            return;
+        }
+        getMergeScheduler().maybeMerge();
+        printIndexingReport();
+    }
+
+
+    /**
+     * Driver function for deleting documents from the indexes. The documents are marked deleted in the tombstones of
+     * the main index or of the segment holding them, their postings are skipped by ranking and purged when their
+     * segment is merged, or by the next full build for the main index
+     * @param documentNames
+     *        names of the documents to be deleted, as in the corpus
+     * @return number of documents deleted
+     */
+    public int deleteDocuments (Collection<String> documentNames) {
+
+        if (!isIndexBuilt()) {
+            System.out.println("No indexes to delete documents from");
+            return 0;
+        }
+        int deletedCount = deleteDocumentIds(findDocumentIds(documentNames));
+        System.out.println("Deleted " + deletedCount + " documents from indexes");
+        return deletedCount;
     }
 
 
     /**
-     * Build forward index for all the files located in corpus: doc_index.txt.
+     * Driver function for indexing again documents changed in the corpus. The current contents of the documents are
+     * added to a new segment under new document id's, then the previous document id's are deleted, so that the
+     * documents are ranked all along. Documents no longer in the corpus are only deleted
+     * @param documentNames
+     *        names of the documents to be updated, as in the corpus
      */
-    public void buildForwardIndex () {
+    public void updateDocuments (Collection<String> documentNames) {
+
+        if (!isIndexBuilt()) {
+            buildIndex();
+            return;
+        }
+        System.out.println("\nUpdating documents in indexes....");
+        SegmentManifest manifest = new SegmentManifest(getSegmentFolder());
+        manifest.deleteUnreferencedSegments();
+        loadIndexedTermsAndDocuments();
+        List<Integer> previousDocIds = findDocumentIds(documentNames);
+
+        CorpusReader updatedDocuments = new CorpusReader(getCorpusFiles(), new File(corpusPath));
+        updatedDocuments.setIncludedNames(new HashSet<String>(documentNames));
+        int updatedCount = addSegment(manifest, updatedDocuments);
+        if (updatedCount < 0) {
+            return;
+        }
+        int deletedCount = deleteDocumentIds(previousDocIds);
+        System.out.println("Updated " + updatedCount + " documents, deleted " + deletedCount
+                + " previous documents");
+        getMergeScheduler().maybeMerge();
+        printIndexingReport();
+    }
 
+
+    /**
+     * Renumber the documents of a full build into a new generation
+     * @param generation
+     *        name of the fully built generation, not published
+     * @return name of the reordered generation replacing it, the given generation if the documents could not be
+     *         reordered
+     */
+    private String reorderDocuments (String generation) {
+
+        String reorderedGeneration = null;
         try {
+            reorderedGeneration = generations.createGeneration();
+            HashMap<String, String> reorderedProperties = generations.getGenerationProperties(baseProperties,
+                    reorderedGeneration);
+            new DocumentReorderer(baseProperties).reorder(propertyKeyToFileLocation, reorderedProperties);
+            generations.discardGeneration(generation);
+            propertyKeyToFileLocation = reorderedProperties;
+            generation = reorderedGeneration;
+            reorderedGeneration = null;
+        } catch (IOException e) {
+            System.err.println("Unable to reorder documents as I/O exception occured, documents keep their id's");
+        } finally {
+            if (null != reorderedGeneration) {
+                generations.discardGeneration(reorderedGeneration);
+            }
+        }
+        return generation;
+    }
 
-            File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
-            File termIdFile = new File(propertyKeyToFileLocation.get("TERMS_ID_FILE")).getAbsoluteFile();
+
+    /**
+     * Index the given documents into a new segment and commit it to the segment manifest
+     * @param manifest
+     *        manifest of the segments
+     * @param documents
+     *        reader of the corpus documents to be indexed, the term and document id counters must be restored
+     *        beforehand
+     * @return number of documents added, -1 if the segment could not be added
+     */
+    private int addSegment (SegmentManifest manifest, CorpusReader documents) {
+
+        long start = totalTimer.start();
+        corpusReader = documents;
+        String name = null;
+        try {
+            name = manifest.createSegmentFolder();
+            File folder = new File(manifest.getSegmentFolder(), name);
+            File segmentDocumentIndexFile = new File(folder, "doc_index.txt");
+            File sortedSegmentDocumentIndexFile = new File(folder, "sorted_doc_index.txt");
             File documentIndexFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
 
-            BufferedWriter documentIdWriter = new BufferedWriter(new FileWriter(documentIdFile, true));
-            BufferedWriter termIdWriter = new BufferedWriter(new FileWriter(termIdFile, true));
-            BufferedWriter documentIndexWriter = new BufferedWriter(new FileWriter(documentIndexFile, true));
+            int minDocId = docuemntIdCounter + 1;
+            writeForwardIndex(segmentDocumentIndexFile, true);
+            appendFile(segmentDocumentIndexFile, documentIndexFile);
+            buildDocumentNameStore();
+
+            SegmentInfo segment = new SegmentInfo(name, manifest.getSegmentFolder(), minDocId, docuemntIdCounter,
+                    docuemntIdCounter - minDocId + 1);
+            if (segment.getDocumentCount() > 0) {
+                externalSortDocumentIndex(segmentDocumentIndexFile, sortedSegmentDocumentIndexFile);
+                buildInvertedIndex(sortedSegmentDocumentIndexFile, segment.getTermIndexFile(), segment
+                        .getTermInfoFile());
+                segmentDocumentIndexFile.delete();
+                sortedSegmentDocumentIndexFile.delete();
+                manifest.addSegment(segment);
+                name = null;
+                System.out.println("Added segment " + segment);
+            }
+            return segment.getDocumentCount();
+        } catch (IOException e) {
+            System.err.println("Unable to add documents to indexes as I/O exception occured");
+        } catch (StemmerException e) {
+            System.err.println("Unable to add documents to indexes as stemming failed");
+        } finally {
+            if (null != name) {
+                manifest.discardSegment(name);
+            }
+            totalTimer.stop(start);
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return true if there is an inverted index to add documents to or delete documents from
+     */
+    private static boolean isIndexBuilt () {
+
+        return new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile().length() > 0;
+    }
+
+
+    /**
+     * Find all the document id's given to documents, a document indexed again by an update has several id's
+     * @param documentNames
+     *        names of the documents, as in the corpus
+     * @return document id's of the documents in increasing order
+     */
+    private static List<Integer> findDocumentIds (Collection<String> documentNames) {
+
+        File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        ArrayList<Integer> docIds = new ArrayList<Integer>();
+        try {
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(documentIdFile));
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                if (documentNames.contains(tokens[1])) {
+                    docIds.add(Integer.parseInt(tokens[0]));
+                }
+            }
+            reader.close();
+        } catch (IOException e) {
+            System.err.println("Could not read file" + documentIdFile.getAbsolutePath());
+        }
+        return docIds;
+    }
+
+
+    /**
+     * Mark the given document id's deleted in the tombstones of the main index or the segments holding them
+     * @return number of documents deleted, not counting those already deleted
+     */
+    private static int deleteDocumentIds (List<Integer> docIds) {
+
+        File deletedDocsFile = new File(propertyKeyToFileLocation.get("DELETED_DOCS_FILE")).getAbsoluteFile();
+        try {
+            return new SegmentManifest(getSegmentFolder()).deleteDocuments(docIds, deletedDocsFile);
+        } catch (IOException e) {
+            System.err.println("Unable to delete documents as I/O exception occured");
+        }
+        return 0;
+    }
+
+
+    /**
+     * Restore the term and document id's assigned by the previous runs, so that new terms and documents are given the
+     * next id's
+     * @return names of all the documents already indexed, including the near duplicates left out of the indexes
+     */
+    private HashSet<String> loadIndexedTermsAndDocuments () {
+
+        File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        File termIdFile = new File(propertyKeyToFileLocation.get("TERMS_ID_FILE")).getAbsoluteFile();
+        HashSet<String> indexedDocumentNames = new HashSet<String>();
 
-            processAllDocumentsInCorpus(documentIdWriter, termIdWriter, documentIndexWriter);
+        try {
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(termIdFile));
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                int termId = Integer.parseInt(tokens[0]);
+                termToItsCountInCorpus.put(tokens[1], termId);
+                termsIdCounter = Math.max(termsIdCounter, termId);
+            }
+            reader.close();
 
-            documentIdWriter.close();
-            termIdWriter.close();
-            documentIndexWriter.close();
+            reader = new BufferedReader(new FileReader(documentIdFile));
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                indexedDocumentNames.add(tokens[1]);
+                docuemntIdCounter = Math.max(docuemntIdCounter, Integer.parseInt(tokens[0]));
+            }
+            reader.close();
+        } catch (IOException e) {
+            System.err.println("Could not read file" + termIdFile.getAbsolutePath());
+        }
 
-        } catch (IOException io) {
-            io.printStackTrace();
-        } catch (StemmerException se) {
-            se.printStackTrace();
+        File duplicateDocsFile = new File(propertyKeyToFileLocation.get("DUPLICATE_DOCS_FILE")).getAbsoluteFile();
+        if (duplicateDocsFile.isFile()) {
+            try {
+                String line;
+                BufferedReader reader = new BufferedReader(new FileReader(duplicateDocsFile));
+                while ((line = reader.readLine()) != null) {
+                    indexedDocumentNames.add(line.substring(line.indexOf(Constants.tab) + 1));
+                }
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Could not read file" + duplicateDocsFile.getAbsolutePath());
+            }
         }
+        return indexedDocumentNames;
     }
 
 
     /**
-     * Process all the documents in corpus, building the forward (document) index
+     * Files of the corpus indexed by this build, listed recursively: all of them, or with CORPUS_SLICE = k/n the k-th
+     * of n contiguous slices of the files in order of path. Slices are indexed separately, e.g. on several machines,
+     * and their indexes merged by {@link PartialIndexMerger}
+     * @return corpus files, empty if the corpus can not be read
+     */
+    private List<File> getCorpusFiles () {
+
+        List<File> corpusFiles = CorpusReader.listCorpusFiles(new File(corpusPath));
+        if (null == corpusSlice || corpusSlice.trim().isEmpty()) {
+            return corpusFiles;
+        }
+        String[] slice = corpusSlice.trim().split("/");
+        int sliceNumber = Integer.parseInt(slice[0].trim());
+        int sliceCount = Integer.parseInt(slice[1].trim());
+        if (sliceNumber < 1 || sliceNumber > sliceCount) {
+            throw new IllegalArgumentException("CORPUS_SLICE must be k/n with 1 <= k <= n : " + corpusSlice);
+        }
+        int from = (int) ((long) corpusFiles.size() * (sliceNumber - 1) / sliceCount);
+        int to = (int) ((long) corpusFiles.size() * sliceNumber / sliceCount);
+        return corpusFiles.subList(from, to);
+    }
+
+
+    /**
+     * Append the contents of a file to another
+     */
+    private static void appendFile (File source, File target) throws IOException {
+
+        OutputStream output = new FileOutputStream(target, true);
+        try {
+            Files.copy(source.toPath(), output);
+        } finally {
+            output.close();
+        }
+    }
+
+
+    /**
+     * @return folder holding the segments of the index
+     */
+    private static File getSegmentFolder () {
+
+        return new File(propertyKeyToFileLocation.get("SEGMENT_FOLDER")).getAbsoluteFile();
+    }
+
+
+    /**
+     * @return merge scheduler shared by all the indexing runs of the process, so that one merge runs at a time
+     */
+    private static synchronized SegmentMergeScheduler getMergeScheduler () {
+
+        if (null == mergeScheduler) {
+            mergeScheduler = new SegmentMergeScheduler(getSegmentFolder(), Utilities.parseIntProperty(
+                    propertyKeyToFileLocation.get("SEGMENT_MERGE_FACTOR"), 10));
+        }
+        return mergeScheduler;
+    }
+
+
+    /**
+     * Print the time spent in each stage of indexing if metrics are enabled
+     */
+    private void printIndexingReport () {
+
+        if (metrics.isEnabled()) {
+            metrics.printReport("index.");
+            System.out.println(String.format("Indexed %.0f docs/sec, %.0f postings/sec",
+                    metrics.getRate("index.documents", "index.total"), metrics.getRate("index.postings", "index.total")));
+        }
+    }
+
+
+    /**
+     * Build forward index for all the files located in corpus: doc_index.txt, along with its binary form
+     * (doc_index.bin) and per document offset table (doc_offsets.bin)
+     * @return true if all the documents of the corpus were indexed
+     */
+    public boolean buildForwardIndex () {
+
+        try {
+            File documentIndexFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
+            corpusReader = new CorpusReader(getCorpusFiles(), new File(corpusPath));
+            writeForwardIndex(documentIndexFile, false);
+            return true;
+
+        } catch (IOException e) {
+            System.err.println("Unable to create forward index as I/O exception occured");
+        } catch (StemmerException e) {
+            System.err.println("Unable to create forward index as stemming failed");
+        }
+        return false;
+    }
+
+
+    /**
+     * Build forward index for the documents in the list of files, appending to the document and term id's
+     * 
+     * @param documentIndexFile
+     *        doc_index.txt to be appended with the document index of the documents
+     * @param append
+     *        true to append to the binary forward index, false to write it from scratch
+     * @throws IOException
+     * @throws StemmerException
+     */
+    private void writeForwardIndex (File documentIndexFile, boolean append) throws IOException, StemmerException {
+
+        File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        File termIdFile = new File(propertyKeyToFileLocation.get("TERMS_ID_FILE")).getAbsoluteFile();
+        File documentIndexBinaryFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_BINARY_FILE"))
+                .getAbsoluteFile();
+        File documentOffsetFile = new File(propertyKeyToFileLocation.get("DOCUMENT_OFFSET_FILE")).getAbsoluteFile();
+
+        BufferedWriter documentIdWriter = new BufferedWriter(new FileWriter(documentIdFile, true));
+        BufferedWriter termIdWriter = new BufferedWriter(new FileWriter(termIdFile, true));
+        BufferedWriter documentIndexWriter = new BufferedWriter(new FileWriter(documentIndexFile, true));
+        forwardIndexWriter = new ForwardIndexWriter(documentIndexBinaryFile, documentOffsetFile, append);
+        if (isDedupEnabled(propertyKeyToFileLocation)) {
+            duplicateDetector = new NearDuplicateDetector(Utilities.parseDoubleProperty(propertyKeyToFileLocation
+                    .get("DEDUP_THRESHOLD"), 0.9));
+            duplicateDocumentWriter = new BufferedWriter(new FileWriter(new File(propertyKeyToFileLocation.get(
+                    "DUPLICATE_DOCS_FILE")).getAbsoluteFile(), true));
+        }
+
+        processAllDocumentsInCorpus(documentIdWriter, termIdWriter, documentIndexWriter);
+
+        documentIdWriter.close();
+        termIdWriter.close();
+        documentIndexWriter.close();
+        forwardIndexWriter.close();
+        if (null != duplicateDetector) {
+            duplicateDocumentWriter.close();
+            duplicateDetector = null;
+            duplicateDocumentWriter = null;
+        }
+    }
+
+
+    /**
+     * Process all the documents in corpus, building the forward (document) index. With DEDUP_MODE drop or collapse,
+     * a document found to be a near duplicate of a document indexed before it is not indexed, it is written to the
+     * duplicate documents with the id of that canonical document instead
      * 
      * @param documentIdWriter
      *        Buffered Writer for document, id pairs
@@ -124,63 +568,97 @@ public class BuildIndexes {
     public void processAllDocumentsInCorpus (BufferedWriter documentIdWriter, BufferedWriter termIdWriter,
             BufferedWriter documentIndexWriter) throws IOException, StemmerException {
 
-        for (File corpusFile : listOfFiles) {
-            if (corpusFile.isFile()) {
-                String corpusFileName = corpusFile.getName();
-                Matcher matchedTermsInDocument = extractMatchingTermsFromDocument(corpusFileName);
-                HashMap<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument = processAllTermsInDocument(
-                        matchedTermsInDocument, termIdWriter);
+        IndexingPipeline pipeline = new IndexingPipeline(corpusReader, stopWords, propertyKeyToFileLocation);
+        DuplicateReport duplicateReport = new DuplicateReport();
+        pipeline.start();
+        try {
+            IndexingPipeline.CorpusDocument corpusDocument;
+            while (null != (corpusDocument = pipeline.take())) {
+                String corpusFileName = corpusDocument.getName();
+                int[] signature = corpusDocument.getSignature();
+                if (null != duplicateDetector && null != signature) {
+                    int canonicalDocId = duplicateDetector.findDuplicate(signature);
+                    duplicateReport.add(corpusDocument, canonicalDocId != 0);
+                    if (canonicalDocId != 0) {
+                        duplicateDocumentWriter.write(canonicalDocId + Constants.tab + corpusFileName
+                                + Constants.newline);
+                        duplicateCounter.increment();
+                        continue;
+                    }
+                    duplicateDetector.add(docuemntIdCounter + 1, signature);
+                }
 
+                DocumentIndexedEvent documentEvent = new DocumentIndexedEvent();
+                documentEvent.begin();
+                long start = flushTimer.start();
+                HashMap<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument = assignTermIds(
+                        corpusDocument.getTermPositions(), termIdWriter);
                 documentIdWriter.write(++docuemntIdCounter + Constants.tab + corpusFileName + Constants.newline);
                 writeDocIndex(docuemntIdCounter, termIdToAllItsPositionsInDocument, documentIndexWriter);
-            } else {
-                System.out.println(corpusFile + " is invalid file");
+                forwardIndexWriter.addDocument(docuemntIdCounter, termIdToAllItsPositionsInDocument);
+                flushTimer.stop(start);
+                documentEvent.commit(docuemntIdCounter, corpusFileName, corpusDocument.getSize(),
+                        termIdToAllItsPositionsInDocument);
+
+                documentCounter.increment();
+                postingCounter.add(termIdToAllItsPositionsInDocument.size());
+                bytesReadCounter.add(corpusDocument.getSize());
             }
+        } finally {
+            pipeline.close();
+        }
+        if (null != duplicateDetector) {
+            duplicateReport.print(propertyKeyToFileLocation.get("DEDUP_MODE").trim());
         }
     }
 
 
     /**
-     * Process all the terms in the document, finding all the positions of a term in the document
+     * Whether near duplicate documents are detected while indexing
+     * @param properties
+     *        configuration properties, DEDUP_MODE is off, drop or collapse
+     * @return true for drop and collapse
+     */
+    static boolean isDedupEnabled (HashMap<String, String> properties) {
+
+        String mode = properties.get("DEDUP_MODE");
+        if (null == mode || mode.trim().isEmpty() || "off".equalsIgnoreCase(mode.trim())) {
+            return false;
+        }
+        if (!"drop".equalsIgnoreCase(mode.trim()) && !"collapse".equalsIgnoreCase(mode.trim())) {
+            throw new IllegalArgumentException("DEDUP_MODE must be off, drop or collapse : " + mode);
+        }
+        return true;
+    }
+
+
+    /**
+     * Assign term id's to the terms of a document parsed by the indexing pipeline, new terms are given the next id
+     * in the order they occur in the document
      * 
-     * @param matchedWords
-     *        Set of words in an individual document matching a fixed pattern
+     * @param termToAllItsPositionsInDocument
+     *        positions of each stemmed term in the document, in order of first occurrence
      * @param termsIDWriter
      *        Buffered Writer for term Id's
      * @return all the terms in the document along with their positions within the document Format : key<termId>,
      *         value<list(pos1, pos2, pos3....)>
      * @throws IOException
-     * @throws StemmerException
      */
-    public HashMap<Integer, ArrayList<Integer>> processAllTermsInDocument (Matcher matchedTermsInDocument,
-            BufferedWriter termsIDWriter) throws IOException, StemmerException {
-
-        int wordPositionInDocument = 0;
-        ArrayList<Integer> termPositionInDocument;
-        HashMap<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument = new HashMap<Integer, ArrayList<Integer>>();
-
-        while (matchedTermsInDocument.find()) {
-            wordPositionInDocument++;
-
-            // Get input subsequence matched by the previous match
-            String matchedSubSequence = matchedTermsInDocument.group().toLowerCase();
-            if (!stopWords.contains(matchedSubSequence)) {
-
-                String stemmedTerm = stemmer.process(matchedSubSequence);
-                if (!termToItsCountInCorpus.containsKey(stemmedTerm)) {
-                    ++termsIdCounter;
-                    termToItsCountInCorpus.put(stemmedTerm, termsIdCounter);
-                    termsIDWriter.write(termsIdCounter + Constants.tab + stemmedTerm + Constants.newline);
-                }
+    public HashMap<Integer, ArrayList<Integer>> assignTermIds (
+            LinkedHashMap<String, ArrayList<Integer>> termToAllItsPositionsInDocument, BufferedWriter termsIDWriter)
+            throws IOException {
 
-                // New term found for current document, initialize positions list for it
-                int termKey = termToItsCountInCorpus.get(stemmedTerm);
-                if (!termIdToAllItsPositionsInDocument.containsKey(termKey)) {
-                    termIdToAllItsPositionsInDocument.put(termKey, new ArrayList<Integer>());
-                }
-                termPositionInDocument = termIdToAllItsPositionsInDocument.get(termKey);
-                termPositionInDocument.add(wordPositionInDocument);
+        HashMap<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument =
+                new HashMap<Integer, ArrayList<Integer>>();
+        for (Map.Entry<String, ArrayList<Integer>> entry : termToAllItsPositionsInDocument.entrySet()) {
+            String stemmedTerm = entry.getKey();
+            Integer termKey = termToItsCountInCorpus.get(stemmedTerm);
+            if (null == termKey) {
+                termKey = ++termsIdCounter;
+                termToItsCountInCorpus.put(stemmedTerm, termKey);
+                termsIDWriter.write(termsIdCounter + Constants.tab + stemmedTerm + Constants.newline);
             }
+            termIdToAllItsPositionsInDocument.put(termKey, entry.getValue());
         }
         return termIdToAllItsPositionsInDocument;
     }
@@ -214,51 +692,142 @@ public class BuildIndexes {
     }
 
 
+    /**
+     * Build the memory mapped document name store from the document id's written by the forward index
+     * @return true if the document name store was written
+     */
+    public boolean buildDocumentNameStore () {
+
+        File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        File documentNameStoreFile = new File(propertyKeyToFileLocation.get("DOCUMENT_NAME_STORE_FILE"))
+                .getAbsoluteFile();
+        try {
+            DocumentNameStore.build(documentIdFile, documentNameStoreFile);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Unable to create document name store as I/O exception occured");
+        }
+        return false;
+    }
+
+
     /**
      * External sort document index (forward index), to build term index (inverted index) Sorts first on basis of term
      * id and then on basis of document id
+     * @return true if the sorted document index was written
      */
-    public void externalSortDocumentIndex () {
+    public boolean externalSortDocumentIndex () {
 
         try {
             File documentIndexFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
             File sortedDocumentIndexFile = new File(propertyKeyToFileLocation.get("SORTED_DOCUMENT_INDEX_FILE"))
                     .getAbsoluteFile();
-            DocIndexComparator docIndexComparator = new DocIndexComparator();
-            List<File> fileChunk = ExternalSort.sortInBatch(documentIndexFile, docIndexComparator);
-            ExternalSort.mergeSortedFiles(fileChunk, sortedDocumentIndexFile, docIndexComparator);
+            externalSortDocumentIndex(documentIndexFile, sortedDocumentIndexFile);
+            return true;
         } catch (IOException e) {
             System.err.println("Unable to external sort forward index as I/O exception occured");
         }
+        return false;
+    }
+
+
+    /**
+     * External sort a document index on term id and then document id
+     * 
+     * @param documentIndexFile
+     *        document index to be sorted
+     * @param sortedDocumentIndexFile
+     *        sorted document index to be written
+     * @throws IOException
+     */
+    private void externalSortDocumentIndex (File documentIndexFile, File sortedDocumentIndexFile) throws IOException {
 
+        long start = sortTimer.start();
+        try {
+            new DocumentIndexSorter(propertyKeyToFileLocation).sort(documentIndexFile, sortedDocumentIndexFile);
+        } finally {
+            sortTimer.stop(start);
+        }
     }
 
 
     /**
      * Process a forward index to form a word level inverted index(documents & positions) : term_index.txt and
      * term_info.txt
+     * @return true if the term index and term info were written
      */
-    public void buildInvertedIndex () {
+    public boolean buildInvertedIndex () {
 
         try {
             File sortedDocumentIndexFile = new File(propertyKeyToFileLocation.get("SORTED_DOCUMENT_INDEX_FILE"))
                     .getAbsoluteFile();
             File termIndexFile = new File(propertyKeyToFileLocation.get("TERM_INDEX_FILE")).getAbsoluteFile();
             File termInfoFile = new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile();
+            buildInvertedIndex(sortedDocumentIndexFile, termIndexFile, termInfoFile);
+            return true;
+
+        } catch (IOException e) {
+            System.err.println("Unable to create inverted index as I/O exception occured");
+        }
+        return false;
+    }
+
 
-            RandomAccessFile indexFileReadWrite = new RandomAccessFile(termIndexFile, "rw");
-            BufferedReader sortedDocIndexReader = new BufferedReader(new FileReader(sortedDocumentIndexFile));
-            BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(termInfoFile, true));
+    /**
+     * Process a sorted document index to form a word level inverted index
+     * 
+     * @param sortedDocumentIndexFile
+     *        document index sorted on term id and then document id
+     * @param termIndexFile
+     *        term index to be written
+     * @param termInfoFile
+     *        term info to be appended
+     * @throws IOException
+     */
+    private void buildInvertedIndex (File sortedDocumentIndexFile, File termIndexFile, File termInfoFile)
+            throws IOException {
+
+        RandomAccessFile indexFileReadWrite = new RandomAccessFile(termIndexFile, "rw");
+        BufferedReader sortedDocIndexReader = new BufferedReader(new FileReader(sortedDocumentIndexFile));
+        BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(termInfoFile, true));
 
-            processForwardIndex(indexFileReadWrite, sortedDocIndexReader, termInfoWriter);
+        long start = invertTimer.start();
+        processForwardIndex(indexFileReadWrite, sortedDocIndexReader, termInfoWriter);
+        invertTimer.stop(start);
+
+        indexFileReadWrite.close();
+        termInfoWriter.close();
+        sortedDocIndexReader.close();
+    }
 
-            indexFileReadWrite.close();
-            termInfoWriter.close();
-            sortedDocIndexReader.close();
+
+    /**
+     * Build the quantized impact ordered index from the inverted index: term_impacts.bin and impact_offsets.bin
+     * @return true if the impact index was written
+     */
+    public boolean buildImpactIndex () {
+
+        try {
+            File termIndexFile = new File(propertyKeyToFileLocation.get("TERM_INDEX_FILE")).getAbsoluteFile();
+            File termInfoFile = new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile();
+            File impactIndexFile = new File(propertyKeyToFileLocation.get("IMPACT_INDEX_FILE")).getAbsoluteFile();
+            File impactOffsetFile = new File(propertyKeyToFileLocation.get("IMPACT_OFFSET_FILE")).getAbsoluteFile();
+
+            ForwardIndex forwardIndex = new ForwardIndex(new File(
+                    propertyKeyToFileLocation.get("DOCUMENT_INDEX_BINARY_FILE")).getAbsoluteFile(), new File(
+                    propertyKeyToFileLocation.get("DOCUMENT_OFFSET_FILE")).getAbsoluteFile());
+            try {
+                new ImpactIndexWriter(forwardIndex).build(termIndexFile, termInfoFile, impactIndexFile,
+                        impactOffsetFile);
+            } finally {
+                forwardIndex.close();
+            }
+            return true;
 
         } catch (IOException e) {
-            System.err.println("Unable to create inverted index as I/O exception occured");
+            System.err.println("Unable to create impact index as I/O exception occured");
         }
+        return false;
     }
 
 
@@ -281,10 +850,9 @@ public class BuildIndexes {
         int previousDocId = 0;
 
         String line = "";
-        String previousTermId = "1";
+        String previousTermId = null;
         long offset = indexFileReadWrite.getFilePointer();
 
-        indexFileReadWrite.writeBytes(previousTermId + "");
         while (null != (line = sortedDocIndexReader.readLine())) {
 
             String[] tokens = line.split(Constants.tab);
@@ -292,11 +860,16 @@ public class BuildIndexes {
             String currentTermId = tokens[1];
 
             if (!currentTermId.equals(previousTermId)) {
-                // Write term_info for previous term
-                termInfoWriter.write(previousTermId + Constants.tab + offset + Constants.tab
-                        + totalPositionCountForTerm + Constants.tab + documentCountforTerm + Constants.newline);
-
-                offset = writeInfoForNewTerm(indexFileReadWrite, offset, currentTermId);
+                // The first term of a segment need not be term 1
+                if (null == previousTermId) {
+                    indexFileReadWrite.writeBytes(currentTermId + "");
+                } else {
+                    // Write term_info for previous term
+                    termInfoWriter.write(previousTermId + Constants.tab + offset + Constants.tab
+                            + totalPositionCountForTerm + Constants.tab + documentCountforTerm + Constants.newline);
+
+                    offset = writeInfoForNewTerm(indexFileReadWrite, offset, currentTermId);
+                }
 
                 // Reset variables for new term
                 totalPositionCountForTerm = 0;
@@ -313,8 +886,10 @@ public class BuildIndexes {
             previousDocId = currentDocId;
         }
         // Write term_info for last term
-        termInfoWriter.write(previousTermId + Constants.tab + offset + Constants.tab + totalPositionCountForTerm
-                + Constants.tab + documentCountforTerm + Constants.newline);
+        if (null != previousTermId) {
+            termInfoWriter.write(previousTermId + Constants.tab + offset + Constants.tab + totalPositionCountForTerm
+                    + Constants.tab + documentCountforTerm + Constants.newline);
+        }
     }
 
 
@@ -365,42 +940,30 @@ public class BuildIndexes {
 
 
     /**
-     * Function to process the given document (remove headers, Jsoup.parse, pattern matching) and extract words matching
-     * a specific pattern
-     * 
-     * @param corpusFile
-     *        file name for an individual file in corpus
-     * @return processed text for given corpus file
-     * @throws IOException
-     */
-    public Matcher extractMatchingTermsFromDocument (String corpusFileName) throws IOException {
-
-        // Compile pattern to tokenize words
-        Pattern wordPattern = Pattern.compile(pattern);
-        String headerLessText = removeFileHeader(corpusFileName);
-        Document doc = Jsoup.parse(headerLessText);
-        String parsedText = doc.text();
-
-        return wordPattern.matcher(parsedText);
-    }
-
-
-    /**
-     * Function to strip of file header(here the pattern used is consecutive occurrence of 2 new lines)
+     * Strip of the header of the text of a corpus file, shared with the parse workers of the indexing pipeline. The
+     * text is preceded by two headers, the second one may end with bare line feeds (as HTTP headers of some WARC
+     * records do), so it ends at the earliest blank line of either kind. Without an end of the second header the
+     * text after the first one is kept, and the whole text without any header
      * 
-     * @param corpusFileName
-     *        file name for which header needs to be removed
-     * @return header less text for given file
-     * @throws IOException
+     * @param htmlText
+     *        text of a corpus file
+     * @return header less text
      */
-    public String removeFileHeader (String corpusFileName) throws IOException {
+    static String stripFileHeader (String htmlText) {
 
         String pattern = Constants.newline + Constants.newline;
-        File corpusFile = new File(corpusPath + "/" + corpusFileName);
-        String htmlText = FileUtils.readFileToString(corpusFile);
-
         int firstHeaderIndex = htmlText.indexOf(pattern);
+        if (firstHeaderIndex < 0) {
+            return htmlText;
+        }
         int headerLessTextIndex = htmlText.indexOf(pattern, firstHeaderIndex + 1);
+        int lineFeedIndex = htmlText.indexOf("\n\n", firstHeaderIndex + pattern.length());
+        if (lineFeedIndex >= 0 && (headerLessTextIndex < 0 || lineFeedIndex < headerLessTextIndex)) {
+            headerLessTextIndex = lineFeedIndex;
+        }
+        if (headerLessTextIndex < 0) {
+            headerLessTextIndex = firstHeaderIndex;
+        }
 
         return htmlText.substring(headerLessTextIndex);
     }
@@ -411,19 +974,76 @@ public class BuildIndexes {
      */
     public static void initializeOutputFiles () {
 
-        new File("indexes").mkdirs();
+        new File(propertyKeyToFileLocation.get("INDEX_FOLDER")).mkdirs();
 
         File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
         File termIdFile = new File(propertyKeyToFileLocation.get("TERMS_ID_FILE")).getAbsoluteFile();
         File documentIndexFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
         File termIndexFile = new File(propertyKeyToFileLocation.get("TERM_INDEX_FILE")).getAbsoluteFile();
         File termInfoFile = new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile();
+        File deletedDocsFile = new File(propertyKeyToFileLocation.get("DELETED_DOCS_FILE")).getAbsoluteFile();
+        File duplicateDocsFile = new File(propertyKeyToFileLocation.get("DUPLICATE_DOCS_FILE")).getAbsoluteFile();
 
         FileUtilities.initializeFile(documentIdFile);
         FileUtilities.initializeFile(termIdFile);
         FileUtilities.initializeFile(documentIndexFile);
         FileUtilities.initializeFile(termIndexFile);
         FileUtilities.initializeFile(termInfoFile);
+        FileUtilities.initializeFile(deletedDocsFile);
+        FileUtilities.initializeFile(duplicateDocsFile);
+    }
+
+    /**
+     * Near duplicates found by an indexing run, and what leaving them out saved of the indexes
+     */
+    private static final class DuplicateReport {
+
+        private int documents = 0;
+        private long bytes = 0;
+        private long postings = 0;
+        private long positions = 0;
+        private int duplicateDocuments = 0;
+        private long duplicateBytes = 0;
+        private long duplicatePostings = 0;
+        private long duplicatePositions = 0;
+
+
+        void add (IndexingPipeline.CorpusDocument corpusDocument, boolean duplicate) {
+
+            long documentPositions = 0;
+            for (ArrayList<Integer> termPositions : corpusDocument.getTermPositions().values()) {
+                documentPositions += termPositions.size();
+            }
+            int documentPostings = corpusDocument.getTermPositions().size();
+            documents++;
+            bytes += corpusDocument.getSize();
+            postings += documentPostings;
+            positions += documentPositions;
+            if (duplicate) {
+                duplicateDocuments++;
+                duplicateBytes += corpusDocument.getSize();
+                duplicatePostings += documentPostings;
+                duplicatePositions += documentPositions;
+            }
+        }
+
+
+        void print (String mode) {
+
+            if (documents == 0) {
+                return;
+            }
+            System.out.println(String.format("Near duplicates (%s): %d of %d documents not indexed, saving %.1f%% of "
+                    + "bytes, %.1f%% of postings and %.1f%% of positions", mode, duplicateDocuments, documents,
+                    percentage(duplicateBytes, bytes), percentage(duplicatePostings, postings), percentage(
+                            duplicatePositions, positions)));
+        }
+
+
+        private static double percentage (long part, long total) {
+
+            return total == 0 ? 0 : part * 100.0 / total;
+        }
     }
 
 }
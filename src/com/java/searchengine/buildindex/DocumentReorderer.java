@@ -0,0 +1,689 @@
+package com.java.searchengine.buildindex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.docstore.DocumentNameStore;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.docstore.ForwardIndexWriter;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.segment.LiveDocs;
+import com.java.searchengine.segment.SegmentInfo;
+import com.java.searchengine.segment.SegmentManifest;
+import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Renumber the documents of the main index so that documents sharing terms get close document id's, which
+ *          shrinks the document deltas of the posting lists. Documents are ordered by name (DOC_REORDER = name), or by
+ *          recursive graph bisection starting from the name order (DOC_REORDER = bisection): the documents are split
+ *          in two halves, documents are swapped between the halves as long as it lowers the estimated cost of the
+ *          document deltas of their terms, then each half is split in turn. The document id's, the document index, the
+ *          binary forward index with the document lengths, the document name store, the term index, the tombstones and
+ *          the near duplicates are rewritten consistently into a new generation of INDEX_FOLDER, which is published
+ *          once complete. Scores of the documents are unchanged. Documents of the segments keep their id's
+ */
+public class DocumentReorderer {
+
+    public static final String NAME_ORDER = "name";
+    public static final String BISECTION_ORDER = "bisection";
+    // Swap rounds of each bisection, and partitions left in their order below this size
+    private static final int BISECTION_ITERATIONS = 20;
+    private static final int MIN_PARTITION_SIZE = 16;
+
+    private final HashMap<String, String> properties;
+    private final IndexGenerations generations;
+    private final String order;
+
+    // Bisection state, indexed by term id
+    private int[] leftDegrees;
+    private int[] rightDegrees;
+    private double[] leftToRightGains;
+    private double[] rightToLeftGains;
+    private int[] gainStamps;
+    private int stamp = 0;
+
+    // Document blocks of the posting line being remapped: new document id in the high half and block in the low half
+    private long[] blockOrder = new long[1024];
+    private int[] blockStarts = new int[1024];
+    private int[] blockEnds = new int[1024];
+
+
+    /**
+     * Constructor
+     * @param properties
+     *        configuration properties, the index of INDEX_FOLDER is reordered as set by DOC_REORDER
+     */
+    public DocumentReorderer (HashMap<String, String> properties) {
+
+        this(properties, properties.get("DOC_REORDER"));
+    }
+
+
+    /**
+     * Constructor
+     * @param properties
+     *        configuration properties, the index of INDEX_FOLDER is reordered
+     * @param order
+     *        name or bisection
+     */
+    public DocumentReorderer (HashMap<String, String> properties, String order) {
+
+        this.properties = properties;
+        generations = new IndexGenerations(new File(properties.get("INDEX_FOLDER")));
+        this.order = null == order ? "" : order.trim().toLowerCase();
+        if (!NAME_ORDER.equals(this.order) && !BISECTION_ORDER.equals(this.order)) {
+            throw new IllegalArgumentException("Document order must be name or bisection : " + order);
+        }
+    }
+
+
+    /**
+     * Whether the documents are reordered after every full build
+     * @param properties
+     *        configuration properties, DOC_REORDER is off, name or bisection
+     * @return true for name and bisection
+     */
+    public static boolean isEnabled (HashMap<String, String> properties) {
+
+        String order = properties.get("DOC_REORDER");
+        return null != order && !order.trim().isEmpty() && !"off".equalsIgnoreCase(order.trim());
+    }
+
+
+    /**
+     * Reorder the documents of the current generation into a new generation, which is then published
+     * @return true if the reordered index is published
+     */
+    public boolean reorder () {
+
+        if (null == generations.getCurrentGeneration()) {
+            System.out.println("No indexes to reorder");
+            return false;
+        }
+        String generation = null;
+        try {
+            generation = generations.createGeneration();
+            reorder(generations.resolveProperties(properties), generations.getGenerationProperties(properties,
+                    generation));
+            generations.publish(generation);
+            generation = null;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Unable to reorder documents as I/O exception occured");
+        } finally {
+            if (null != generation) {
+                generations.discardGeneration(generation);
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Reorder the documents of an index into the index files of another generation, e.g. those of a full build before
+     * it is published, so that the build publishes a single generation
+     * @param currentProperties
+     *        configuration properties with the index files to be reordered
+     * @param reorderedProperties
+     *        configuration properties with the index files to be written, in an empty generation folder
+     * @throws IOException
+     */
+    public void reorder (HashMap<String, String> currentProperties, HashMap<String, String> reorderedProperties)
+            throws IOException {
+
+        System.out.println("\nReordering documents by " + order + "....");
+        long start = System.currentTimeMillis();
+        new File(reorderedProperties.get("INDEX_FOLDER")).mkdirs();
+
+        int[] newDocIds;
+        ForwardIndex forwardIndex = new ForwardIndex(getFile(currentProperties, "DOCUMENT_INDEX_BINARY_FILE"),
+                getFile(currentProperties, "DOCUMENT_OFFSET_FILE"));
+        try {
+            String[] names = readDocumentNames(getFile(currentProperties, "DOCUMENT_ID_FILE"), forwardIndex
+                    .getMaxDocId());
+            int mainMaxDocId = getMainMaxDocId(currentProperties, forwardIndex.getMaxDocId());
+            newDocIds = orderDocuments(names, forwardIndex, mainMaxDocId);
+            writeDocuments(names, newDocIds, forwardIndex, reorderedProperties);
+        } finally {
+            forwardIndex.close();
+        }
+        long[] gapBits = writePostings(newDocIds, currentProperties, reorderedProperties);
+        writeTombstones(newDocIds, currentProperties, reorderedProperties);
+        writeDuplicates(newDocIds, currentProperties, reorderedProperties);
+        Files.copy(getFile(currentProperties, "TERMS_ID_FILE").toPath(), getFile(reorderedProperties,
+                "TERMS_ID_FILE").toPath());
+        copySegments(currentProperties, reorderedProperties);
+        if ("true".equalsIgnoreCase(reorderedProperties.get("IMPACT_INDEX"))) {
+            buildImpactIndex(reorderedProperties);
+        }
+
+        System.out.println(String.format("Reordered %d documents by %s in %d ms: term index %d -> %d bytes, "
+                + "%.2f -> %.2f bits per document delta", countReordered(newDocIds), order, System
+                .currentTimeMillis() - start, getFile(currentProperties, "TERM_INDEX_FILE").length(), getFile(
+                reorderedProperties, "TERM_INDEX_FILE").length(), (double) gapBits[0] / Math.max(1, gapBits[2]),
+                (double) gapBits[1] / Math.max(1, gapBits[2])));
+    }
+
+
+    /**
+     * Read the names of the documents
+     * @return name of each document id, null for id's without a document
+     */
+    private static String[] readDocumentNames (File documentIdFile, int maxDocId) throws IOException {
+
+        String[] names = new String[maxDocId + 1];
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(documentIdFile));
+        try {
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                int docId = Integer.parseInt(line.substring(0, separator));
+                if (docId >= names.length) {
+                    throw new IOException("document " + docId + " is not in the forward index");
+                }
+                names[docId] = line.substring(separator + 1);
+            }
+        } finally {
+            reader.close();
+        }
+        return names;
+    }
+
+
+    /**
+     * @return largest document id of the main index, the documents after it are in the segments
+     */
+    private static int getMainMaxDocId (HashMap<String, String> currentProperties, int maxDocId) {
+
+        List<SegmentInfo> segments = new SegmentManifest(getFile(currentProperties, "SEGMENT_FOLDER")).getSegments();
+        int mainMaxDocId = maxDocId;
+        for (SegmentInfo segment : segments) {
+            mainMaxDocId = Math.min(mainMaxDocId, segment.getMinDocId() - 1);
+        }
+        return mainMaxDocId;
+    }
+
+
+    /**
+     * Order the documents of the main index
+     * @return new document id of each document id, the documents of the segments keep their id's
+     * @throws IOException
+     */
+    private int[] orderDocuments (final String[] names, ForwardIndex forwardIndex, int mainMaxDocId)
+            throws IOException {
+
+        Integer[] sortedDocIds = new Integer[mainMaxDocId];
+        for (int docId = 1; docId <= mainMaxDocId; docId++) {
+            sortedDocIds[docId - 1] = docId;
+        }
+        Arrays.sort(sortedDocIds, new Comparator<Integer>() {
+
+            @Override
+            public int compare (Integer docId1, Integer docId2) {
+
+                String name1 = null == names[docId1] ? "" : names[docId1];
+                String name2 = null == names[docId2] ? "" : names[docId2];
+                int comparison = name1.compareTo(name2);
+                return comparison != 0 ? comparison : Integer.compare(docId1, docId2);
+            }
+        });
+        int[] docOrder = new int[mainMaxDocId];
+        for (int i = 0; i < mainMaxDocId; i++) {
+            docOrder[i] = sortedDocIds[i];
+        }
+        if (BISECTION_ORDER.equals(order)) {
+            int[][] docTerms = readSharedTerms(forwardIndex, mainMaxDocId);
+            bisect(docOrder, 0, docOrder.length, docTerms);
+        }
+
+        int[] newDocIds = new int[names.length];
+        for (int docId = 0; docId < newDocIds.length; docId++) {
+            newDocIds[docId] = docId;
+        }
+        for (int i = 0; i < docOrder.length; i++) {
+            newDocIds[docOrder[i]] = i + 1;
+        }
+        return newDocIds;
+    }
+
+
+    /**
+     * Read the term id's of the documents of the main index, leaving out the terms of a single document which do not
+     * change the cost of any order
+     * @return term id's of each document id
+     * @throws IOException
+     */
+    private int[][] readSharedTerms (ForwardIndex forwardIndex, int mainMaxDocId) throws IOException {
+
+        int[][] docTerms = new int[mainMaxDocId + 1][];
+        int[] documentFrequencies = new int[1024];
+        for (int docId = 1; docId <= mainMaxDocId; docId++) {
+            LinkedHashMap<Integer, Integer> termFrequencies = forwardIndex.getTermFrequencies(docId);
+            int[] termIds = new int[termFrequencies.size()];
+            int count = 0;
+            for (Integer termId : termFrequencies.keySet()) {
+                if (termId >= documentFrequencies.length) {
+                    documentFrequencies = Arrays.copyOf(documentFrequencies, Math.max(termId + 1,
+                            documentFrequencies.length * 2));
+                }
+                documentFrequencies[termId]++;
+                termIds[count++] = termId;
+            }
+            docTerms[docId] = termIds;
+        }
+
+        for (int docId = 1; docId <= mainMaxDocId; docId++) {
+            int[] termIds = docTerms[docId];
+            int count = 0;
+            for (int termId : termIds) {
+                if (documentFrequencies[termId] > 1) {
+                    termIds[count++] = termId;
+                }
+            }
+            docTerms[docId] = Arrays.copyOf(termIds, count);
+        }
+
+        int termCount = documentFrequencies.length;
+        leftDegrees = new int[termCount];
+        rightDegrees = new int[termCount];
+        leftToRightGains = new double[termCount];
+        rightToLeftGains = new double[termCount];
+        gainStamps = new int[termCount];
+        return docTerms;
+    }
+
+
+    /**
+     * Recursive graph bisection of a range of the document order. The cost of a term in a half is estimated as
+     * degree * log2(halfSize / (degree + 1)), the bits of its document deltas if its documents were spread evenly,
+     * and each round swaps the documents whose moves to the other half lower the total cost the most
+     */
+    private void bisect (int[] docOrder, int start, int end, int[][] docTerms) {
+
+        int size = end - start;
+        if (size < 2 * MIN_PARTITION_SIZE) {
+            return;
+        }
+        int middle = start + size / 2;
+        double leftSize = middle - start;
+        double rightSize = end - middle;
+        long[] leftKeys = new long[middle - start];
+        long[] rightKeys = new long[end - middle];
+
+        for (int iteration = 0; iteration < BISECTION_ITERATIONS; iteration++) {
+            for (int i = start; i < end; i++) {
+                int[] degrees = i < middle ? leftDegrees : rightDegrees;
+                for (int termId : docTerms[docOrder[i]]) {
+                    degrees[termId]++;
+                }
+            }
+
+            stamp++;
+            for (int i = start; i < end; i++) {
+                double gain = 0;
+                for (int termId : docTerms[docOrder[i]]) {
+                    if (gainStamps[termId] != stamp) {
+                        gainStamps[termId] = stamp;
+                        int leftDegree = leftDegrees[termId];
+                        int rightDegree = rightDegrees[termId];
+                        double cost = getCost(leftDegree, leftSize) + getCost(rightDegree, rightSize);
+                        leftToRightGains[termId] = leftDegree == 0 ? 0 : cost - getCost(leftDegree - 1, leftSize)
+                                - getCost(rightDegree + 1, rightSize);
+                        rightToLeftGains[termId] = rightDegree == 0 ? 0 : cost - getCost(leftDegree + 1, leftSize)
+                                - getCost(rightDegree - 1, rightSize);
+                    }
+                    gain += i < middle ? leftToRightGains[termId] : rightToLeftGains[termId];
+                }
+                if (i < middle) {
+                    leftKeys[i - start] = getGainKey(gain, i);
+                } else {
+                    rightKeys[i - middle] = getGainKey(gain, i);
+                }
+            }
+
+            for (int i = start; i < end; i++) {
+                for (int termId : docTerms[docOrder[i]]) {
+                    leftDegrees[termId] = 0;
+                    rightDegrees[termId] = 0;
+                }
+            }
+
+            // Best moves first, pairs are swapped while the move of both documents lowers the cost
+            Arrays.sort(leftKeys);
+            Arrays.sort(rightKeys);
+            int swapCount = 0;
+            for (int k = 0; k < leftKeys.length && k < rightKeys.length; k++) {
+                if (getGain(leftKeys[k]) + getGain(rightKeys[k]) <= 0) {
+                    break;
+                }
+                int left = (int) leftKeys[k];
+                int right = (int) rightKeys[k];
+                int docId = docOrder[left];
+                docOrder[left] = docOrder[right];
+                docOrder[right] = docId;
+                swapCount++;
+            }
+            if (swapCount == 0) {
+                break;
+            }
+        }
+
+        bisect(docOrder, start, middle, docTerms);
+        bisect(docOrder, middle, end, docTerms);
+    }
+
+
+    private static double getCost (int degree, double partitionSize) {
+
+        return degree == 0 ? 0 : degree * Math.log(partitionSize / (degree + 1)) / Math.log(2);
+    }
+
+
+    /**
+     * Pack a gain and a position of the document order into a key sorting in decreasing order of gain
+     */
+    private static long getGainKey (double gain, int position) {
+
+        int bits = Float.floatToIntBits((float) -gain);
+        return (long) (bits ^ ((bits >> 31) & 0x7FFFFFFF)) << 32 | position;
+    }
+
+
+    private static float getGain (long key) {
+
+        int bits = (int) (key >> 32);
+        return -Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+    }
+
+
+    /**
+     * Write the document id's, the document index and the binary forward index in the new order of the documents,
+     * then the document name store
+     * @throws IOException
+     */
+    private static void writeDocuments (String[] names, int[] newDocIds, ForwardIndex forwardIndex,
+            HashMap<String, String> reorderedProperties) throws IOException {
+
+        int[] oldDocIds = new int[newDocIds.length];
+        for (int docId = 1; docId < newDocIds.length; docId++) {
+            oldDocIds[newDocIds[docId]] = docId;
+        }
+
+        File documentIdFile = getFile(reorderedProperties, "DOCUMENT_ID_FILE");
+        BufferedWriter documentIdWriter = new BufferedWriter(new FileWriter(documentIdFile));
+        BufferedWriter documentIndexWriter = new BufferedWriter(new FileWriter(getFile(reorderedProperties,
+                "DOCUMENT_INDEX_FILE")));
+        ForwardIndexWriter forwardIndexWriter = new ForwardIndexWriter(getFile(reorderedProperties,
+                "DOCUMENT_INDEX_BINARY_FILE"), getFile(reorderedProperties, "DOCUMENT_OFFSET_FILE"));
+        try {
+            for (int docId = 1; docId < oldDocIds.length; docId++) {
+                int oldDocId = oldDocIds[docId];
+                if (null != names[oldDocId]) {
+                    documentIdWriter.write(docId + Constants.tab + names[oldDocId] + Constants.newline);
+                }
+                LinkedHashMap<Integer, ArrayList<Integer>> termPositions = forwardIndex.getTermPositions(oldDocId);
+                for (Map.Entry<Integer, ArrayList<Integer>> entry : termPositions.entrySet()) {
+                    documentIndexWriter.write(docId + Constants.tab + entry.getKey());
+                    for (Integer position : entry.getValue()) {
+                        documentIndexWriter.write(Constants.tab + position);
+                    }
+                    documentIndexWriter.newLine();
+                }
+                forwardIndexWriter.addDocument(docId, termPositions);
+            }
+        } finally {
+            documentIdWriter.close();
+            documentIndexWriter.close();
+            forwardIndexWriter.close();
+        }
+        DocumentNameStore.build(documentIdFile, getFile(reorderedProperties, "DOCUMENT_NAME_STORE_FILE"));
+    }
+
+
+    /**
+     * Write the term index and term info of the main index with the new document id's, the postings of each term
+     * are sorted again by document id and delta encoded, the positions are unchanged
+     * @return bits of all the document deltas before and after the reordering, and the number of document deltas
+     * @throws IOException
+     */
+    private long[] writePostings (int[] newDocIds, HashMap<String, String> currentProperties,
+            HashMap<String, String> reorderedProperties) throws IOException {
+
+        long[] gapBits = new long[3];
+        BufferedReader termInfoReader = new BufferedReader(new FileReader(getFile(currentProperties,
+                "TERM_INFO_FILE")));
+        BufferedReader termIndexReader = new BufferedReader(new FileReader(getFile(currentProperties,
+                "TERM_INDEX_FILE")));
+        BufferedWriter termIndexWriter = new BufferedWriter(new FileWriter(getFile(reorderedProperties,
+                "TERM_INDEX_FILE")));
+        BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(getFile(reorderedProperties,
+                "TERM_INFO_FILE")));
+        try {
+            long offset = 0;
+            StringBuilder reorderedLine = new StringBuilder();
+            String termInfo;
+            while ((termInfo = termInfoReader.readLine()) != null) {
+                String[] tokens = termInfo.split(Constants.tab);
+                String postingLine = termIndexReader.readLine();
+                if (null == postingLine || !postingLine.startsWith(tokens[0] + Constants.tab)) {
+                    throw new IOException("Term index does not match term info at term " + tokens[0]);
+                }
+                reorderedLine.setLength(0);
+                reorderedLine.append(tokens[0]);
+                remapPostings(postingLine, newDocIds, reorderedLine, gapBits);
+
+                // Lines are separated as in the term index of a build, the last line has no line break
+                if (offset > 0) {
+                    termIndexWriter.write(Constants.newline);
+                    offset += Constants.newline.length();
+                }
+                termIndexWriter.append(reorderedLine);
+                termInfoWriter.write(tokens[0] + Constants.tab + offset + Constants.tab + tokens[2] + Constants.tab
+                        + tokens[3] + Constants.newline);
+                offset += reorderedLine.length();
+            }
+        } finally {
+            termInfoReader.close();
+            termIndexReader.close();
+            termIndexWriter.close();
+            termInfoWriter.close();
+        }
+        return gapBits;
+    }
+
+
+    /**
+     * Append the postings of a line with the new document id's, in increasing order of new document id
+     * @param postingLine
+     *        term index line: termId (tab deltaDocId:position)+, further positions of a document have a delta of 0
+     * @param reorderedLine
+     *        line holding the term id
+     * @param gapBits
+     *        bits of the document deltas before and after and number of document deltas, incremented
+     */
+    private void remapPostings (String postingLine, int[] newDocIds, StringBuilder reorderedLine, long[] gapBits) {
+
+        int blockCount = 0;
+        int docId = 0;
+        int index = postingLine.indexOf('\t');
+        int length = postingLine.length();
+        while (index >= 0 && index < length) {
+            int separator = postingLine.indexOf(':', index);
+            int next = postingLine.indexOf('\t', separator);
+            int end = next < 0 ? length : next;
+
+            int deltaDocId = Integer.parseInt(postingLine.substring(index + 1, separator));
+            if (deltaDocId != 0) {
+                docId += deltaDocId;
+                gapBits[0] += 32 - Integer.numberOfLeadingZeros(deltaDocId);
+                if (blockCount == blockOrder.length) {
+                    blockOrder = Arrays.copyOf(blockOrder, blockCount * 2);
+                    blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+                    blockEnds = Arrays.copyOf(blockEnds, blockCount * 2);
+                }
+                blockOrder[blockCount] = (long) newDocIds[docId] << 32 | blockCount;
+                blockStarts[blockCount] = separator;
+                blockCount++;
+            }
+            blockEnds[blockCount - 1] = end;
+            index = next;
+        }
+
+        Arrays.sort(blockOrder, 0, blockCount);
+        int lastDocId = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int newDocId = (int) (blockOrder[i] >>> 32);
+            int block = (int) blockOrder[i];
+            reorderedLine.append(Constants.tab).append(newDocId - lastDocId).append(postingLine, blockStarts[block],
+                    blockEnds[block]);
+            gapBits[1] += 32 - Integer.numberOfLeadingZeros(newDocId - lastDocId);
+            lastDocId = newDocId;
+        }
+        gapBits[2] += blockCount;
+    }
+
+
+    /**
+     * Write the tombstones of the main index with the new document id's
+     * @throws IOException
+     */
+    private static void writeTombstones (int[] newDocIds, HashMap<String, String> currentProperties,
+            HashMap<String, String> reorderedProperties) throws IOException {
+
+        LiveDocs liveDocs = LiveDocs.read(getFile(currentProperties, "DELETED_DOCS_FILE"), 0);
+        LiveDocs reorderedLiveDocs = new LiveDocs(0);
+        for (int docId = liveDocs.nextDeletedDoc(0); docId >= 0; docId = liveDocs.nextDeletedDoc(docId + 1)) {
+            int newDocId = docId < newDocIds.length ? newDocIds[docId] : docId;
+            if (liveDocs.isPurged(docId)) {
+                reorderedLiveDocs.purge(newDocId);
+            } else {
+                reorderedLiveDocs.delete(newDocId);
+            }
+        }
+        File deletedDocsFile = getFile(reorderedProperties, "DELETED_DOCS_FILE");
+        FileUtilities.initializeFile(deletedDocsFile);
+        if (reorderedLiveDocs.getDeletedCount() > 0) {
+            reorderedLiveDocs.write(deletedDocsFile);
+        }
+    }
+
+
+    /**
+     * Write the near duplicates with the new document id's of their canonical documents
+     * @throws IOException
+     */
+    private static void writeDuplicates (int[] newDocIds, HashMap<String, String> currentProperties,
+            HashMap<String, String> reorderedProperties) throws IOException {
+
+        File duplicateDocsFile = getFile(currentProperties, "DUPLICATE_DOCS_FILE");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(getFile(reorderedProperties,
+                "DUPLICATE_DOCS_FILE")));
+        try {
+            if (!duplicateDocsFile.isFile()) {
+                return;
+            }
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(duplicateDocsFile));
+            try {
+                while ((line = reader.readLine()) != null) {
+                    int separator = line.indexOf('\t');
+                    int canonicalDocId = Integer.parseInt(line.substring(0, separator));
+                    writer.write(newDocIds[canonicalDocId] + line.substring(separator) + Constants.newline);
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Copy the committed segments, their document id's are not reordered
+     * @throws IOException
+     */
+    private static void copySegments (HashMap<String, String> currentProperties,
+            HashMap<String, String> reorderedProperties) throws IOException {
+
+        File segmentFolder = getFile(currentProperties, "SEGMENT_FOLDER");
+        File reorderedSegmentFolder = getFile(reorderedProperties, "SEGMENT_FOLDER");
+        if (segmentFolder.isDirectory()) {
+            FileUtils.copyDirectory(segmentFolder, reorderedSegmentFolder);
+            new SegmentManifest(reorderedSegmentFolder).deleteUnreferencedSegments();
+        }
+    }
+
+
+    /**
+     * Build the impact ordered index of the reordered index
+     */
+    private static void buildImpactIndex (HashMap<String, String> reorderedProperties) throws IOException {
+
+        ForwardIndex forwardIndex = new ForwardIndex(getFile(reorderedProperties, "DOCUMENT_INDEX_BINARY_FILE"),
+                getFile(reorderedProperties, "DOCUMENT_OFFSET_FILE"));
+        try {
+            new ImpactIndexWriter(forwardIndex).build(getFile(reorderedProperties, "TERM_INDEX_FILE"), getFile(
+                    reorderedProperties, "TERM_INFO_FILE"), getFile(reorderedProperties, "IMPACT_INDEX_FILE"),
+                    getFile(reorderedProperties, "IMPACT_OFFSET_FILE"));
+        } finally {
+            forwardIndex.close();
+        }
+    }
+
+
+    /**
+     * @return number of documents given a new id
+     */
+    private static int countReordered (int[] newDocIds) {
+
+        int count = 0;
+        for (int docId = 1; docId < newDocIds.length; docId++) {
+            if (newDocIds[docId] != docId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    private static File getFile (HashMap<String, String> properties, String propertyKey) {
+
+        return new File(properties.get(propertyKey)).getAbsoluteFile();
+    }
+
+
+    /**
+     * Reorder the documents of the index configured in resources/fileLocations.properties
+     * @param args
+     *        order of the documents, name or bisection, DOC_REORDER if not given
+     */
+    public static void main (String[] args) {
+
+        HashMap<String, String> properties = Utilities.loadProperties();
+        String order = args.length > 0 ? args[0] : properties.get("DOC_REORDER");
+        if (null == order || !NAME_ORDER.equalsIgnoreCase(order.trim()) && !BISECTION_ORDER.equalsIgnoreCase(order
+                .trim())) {
+            System.out.println("Usage : DocumentReorderer <name|bisection>");
+            return;
+        }
+        new DocumentReorderer(properties, order).reorder();
+    }
+}
@@ -0,0 +1,245 @@
+package com.java.searchengine.buildindex;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.rank_documents.PostingList;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Builds the impact ordered index used for score-at-a-time Okapi BM-25 evaluation.
+ *          The BM-25 contribution of a posting depends only on the term frequency, the document length and the
+ *          document frequency of the term, so it is computed at index time and linearly quantized to 8 bits.
+ *          Postings of a term are grouped into segments of equal impact, ordered by decreasing impact, and document
+ *          id's are delta encoded within a segment.
+ *
+ *          term_impacts.bin, one record per term: for each segment: impact (byte), posting count, byte length of
+ *          the document id's, delta encoded document id's (variable length integers)
+ *
+ *          impact_offsets.bin: header (magic, impact scale as double) followed by one fixed width entry per term id
+ *          (starting at 0): record offset (long), segment count (int), posting count (int)
+ */
+public class ImpactIndexWriter {
+
+    public static final int MAGIC = 0x494D5031;
+    public static final int HEADER_SIZE = 12;
+    public static final int ENTRY_SIZE = 16;
+    public static final int MAX_IMPACT = 255;
+
+    private static final double k1 = 1.2;
+    private static final double b = 0.75;
+    private static final double logBase2 = Math.log(2);
+
+    private final double[] docIdToLengthFactor;
+    private final int documentCount;
+
+
+    /**
+     * Constructor, precomputes the BM-25 document length factor of every document
+     * @param forwardIndex
+     *        forward index providing document lengths
+     */
+    public ImpactIndexWriter (ForwardIndex forwardIndex) {
+
+        int maxDocId = forwardIndex.getMaxDocId();
+        long termCountInCorpus = 0;
+        int indexedDocuments = 0;
+        for (int docId = 1; docId <= maxDocId; docId++) {
+            if (forwardIndex.getDistinctTermCount(docId) > 0) {
+                termCountInCorpus += forwardIndex.getTotalTermCount(docId);
+                indexedDocuments++;
+            }
+        }
+        documentCount = indexedDocuments;
+        double avgDocLength = indexedDocuments == 0 ? 1.0 : (double) termCountInCorpus / indexedDocuments;
+
+        docIdToLengthFactor = new double[maxDocId + 1];
+        for (int docId = 1; docId <= maxDocId; docId++) {
+            docIdToLengthFactor[docId] = k1 * ((1 - b) + (b * (forwardIndex.getTotalTermCount(docId) / avgDocLength)));
+        }
+    }
+
+
+    /**
+     * Build the impact index from the inverted index. term_index and term_info are both in increasing term id
+     * order, so both are streamed line by line, once to find the largest impact and once to write the index
+     * @param termIndexFile
+     *        inverted index
+     * @param termInfoFile
+     *        term info (termId, offset, term count, document count)
+     * @param impactFile
+     *        impact ordered postings to be written
+     * @param impactOffsetFile
+     *        per term offset table to be written
+     * @throws IOException
+     */
+    public void build (File termIndexFile, File termInfoFile, File impactFile, File impactOffsetFile)
+            throws IOException {
+
+        // First pass, largest impact in the index sets the quantization scale
+        double maxImpact = 0.0;
+        BufferedReader termIndexReader = new BufferedReader(new FileReader(termIndexFile));
+        BufferedReader termInfoReader = new BufferedReader(new FileReader(termInfoFile));
+        String line;
+        while ((line = termIndexReader.readLine()) != null) {
+            String[] termInfo = termInfoReader.readLine().split(Constants.tab);
+            PostingList postingList = PostingList.decode(termInfo[0], line);
+            double idf = computeIdf(Integer.parseInt(termInfo[3]));
+            for (int i = 0; i < postingList.size(); i++) {
+                maxImpact = Math.max(maxImpact, computeImpact(postingList, i, idf));
+            }
+        }
+        termIndexReader.close();
+        termInfoReader.close();
+
+        double scale = maxImpact == 0.0 ? 1.0 : maxImpact / MAX_IMPACT;
+
+        // Second pass, quantize and write impact ordered postings
+        DataOutputStream impactOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                impactFile)));
+        DataOutputStream offsetOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                impactOffsetFile)));
+        offsetOutput.writeInt(MAGIC);
+        offsetOutput.writeDouble(scale);
+
+        termIndexReader = new BufferedReader(new FileReader(termIndexFile));
+        termInfoReader = new BufferedReader(new FileReader(termInfoFile));
+        long offset = 0;
+        int nextTermId = 0;
+        while ((line = termIndexReader.readLine()) != null) {
+            String[] termInfo = termInfoReader.readLine().split(Constants.tab);
+            int termId = Integer.parseInt(termInfo[0]);
+            PostingList postingList = PostingList.decode(termInfo[0], line);
+            double idf = computeIdf(Integer.parseInt(termInfo[3]));
+
+            // Term id's without postings get an empty entry
+            while (nextTermId < termId) {
+                writeOffsetEntry(offsetOutput, offset, 0, 0);
+                nextTermId++;
+            }
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            int segmentCount = writeImpactSegments(postingList, idf, scale, record);
+            record.writeTo(impactOutput);
+
+            writeOffsetEntry(offsetOutput, offset, segmentCount, postingList.size());
+            offset += record.size();
+            nextTermId++;
+        }
+        termIndexReader.close();
+        termInfoReader.close();
+        impactOutput.close();
+        offsetOutput.close();
+    }
+
+
+    /**
+     * Quantize the impacts of a posting list and write them as segments of decreasing impact
+     * @return number of segments written
+     */
+    private int writeImpactSegments (PostingList postingList, double idf, double scale, ByteArrayOutputStream record)
+            throws IOException {
+
+        final int[] docIds = postingList.getDocIds();
+        final int[] impacts = new int[postingList.size()];
+        List<Integer> order = new ArrayList<Integer>(postingList.size());
+        for (int i = 0; i < postingList.size(); i++) {
+            double impact = computeImpact(postingList, i, idf);
+            impacts[i] = impact > 0.0 ? Math.max(1, Math.min(MAX_IMPACT, (int) Math.round(impact / scale))) : 0;
+            order.add(i);
+        }
+
+        // Decreasing impact, increasing document id within equal impact
+        Collections.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare (Integer posting1, Integer posting2) {
+
+                if (impacts[posting1] != impacts[posting2]) {
+                    return impacts[posting2] - impacts[posting1];
+                }
+                return docIds[posting1] - docIds[posting2];
+            }
+        });
+
+        int segmentCount = 0;
+        int start = 0;
+        while (start < order.size()) {
+            int impact = impacts[order.get(start)];
+            int end = start;
+            while (end < order.size() && impacts[order.get(end)] == impact) {
+                end++;
+            }
+            ByteArrayOutputStream segmentDocIds = new ByteArrayOutputStream();
+            int previousDocId = 0;
+            for (int i = start; i < end; i++) {
+                int docId = docIds[order.get(i)];
+                writeVInt(segmentDocIds, docId - previousDocId);
+                previousDocId = docId;
+            }
+            record.write(impact);
+            writeVInt(record, end - start);
+            writeVInt(record, segmentDocIds.size());
+            segmentDocIds.writeTo(record);
+            segmentCount++;
+            start = end;
+        }
+        return segmentCount;
+    }
+
+
+    /**
+     * BM-25 idf component, same as the query time computation
+     */
+    private double computeIdf (int termDocumentOccurence) {
+
+        return Math.log((documentCount + 0.5) / (termDocumentOccurence + 0.5)) / logBase2;
+    }
+
+
+    /**
+     * BM-25 contribution of a single posting for a query term occurring once in the query
+     */
+    private double computeImpact (PostingList postingList, int posting, double idf) {
+
+        int docId = postingList.getDocIds()[posting];
+        int termDocumentFrequency = postingList.getTermFrequencies()[posting];
+        double K = docId < docIdToLengthFactor.length ? docIdToLengthFactor[docId] : k1;
+        return idf * (((1 + k1) * termDocumentFrequency) / (K + termDocumentFrequency));
+    }
+
+
+    private static void writeOffsetEntry (DataOutputStream offsetOutput, long offset, int segmentCount,
+            int postingCount) throws IOException {
+
+        offsetOutput.writeLong(offset);
+        offsetOutput.writeInt(segmentCount);
+        offsetOutput.writeInt(postingCount);
+    }
+
+
+    /**
+     * Write a variable length integer, 7 bits per byte
+     */
+    private static void writeVInt (ByteArrayOutputStream output, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+}
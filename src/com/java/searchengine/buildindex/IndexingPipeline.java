@@ -0,0 +1,399 @@
+package com.java.searchengine.buildindex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.Jsoup;
+import org.tartarus.snowball.EnglishSnowballStemmerFactory;
+import org.tartarus.snowball.util.StemmerException;
+
+import com.java.searchengine.corpus.CorpusReader;
+import com.java.searchengine.corpus.CorpusRecord;
+import com.java.searchengine.metrics.MetricsRegistry;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Staged pipeline feeding the forward index builder, so that reading the corpus from disk and parsing the
+ *          documents overlap with writing the index. A reader thread reads the corpus documents in order, a pool of
+ *          parse workers strips, parses, tokenizes and stems them, and the thread taking the documents (the writer
+ *          stage) gets them back in corpus order, so term and document id's are assigned exactly as by a sequential
+ *          build. Stages are connected by bounded queues and the number of documents in flight is bounded, so a stage
+ *          running ahead blocks instead of filling the memory. The utilization of each stage is printed on close
+ */
+public class IndexingPipeline {
+
+    private static final String pattern = "\\w+(\\.?\\w+)*";
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    // Stems memoized by each parse worker, the shared stemmer is not thread safe and stemming holds its lock
+    private static final int STEM_CACHE_SIZE = 100000;
+
+    private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private static final MetricsRegistry.Timer parseTimer = metrics.timer("index.parse");
+    private static final MetricsRegistry.Timer tokenizeTimer = metrics.timer("index.tokenize");
+    private static final MetricsRegistry.Timer stemTimer = metrics.timer("index.stem");
+    private static final MetricsRegistry.Counter tokenCounter = metrics.counter("index.tokens");
+
+    private final CorpusReader corpusReader;
+    private final HashSet<String> stopWords;
+    private final int parseThreadCount;
+    // MinHash signatures are computed for the near duplicate detection of the writer stage
+    private final boolean signaturesEnabled;
+    private final ArrayBlockingQueue<CorpusDocument> readQueue;
+    private final ArrayBlockingQueue<CorpusDocument> parsedQueue;
+    // Documents read but not yet taken, bounds the documents held back to be taken in corpus order
+    private final Semaphore inFlightDocuments;
+    private final HashMap<Integer, CorpusDocument> outOfOrderDocuments;
+    private final ArrayList<Thread> threads;
+    private int nextSequence = 0;
+    private boolean endOfCorpus = false;
+
+    private final AtomicLong readBusyNanos = new AtomicLong();
+    private final AtomicLong parseBusyNanos = new AtomicLong();
+    private long writeWaitNanos = 0;
+    private long startNanos;
+
+
+    /**
+     * Constructor
+     * @param corpusReader
+     *        reader of the corpus documents to be indexed, in the order of their document id's
+     * @param stopWords
+     *        words left out of the index
+     * @param properties
+     *        configuration properties, INDEX_PARSE_THREADS and INDEX_QUEUE_CAPACITY size the pipeline, a
+     *        DEDUP_MODE other than off has the parse workers compute the signature of each document
+     */
+    public IndexingPipeline (CorpusReader corpusReader, HashSet<String> stopWords,
+            HashMap<String, String> properties) {
+
+        this.corpusReader = corpusReader;
+        this.stopWords = stopWords;
+
+        int parseThreads = Utilities.parseIntProperty(properties.get("INDEX_PARSE_THREADS"), 0);
+        parseThreadCount = parseThreads > 0 ? parseThreads : Math.max(1,
+                Runtime.getRuntime().availableProcessors() - 1);
+        signaturesEnabled = BuildIndexes.isDedupEnabled(properties);
+        int queueCapacity = Math.max(1, Utilities.parseIntProperty(properties.get("INDEX_QUEUE_CAPACITY"),
+                DEFAULT_QUEUE_CAPACITY));
+
+        readQueue = new ArrayBlockingQueue<CorpusDocument>(queueCapacity);
+        parsedQueue = new ArrayBlockingQueue<CorpusDocument>(queueCapacity);
+        inFlightDocuments = new Semaphore(2 * queueCapacity + parseThreadCount);
+        outOfOrderDocuments = new HashMap<Integer, CorpusDocument>();
+        threads = new ArrayList<Thread>();
+    }
+
+
+    /**
+     * Start the reader and the parse workers
+     */
+    public void start () {
+
+        startNanos = System.nanoTime();
+        threads.add(new Thread(new Runnable() {
+
+            @Override
+            public void run () {
+
+                readCorpus();
+            }
+        }, "index-read"));
+        for (int i = 1; i <= parseThreadCount; i++) {
+            threads.add(new Thread(new Runnable() {
+
+                @Override
+                public void run () {
+
+                    parseDocuments();
+                }
+            }, "index-parse-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Take the next document in corpus order, blocking until it is parsed
+     * @return next parsed document, null once all the corpus documents are taken
+     * @throws IOException
+     *         if the document could not be read
+     * @throws StemmerException
+     *         if a term of the document could not be stemmed
+     */
+    public CorpusDocument take () throws IOException, StemmerException {
+
+        if (endOfCorpus) {
+            return null;
+        }
+        long start = System.nanoTime();
+        CorpusDocument document = outOfOrderDocuments.remove(nextSequence);
+        try {
+            while (null == document) {
+                CorpusDocument parsedDocument = parsedQueue.take();
+                if (parsedDocument.sequence == nextSequence) {
+                    document = parsedDocument;
+                } else {
+                    outOfOrderDocuments.put(parsedDocument.sequence, parsedDocument);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for corpus document " + nextSequence);
+        }
+        writeWaitNanos += System.nanoTime() - start;
+        inFlightDocuments.release();
+        if (document.endOfCorpus) {
+            endOfCorpus = true;
+            return null;
+        }
+        nextSequence++;
+
+        if (document.failure instanceof IOException) {
+            throw (IOException) document.failure;
+        } else if (document.failure instanceof StemmerException) {
+            throw (StemmerException) document.failure;
+        } else if (document.failure instanceof RuntimeException) {
+            throw (RuntimeException) document.failure;
+        }
+        return document;
+    }
+
+
+    /**
+     * Stop the reader and the parse workers, and print the utilization of each stage
+     */
+    public void close () {
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+
+        double elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        System.out.println(String.format("Indexing pipeline: read %.1f%% busy, parse %.1f%% busy (%d workers), "
+                + "write %.1f%% busy, %d documents", readBusyNanos.get() * 100 / elapsedNanos, parseBusyNanos.get()
+                * 100 / (elapsedNanos * parseThreadCount), parseThreadCount, (elapsedNanos - writeWaitNanos) * 100
+                / elapsedNanos, nextSequence));
+    }
+
+
+    /**
+     * Reader stage: read the corpus documents in order, waiting while too many documents are in flight. The end of
+     * the corpus is passed along in order as a document of its own, then each parse worker is sent an empty document
+     * to end it. Reading stops at the first document that could not be read
+     */
+    private void readCorpus () {
+
+        try {
+            int sequence = 0;
+            while (true) {
+                inFlightDocuments.acquire();
+                long start = System.nanoTime();
+                CorpusDocument document = new CorpusDocument(sequence++);
+                try {
+                    CorpusRecord record = corpusReader.next();
+                    if (null == record) {
+                        document.endOfCorpus = true;
+                    } else {
+                        document.name = record.getName();
+                        document.size = record.getSize();
+                        document.text = record.getText();
+                    }
+                } catch (IOException e) {
+                    document.failure = e;
+                }
+                readBusyNanos.addAndGet(System.nanoTime() - start);
+                readQueue.put(document);
+                if (document.endOfCorpus || null != document.failure) {
+                    break;
+                }
+            }
+            for (int i = 0; i < parseThreadCount; i++) {
+                readQueue.put(new CorpusDocument(-1));
+            }
+        } catch (InterruptedException e) {
+            // Pipeline closed before all the corpus was read
+        } finally {
+            corpusReader.close();
+        }
+    }
+
+
+    /**
+     * Parse stage: parse the documents read until the reader sends the empty document
+     */
+    private void parseDocuments () {
+
+        HashMap<String, String> stems = new HashMap<String, String>();
+        try {
+            CorpusDocument document;
+            while ((document = readQueue.take()).sequence >= 0) {
+                long start = System.nanoTime();
+                if (null != document.text) {
+                    try {
+                        NearDuplicateDetector.SignatureBuilder signature = signaturesEnabled
+                                ? new NearDuplicateDetector.SignatureBuilder() : null;
+                        document.termPositions = extractTermPositions(document.text, stems, signature);
+                        document.signature = null != signature ? signature.build() : null;
+                    } catch (StemmerException e) {
+                        document.failure = e;
+                    } catch (RuntimeException e) {
+                        document.failure = e;
+                    }
+                    document.text = null;
+                }
+                parseBusyNanos.addAndGet(System.nanoTime() - start);
+                parsedQueue.put(document);
+            }
+        } catch (InterruptedException e) {
+            // Pipeline closed before all the corpus was parsed
+        }
+    }
+
+
+    /**
+     * Strip the header, parse the html and find the positions of all the stemmed terms, leaving out the stop words
+     * @param htmlText
+     *        text of the corpus file
+     * @param stems
+     *        stems memoized by the calling worker
+     * @param signature
+     *        builder of the MinHash signature of the document given the stemmed terms in order, null if not needed
+     * @return positions of each stemmed term, in the order of the first occurrence of the terms in the document
+     * @throws StemmerException
+     */
+    private LinkedHashMap<String, ArrayList<Integer>> extractTermPositions (String htmlText,
+            HashMap<String, String> stems, NearDuplicateDetector.SignatureBuilder signature) throws StemmerException {
+
+        long start = parseTimer.start();
+        String parsedText = Jsoup.parse(BuildIndexes.stripFileHeader(htmlText)).text();
+        parseTimer.stop(start);
+
+        start = tokenizeTimer.start();
+        Matcher matchedTermsInDocument = Pattern.compile(pattern).matcher(parsedText);
+        LinkedHashMap<String, ArrayList<Integer>> termToAllItsPositionsInDocument =
+                new LinkedHashMap<String, ArrayList<Integer>>();
+        int wordPositionInDocument = 0;
+        while (matchedTermsInDocument.find()) {
+            wordPositionInDocument++;
+
+            String matchedSubSequence = matchedTermsInDocument.group().toLowerCase();
+            tokenCounter.increment();
+            if (!stopWords.contains(matchedSubSequence)) {
+                String stemmedTerm = stem(matchedSubSequence, stems);
+                ArrayList<Integer> termPositionInDocument = termToAllItsPositionsInDocument.get(stemmedTerm);
+                if (null == termPositionInDocument) {
+                    termPositionInDocument = new ArrayList<Integer>();
+                    termToAllItsPositionsInDocument.put(stemmedTerm, termPositionInDocument);
+                }
+                termPositionInDocument.add(wordPositionInDocument);
+                if (null != signature) {
+                    signature.addTerm(stemmedTerm);
+                }
+            }
+        }
+        tokenizeTimer.stop(start);
+        return termToAllItsPositionsInDocument;
+    }
+
+
+    /**
+     * Stem a word, the shared stemmer is not thread safe so stems are memoized to keep the workers off its lock
+     */
+    private static String stem (String word, HashMap<String, String> stems) throws StemmerException {
+
+        String stemmedTerm = stems.get(word);
+        if (null == stemmedTerm) {
+            long start = stemTimer.start();
+            EnglishSnowballStemmerFactory stemmer = EnglishSnowballStemmerFactory.getInstance();
+            synchronized (stemmer) {
+                stemmedTerm = stemmer.process(word);
+            }
+            stemTimer.stop(start);
+            if (stems.size() == STEM_CACHE_SIZE) {
+                stems.clear();
+            }
+            stems.put(word, stemmedTerm);
+        }
+        return stemmedTerm;
+    }
+
+    /**
+     * Corpus document passed along the stages of the pipeline
+     */
+    public static final class CorpusDocument {
+
+        private final int sequence;
+        private boolean endOfCorpus;
+        private String name;
+        private long size;
+        private String text;
+        private LinkedHashMap<String, ArrayList<Integer>> termPositions;
+        private int[] signature;
+        private Exception failure;
+
+
+        CorpusDocument (int sequence) {
+
+            this.sequence = sequence;
+        }
+
+
+        /**
+         * @return name of the document in the corpus
+         */
+        public String getName () {
+
+            return name;
+        }
+
+
+        /**
+         * @return uncompressed size of the document in bytes
+         */
+        public long getSize () {
+
+            return size;
+        }
+
+
+        /**
+         * @return positions of each stemmed term in order of first occurrence
+         */
+        public LinkedHashMap<String, ArrayList<Integer>> getTermPositions () {
+
+            return termPositions;
+        }
+
+
+        /**
+         * @return MinHash signature of the document, null if near duplicates are not detected or it has no terms
+         */
+        public int[] getSignature () {
+
+            return signature;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.java.searchengine.buildindex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Detect near duplicate documents while the forward index is built, using MinHash signatures over shingles
+ *          of consecutive terms and locality sensitive hashing. The signature is split into bands, documents sharing
+ *          any band are candidates, and a candidate is a near duplicate if the fraction of equal signature values
+ *          (the estimated Jaccard similarity of their shingles) reaches the threshold. Only the documents indexed by
+ *          the same run are compared, the signatures of the canonical documents are held in memory
+ */
+public class NearDuplicateDetector {
+
+    public static final int SHINGLE_SIZE = 4;
+    private static final int BAND_COUNT = 8;
+    private static final int ROWS_PER_BAND = 8;
+    public static final int SIGNATURE_SIZE = BAND_COUNT * ROWS_PER_BAND;
+
+    // Coefficients of the hash functions, fixed so that signatures are the same across runs
+    private static final long[] HASH_MULTIPLIERS = new long[SIGNATURE_SIZE];
+    private static final long[] HASH_INCREMENTS = new long[SIGNATURE_SIZE];
+
+    static {
+        Random random = new Random(0x5DEECE66DL);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            HASH_MULTIPLIERS[i] = random.nextLong() | 1;
+            HASH_INCREMENTS[i] = random.nextLong();
+        }
+    }
+
+    private final double threshold;
+    // Canonical documents sharing a band, keyed by band number and band hash
+    private final HashMap<Long, ArrayList<Integer>> bandToDocIds = new HashMap<Long, ArrayList<Integer>>();
+    private final HashMap<Integer, int[]> docIdToSignature = new HashMap<Integer, int[]>();
+
+
+    /**
+     * Constructor
+     * @param threshold
+     *        minimum estimated Jaccard similarity of two near duplicates
+     */
+    public NearDuplicateDetector (double threshold) {
+
+        this.threshold = threshold;
+    }
+
+
+    /**
+     * Find a canonical document the given document is a near duplicate of
+     * @param signature
+     *        MinHash signature of the document
+     * @return document id of the most similar canonical document, 0 if there is none
+     */
+    public int findDuplicate (int[] signature) {
+
+        int canonicalDocId = 0;
+        double bestSimilarity = threshold;
+        for (int band = 0; band < BAND_COUNT; band++) {
+            ArrayList<Integer> candidates = bandToDocIds.get(getBandKey(signature, band));
+            if (null == candidates) {
+                continue;
+            }
+            for (Integer candidate : candidates) {
+                double similarity = getSimilarity(signature, docIdToSignature.get(candidate));
+                if (similarity > bestSimilarity || similarity == bestSimilarity && canonicalDocId == 0) {
+                    bestSimilarity = similarity;
+                    canonicalDocId = candidate;
+                }
+            }
+        }
+        return canonicalDocId;
+    }
+
+
+    /**
+     * Add a canonical document, later documents are compared to it
+     * @param docId
+     *        document id
+     * @param signature
+     *        MinHash signature of the document
+     */
+    public void add (int docId, int[] signature) {
+
+        docIdToSignature.put(docId, signature);
+        for (int band = 0; band < BAND_COUNT; band++) {
+            Long bandKey = getBandKey(signature, band);
+            ArrayList<Integer> docIds = bandToDocIds.get(bandKey);
+            if (null == docIds) {
+                docIds = new ArrayList<Integer>(1);
+                bandToDocIds.put(bandKey, docIds);
+            }
+            docIds.add(docId);
+        }
+    }
+
+
+    /**
+     * @return fraction of equal values of two signatures
+     */
+    private static double getSimilarity (int[] signature1, int[] signature2) {
+
+        int equalCount = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (signature1[i] == signature2[i]) {
+                equalCount++;
+            }
+        }
+        return (double) equalCount / SIGNATURE_SIZE;
+    }
+
+
+    private static long getBandKey (int[] signature, int band) {
+
+        long hash = band;
+        for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+            hash = hash * 0x9E3779B97F4A7C15L + signature[row];
+        }
+        return hash;
+    }
+
+
+    /**
+     * 64 bit finalizer of MurmurHash3
+     */
+    private static long mix (long value) {
+
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE53B87CDL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Builder of the MinHash signature of a document from its terms in document order, shingles of SHINGLE_SIZE
+     * consecutive terms are hashed by each hash function and the minimum of each is kept. A document with fewer terms
+     * than a shingle has a single shingle of all its terms
+     */
+    public static final class SignatureBuilder {
+
+        private final int[] signature = new int[SIGNATURE_SIZE];
+        private final int[] window = new int[SHINGLE_SIZE];
+        private int termCount = 0;
+
+
+        public SignatureBuilder () {
+
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                signature[i] = Integer.MAX_VALUE;
+            }
+        }
+
+
+        /**
+         * Add the next term of the document
+         */
+        public void addTerm (String term) {
+
+            window[termCount % SHINGLE_SIZE] = term.hashCode();
+            termCount++;
+            if (termCount >= SHINGLE_SIZE) {
+                addShingle(termCount - SHINGLE_SIZE, SHINGLE_SIZE);
+            }
+        }
+
+
+        /**
+         * @return signature of the document, null if the document has no terms
+         */
+        public int[] build () {
+
+            if (termCount == 0) {
+                return null;
+            }
+            if (termCount < SHINGLE_SIZE) {
+                addShingle(0, termCount);
+            }
+            return signature;
+        }
+
+
+        private void addShingle (int firstTerm, int length) {
+
+            long shingleHash = 0;
+            for (int i = firstTerm; i < firstTerm + length; i++) {
+                shingleHash = shingleHash * 31 + window[i % SHINGLE_SIZE];
+            }
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                int hash = (int) (mix(shingleHash * HASH_MULTIPLIERS[i] + HASH_INCREMENTS[i]) >>> 33);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,564 @@
+package com.java.searchengine.buildindex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import com.java.searchengine.cache.PostingBlockCache;
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.docstore.DocumentNameStore;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.docstore.ForwardIndexWriter;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.segment.LiveDocs;
+import com.java.searchengine.segment.SegmentInfo;
+import com.java.searchengine.segment.SegmentManifest;
+import com.java.searchengine.segment.SegmentMerger;
+import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Merge the indexes built separately over disjoint slices of the corpus (see CORPUS_SLICE) into a single
+ *          index, so that a large corpus can be indexed by several builds running in parallel. Term id's of each
+ *          partial index are remapped to a unified lexicon keeping the order in which terms are first seen, document
+ *          id's are offset by the documents of the partial indexes before it, and the posting lists of each term are
+ *          merged across the partial indexes in order of document id. All the index files are streamed: only the
+ *          lexicon and the offset and counts of each term are held in memory, never the postings. The merged index is
+ *          written to a new generation of INDEX_FOLDER and published once complete
+ */
+public class PartialIndexMerger {
+
+    // Block cache for reading posting lines, the terms of a partial index are out of order once remapped
+    private static final int READ_CACHE_SIZE_MB = 16;
+    private static final int READ_CACHE_BLOCK_SIZE_KB = 64;
+
+    private final HashMap<String, String> properties;
+    private final IndexGenerations generations;
+
+
+    /**
+     * Constructor
+     * @param properties
+     *        configuration properties, the merged index is written to INDEX_FOLDER
+     */
+    public PartialIndexMerger (HashMap<String, String> properties) {
+
+        this.properties = properties;
+        generations = new IndexGenerations(new File(properties.get("INDEX_FOLDER")));
+    }
+
+
+    /**
+     * Merge the given partial indexes into a new generation of the index
+     * @param partialIndexFolders
+     *        index folders of the partial indexes, in the order of their slices of the corpus
+     * @return true if the merged index is published
+     */
+    public boolean merge (List<File> partialIndexFolders) {
+
+        System.out.println("\nMerging " + partialIndexFolders.size() + " partial indexes....");
+        List<PartialIndex> partialIndexes;
+        try {
+            partialIndexes = openPartialIndexes(partialIndexFolders);
+        } catch (IOException e) {
+            System.err.println("Unable to merge indexes as partial index could not be read : " + e.getMessage());
+            return false;
+        }
+
+        String generation = null;
+        try {
+            generation = generations.createGeneration();
+            HashMap<String, String> mergedProperties = generations.getGenerationProperties(properties, generation);
+            new File(mergedProperties.get("INDEX_FOLDER")).mkdirs();
+
+            int termCount = mergeLexicons(partialIndexes, mergedProperties);
+            int documentCount = mergeDocuments(partialIndexes, mergedProperties);
+            mergePostings(partialIndexes, mergedProperties);
+            new SegmentManifest(new File(mergedProperties.get("SEGMENT_FOLDER")).getAbsoluteFile()).clear();
+            if ("true".equalsIgnoreCase(mergedProperties.get("IMPACT_INDEX"))) {
+                buildImpactIndex(mergedProperties);
+            }
+
+            generations.publish(generation);
+            System.out.println("Merged " + documentCount + " documents and " + termCount + " terms into "
+                    + mergedProperties.get("INDEX_FOLDER"));
+            generation = null;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Unable to merge indexes as I/O exception occured");
+        } finally {
+            if (null != generation) {
+                generations.discardGeneration(generation);
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Locate the current generation of each partial index and assign the document id offset of each
+     */
+    private List<PartialIndex> openPartialIndexes (List<File> partialIndexFolders) throws IOException {
+
+        ArrayList<PartialIndex> partialIndexes = new ArrayList<PartialIndex>();
+        int docOffset = 0;
+        for (File folder : partialIndexFolders) {
+            HashMap<String, String> partialProperties = IndexGenerations.resolve(Utilities.relocateIndexProperties(
+                    properties, folder.getPath()));
+            PartialIndex partialIndex = new PartialIndex(partialProperties, docOffset);
+            if (partialIndex.getFile("TERM_INFO_FILE").length() == 0) {
+                throw new IOException("no index in " + folder.getAbsolutePath());
+            }
+            partialIndexes.add(partialIndex);
+            docOffset += partialIndex.maxDocId;
+        }
+        return partialIndexes;
+    }
+
+
+    /**
+     * Write the unified term id's, terms are numbered in the order they are first seen across the partial indexes
+     * @return number of terms in the merged index
+     * @throws IOException
+     */
+    private int mergeLexicons (List<PartialIndex> partialIndexes, HashMap<String, String> mergedProperties)
+            throws IOException {
+
+        HashMap<String, Integer> termToMergedId = new HashMap<String, Integer>();
+        File termIdFile = new File(mergedProperties.get("TERMS_ID_FILE")).getAbsoluteFile();
+        BufferedWriter termIdWriter = new BufferedWriter(new FileWriter(termIdFile));
+        try {
+            for (PartialIndex partialIndex : partialIndexes) {
+                String line;
+                BufferedReader reader = new BufferedReader(new FileReader(partialIndex.getFile("TERMS_ID_FILE")));
+                try {
+                    while ((line = reader.readLine()) != null) {
+                        String[] tokens = line.split(Constants.tab);
+                        Integer mergedTermId = termToMergedId.get(tokens[1]);
+                        if (null == mergedTermId) {
+                            mergedTermId = termToMergedId.size() + 1;
+                            termToMergedId.put(tokens[1], mergedTermId);
+                            termIdWriter.write(mergedTermId + Constants.tab + tokens[1] + Constants.newline);
+                        }
+                        partialIndex.mapTerm(Integer.parseInt(tokens[0]), mergedTermId);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            termIdWriter.close();
+        }
+        return termToMergedId.size();
+    }
+
+
+    /**
+     * Write the document id's, the document index and the binary forward index of all the partial indexes, with
+     * offset document id's and remapped term id's, then the document name store
+     * @return number of documents in the merged index
+     * @throws IOException
+     */
+    private int mergeDocuments (List<PartialIndex> partialIndexes, HashMap<String, String> mergedProperties)
+            throws IOException {
+
+        File documentIdFile = new File(mergedProperties.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        File documentIndexFile = new File(mergedProperties.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
+        BufferedWriter documentIdWriter = new BufferedWriter(new FileWriter(documentIdFile));
+        BufferedWriter documentIndexWriter = new BufferedWriter(new FileWriter(documentIndexFile));
+        ForwardIndexWriter forwardIndexWriter = new ForwardIndexWriter(new File(mergedProperties.get(
+                "DOCUMENT_INDEX_BINARY_FILE")).getAbsoluteFile(), new File(mergedProperties.get(
+                "DOCUMENT_OFFSET_FILE")).getAbsoluteFile());
+
+        int documentCount = 0;
+        try {
+            for (PartialIndex partialIndex : partialIndexes) {
+                String line;
+                BufferedReader reader = new BufferedReader(new FileReader(partialIndex.getFile("DOCUMENT_ID_FILE")));
+                try {
+                    while ((line = reader.readLine()) != null) {
+                        String[] tokens = line.split(Constants.tab);
+                        documentIdWriter.write(Integer.parseInt(tokens[0]) + partialIndex.docOffset + Constants.tab
+                                + tokens[1] + Constants.newline);
+                        documentCount++;
+                    }
+                } finally {
+                    reader.close();
+                }
+                mergeDocumentIndex(partialIndex, documentIndexWriter, forwardIndexWriter);
+            }
+        } finally {
+            documentIdWriter.close();
+            documentIndexWriter.close();
+            forwardIndexWriter.close();
+        }
+
+        DocumentNameStore.build(documentIdFile, new File(mergedProperties.get("DOCUMENT_NAME_STORE_FILE"))
+                .getAbsoluteFile());
+        return documentCount;
+    }
+
+
+    /**
+     * Append the document index of a partial index, one document at a time: the lines of a document are
+     * consecutive and documents are in increasing order of document id
+     */
+    private void mergeDocumentIndex (PartialIndex partialIndex, BufferedWriter documentIndexWriter,
+            ForwardIndexWriter forwardIndexWriter) throws IOException {
+
+        HashMap<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument =
+                new HashMap<Integer, ArrayList<Integer>>();
+        int currentDocId = 0;
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(partialIndex.getFile("DOCUMENT_INDEX_FILE")));
+        try {
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                int docId = Integer.parseInt(tokens[0]) + partialIndex.docOffset;
+                int termId = partialIndex.getMergedTermId(Integer.parseInt(tokens[1]));
+                if (docId != currentDocId && currentDocId > 0) {
+                    forwardIndexWriter.addDocument(currentDocId, termIdToAllItsPositionsInDocument);
+                    termIdToAllItsPositionsInDocument.clear();
+                }
+                currentDocId = docId;
+
+                ArrayList<Integer> termPositionsInDocument = new ArrayList<Integer>(tokens.length - 2);
+                documentIndexWriter.write(docId + Constants.tab + termId);
+                for (int i = 2; i < tokens.length; i++) {
+                    documentIndexWriter.write(Constants.tab + tokens[i]);
+                    termPositionsInDocument.add(Integer.parseInt(tokens[i]));
+                }
+                documentIndexWriter.newLine();
+                termIdToAllItsPositionsInDocument.put(termId, termPositionsInDocument);
+            }
+        } finally {
+            reader.close();
+        }
+        if (currentDocId > 0) {
+            forwardIndexWriter.addDocument(currentDocId, termIdToAllItsPositionsInDocument);
+        }
+        // Documents without any term at the end of the partial index still get their entry
+        int maxDocId = partialIndex.docOffset + partialIndex.maxDocId;
+        if (currentDocId < maxDocId) {
+            forwardIndexWriter.addDocument(maxDocId, new HashMap<Integer, ArrayList<Integer>>());
+        }
+    }
+
+
+    /**
+     * Write the merged term index and term info. The main index and the segments of every partial index are read as
+     * separate posting sources, terms are taken in increasing order of merged term id across all the sources and the
+     * posting lines of a term are concatenated in order of document id's, as the segment merger does. Postings of
+     * deleted documents are purged and the documents recorded as purged in the tombstones of the merged index
+     * @throws IOException
+     */
+    private void mergePostings (List<PartialIndex> partialIndexes, HashMap<String, String> mergedProperties)
+            throws IOException {
+
+        File termIndexFile = new File(mergedProperties.get("TERM_INDEX_FILE")).getAbsoluteFile();
+        File termInfoFile = new File(mergedProperties.get("TERM_INFO_FILE")).getAbsoluteFile();
+        File deletedDocsFile = new File(mergedProperties.get("DELETED_DOCS_FILE")).getAbsoluteFile();
+
+        ArrayList<PostingSource> sources = new ArrayList<PostingSource>();
+        LiveDocs purgedDocs = new LiveDocs(0);
+        for (PartialIndex partialIndex : partialIndexes) {
+            for (PostingSource source : partialIndex.openPostingSources()) {
+                LiveDocs liveDocs = source.liveDocs;
+                for (int docId = liveDocs.nextDeletedDoc(liveDocs.getMinDocId()); docId >= 0; docId = liveDocs
+                        .nextDeletedDoc(docId + 1)) {
+                    purgedDocs.purge(docId + source.docOffset);
+                }
+                sources.add(source);
+            }
+        }
+
+        PostingBlockCache postingReader = new PostingBlockCache(READ_CACHE_SIZE_MB * 1024L * 1024L,
+                READ_CACHE_BLOCK_SIZE_KB * 1024);
+        BufferedWriter termIndexWriter = new BufferedWriter(new FileWriter(termIndexFile));
+        BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(termInfoFile));
+        try {
+            long offset = 0;
+            StringBuilder mergedLine = new StringBuilder();
+            while (true) {
+                int termId = Integer.MAX_VALUE;
+                for (PostingSource source : sources) {
+                    if (source.hasTerm()) {
+                        termId = Math.min(termId, source.getMergedTermId());
+                    }
+                }
+                if (termId == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                mergedLine.setLength(0);
+                mergedLine.append(termId);
+                int[] counts = new int[2];
+                int lastDocId = 0;
+                for (PostingSource source : sources) {
+                    if (!source.hasTerm() || source.getMergedTermId() != termId) {
+                        continue;
+                    }
+                    String postingLine = postingReader.readLine(source.termIndexFile, source.getOffset());
+                    if (null == postingLine) {
+                        throw new IOException("Term index is shorter than term info in " + source.termIndexFile);
+                    }
+                    // Document id's of the source are offset by rewriting its first document delta
+                    if (source.liveDocs.getDeletedCount() == 0) {
+                        SegmentMerger.appendPostings(mergedLine, postingLine, lastDocId - source.docOffset);
+                        lastDocId = SegmentMerger.getLastDocId(postingLine) + source.docOffset;
+                        counts[0] += source.getPositionCount();
+                        counts[1] += source.getDocumentCount();
+                    } else {
+                        lastDocId = SegmentMerger.appendLivePostings(mergedLine, postingLine, lastDocId
+                                - source.docOffset, source.liveDocs, counts) + source.docOffset;
+                    }
+                    source.next();
+                }
+                // All the documents of the term are deleted
+                if (counts[1] == 0) {
+                    continue;
+                }
+
+                // Lines are separated as in the term index of a build, the last line has no line break
+                if (offset > 0) {
+                    termIndexWriter.write(Constants.newline);
+                    offset += Constants.newline.length();
+                }
+                termIndexWriter.append(mergedLine);
+                termInfoWriter.write(termId + Constants.tab + offset + Constants.tab + counts[0] + Constants.tab
+                        + counts[1] + Constants.newline);
+                offset += mergedLine.length();
+            }
+        } finally {
+            termIndexWriter.close();
+            termInfoWriter.close();
+            postingReader.invalidate();
+        }
+
+        FileUtilities.initializeFile(deletedDocsFile);
+        if (purgedDocs.getDeletedCount() > 0) {
+            purgedDocs.write(deletedDocsFile);
+        }
+    }
+
+
+    /**
+     * Build the impact ordered index of the merged index
+     */
+    private void buildImpactIndex (HashMap<String, String> mergedProperties) throws IOException {
+
+        ForwardIndex forwardIndex = new ForwardIndex(new File(mergedProperties.get("DOCUMENT_INDEX_BINARY_FILE"))
+                .getAbsoluteFile(), new File(mergedProperties.get("DOCUMENT_OFFSET_FILE")).getAbsoluteFile());
+        try {
+            new ImpactIndexWriter(forwardIndex).build(new File(mergedProperties.get("TERM_INDEX_FILE"))
+                    .getAbsoluteFile(), new File(mergedProperties.get("TERM_INFO_FILE")).getAbsoluteFile(), new File(
+                    mergedProperties.get("IMPACT_INDEX_FILE")).getAbsoluteFile(), new File(mergedProperties.get(
+                    "IMPACT_OFFSET_FILE")).getAbsoluteFile());
+        } finally {
+            forwardIndex.close();
+        }
+    }
+
+
+    /**
+     * Merge partial indexes into the index configured in resources/fileLocations.properties
+     * @param args
+     *        index folders of the partial indexes, in the order of their slices of the corpus
+     */
+    public static void main (String[] args) {
+
+        if (args.length < 2) {
+            System.out.println("Usage : PartialIndexMerger <partial index folder> <partial index folder> ...");
+            return;
+        }
+        ArrayList<File> partialIndexFolders = new ArrayList<File>();
+        for (String folder : args) {
+            partialIndexFolders.add(new File(folder));
+        }
+        new PartialIndexMerger(Utilities.loadProperties()).merge(partialIndexFolders);
+    }
+
+    /**
+     * Index built over a slice of the corpus, with the mapping of its term id's to the merged term id's
+     */
+    private static final class PartialIndex {
+
+        private final HashMap<String, String> properties;
+        private final int docOffset;
+        private final int maxDocId;
+        private int[] mergedTermIds = new int[1024];
+
+
+        PartialIndex (HashMap<String, String> properties, int docOffset) throws IOException {
+
+            this.properties = properties;
+            this.docOffset = docOffset;
+
+            int maxDocId = 0;
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(getFile("DOCUMENT_ID_FILE")));
+            try {
+                while ((line = reader.readLine()) != null) {
+                    maxDocId = Math.max(maxDocId, Integer.parseInt(line.substring(0, line.indexOf('\t'))));
+                }
+            } finally {
+                reader.close();
+            }
+            this.maxDocId = maxDocId;
+        }
+
+
+        File getFile (String propertyKey) {
+
+            return new File(properties.get(propertyKey)).getAbsoluteFile();
+        }
+
+
+        void mapTerm (int termId, int mergedTermId) {
+
+            if (termId >= mergedTermIds.length) {
+                mergedTermIds = Arrays.copyOf(mergedTermIds, Math.max(termId + 1, mergedTermIds.length * 2));
+            }
+            mergedTermIds[termId] = mergedTermId;
+        }
+
+
+        int getMergedTermId (int termId) throws IOException {
+
+            if (termId >= mergedTermIds.length || mergedTermIds[termId] == 0) {
+                throw new IOException("term " + termId + " is not in " + getFile("TERMS_ID_FILE"));
+            }
+            return mergedTermIds[termId];
+        }
+
+
+        /**
+         * @return posting sources of the main index and of the segments, in increasing order of document id's
+         */
+        List<PostingSource> openPostingSources () throws IOException {
+
+            ArrayList<PostingSource> sources = new ArrayList<PostingSource>();
+            sources.add(new PostingSource(this, getFile("TERM_INDEX_FILE"), getFile("TERM_INFO_FILE"), LiveDocs.read(
+                    getFile("DELETED_DOCS_FILE"), 0)));
+
+            List<SegmentInfo> segments = new ArrayList<SegmentInfo>(new SegmentManifest(getFile("SEGMENT_FOLDER"))
+                    .getSegments());
+            Collections.sort(segments, new Comparator<SegmentInfo>() {
+
+                @Override
+                public int compare (SegmentInfo segment1, SegmentInfo segment2) {
+
+                    return Integer.compare(segment1.getMinDocId(), segment2.getMinDocId());
+                }
+            });
+            for (SegmentInfo segment : segments) {
+                sources.add(new PostingSource(this, segment.getTermIndexFile(), segment.getTermInfoFile(), LiveDocs
+                        .read(segment.getLiveDocsFile(), segment.getMinDocId())));
+            }
+            return sources;
+        }
+    }
+
+    /**
+     * Term index of the main index or of a segment of a partial index, with its terms ordered by merged term id
+     */
+    private static final class PostingSource {
+
+        private final File termIndexFile;
+        private final LiveDocs liveDocs;
+        private final int docOffset;
+        // Merged term id in the high half and position in the term info in the low half, in increasing order
+        private final long[] termOrder;
+        private final long[] offsets;
+        private final int[] positionCounts;
+        private final int[] documentCounts;
+        private int current = 0;
+
+
+        PostingSource (PartialIndex partialIndex, File termIndexFile, File termInfoFile, LiveDocs liveDocs)
+                throws IOException {
+
+            this.termIndexFile = termIndexFile;
+            this.liveDocs = liveDocs;
+            docOffset = partialIndex.docOffset;
+
+            long[] termOrder = new long[1024];
+            long[] offsets = new long[1024];
+            int[] positionCounts = new int[1024];
+            int[] documentCounts = new int[1024];
+            int termCount = 0;
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(termInfoFile));
+            try {
+                while ((line = reader.readLine()) != null) {
+                    if (termCount == termOrder.length) {
+                        termOrder = Arrays.copyOf(termOrder, termCount * 2);
+                        offsets = Arrays.copyOf(offsets, termCount * 2);
+                        positionCounts = Arrays.copyOf(positionCounts, termCount * 2);
+                        documentCounts = Arrays.copyOf(documentCounts, termCount * 2);
+                    }
+                    String[] tokens = line.split(Constants.tab);
+                    long mergedTermId = partialIndex.getMergedTermId(Integer.parseInt(tokens[0]));
+                    termOrder[termCount] = mergedTermId << 32 | termCount;
+                    offsets[termCount] = Long.parseLong(tokens[1]);
+                    positionCounts[termCount] = Integer.parseInt(tokens[2]);
+                    documentCounts[termCount] = Integer.parseInt(tokens[3]);
+                    termCount++;
+                }
+            } finally {
+                reader.close();
+            }
+            this.termOrder = Arrays.copyOf(termOrder, termCount);
+            Arrays.sort(this.termOrder);
+            this.offsets = offsets;
+            this.positionCounts = positionCounts;
+            this.documentCounts = documentCounts;
+        }
+
+
+        boolean hasTerm () {
+
+            return current < termOrder.length;
+        }
+
+
+        void next () {
+
+            current++;
+        }
+
+
+        int getMergedTermId () {
+
+            return (int) (termOrder[current] >>> 32);
+        }
+
+
+        long getOffset () {
+
+            return offsets[(int) termOrder[current]];
+        }
+
+
+        int getPositionCount () {
+
+            return positionCounts[(int) termOrder[current]];
+        }
+
+
+        int getDocumentCount () {
+
+            return documentCounts[(int) termOrder[current]];
+        }
+    }
+}
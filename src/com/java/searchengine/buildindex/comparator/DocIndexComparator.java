@@ -2,13 +2,12 @@ package com.java.searchengine.buildindex.comparator;
 
 import java.util.Comparator;
 
-import com.java.searchengine.constants.Constants;
-
 /**
- * 
+ *
  * @author Swapnil Gupta
  * @purpose Comparator used for comparison in external sort
- *          It first sorts on basis of term id and then sorts on basis of document id
+ *          It first sorts on basis of term id and then sorts on basis of document id. Both id's are parsed in place
+ *          and packed into a single long sort key (termId << 32 | docId), so comparing two lines allocates nothing
  *
  */
 public class DocIndexComparator implements Comparator<String> {
@@ -16,25 +15,63 @@ public class DocIndexComparator implements Comparator<String> {
     @Override
     public int compare (String r1, String r2) {
 
-        String[] line1 = r1.split(Constants.tab);
-        String[] line2 = r2.split(Constants.tab);
-
-        int termId1 = Integer.parseInt(line1[1]);
-        int termId2 = Integer.parseInt(line2[1]);
-
-        if (termId1 > termId2) {
-            return 1;
-        } else
-            if (termId1 < termId2) {
-                return -1;
-            } else {
-                int docId1 = Integer.parseInt(line1[0]);
-                int docId2 = Integer.parseInt(line2[0]);
-                if (docId1 > docId2) {
-                    return 1;
-                } else {
-                    return -1;
-                }
+        long key1 = sortKey(r1);
+        long key2 = sortKey(r2);
+
+        // Lines of the same term and document are not expected, they are never reported equal
+        return key1 > key2 ? 1 : -1;
+    }
+
+
+    /**
+     * Sort key of a document index line "docId\ttermId\tpositions..."
+     *
+     * @param line
+     *        line of the document index
+     * @return term id in the high half and document id in the low half, ordered as the comparator orders lines
+     */
+    public static long sortKey (String line) {
+
+        int docIdEnd = line.indexOf('\t');
+        int termIdEnd = line.indexOf('\t', docIdEnd + 1);
+        if (termIdEnd < 0) {
+            termIdEnd = line.length();
+        }
+        return packSortKey(parseId(line, docIdEnd + 1, termIdEnd), parseId(line, 0, docIdEnd));
+    }
+
+
+    /**
+     * Pack a term id and a document id into a sort key, id's are positive so keys compare as the pairs do
+     *
+     * @param termId
+     *        term id
+     * @param docId
+     *        document id
+     * @return term id in the high half and document id in the low half
+     */
+    public static long packSortKey (int termId, int docId) {
+
+        return (long) termId << 32 | docId;
+    }
+
+
+    /**
+     * Parse a non negative id from the characters of a line between the given indexes
+     */
+    private static int parseId (String line, int start, int end) {
+
+        if (start >= end) {
+            throw new NumberFormatException("Missing id in document index line: " + line);
+        }
+        int id = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid id in document index line: " + line);
             }
+            id = id * 10 + digit;
+        }
+        return id;
     }
 }
@@ -0,0 +1,539 @@
+package com.java.searchengine.buildindex.sort;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.java.searchengine.buildindex.comparator.DocIndexComparator;
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.metrics.RunFlushedEvent;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose External sort of a document index on term id and then document id, the order of DocIndexComparator. Lines
+ *          are parsed once into records keyed by the packed sort key of DocIndexComparator, radix sorted in memory and
+ *          written as binary runs while the next run is read. SORT_RUN_SIZE_MB bounds the memory of all the runs held
+ *          at once, the run being read and those being sorted and written. The runs are merged by a
+ *          merge tree: groups of MERGE_FAN_IN runs are merged concurrently until at most MERGE_FAN_IN runs remain,
+ *          then the final merge is partitioned into term ranges of about equal volume, each merged concurrently into a
+ *          piece of the sorted document index. The pieces are concatenated in term order
+ */
+public class DocumentIndexSorter {
+
+    private static final int MERGE_FAN_IN = 16;
+    private static final int DEFAULT_RUN_SIZE_MB = 64;
+    // Runs are not made smaller than this to write more of them concurrently
+    private static final long MIN_RUN_SIZE = 4L * 1024L * 1024L;
+
+    private static final Comparator<SortedRun.Reader> READER_ORDER = new Comparator<SortedRun.Reader>() {
+
+        @Override
+        public int compare (SortedRun.Reader reader1, SortedRun.Reader reader2) {
+
+            return Long.compare(reader1.sortKey, reader2.sortKey);
+        }
+    };
+
+    private final long runSizeInBytes;
+    private final int threadCount;
+    // Runs sorted and written at once, besides the run being read
+    private final int runsInFlight;
+    // Run and piece files not yet deleted, deleted on failure
+    private final List<File> temporaryFiles = Collections.synchronizedList(new ArrayList<File>());
+
+
+    /**
+     * Constructor
+     * @param properties
+     *        configuration properties, SORT_RUN_SIZE_MB and SORT_THREADS size the sort
+     */
+    public DocumentIndexSorter (HashMap<String, String> properties) {
+
+        long memoryInBytes = Math.max(1, Utilities.parseIntProperty(properties.get("SORT_RUN_SIZE_MB"),
+                DEFAULT_RUN_SIZE_MB)) * 1024L * 1024L;
+        int sortThreads = Utilities.parseIntProperty(properties.get("SORT_THREADS"), 0);
+        threadCount = sortThreads > 0 ? sortThreads : Runtime.getRuntime().availableProcessors();
+        // The memory is divided between the run being read and the runs in flight
+        runsInFlight = (int) Math.max(1, Math.min(threadCount, memoryInBytes / MIN_RUN_SIZE - 1));
+        runSizeInBytes = memoryInBytes / (runsInFlight + 1);
+    }
+
+
+    /**
+     * Sort a document index, the runs and pieces are written next to the sorted document index
+     * @param documentIndexFile
+     *        document index to be sorted
+     * @param sortedDocumentIndexFile
+     *        sorted document index to be written
+     * @throws IOException
+     */
+    public void sort (File documentIndexFile, File sortedDocumentIndexFile) throws IOException {
+
+        File temporaryFolder = sortedDocumentIndexFile.getParentFile();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+
+            private int threadNumber = 0;
+
+
+            @Override
+            public synchronized Thread newThread (Runnable task) {
+
+                Thread thread = new Thread(task, "index-sort-" + ++threadNumber);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            ArrayList<SortedRun> runs = new ArrayList<SortedRun>();
+            long[] termVolumes = writeSortedRuns(documentIndexFile, temporaryFolder, executor, runs);
+
+            List<SortedRun> mergedRuns = runs;
+            while (mergedRuns.size() > MERGE_FAN_IN) {
+                mergedRuns = mergeLevel(mergedRuns, temporaryFolder, executor);
+            }
+            mergePartitioned(mergedRuns, termVolumes, sortedDocumentIndexFile, temporaryFolder, executor);
+        } finally {
+            executor.shutdownNow();
+            synchronized (temporaryFiles) {
+                for (File temporaryFile : temporaryFiles) {
+                    temporaryFile.delete();
+                }
+                temporaryFiles.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Read the document index in runs, each run is sorted and written by the executor while the next run is read.
+     * At most runsInFlight runs are waiting to be written while the next run is read
+     * @return volume of the records of each term in bytes, indexed by term id
+     * @throws IOException
+     */
+    private long[] writeSortedRuns (File documentIndexFile, File temporaryFolder, ExecutorService executor,
+            List<SortedRun> runs) throws IOException {
+
+        long[] termVolumes = new long[1024];
+        ArrayList<Future<SortedRun>> pendingRuns = new ArrayList<Future<SortedRun>>();
+        RecordBatch batch = new RecordBatch();
+
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(documentIndexFile));
+        try {
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int termId = batch.add(line);
+                if (termId >= termVolumes.length) {
+                    termVolumes = Arrays.copyOf(termVolumes, Math.max(termId + 1, termVolumes.length * 2));
+                }
+                termVolumes[termId] += 12 + 4L * batch.getLastPositionCount();
+
+                if (batch.getSizeInBytes() >= runSizeInBytes) {
+                    pendingRuns.add(executor.submit(sortAndWrite(batch, pendingRuns.size(), createTemporaryFile(
+                            "sort_run", ".bin", temporaryFolder))));
+                    batch = new RecordBatch();
+                    if (pendingRuns.size() - runs.size() > runsInFlight) {
+                        runs.add(getResult(pendingRuns.get(runs.size())));
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (batch.count > 0) {
+            pendingRuns.add(executor.submit(sortAndWrite(batch, pendingRuns.size(), createTemporaryFile("sort_run",
+                    ".bin", temporaryFolder))));
+        }
+        while (runs.size() < pendingRuns.size()) {
+            runs.add(getResult(pendingRuns.get(runs.size())));
+        }
+        return termVolumes;
+    }
+
+
+    /**
+     * @return task sorting a batch of records and writing it as a run, the flush of the run is recorded as a flight
+     *         recorder event
+     */
+    private Callable<SortedRun> sortAndWrite (final RecordBatch batch, final int runNumber, final File runFile) {
+
+        return new Callable<SortedRun>() {
+
+            @Override
+            public SortedRun call () throws IOException {
+
+                int[] order = batch.sortedOrder();
+                RunFlushedEvent flushEvent = new RunFlushedEvent();
+                flushEvent.begin();
+                SortedRun.Writer writer = new SortedRun.Writer(runFile);
+                for (int record : order) {
+                    long sortKey = batch.keys[record];
+                    int positionStart = batch.positionStarts[record];
+                    writer.write((int) (sortKey >>> 32), (int) sortKey, batch.positions, positionStart,
+                            batch.positionStarts[record + 1] - positionStart);
+                }
+                SortedRun run = writer.close();
+                flushEvent.commit(runNumber, batch.count, runFile.length(), runFile.getPath());
+                return run;
+            }
+        };
+    }
+
+
+    /**
+     * Merge one level of the merge tree, groups of MERGE_FAN_IN runs are merged concurrently
+     * @return runs of the next level
+     * @throws IOException
+     */
+    private List<SortedRun> mergeLevel (List<SortedRun> runs, File temporaryFolder, ExecutorService executor)
+            throws IOException {
+
+        ArrayList<Future<SortedRun>> merges = new ArrayList<Future<SortedRun>>();
+        for (int from = 0; from < runs.size(); from += MERGE_FAN_IN) {
+            final List<SortedRun> group = runs.subList(from, Math.min(from + MERGE_FAN_IN, runs.size()));
+            final File mergedRunFile = createTemporaryFile("sort_run", ".bin", temporaryFolder);
+            merges.add(executor.submit(new Callable<SortedRun>() {
+
+                @Override
+                public SortedRun call () throws IOException {
+
+                    SortedRun.Writer writer = new SortedRun.Writer(mergedRunFile);
+                    mergeRuns(group, 0, Integer.MAX_VALUE, writer);
+                    return writer.close();
+                }
+            }));
+        }
+
+        ArrayList<SortedRun> mergedRuns = new ArrayList<SortedRun>();
+        for (Future<SortedRun> merge : merges) {
+            mergedRuns.add(getResult(merge));
+        }
+        deleteRuns(runs);
+        return mergedRuns;
+    }
+
+
+    /**
+     * Final merge, partitioned into term ranges of about equal volume merged concurrently, each into a piece of the
+     * sorted document index
+     * @throws IOException
+     */
+    private void mergePartitioned (final List<SortedRun> runs, long[] termVolumes, File sortedDocumentIndexFile,
+            File temporaryFolder, ExecutorService executor) throws IOException {
+
+        int[] boundaries = partitionTerms(termVolumes, threadCount);
+        ArrayList<File> pieces = new ArrayList<File>();
+        ArrayList<Future<File>> merges = new ArrayList<Future<File>>();
+        for (int partition = 0; partition < threadCount; partition++) {
+            final int startTermId = boundaries[partition];
+            final int endTermId = boundaries[partition + 1];
+            if (startTermId == endTermId) {
+                continue;
+            }
+            final File piece = createTemporaryFile("sort_piece", ".txt", temporaryFolder);
+            pieces.add(piece);
+            merges.add(executor.submit(new Callable<File>() {
+
+                @Override
+                public File call () throws IOException {
+
+                    final BufferedWriter lineWriter = new BufferedWriter(new FileWriter(piece));
+                    try {
+                        mergeRuns(runs, startTermId, endTermId, new SortedRun.RecordWriter() {
+
+                            @Override
+                            public void write (int termId, int docId, int[] positions, int positionStart,
+                                    int positionCount) throws IOException {
+
+                                lineWriter.write(Integer.toString(docId));
+                                lineWriter.write(Constants.tab);
+                                lineWriter.write(Integer.toString(termId));
+                                for (int i = positionStart; i < positionStart + positionCount; i++) {
+                                    lineWriter.write(Constants.tab);
+                                    lineWriter.write(Integer.toString(positions[i]));
+                                }
+                                lineWriter.newLine();
+                            }
+                        });
+                    } finally {
+                        lineWriter.close();
+                    }
+                    return piece;
+                }
+            }));
+        }
+        for (Future<File> merge : merges) {
+            getResult(merge);
+        }
+        deleteRuns(runs);
+
+        OutputStream output = new FileOutputStream(sortedDocumentIndexFile);
+        try {
+            for (File piece : pieces) {
+                Files.copy(piece.toPath(), output);
+                piece.delete();
+                temporaryFiles.remove(piece);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+
+    /**
+     * Split the term id's into ranges of about equal volume
+     * @param termVolumes
+     *        volume of the records of each term, indexed by term id
+     * @param partitionCount
+     *        number of ranges
+     * @return partitionCount + 1 boundaries, range i covers term id's from boundaries[i] up to boundaries[i + 1]
+     *         excluded
+     */
+    private static int[] partitionTerms (long[] termVolumes, int partitionCount) {
+
+        long totalVolume = 0;
+        for (long termVolume : termVolumes) {
+            totalVolume += termVolume;
+        }
+
+        int[] boundaries = new int[partitionCount + 1];
+        int partition = 1;
+        long cumulativeVolume = 0;
+        for (int termId = 0; termId < termVolumes.length && partition < partitionCount; termId++) {
+            cumulativeVolume += termVolumes[termId];
+            while (partition < partitionCount && cumulativeVolume >= totalVolume * partition / partitionCount) {
+                boundaries[partition++] = termId + 1;
+            }
+        }
+        while (partition < partitionCount) {
+            boundaries[partition++] = termVolumes.length;
+        }
+        boundaries[partitionCount] = Integer.MAX_VALUE;
+        return boundaries;
+    }
+
+
+    /**
+     * Merge the records of the given runs within a term range
+     * @param runs
+     *        runs to be merged
+     * @param startTermId
+     *        first term of the range
+     * @param endTermId
+     *        end of the range, excluded
+     * @param writer
+     *        destination of the merged records
+     * @throws IOException
+     */
+    private static void mergeRuns (List<SortedRun> runs, int startTermId, int endTermId, SortedRun.RecordWriter writer)
+            throws IOException {
+
+        ArrayList<SortedRun.Reader> readers = new ArrayList<SortedRun.Reader>();
+        PriorityQueue<SortedRun.Reader> queue = new PriorityQueue<SortedRun.Reader>(Math.max(1, runs.size()),
+                READER_ORDER);
+        try {
+            for (SortedRun run : runs) {
+                SortedRun.Reader reader = new SortedRun.Reader(run, startTermId, endTermId);
+                readers.add(reader);
+                if (reader.hasRecord()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                SortedRun.Reader reader = queue.poll();
+                writer.write(reader.termId, reader.docId, reader.positions, 0, reader.positionCount);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (SortedRun.Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+
+    private File createTemporaryFile (String prefix, String suffix, File folder) throws IOException {
+
+        File temporaryFile = File.createTempFile(prefix, suffix, folder);
+        temporaryFiles.add(temporaryFile);
+        return temporaryFile;
+    }
+
+
+    private void deleteRuns (List<SortedRun> runs) {
+
+        for (SortedRun run : runs) {
+            run.delete();
+            temporaryFiles.remove(run.getFile());
+        }
+    }
+
+
+    /**
+     * Wait for a task of the executor, rethrowing its I/O exception
+     */
+    private static <T> T getResult (Future<T> task) throws IOException {
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sorting document index");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Sort of document index failed", e.getCause());
+        }
+    }
+
+    /**
+     * Lines of the document index held in memory to be sorted as one run. Each record is its packed sort key and its
+     * positions, stored in primitive arrays so that neither reading nor sorting allocates per record
+     */
+    private static final class RecordBatch {
+
+        // Estimated bytes held per record while it is sorted, besides its positions
+        private static final int RECORD_SIZE = 40;
+
+        private long[] keys = new long[1024];
+        // Positions of record i are positions[positionStarts[i]] up to positions[positionStarts[i + 1]] excluded
+        private int[] positionStarts = new int[1025];
+        private int[] positions = new int[4096];
+        private int count = 0;
+
+
+        /**
+         * Parse a line of the document index into a record
+         * @return term id of the record
+         */
+        int add (String line) {
+
+            if (count + 1 == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                positionStarts = Arrays.copyOf(positionStarts, keys.length + 1);
+            }
+            int docId = 0;
+            int termId = 0;
+            int field = 0;
+            int value = 0;
+            int positionCount = positionStarts[count];
+            for (int i = 0; i <= line.length(); i++) {
+                char current = i < line.length() ? line.charAt(i) : '\t';
+                if (current != '\t') {
+                    value = value * 10 + current - '0';
+                    continue;
+                }
+                if (field == 0) {
+                    docId = value;
+                } else if (field == 1) {
+                    termId = value;
+                } else {
+                    if (positionCount == positions.length) {
+                        positions = Arrays.copyOf(positions, positions.length * 2);
+                    }
+                    positions[positionCount++] = value;
+                }
+                field++;
+                value = 0;
+            }
+            keys[count] = DocIndexComparator.packSortKey(termId, docId);
+            positionStarts[++count] = positionCount;
+            return termId;
+        }
+
+
+        /**
+         * @return number of positions of the last record added
+         */
+        int getLastPositionCount () {
+
+            return positionStarts[count] - positionStarts[count - 1];
+        }
+
+
+        /**
+         * @return estimated memory used by the batch while it is sorted
+         */
+        long getSizeInBytes () {
+
+            return (long) count * RECORD_SIZE + 4L * positionStarts[count];
+        }
+
+
+        /**
+         * Least significant digit radix sort on the sort keys, a byte at a time. Passes over bytes equal in all the
+         * keys, such as the high bytes of small term id's, are skipped
+         * @return indexes of the records in sorted order
+         */
+        int[] sortedOrder () {
+
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            if (count < 2) {
+                return order;
+            }
+            long[] sortKeys = Arrays.copyOf(keys, count);
+            long[] keyBuffer = new long[count];
+            int[] orderBuffer = new int[count];
+            int[] digitStarts = new int[256];
+
+            for (int shift = 0; shift < 64; shift += 8) {
+                Arrays.fill(digitStarts, 0);
+                for (int i = 0; i < count; i++) {
+                    digitStarts[(int) (sortKeys[i] >>> shift) & 0xFF]++;
+                }
+                if (digitStarts[(int) (sortKeys[0] >>> shift) & 0xFF] == count) {
+                    continue;
+                }
+                int start = 0;
+                for (int digit = 0; digit < 256; digit++) {
+                    int digitCount = digitStarts[digit];
+                    digitStarts[digit] = start;
+                    start += digitCount;
+                }
+                for (int i = 0; i < count; i++) {
+                    int target = digitStarts[(int) (sortKeys[i] >>> shift) & 0xFF]++;
+                    keyBuffer[target] = sortKeys[i];
+                    orderBuffer[target] = order[i];
+                }
+                long[] sortedKeys = keyBuffer;
+                keyBuffer = sortKeys;
+                sortKeys = sortedKeys;
+                int[] sortedOrder = orderBuffer;
+                orderBuffer = order;
+                order = sortedOrder;
+            }
+            return order;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.java.searchengine.buildindex.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.java.searchengine.buildindex.comparator.DocIndexComparator;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Binary run of document index records sorted on term id and then document id, written by the external sort
+ *          of the document index. A record is its term id, document id, position count and positions, each a 4 byte
+ *          integer. A sparse index of the offsets at which terms start is kept in memory, so that a run can be read
+ *          from any term onwards by the term range partitioned final merge
+ */
+class SortedRun {
+
+    // Minimum number of bytes between two entries of the sparse term index
+    private static final int INDEX_INTERVAL = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private int[] indexTermIds = new int[16];
+    private long[] indexOffsets = new long[16];
+    private int indexSize = 0;
+
+
+    SortedRun (File file) {
+
+        this.file = file;
+    }
+
+
+    /**
+     * @return the run file
+     */
+    File getFile () {
+
+        return file;
+    }
+
+
+    /**
+     * Delete the run file once it is merged
+     */
+    void delete () {
+
+        if (!file.delete()) {
+            System.err.println("Could not delete sorted run " + file);
+        }
+    }
+
+
+    private void addIndexEntry (int termId, long offset) {
+
+        if (indexSize == indexTermIds.length) {
+            indexTermIds = Arrays.copyOf(indexTermIds, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexTermIds[indexSize] = termId;
+        indexOffsets[indexSize] = offset;
+        indexSize++;
+    }
+
+
+    /**
+     * @return offset of the last indexed term start at or before the given term, records before it have lower term
+     *         id's
+     */
+    private long findOffset (int termId) {
+
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexTermIds[middle] <= termId) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found < 0 ? 0 : indexOffsets[found];
+    }
+
+    /**
+     * Destination of the records merged from runs
+     */
+    interface RecordWriter {
+
+        /**
+         * Write a record, records are written in increasing order of term id and then document id
+         */
+        void write (int termId, int docId, int[] positions, int positionStart, int positionCount) throws IOException;
+    }
+
+    /**
+     * Writer appending records in sorted order to a new run
+     */
+    static final class Writer implements RecordWriter {
+
+        private final SortedRun run;
+        private final DataOutputStream output;
+        private long offset = 0;
+        private long lastIndexedOffset = -INDEX_INTERVAL;
+        private int lastTermId = -1;
+
+
+        Writer (File file) throws IOException {
+
+            run = new SortedRun(file);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+
+
+        @Override
+        public void write (int termId, int docId, int[] positions, int positionStart, int positionCount)
+                throws IOException {
+
+            if (termId != lastTermId) {
+                if (offset - lastIndexedOffset >= INDEX_INTERVAL) {
+                    run.addIndexEntry(termId, offset);
+                    lastIndexedOffset = offset;
+                }
+                lastTermId = termId;
+            }
+            output.writeInt(termId);
+            output.writeInt(docId);
+            output.writeInt(positionCount);
+            for (int i = positionStart; i < positionStart + positionCount; i++) {
+                output.writeInt(positions[i]);
+            }
+            offset += 12 + 4L * positionCount;
+        }
+
+
+        /**
+         * Close the run file
+         * @return the run written
+         */
+        SortedRun close () throws IOException {
+
+            output.close();
+            return run;
+        }
+    }
+
+    /**
+     * Reader of the records of a run from a given term onwards, up to an end term. The current record is held in
+     * fields reused across records
+     */
+    static final class Reader {
+
+        private final DataInputStream input;
+        private final int endTermId;
+        int termId;
+        int docId;
+        // Packed term id and document id, the order of the records
+        long sortKey;
+        int positionCount;
+        int[] positions = new int[16];
+
+
+        /**
+         * Open a run for reading
+         * @param run
+         *        run to be read
+         * @param startTermId
+         *        first term to be read
+         * @param endTermId
+         *        term at which reading stops, excluded
+         */
+        Reader (SortedRun run, int startTermId, int endTermId) throws IOException {
+
+            this.endTermId = endTermId;
+            FileInputStream fileInput = new FileInputStream(run.file);
+            fileInput.getChannel().position(run.findOffset(startTermId));
+            input = new DataInputStream(new BufferedInputStream(fileInput, BUFFER_SIZE));
+            do {
+                if (!next()) {
+                    break;
+                }
+            } while (termId < startTermId);
+        }
+
+
+        /**
+         * Move to the next record
+         * @return false once the end term or the end of the run is reached
+         */
+        boolean next () throws IOException {
+
+            try {
+                termId = input.readInt();
+            } catch (EOFException e) {
+                termId = Integer.MAX_VALUE;
+                return false;
+            }
+            if (termId >= endTermId) {
+                termId = Integer.MAX_VALUE;
+                return false;
+            }
+            docId = input.readInt();
+            sortKey = DocIndexComparator.packSortKey(termId, docId);
+            positionCount = input.readInt();
+            if (positionCount > positions.length) {
+                positions = new int[Math.max(positionCount, positions.length * 2)];
+            }
+            for (int i = 0; i < positionCount; i++) {
+                positions[i] = input.readInt();
+            }
+            return true;
+        }
+
+
+        /**
+         * @return true while the reader is on a record
+         */
+        boolean hasRecord () {
+
+            return termId != Integer.MAX_VALUE;
+        }
+
+
+        void close () throws IOException {
+
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package com.java.searchengine.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Bounded off heap cache of fixed size blocks read from index files, keyed by (file, block offset).
+ *          A single instance is shared by the document ranker and the extract info interface so that posting lists
+ *          read by one query are served from memory for the following queries. Blocks are evicted using the clock
+ *          (second chance) approximation of LRU.
+ */
+public class PostingBlockCache {
+
+    private static final int DEFAULT_CACHE_SIZE_MB = 64;
+    private static final int DEFAULT_BLOCK_SIZE_KB = 16;
+
+    private static PostingBlockCache instance;
+
+    private final int blockSize;
+    private final int blockCount;
+
+    // Off heap storage for all the cached blocks, block in slot i starts at i * blockSize
+    private final ByteBuffer blockStorage;
+    private final BlockKey[] slotToBlock;
+    private final int[] slotToBlockLength;
+    private final boolean[] slotReferenced;
+    private final HashMap<BlockKey, Integer> blockToSlot;
+    private int clockHand = 0;
+    private int usedSlots = 0;
+
+    private final HashMap<String, FileChannel> pathToChannel;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long bytesReadFromDisk = 0;
+
+
+    /**
+     * Constructor
+     * @param cacheSizeInBytes
+     *        upper bound on the memory used by cached blocks
+     * @param blockSize
+     *        size of a single block in bytes
+     */
+    public PostingBlockCache (long cacheSizeInBytes, int blockSize) {
+
+        this.blockSize = blockSize;
+        this.blockCount = (int) Math.max(1, Math.min(cacheSizeInBytes / blockSize, Integer.MAX_VALUE / blockSize));
+
+        blockStorage = ByteBuffer.allocateDirect(blockCount * blockSize);
+        slotToBlock = new BlockKey[blockCount];
+        slotToBlockLength = new int[blockCount];
+        slotReferenced = new boolean[blockCount];
+        blockToSlot = new HashMap<BlockKey, Integer>(blockCount * 2);
+        pathToChannel = new HashMap<String, FileChannel>();
+    }
+
+
+    /**
+     * Get the cache shared across the application, sized using POSTING_CACHE_SIZE_MB and POSTING_CACHE_BLOCK_SIZE_KB
+     * @return shared posting block cache
+     */
+    public static synchronized PostingBlockCache getInstance () {
+
+        if (null == instance) {
+            HashMap<String, String> properties = Utilities.loadProperties();
+            long cacheSizeMb = Utilities.parseIntProperty(properties.get("POSTING_CACHE_SIZE_MB"),
+                    DEFAULT_CACHE_SIZE_MB);
+            int blockSizeKb = Utilities.parseIntProperty(properties.get("POSTING_CACHE_BLOCK_SIZE_KB"),
+                    DEFAULT_BLOCK_SIZE_KB);
+            instance = new PostingBlockCache(cacheSizeMb * 1024 * 1024, blockSizeKb * 1024);
+        }
+        return instance;
+    }
+
+
+    /**
+     * Read a single line from given file starting at given offset, with the same semantics as
+     * RandomAccessFile.readLine (bytes are read as ISO-8859-1 and the line terminator is dropped)
+     * @param file
+     *        index file to be read
+     * @param offset
+     *        offset of the first byte of the line
+     * @return line starting at offset, null if offset is at the end of file
+     * @throws IOException
+     */
+    public synchronized String readLine (File file, long offset) throws IOException {
+
+        String path = file.getPath();
+        byte[] lineBytes = new byte[256];
+        int lineLength = 0;
+        boolean endOfFile = true;
+
+        long blockNumber = offset / blockSize;
+        int positionInBlock = (int) (offset % blockSize);
+
+        while (true) {
+            int slot = getBlock(path, file, blockNumber);
+            int blockStart = slot * blockSize;
+            int blockLength = slotToBlockLength[slot];
+
+            for (int i = positionInBlock; i < blockLength; i++) {
+                byte current = blockStorage.get(blockStart + i);
+                endOfFile = false;
+                if (current == '\n' || current == '\r') {
+                    return new String(lineBytes, 0, lineLength, "ISO-8859-1");
+                }
+                if (lineLength == lineBytes.length) {
+                    byte[] grown = new byte[lineBytes.length * 2];
+                    System.arraycopy(lineBytes, 0, grown, 0, lineLength);
+                    lineBytes = grown;
+                }
+                lineBytes[lineLength++] = current;
+            }
+
+            // Partially filled block is the last block of the file
+            if (blockLength < blockSize) {
+                return endOfFile ? null : new String(lineBytes, 0, lineLength, "ISO-8859-1");
+            }
+            blockNumber++;
+            positionInBlock = 0;
+        }
+    }
+
+
+    /**
+     * Find the slot holding the given block, loading it from disk on a miss
+     * @param path
+     *        path of the file, part of the block key
+     * @param file
+     *        file to be read on a miss
+     * @param blockNumber
+     *        block number within the file
+     * @return slot containing the block
+     * @throws IOException
+     */
+    private int getBlock (String path, File file, long blockNumber) throws IOException {
+
+        BlockKey key = new BlockKey(path, blockNumber);
+        Integer slot = blockToSlot.get(key);
+        if (null != slot) {
+            hitCount++;
+            slotReferenced[slot] = true;
+            return slot;
+        }
+
+        missCount++;
+        int freeSlot = findFreeSlot();
+        slotToBlockLength[freeSlot] = readBlock(path, file, blockNumber, freeSlot);
+        slotToBlock[freeSlot] = key;
+        slotReferenced[freeSlot] = true;
+        blockToSlot.put(key, freeSlot);
+        return freeSlot;
+    }
+
+
+    /**
+     * Find an unused slot, or evict the first block not referenced since the clock hand last passed it
+     * @return slot free to be loaded
+     */
+    private int findFreeSlot () {
+
+        if (usedSlots < blockCount) {
+            return usedSlots++;
+        }
+        while (slotReferenced[clockHand]) {
+            slotReferenced[clockHand] = false;
+            clockHand = (clockHand + 1) % blockCount;
+        }
+        int victim = clockHand;
+        clockHand = (clockHand + 1) % blockCount;
+
+        // Slot freed by invalidating a folder
+        if (null == slotToBlock[victim]) {
+            return victim;
+        }
+        blockToSlot.remove(slotToBlock[victim]);
+        slotToBlock[victim] = null;
+        evictionCount++;
+        return victim;
+    }
+
+
+    /**
+     * Read a block from disk into the given slot
+     * @return number of bytes read into the slot
+     * @throws IOException
+     */
+    private int readBlock (String path, File file, long blockNumber, int slot) throws IOException {
+
+        FileChannel channel = pathToChannel.get(path);
+        if (null == channel) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            pathToChannel.put(path, channel);
+        }
+
+        ByteBuffer target = blockStorage.duplicate();
+        target.position(slot * blockSize);
+        target.limit(slot * blockSize + blockSize);
+
+        long filePosition = blockNumber * blockSize;
+        int totalRead = 0;
+        while (target.hasRemaining()) {
+            int read = channel.read(target, filePosition + totalRead);
+            if (read < 0) {
+                break;
+            }
+            totalRead += read;
+        }
+        bytesReadFromDisk += totalRead;
+        return totalRead;
+    }
+
+
+    /**
+     * Drop all cached blocks and close open files, to be called whenever the index files are rewritten
+     */
+    public synchronized void invalidate () {
+
+        for (FileChannel channel : pathToChannel.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Could not close cached index file");
+            }
+        }
+        pathToChannel.clear();
+        blockToSlot.clear();
+        for (int slot = 0; slot < blockCount; slot++) {
+            slotToBlock[slot] = null;
+            slotReferenced[slot] = false;
+        }
+        usedSlots = 0;
+        clockHand = 0;
+    }
+
+
+    /**
+     * Drop the cached blocks and close the open files of the index files within a folder, to be called once the
+     * files of a retired index generation are no longer read. The freed slots are reused as the clock hand reaches them
+     * @param folder
+     *        folder holding the index files
+     */
+    public synchronized void invalidate (File folder) {
+
+        String folderPath = folder.getPath() + File.separator;
+        Iterator<Map.Entry<String, FileChannel>> channels = pathToChannel.entrySet().iterator();
+        while (channels.hasNext()) {
+            Map.Entry<String, FileChannel> channel = channels.next();
+            if (channel.getKey().startsWith(folderPath)) {
+                try {
+                    channel.getValue().close();
+                } catch (IOException e) {
+                    System.err.println("Could not close cached index file");
+                }
+                channels.remove();
+            }
+        }
+        for (int slot = 0; slot < usedSlots; slot++) {
+            if (null != slotToBlock[slot] && slotToBlock[slot].path.startsWith(folderPath)) {
+                blockToSlot.remove(slotToBlock[slot]);
+                slotToBlock[slot] = null;
+                slotReferenced[slot] = false;
+            }
+        }
+    }
+
+
+    /**
+     * @return fraction of block lookups served from memory
+     */
+    public synchronized double getHitRate () {
+
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+
+    /**
+     * @return the hitCount
+     */
+    public synchronized long getHitCount () {
+
+        return hitCount;
+    }
+
+
+    /**
+     * @return the missCount
+     */
+    public synchronized long getMissCount () {
+
+        return missCount;
+    }
+
+
+    /**
+     * @return the evictionCount
+     */
+    public synchronized long getEvictionCount () {
+
+        return evictionCount;
+    }
+
+
+    /**
+     * @return the bytesReadFromDisk
+     */
+    public synchronized long getBytesReadFromDisk () {
+
+        return bytesReadFromDisk;
+    }
+
+
+    /**
+     * @return capacity of the cache in bytes
+     */
+    public long getCapacityInBytes () {
+
+        return (long) blockCount * blockSize;
+    }
+
+
+    /**
+     * Print the cache statistics to standard output
+     */
+    public synchronized void printStatistics () {
+
+        System.out.println("Posting cache: " + hitCount + " hits, " + missCount + " misses, " + evictionCount
+                + " evictions, hit rate " + String.format("%.2f", getHitRate() * 100) + "%, "
+                + bytesReadFromDisk + " bytes read from disk");
+    }
+
+    /**
+     * Key for a single cached block
+     */
+    private static final class BlockKey {
+
+        private final String path;
+        private final long blockNumber;
+
+
+        BlockKey (String path, long blockNumber) {
+
+            this.path = path;
+            this.blockNumber = blockNumber;
+        }
+
+
+        @Override
+        public int hashCode () {
+
+            return 31 * path.hashCode() + (int) (blockNumber ^ (blockNumber >>> 32));
+        }
+
+
+        @Override
+        public boolean equals (Object other) {
+
+            if (!(other instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey key = (BlockKey) other;
+            return blockNumber == key.blockNumber && path.equals(key.path);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.java.searchengine.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Size bounded LRU cache of ranked results, placed in front of document ranking.
+ *          Results are keyed by the normalized query (stemmed, stop word filtered, sorted term id's), the scoring
+ *          function and the result depth. All the cached results are dropped as soon as a lookup is made with a
+ *          different index generation than the one the results were computed on.
+ */
+public class QueryResultCache {
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, Map<Integer, Double>> keyToRankedDocuments;
+    private long indexGeneration = Long.MIN_VALUE;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long invalidationCount = 0;
+
+
+    /**
+     * Constructor
+     * @param maxEntries
+     *        maximum number of ranked results held, least recently used result is evicted beyond it
+     */
+    public QueryResultCache (final int maxEntries) {
+
+        this.maxEntries = maxEntries;
+        keyToRankedDocuments = new LinkedHashMap<String, Map<Integer, Double>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<String, Map<Integer, Double>> eldest) {
+
+                return size() > QueryResultCache.this.maxEntries;
+            }
+        };
+    }
+
+
+    /**
+     * Build the cache key for a query
+     * @param queryTermIds
+     *        term id's of the stemmed, stop word filtered query terms (duplicates retained)
+     * @param scoringFunction
+     *        scoring function used to rank the documents
+     * @param depth
+     *        number of ranked documents retained, 0 for all
+     * @return key identifying the ranked result of the query
+     */
+    public static String buildKey (List<String> queryTermIds, String scoringFunction, int depth) {
+
+        return buildKey(queryTermIds, scoringFunction, depth, "");
+    }
+
+
+    /**
+     * Build the cache key for a boolean query
+     * @param queryTermIds
+     *        term id's of the stemmed, stop word filtered scoring terms (duplicates retained)
+     * @param scoringFunction
+     *        scoring function used to rank the documents
+     * @param depth
+     *        number of ranked documents retained, 0 for all
+     * @param queryStructure
+     *        canonical form of the boolean operators in the query, empty for a bag of words query
+     * @return key identifying the ranked result of the query
+     */
+    public static String buildKey (List<String> queryTermIds, String scoringFunction, int depth,
+            String queryStructure) {
+
+        List<String> sortedTermIds = new ArrayList<String>(queryTermIds);
+        Collections.sort(sortedTermIds, new Comparator<String>() {
+
+            @Override
+            public int compare (String termId1, String termId2) {
+
+                return Integer.valueOf(termId1).compareTo(Integer.valueOf(termId2));
+            }
+        });
+
+        StringBuilder key = new StringBuilder();
+        key.append(scoringFunction).append('|').append(depth).append('|');
+        for (String termId : sortedTermIds) {
+            key.append(termId).append(',');
+        }
+        return key.append('|').append(queryStructure).toString();
+    }
+
+
+    /**
+     * Get the cached ranked documents for given key
+     * @param key
+     *        key built using buildKey
+     * @param generation
+     *        generation of the index currently being searched
+     * @return ranked documents if present, else null
+     */
+    public synchronized Map<Integer, Double> get (String key, long generation) {
+
+        checkGeneration(generation);
+        Map<Integer, Double> rankedDocuments = keyToRankedDocuments.get(key);
+        if (null == rankedDocuments) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return rankedDocuments;
+    }
+
+
+    /**
+     * Cache ranked documents for given key
+     * @param key
+     *        key built using buildKey
+     * @param generation
+     *        generation of the index the documents were ranked on
+     * @param rankedDocuments
+     *        documents in decreasing order of relevance, must not be modified after being cached
+     */
+    public synchronized void put (String key, long generation, Map<Integer, Double> rankedDocuments) {
+
+        checkGeneration(generation);
+        if (maxEntries > 0) {
+            keyToRankedDocuments.put(key, Collections.unmodifiableMap(rankedDocuments));
+        }
+    }
+
+
+    /**
+     * Drop all the cached results if the index generation has changed
+     * @param generation
+     *        generation of the index currently being searched
+     */
+    private void checkGeneration (long generation) {
+
+        if (generation != indexGeneration) {
+            if (!keyToRankedDocuments.isEmpty()) {
+                invalidationCount++;
+            }
+            keyToRankedDocuments.clear();
+            indexGeneration = generation;
+        }
+    }
+
+
+    /**
+     * Drop all the cached results
+     */
+    public synchronized void invalidate () {
+
+        keyToRankedDocuments.clear();
+        indexGeneration = Long.MIN_VALUE;
+    }
+
+
+    /**
+     * @return fraction of lookups served from the cache
+     */
+    public synchronized double getHitRate () {
+
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+
+    /**
+     * @return number of cached results
+     */
+    public synchronized int size () {
+
+        return keyToRankedDocuments.size();
+    }
+
+
+    /**
+     * Print the cache statistics to standard output
+     */
+    public synchronized void printStatistics () {
+
+        System.out.println("Query result cache: " + hitCount + " hits, " + missCount + " misses, "
+                + invalidationCount + " invalidations, hit rate " + String.format("%.2f", getHitRate() * 100) + "%");
+    }
+
+}
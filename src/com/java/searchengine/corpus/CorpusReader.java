@@ -0,0 +1,333 @@
+package com.java.searchengine.corpus;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Streaming reader of the documents of a corpus. The corpus folder is listed recursively and the documents
+ *          of each file are returned one at a time, decompressing on the fly, without ever writing a document to disk:
+ *          a plain file is one document named by its path relative to the corpus folder, a .gz file is one document
+ *          named without the .gz extension, and a .warc or .warc.gz archive holds one document per response record,
+ *          named by its WARC-TREC-ID header or else its WARC-Record-ID. Documents can be filtered by name, records of
+ *          an archive filtered out are skipped without being decoded
+ */
+public class CorpusReader {
+
+    private static final String WARC_EXTENSION = ".warc";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<File> corpusFiles;
+    private final URI corpusFolder;
+    private Collection<String> includedNames;
+    private Collection<String> excludedNames;
+    private int nextFile = 0;
+
+    // WARC archive being read, null between files
+    private InputStream archive;
+    private File archiveFile;
+
+
+    /**
+     * Constructor
+     * @param corpusFiles
+     *        files to be read, in the order of their documents
+     * @param corpusFolder
+     *        folder the document names are relative to
+     */
+    public CorpusReader (List<File> corpusFiles, File corpusFolder) {
+
+        this.corpusFiles = corpusFiles;
+        this.corpusFolder = corpusFolder.getAbsoluteFile().toURI();
+    }
+
+
+    /**
+     * List the files of a corpus folder and of all its sub folders, hidden files are left out
+     * @param corpusFolder
+     *        root folder of the corpus
+     * @return corpus files in order of path, empty if the folder can not be read
+     */
+    public static List<File> listCorpusFiles (File corpusFolder) {
+
+        ArrayList<File> corpusFiles = new ArrayList<File>();
+        if (!corpusFolder.isDirectory()) {
+            System.out.println("No files found at : " + corpusFolder.getPath());
+            return corpusFiles;
+        }
+        listCorpusFiles(corpusFolder, corpusFiles);
+        return corpusFiles;
+    }
+
+
+    private static void listCorpusFiles (File folder, List<File> corpusFiles) {
+
+        File[] files = folder.listFiles();
+        if (null == files) {
+            System.err.println("Could not read folder" + folder.getAbsolutePath());
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().startsWith(".")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                listCorpusFiles(file, corpusFiles);
+            } else {
+                corpusFiles.add(file);
+            }
+        }
+    }
+
+
+    /**
+     * Read only the documents with the given names
+     * @param includedNames
+     *        names of the documents to be read
+     */
+    public void setIncludedNames (Collection<String> includedNames) {
+
+        this.includedNames = includedNames;
+    }
+
+
+    /**
+     * Skip the documents with the given names
+     * @param excludedNames
+     *        names of the documents to be skipped, e.g. those already indexed
+     */
+    public void setExcludedNames (Collection<String> excludedNames) {
+
+        this.excludedNames = excludedNames;
+    }
+
+
+    /**
+     * Read the next document of the corpus
+     * @return next document, null at the end of the corpus
+     * @throws IOException
+     */
+    public CorpusRecord next () throws IOException {
+
+        while (true) {
+            if (null != archive) {
+                CorpusRecord record = nextArchiveRecord();
+                if (null != record) {
+                    return record;
+                }
+                close();
+                continue;
+            }
+            if (nextFile == corpusFiles.size()) {
+                return null;
+            }
+
+            File corpusFile = corpusFiles.get(nextFile++);
+            String fileName = corpusFile.getName().toLowerCase();
+            if (fileName.endsWith(WARC_EXTENSION) || fileName.endsWith(WARC_EXTENSION + GZIP_EXTENSION)) {
+                archive = open(corpusFile);
+                archiveFile = corpusFile;
+                continue;
+            }
+
+            String name = getRelativeName(corpusFile);
+            if (fileName.endsWith(GZIP_EXTENSION)) {
+                name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+            }
+            if (!isAccepted(name)) {
+                continue;
+            }
+            InputStream input = open(corpusFile);
+            try {
+                ByteArrayOutputStream text = new ByteArrayOutputStream((int) Math.min(corpusFile.length(),
+                        Integer.MAX_VALUE - 8));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    text.write(buffer, 0, read);
+                }
+                return new CorpusRecord(name, new String(text.toByteArray()), text.size());
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+
+    /**
+     * Close the archive being read
+     */
+    public void close () {
+
+        if (null != archive) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Could not close corpus file" + archiveFile.getAbsolutePath());
+            }
+            archive = null;
+            archiveFile = null;
+        }
+    }
+
+
+    /**
+     * Read the next response record accepted from the WARC archive being read
+     * @return the record with its WARC header and content, null at the end of the archive
+     * @throws IOException
+     */
+    private CorpusRecord nextArchiveRecord () throws IOException {
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        while (true) {
+            // Blank lines end the previous record
+            String line;
+            do {
+                record.reset();
+                line = readLine(archive, record);
+                if (null == line) {
+                    return null;
+                }
+            } while (line.isEmpty());
+            if (!line.startsWith("WARC/")) {
+                throw new IOException("Invalid WARC record in " + archiveFile + " : " + line);
+            }
+
+            String type = null;
+            String trecId = null;
+            String recordId = null;
+            long contentLength = -1;
+            while (null != (line = readLine(archive, record)) && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String field = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if ("WARC-Type".equalsIgnoreCase(field)) {
+                    type = value;
+                } else if ("WARC-TREC-ID".equalsIgnoreCase(field)) {
+                    trecId = value;
+                } else if ("WARC-Record-ID".equalsIgnoreCase(field)) {
+                    recordId = value;
+                } else if ("Content-Length".equalsIgnoreCase(field)) {
+                    contentLength = Long.parseLong(value);
+                }
+            }
+            if (contentLength < 0) {
+                throw new IOException("WARC record without Content-Length in " + archiveFile);
+            }
+
+            String name = null != trecId ? trecId : recordId;
+            if (!"response".equalsIgnoreCase(type) || null == name || !isAccepted(name)) {
+                skipFully(archive, contentLength);
+                continue;
+            }
+            if (contentLength > Integer.MAX_VALUE - 8 - record.size()) {
+                throw new IOException("WARC record " + name + " is too large in " + archiveFile);
+            }
+            byte[] content = new byte[(int) contentLength];
+            readFully(archive, content);
+            record.write(content, 0, content.length);
+            return new CorpusRecord(name, new String(record.toByteArray()), contentLength);
+        }
+    }
+
+
+    private boolean isAccepted (String name) {
+
+        return (null == includedNames || includedNames.contains(name))
+                && (null == excludedNames || !excludedNames.contains(name));
+    }
+
+
+    /**
+     * @return path of the file relative to the corpus folder, the file name for files of the corpus folder itself
+     */
+    private String getRelativeName (File corpusFile) {
+
+        URI relativePath = corpusFolder.relativize(corpusFile.getAbsoluteFile().toURI());
+        return relativePath.isAbsolute() ? corpusFile.getName() : relativePath.getPath();
+    }
+
+
+    private static InputStream open (File corpusFile) throws IOException {
+
+        InputStream input = new BufferedInputStream(new FileInputStream(corpusFile), BUFFER_SIZE);
+        if (corpusFile.getName().toLowerCase().endsWith(GZIP_EXTENSION)) {
+            try {
+                input = new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE), BUFFER_SIZE);
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+        return input;
+    }
+
+
+    /**
+     * Read a line ending with a line feed, copying its bytes as read to the given stream
+     * @return line without its line terminator, null at the end of the stream
+     */
+    private static String readLine (InputStream input, ByteArrayOutputStream copy) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int current;
+        boolean endOfStream = true;
+        while ((current = input.read()) >= 0) {
+            endOfStream = false;
+            copy.write(current);
+            if (current == '\n') {
+                break;
+            }
+            if (current != '\r') {
+                line.append((char) current);
+            }
+        }
+        return endOfStream ? null : line.toString();
+    }
+
+
+    private static void readFully (InputStream input, byte[] content) throws IOException {
+
+        int offset = 0;
+        while (offset < content.length) {
+            int read = input.read(content, offset, content.length - offset);
+            if (read < 0) {
+                throw new EOFException("WARC record truncated");
+            }
+            offset += read;
+        }
+    }
+
+
+    private static void skipFully (InputStream input, long length) throws IOException {
+
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("WARC record truncated");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+}
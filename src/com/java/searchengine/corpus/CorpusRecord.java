@@ -0,0 +1,58 @@
+package com.java.searchengine.corpus;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Document read from the corpus: a corpus file, a compressed corpus file or a record of a WARC archive. The
+ *          text has the same layout as a corpus file, the WARC header and the HTTP header before the html
+ */
+public class CorpusRecord {
+
+    private final String name;
+    private final String text;
+    private final long size;
+
+
+    /**
+     * Constructor
+     * @param name
+     *        name of the document, as written to the document id's
+     * @param text
+     *        text of the document including its headers
+     * @param size
+     *        uncompressed size of the document in bytes
+     */
+    public CorpusRecord (String name, String text, long size) {
+
+        this.name = name;
+        this.text = text;
+        this.size = size;
+    }
+
+
+    /**
+     * @return the name
+     */
+    public String getName () {
+
+        return name;
+    }
+
+
+    /**
+     * @return the text
+     */
+    public String getText () {
+
+        return text;
+    }
+
+
+    /**
+     * @return the size
+     */
+    public long getSize () {
+
+        return size;
+    }
+
+}
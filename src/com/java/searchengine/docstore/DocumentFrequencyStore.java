@@ -0,0 +1,260 @@
+package com.java.searchengine.docstore;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.util.FileUtilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Memory mapped, read only map of term id to the number of documents containing the term, in place of
+ *          keeping the document frequency of every term of term_info.txt on the heap. Document frequencies of the
+ *          main index and of the segments are added up.
+ *
+ *          doc_frequencies.bin: magic, max term id, then one int per term id (starting at 0), 0 for unused term id's
+ */
+public class DocumentFrequencyStore extends AbstractMap<String, Integer> {
+
+    private static final int MAGIC = 0x44465331;
+    private static final int HEADER_SIZE = 2 * 4;
+
+    private final MappedByteBuffer buffer;
+    private final int maxTermId;
+    private final int size;
+
+
+    private DocumentFrequencyStore (MappedByteBuffer buffer) throws IOException {
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a document frequency store");
+        }
+        this.buffer = buffer;
+        maxTermId = buffer.getInt(4);
+        int termCount = 0;
+        for (int termId = 0; termId <= maxTermId; termId++) {
+            if (getDocumentFrequency(termId) > 0) {
+                termCount++;
+            }
+        }
+        size = termCount;
+    }
+
+
+    /**
+     * Open the store, building it first if it is missing or older than any of the term info files
+     * @param storeFile
+     *        binary document frequency store
+     * @param termInfoFiles
+     *        term_info.txt of the main index and of each segment, the store is built from
+     * @return opened store
+     * @throws IOException
+     */
+    public static DocumentFrequencyStore openOrBuild (File storeFile, List<File> termInfoFiles) throws IOException {
+
+        boolean stale = !storeFile.exists();
+        for (File termInfoFile : termInfoFiles) {
+            stale = stale || storeFile.lastModified() < termInfoFile.lastModified();
+        }
+        if (stale) {
+            build(termInfoFiles, storeFile);
+        }
+        return open(storeFile);
+    }
+
+
+    /**
+     * Memory map an existing store
+     * @param storeFile
+     *        binary document frequency store
+     * @return opened store
+     * @throws IOException
+     */
+    public static DocumentFrequencyStore open (File storeFile) throws IOException {
+
+        RandomAccessFile file = new RandomAccessFile(storeFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return new DocumentFrequencyStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // Mapping stays valid after the file is closed
+            file.close();
+        }
+    }
+
+
+    /**
+     * Build the binary store from term_info.txt (termId, offset, length, document count) files, adding up the
+     * document counts of a term found in several of them
+     * @param termInfoFiles
+     *        files containing the info of all the terms, of the main index and of each segment
+     * @param storeFile
+     *        binary document frequency store to be written
+     * @throws IOException
+     */
+    public static void build (List<File> termInfoFiles, File storeFile) throws IOException {
+
+        int[] documentFrequencies = new int[1024];
+        int maxTermId = 0;
+
+        for (File termInfoFile : termInfoFiles) {
+            String line;
+            BufferedReader reader = new BufferedReader(new FileReader(termInfoFile));
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                int termId = Integer.parseInt(tokens[0]);
+                while (termId >= documentFrequencies.length) {
+                    int[] grown = new int[documentFrequencies.length * 2];
+                    System.arraycopy(documentFrequencies, 0, grown, 0, documentFrequencies.length);
+                    documentFrequencies = grown;
+                }
+                documentFrequencies[termId] += Integer.parseInt(tokens[3]);
+                maxTermId = Math.max(maxTermId, termId);
+            }
+            reader.close();
+        }
+
+        // Written aside and moved in place, rankers may have the current store mapped
+        File writtenFile = new File(storeFile.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(writtenFile)));
+        output.writeInt(MAGIC);
+        output.writeInt(maxTermId);
+        for (int termId = 0; termId <= maxTermId; termId++) {
+            output.writeInt(documentFrequencies[termId]);
+        }
+        output.close();
+        FileUtilities.replaceFile(writtenFile, storeFile);
+    }
+
+
+    /**
+     * @return number of documents containing given term, 0 if the term is not present
+     */
+    public int getDocumentFrequency (int termId) {
+
+        return termId >= 0 && termId <= maxTermId ? buffer.getInt(HEADER_SIZE + termId * 4) : 0;
+    }
+
+
+    /**
+     * @return size of the memory mapped store in bytes
+     */
+    public long getMappedSize () {
+
+        return buffer.capacity();
+    }
+
+
+    @Override
+    public Integer get (Object key) {
+
+        int termId = parseTermId(key);
+        int documentFrequency = getDocumentFrequency(termId);
+        return documentFrequency > 0 ? documentFrequency : null;
+    }
+
+
+    @Override
+    public boolean containsKey (Object key) {
+
+        return getDocumentFrequency(parseTermId(key)) > 0;
+    }
+
+
+    @Override
+    public int size () {
+
+        return size;
+    }
+
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet () {
+
+        return new AbstractSet<Map.Entry<String, Integer>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator () {
+
+                return new Iterator<Map.Entry<String, Integer>>() {
+
+                    private int nextTermId = findTerm(0);
+
+
+                    @Override
+                    public boolean hasNext () {
+
+                        return nextTermId <= maxTermId;
+                    }
+
+
+                    @Override
+                    public Map.Entry<String, Integer> next () {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int termId = nextTermId;
+                        nextTermId = findTerm(termId + 1);
+                        return new SimpleImmutableEntry<String, Integer>(String.valueOf(termId),
+                                getDocumentFrequency(termId));
+                    }
+
+
+                    @Override
+                    public void remove () {
+
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+
+            @Override
+            public int size () {
+
+                return size;
+            }
+        };
+    }
+
+
+    /**
+     * @return first term id from the given one present in the store, beyond the max term id if none
+     */
+    private int findTerm (int termId) {
+
+        while (termId <= maxTermId && getDocumentFrequency(termId) == 0) {
+            termId++;
+        }
+        return termId;
+    }
+
+
+    private static int parseTermId (Object key) {
+
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt((String) key);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.java.searchengine.docstore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Read only map of document id to document length served from the memory mapped offset table of the
+ *          forward index, in place of a heap map. Documents without any term are not present, as in the map built
+ *          by the pre processor
+ */
+public class DocumentLengthMap extends AbstractMap<Integer, Integer> {
+
+    private final ForwardIndex forwardIndex;
+    private final int size;
+
+
+    /**
+     * Constructor
+     * @param forwardIndex
+     *        forward index the document lengths are read from
+     */
+    public DocumentLengthMap (ForwardIndex forwardIndex) {
+
+        this.forwardIndex = forwardIndex;
+        int documentCount = 0;
+        for (int docId = 1; docId <= forwardIndex.getMaxDocId(); docId++) {
+            if (forwardIndex.getDistinctTermCount(docId) > 0) {
+                documentCount++;
+            }
+        }
+        size = documentCount;
+    }
+
+
+    @Override
+    public Integer get (Object key) {
+
+        if (!(key instanceof Integer) || forwardIndex.getDistinctTermCount((Integer) key) == 0) {
+            return null;
+        }
+        return forwardIndex.getTotalTermCount((Integer) key);
+    }
+
+
+    @Override
+    public boolean containsKey (Object key) {
+
+        return key instanceof Integer && forwardIndex.getDistinctTermCount((Integer) key) > 0;
+    }
+
+
+    @Override
+    public int size () {
+
+        return size;
+    }
+
+
+    @Override
+    public Set<Map.Entry<Integer, Integer>> entrySet () {
+
+        return new AbstractSet<Map.Entry<Integer, Integer>>() {
+
+            @Override
+            public Iterator<Map.Entry<Integer, Integer>> iterator () {
+
+                return new Iterator<Map.Entry<Integer, Integer>>() {
+
+                    private int nextDocId = findDocument(1);
+
+
+                    @Override
+                    public boolean hasNext () {
+
+                        return nextDocId <= forwardIndex.getMaxDocId();
+                    }
+
+
+                    @Override
+                    public Map.Entry<Integer, Integer> next () {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int docId = nextDocId;
+                        nextDocId = findDocument(docId + 1);
+                        return new SimpleImmutableEntry<Integer, Integer>(docId, forwardIndex.getTotalTermCount(docId));
+                    }
+
+
+                    @Override
+                    public void remove () {
+
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+
+            @Override
+            public int size () {
+
+                return size;
+            }
+        };
+    }
+
+
+    /**
+     * @return first document id from the given one having at least one term, beyond the max doc id if none
+     */
+    private int findDocument (int docId) {
+
+        while (docId <= forwardIndex.getMaxDocId() && forwardIndex.getDistinctTermCount(docId) == 0) {
+            docId++;
+        }
+        return docId;
+    }
+}
@@ -0,0 +1,326 @@
+package com.java.searchengine.docstore;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.util.FileUtilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Compact, memory mapped store of document names built from doc_ids.txt.
+ *          Names are front coded in blocks of NAMES_PER_BLOCK documents with an offset array locating each block, so
+ *          id to name is a single block decode. Name to id uses an open addressing hash table of document id's stored
+ *          in the same file.
+ *
+ *          File layout: header | block offsets (long[blockCount]) | hash table (int[tableSize]) | name blocks
+ */
+public class DocumentNameStore {
+
+    private static final int MAGIC = 0x444E5331;
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int NAMES_PER_BLOCK = 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final int maxDocId;
+    private final int blockCount;
+    private final int tableSize;
+    private final int tableStart;
+    private final int blocksStart;
+
+
+    private DocumentNameStore (MappedByteBuffer buffer) throws IOException {
+
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a document name store");
+        }
+        maxDocId = buffer.getInt(4);
+        blockCount = buffer.getInt(8);
+        tableSize = buffer.getInt(12);
+        tableStart = HEADER_SIZE + blockCount * 8;
+        blocksStart = tableStart + tableSize * 4;
+    }
+
+
+    /**
+     * Open the store, building it first if it is missing or older than the document id file
+     * @param storeFile
+     *        binary document name store
+     * @param docIdFile
+     *        doc_ids.txt the store is built from
+     * @return opened store
+     * @throws IOException
+     */
+    public static DocumentNameStore openOrBuild (File storeFile, File docIdFile) throws IOException {
+
+        if (!storeFile.exists() || storeFile.lastModified() < docIdFile.lastModified()) {
+            build(docIdFile, storeFile);
+        }
+        return open(storeFile);
+    }
+
+
+    /**
+     * Memory map an existing store
+     * @param storeFile
+     *        binary document name store
+     * @return opened store
+     * @throws IOException
+     */
+    public static DocumentNameStore open (File storeFile) throws IOException {
+
+        RandomAccessFile file = new RandomAccessFile(storeFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return new DocumentNameStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // Mapping stays valid after the file is closed
+            file.close();
+        }
+    }
+
+
+    /**
+     * Build the binary store from doc_ids.txt (docId, name pairs)
+     * @param docIdFile
+     *        file containing all the document id's
+     * @param storeFile
+     *        binary document name store to be written
+     * @throws IOException
+     */
+    public static void build (File docIdFile, File storeFile) throws IOException {
+
+        ArrayList<String> docIdToName = new ArrayList<String>();
+        docIdToName.add(null);
+
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(docIdFile));
+        while ((line = reader.readLine()) != null) {
+            String[] tokens = line.split(Constants.tab);
+            int docId = Integer.parseInt(tokens[0]);
+            while (docIdToName.size() <= docId) {
+                docIdToName.add(null);
+            }
+            docIdToName.set(docId, tokens[1]);
+        }
+        reader.close();
+
+        write(docIdToName, storeFile);
+    }
+
+
+    /**
+     * Write the binary store
+     * @param docIdToName
+     *        document names indexed by document id, null for unused id's
+     * @param storeFile
+     *        binary document name store to be written
+     * @throws IOException
+     */
+    static void write (ArrayList<String> docIdToName, File storeFile) throws IOException {
+
+        int maxDocId = docIdToName.size() - 1;
+        int blockCount = maxDocId / NAMES_PER_BLOCK + 1;
+
+        int tableSize = 2;
+        while (tableSize < 2 * docIdToName.size()) {
+            tableSize <<= 1;
+        }
+        int[] table = new int[tableSize];
+
+        long[] blockOffsets = new long[blockCount];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        byte[] previousName = new byte[0];
+
+        for (int docId = 0; docId <= maxDocId; docId++) {
+            String name = docIdToName.get(docId);
+            byte[] nameBytes = null == name ? new byte[0] : name.getBytes(UTF8);
+
+            // First name of every block is written in full so that any block can be decoded on its own
+            int sharedPrefix = 0;
+            if (docId % NAMES_PER_BLOCK == 0) {
+                blockOffsets[docId / NAMES_PER_BLOCK] = blocks.size();
+            } else {
+                int limit = Math.min(previousName.length, nameBytes.length);
+                while (sharedPrefix < limit && previousName[sharedPrefix] == nameBytes[sharedPrefix]) {
+                    sharedPrefix++;
+                }
+            }
+            writeVInt(blocks, sharedPrefix);
+            writeVInt(blocks, nameBytes.length - sharedPrefix);
+            blocks.write(nameBytes, sharedPrefix, nameBytes.length - sharedPrefix);
+            previousName = nameBytes;
+
+            if (null != name) {
+                int slot = hash(nameBytes) & (tableSize - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (tableSize - 1);
+                }
+                table[slot] = docId;
+            }
+        }
+
+        // Written aside and moved in place, rankers may have the current store mapped
+        File writtenFile = new File(storeFile.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(writtenFile)));
+        output.writeInt(MAGIC);
+        output.writeInt(maxDocId);
+        output.writeInt(blockCount);
+        output.writeInt(tableSize);
+        output.writeInt(0);
+        for (long blockOffset : blockOffsets) {
+            output.writeLong(blockOffset);
+        }
+        for (int docId : table) {
+            output.writeInt(docId);
+        }
+        blocks.writeTo(output);
+        output.close();
+        FileUtilities.replaceFile(writtenFile, storeFile);
+    }
+
+
+    /**
+     * Get name of the document with given id
+     * @param docId
+     *        document id
+     * @return document name, null if there is no document with given id
+     */
+    public String getName (int docId) {
+
+        if (docId <= 0 || docId > maxDocId) {
+            return null;
+        }
+        byte[] name = decodeName(docId);
+        return name.length == 0 ? null : new String(name, UTF8);
+    }
+
+
+    /**
+     * Get id of the document with given name. If the name was added more than once, the most recently added
+     * document is returned
+     * @param name
+     *        document name
+     * @return document id, -1 if there is no document with given name
+     */
+    public int getId (String name) {
+
+        byte[] nameBytes = name.getBytes(UTF8);
+        int slot = hash(nameBytes) & (tableSize - 1);
+        int matchedDocId = -1;
+
+        int docId;
+        while ((docId = buffer.getInt(tableStart + slot * 4)) != 0) {
+            if (docId > matchedDocId && Arrays.equals(nameBytes, decodeName(docId))) {
+                matchedDocId = docId;
+            }
+            slot = (slot + 1) & (tableSize - 1);
+        }
+        return matchedDocId;
+    }
+
+
+    /**
+     * @return size of the memory mapped store in bytes
+     */
+    public long getMappedSize () {
+
+        return buffer.capacity();
+    }
+
+
+    /**
+     * @return largest document id in the store
+     */
+    public int getMaxDocId () {
+
+        return maxDocId;
+    }
+
+
+    /**
+     * Decode the name of given document from its front coded block
+     */
+    private byte[] decodeName (int docId) {
+
+        int position = blocksStart + (int) buffer.getLong(HEADER_SIZE + (docId / NAMES_PER_BLOCK) * 8);
+        byte[] name = new byte[0];
+
+        for (int entry = 0; entry <= docId % NAMES_PER_BLOCK; entry++) {
+            int[] value = readVInt(position);
+            int sharedPrefix = value[0];
+            value = readVInt(value[1]);
+            int suffixLength = value[0];
+            position = value[1];
+
+            byte[] current = new byte[sharedPrefix + suffixLength];
+            System.arraycopy(name, 0, current, 0, sharedPrefix);
+            for (int i = 0; i < suffixLength; i++) {
+                current[sharedPrefix + i] = buffer.get(position + i);
+            }
+            position += suffixLength;
+            name = current;
+        }
+        return name;
+    }
+
+
+    /**
+     * Read a variable length integer
+     * @return {value, position after the value}
+     */
+    private int[] readVInt (int position) {
+
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(position++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return new int[] { value, position };
+    }
+
+
+    /**
+     * Write a variable length integer, 7 bits per byte
+     */
+    private static void writeVInt (ByteArrayOutputStream output, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+
+    /**
+     * FNV-1a hash of the name bytes
+     */
+    private static int hash (byte[] nameBytes) {
+
+        int hash = 0x811C9DC5;
+        for (byte current : nameBytes) {
+            hash ^= (current & 0xFF);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+}
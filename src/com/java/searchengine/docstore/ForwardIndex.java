@@ -0,0 +1,234 @@
+package com.java.searchengine.docstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Random access reader for the binary forward index written by ForwardIndexWriter.
+ *          Distinct and total term counts of a document are read from the memory mapped fixed width offset table,
+ *          and the term vector of a document is read with a single positioned read, or from the memory mapped
+ *          forward index once its records are mapped.
+ */
+public class ForwardIndex {
+
+    private final MappedByteBuffer offsetTable;
+    private final FileChannel forwardIndexChannel;
+    private MappedByteBuffer records;
+    private final int maxDocId;
+
+
+    /**
+     * Constructor
+     * @param forwardIndexFile
+     *        binary forward index
+     * @param offsetFile
+     *        per document offset table
+     * @throws IOException
+     */
+    public ForwardIndex (File forwardIndexFile, File offsetFile) throws IOException {
+
+        RandomAccessFile offsets = new RandomAccessFile(offsetFile, "r");
+        try {
+            offsetTable = offsets.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, offsets.length());
+        } finally {
+            offsets.close();
+        }
+        if (offsetTable.getInt(0) != ForwardIndexWriter.MAGIC) {
+            throw new IOException("Not a forward index offset table: " + offsetFile.getAbsolutePath());
+        }
+        maxDocId = (offsetTable.capacity() - ForwardIndexWriter.HEADER_SIZE) / ForwardIndexWriter.ENTRY_SIZE - 1;
+        forwardIndexChannel = new RandomAccessFile(forwardIndexFile, "r").getChannel();
+    }
+
+
+    /**
+     * Memory map the records as well, so that term vectors are read without a system call. Records are left to
+     * positioned reads if the forward index does not fit in a single mapping. Must be called before the forward
+     * index is shared across threads
+     * @return size of the mapped records in bytes, 0 if not mapped
+     * @throws IOException
+     */
+    public long mapRecords () throws IOException {
+
+        if (null == records && forwardIndexChannel.size() <= Integer.MAX_VALUE) {
+            records = forwardIndexChannel.map(FileChannel.MapMode.READ_ONLY, 0, forwardIndexChannel.size());
+        }
+        return null == records ? 0 : records.capacity();
+    }
+
+
+    /**
+     * @return size of the memory mapped offset table in bytes
+     */
+    public long getOffsetTableSize () {
+
+        return offsetTable.capacity();
+    }
+
+
+    /**
+     * @return largest document id in the forward index
+     */
+    public int getMaxDocId () {
+
+        return maxDocId;
+    }
+
+
+    /**
+     * @return true if there is an entry for given document id
+     */
+    public boolean containsDocument (int docId) {
+
+        return docId > 0 && docId <= maxDocId;
+    }
+
+
+    /**
+     * @return number of distinct terms in given document, 0 if not present
+     */
+    public int getDistinctTermCount (int docId) {
+
+        return containsDocument(docId) ? offsetTable.getInt(entryPosition(docId) + 8) : 0;
+    }
+
+
+    /**
+     * @return total number of terms (document length) in given document, 0 if not present
+     */
+    public int getTotalTermCount (int docId) {
+
+        return containsDocument(docId) ? offsetTable.getInt(entryPosition(docId) + 12) : 0;
+    }
+
+
+    /**
+     * Read term frequencies for all the terms in given document
+     * @param docId
+     *        document id
+     * @return term frequency keyed by term id in increasing term id order, empty if document is not present
+     * @throws IOException
+     */
+    public LinkedHashMap<Integer, Integer> getTermFrequencies (int docId) throws IOException {
+
+        LinkedHashMap<Integer, Integer> termIdToFrequency = new LinkedHashMap<Integer, Integer>();
+        ByteBuffer record = readRecord(docId);
+        if (null == record) {
+            return termIdToFrequency;
+        }
+
+        int distinctTermCount = readVInt(record);
+        int termId = 0;
+        for (int term = 0; term < distinctTermCount; term++) {
+            termId += readVInt(record);
+            int termFrequency = readVInt(record);
+            for (int position = 0; position < termFrequency; position++) {
+                readVInt(record);
+            }
+            termIdToFrequency.put(termId, termFrequency);
+        }
+        return termIdToFrequency;
+    }
+
+
+    /**
+     * Read all the terms in given document along with their positions
+     * @param docId
+     *        document id
+     * @return Format : key<termId>, value<list(pos1, pos2, pos3....)> in increasing term id order
+     * @throws IOException
+     */
+    public LinkedHashMap<Integer, ArrayList<Integer>> getTermPositions (int docId) throws IOException {
+
+        LinkedHashMap<Integer, ArrayList<Integer>> termIdToPositions = new LinkedHashMap<Integer, ArrayList<Integer>>();
+        ByteBuffer record = readRecord(docId);
+        if (null == record) {
+            return termIdToPositions;
+        }
+
+        int distinctTermCount = readVInt(record);
+        int termId = 0;
+        for (int term = 0; term < distinctTermCount; term++) {
+            termId += readVInt(record);
+            int termFrequency = readVInt(record);
+            ArrayList<Integer> positions = new ArrayList<Integer>(termFrequency);
+            int position = 0;
+            for (int count = 0; count < termFrequency; count++) {
+                position += readVInt(record);
+                positions.add(position);
+            }
+            termIdToPositions.put(termId, positions);
+        }
+        return termIdToPositions;
+    }
+
+
+    /**
+     * Read the record of a document with one positioned read, record ends where the next record starts
+     * @return record bytes, null if document is not present
+     */
+    private ByteBuffer readRecord (int docId) throws IOException {
+
+        if (!containsDocument(docId) || getDistinctTermCount(docId) == 0) {
+            return null;
+        }
+        long start = offsetTable.getLong(entryPosition(docId));
+        long end = docId < maxDocId ? offsetTable.getLong(entryPosition(docId + 1)) : forwardIndexChannel.size();
+
+        if (null != records) {
+            ByteBuffer record = records.duplicate();
+            record.limit((int) end);
+            record.position((int) start);
+            return record;
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+        while (record.hasRemaining()) {
+            if (forwardIndexChannel.read(record, start + record.position()) < 0) {
+                break;
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+
+    private int entryPosition (int docId) {
+
+        return ForwardIndexWriter.HEADER_SIZE + docId * ForwardIndexWriter.ENTRY_SIZE;
+    }
+
+
+    /**
+     * Read a variable length integer
+     */
+    private static int readVInt (ByteBuffer record) {
+
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = record.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+
+    /**
+     * Close the forward index file
+     * @throws IOException
+     */
+    public void close () throws IOException {
+
+        forwardIndexChannel.close();
+    }
+
+}
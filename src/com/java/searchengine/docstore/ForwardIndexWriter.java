@@ -0,0 +1,156 @@
+package com.java.searchengine.docstore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Writes the binary forward index along with its per document offset table.
+ *          Documents must be added in increasing order of document id.
+ *
+ *          doc_index.bin, one record per document: distinct term count, then for each term in increasing term id
+ *          order: delta encoded term id, term frequency, delta encoded positions (all variable length integers)
+ *
+ *          doc_offsets.bin: header followed by one fixed width entry per document id (starting at 0):
+ *          record offset (long), distinct term count (int), total term count (int)
+ */
+public class ForwardIndexWriter {
+
+    static final int MAGIC = 0x46574431;
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = 16;
+
+    private final DataOutputStream recordOutput;
+    private final DataOutputStream offsetOutput;
+
+    private long recordOffset = 0;
+    private int nextDocId = 0;
+
+
+    /**
+     * Constructor
+     * @param forwardIndexFile
+     *        binary forward index to be written
+     * @param offsetFile
+     *        per document offset table to be written
+     * @throws IOException
+     */
+    public ForwardIndexWriter (File forwardIndexFile, File offsetFile) throws IOException {
+
+        this(forwardIndexFile, offsetFile, false);
+    }
+
+
+    /**
+     * Constructor
+     * @param forwardIndexFile
+     *        binary forward index to be written
+     * @param offsetFile
+     *        per document offset table to be written
+     * @param append
+     *        true to add documents after those of an existing forward index, document id's continuing from its max
+     *        doc id
+     * @throws IOException
+     */
+    public ForwardIndexWriter (File forwardIndexFile, File offsetFile, boolean append) throws IOException {
+
+        append = append && offsetFile.length() >= HEADER_SIZE;
+        if (append) {
+            recordOffset = forwardIndexFile.length();
+            nextDocId = (int) ((offsetFile.length() - HEADER_SIZE) / ENTRY_SIZE);
+        }
+        recordOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(forwardIndexFile, append)));
+        offsetOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetFile, append)));
+        if (!append) {
+            offsetOutput.writeInt(MAGIC);
+            offsetOutput.writeInt(0);
+        }
+    }
+
+
+    /**
+     * Append the term vector of a document
+     * @param docId
+     *        document id, greater than the id of previously added document
+     * @param termIdToAllItsPositionsInDocument
+     *        all the terms in the document along with their positions, Format : key<termId>, value<list(pos1, pos2...)>
+     * @throws IOException
+     */
+    public void addDocument (int docId, Map<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument)
+            throws IOException {
+
+        long startOffset = recordOffset;
+
+        // Document id's never indexed get an empty entry pointing at the current record
+        while (nextDocId < docId) {
+            writeOffsetEntry(startOffset, 0, 0);
+        }
+
+        Integer[] termIds = termIdToAllItsPositionsInDocument.keySet().toArray(new Integer[0]);
+        Arrays.sort(termIds);
+
+        int totalTermCount = 0;
+        writeVInt(termIds.length);
+
+        int previousTermId = 0;
+        for (int termId : termIds) {
+            ArrayList<Integer> positions = termIdToAllItsPositionsInDocument.get(termId);
+            writeVInt(termId - previousTermId);
+            writeVInt(positions.size());
+
+            int previousPosition = 0;
+            for (int position : positions) {
+                writeVInt(position - previousPosition);
+                previousPosition = position;
+            }
+            totalTermCount += positions.size();
+            previousTermId = termId;
+        }
+        writeOffsetEntry(startOffset, termIds.length, totalTermCount);
+    }
+
+
+    /**
+     * Write the fixed width offset table entry for the next document id
+     */
+    private void writeOffsetEntry (long offset, int distinctTermCount, int totalTermCount) throws IOException {
+
+        offsetOutput.writeLong(offset);
+        offsetOutput.writeInt(distinctTermCount);
+        offsetOutput.writeInt(totalTermCount);
+        nextDocId++;
+    }
+
+
+    /**
+     * Write a variable length integer, 7 bits per byte
+     */
+    private void writeVInt (int value) throws IOException {
+
+        while ((value & ~0x7F) != 0) {
+            recordOutput.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+            recordOffset++;
+        }
+        recordOutput.write(value);
+        recordOffset++;
+    }
+
+
+    /**
+     * Flush and close both the files
+     * @throws IOException
+     */
+    public void close () throws IOException {
+
+        recordOutput.close();
+        offsetOutput.close();
+    }
+
+}
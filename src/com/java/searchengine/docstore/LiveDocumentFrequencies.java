@@ -0,0 +1,109 @@
+package com.java.searchengine.docstore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Read only view of the document frequencies of the live documents: the number of documents containing a
+ *          term, from the term info of the index, less the number of deleted documents containing it
+ */
+public class LiveDocumentFrequencies extends AbstractMap<String, Integer> {
+
+    private final Map<String, Integer> documentFrequencies;
+    private final Map<String, Integer> deletedDocumentFrequencies;
+
+
+    /**
+     * Constructor
+     * @param documentFrequencies
+     *        number of documents containing each term, deleted or not
+     * @param deletedDocumentFrequencies
+     *        number of deleted documents containing each term
+     */
+    public LiveDocumentFrequencies (Map<String, Integer> documentFrequencies,
+            Map<String, Integer> deletedDocumentFrequencies) {
+
+        this.documentFrequencies = documentFrequencies;
+        this.deletedDocumentFrequencies = deletedDocumentFrequencies;
+    }
+
+
+    @Override
+    public Integer get (Object key) {
+
+        Integer documentFrequency = documentFrequencies.get(key);
+        if (null == documentFrequency) {
+            return null;
+        }
+        Integer deletedFrequency = deletedDocumentFrequencies.get(key);
+        return null == deletedFrequency ? documentFrequency : documentFrequency - deletedFrequency;
+    }
+
+
+    @Override
+    public boolean containsKey (Object key) {
+
+        return documentFrequencies.containsKey(key);
+    }
+
+
+    @Override
+    public int size () {
+
+        return documentFrequencies.size();
+    }
+
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet () {
+
+        return new AbstractSet<Map.Entry<String, Integer>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator () {
+
+                final Iterator<Map.Entry<String, Integer>> entries = documentFrequencies.entrySet().iterator();
+                return new Iterator<Map.Entry<String, Integer>>() {
+
+                    @Override
+                    public boolean hasNext () {
+
+                        return entries.hasNext();
+                    }
+
+
+                    @Override
+                    public Map.Entry<String, Integer> next () {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Integer> entry = entries.next();
+                        Integer deletedFrequency = deletedDocumentFrequencies.get(entry.getKey());
+                        return null == deletedFrequency ? entry : new SimpleImmutableEntry<String, Integer>(entry
+                                .getKey(), entry.getValue() - deletedFrequency);
+                    }
+
+
+                    @Override
+                    public void remove () {
+
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+
+            @Override
+            public int size () {
+
+                return documentFrequencies.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.java.searchengine.docstore;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Read only map of document id to the term counts of the document, decoded from the forward index on every
+ *          lookup in place of keeping the term counts of all the documents on the heap
+ */
+public class TermCountMap extends AbstractMap<Integer, Map<String, Integer>> {
+
+    private final ForwardIndex forwardIndex;
+    private final DocumentLengthMap documentLengths;
+
+
+    /**
+     * Constructor
+     * @param forwardIndex
+     *        forward index the term counts are read from
+     * @param documentLengths
+     *        document lengths from the same forward index, giving the documents present
+     */
+    public TermCountMap (ForwardIndex forwardIndex, DocumentLengthMap documentLengths) {
+
+        this.forwardIndex = forwardIndex;
+        this.documentLengths = documentLengths;
+    }
+
+
+    @Override
+    public Map<String, Integer> get (Object key) {
+
+        return containsKey(key) ? readTermCounts((Integer) key) : null;
+    }
+
+
+    @Override
+    public boolean containsKey (Object key) {
+
+        return documentLengths.containsKey(key);
+    }
+
+
+    @Override
+    public int size () {
+
+        return documentLengths.size();
+    }
+
+
+    @Override
+    public Set<Map.Entry<Integer, Map<String, Integer>>> entrySet () {
+
+        return new AbstractSet<Map.Entry<Integer, Map<String, Integer>>>() {
+
+            @Override
+            public Iterator<Map.Entry<Integer, Map<String, Integer>>> iterator () {
+
+                final Iterator<Integer> docIds = documentLengths.keySet().iterator();
+                return new Iterator<Map.Entry<Integer, Map<String, Integer>>>() {
+
+                    @Override
+                    public boolean hasNext () {
+
+                        return docIds.hasNext();
+                    }
+
+
+                    @Override
+                    public Map.Entry<Integer, Map<String, Integer>> next () {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int docId = docIds.next();
+                        return new SimpleImmutableEntry<Integer, Map<String, Integer>>(docId, readTermCounts(docId));
+                    }
+
+
+                    @Override
+                    public void remove () {
+
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+
+            @Override
+            public int size () {
+
+                return documentLengths.size();
+            }
+        };
+    }
+
+
+    /**
+     * @return term count keyed by term id for given document, empty if the forward index can not be read
+     */
+    private Map<String, Integer> readTermCounts (int docId) {
+
+        HashMap<String, Integer> termCounts = new HashMap<String, Integer>();
+        try {
+            for (Map.Entry<Integer, Integer> term : forwardIndex.getTermFrequencies(docId).entrySet()) {
+                termCounts.put(String.valueOf(term.getKey()), term.getValue());
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read forward index record of document " + docId);
+        }
+        return termCounts;
+    }
+}
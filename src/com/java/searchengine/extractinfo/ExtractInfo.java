@@ -4,12 +4,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import org.tartarus.snowball.EnglishSnowballStemmerFactory;
 import org.tartarus.snowball.util.StemmerException;
 
+import com.java.searchengine.cache.PostingBlockCache;
+import com.java.searchengine.docstore.DocumentNameStore;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.generation.IndexGenerations;
 import com.java.searchengine.util.FileUtilities;
 
 /**
@@ -20,6 +24,10 @@ import com.java.searchengine.util.FileUtilities;
 public class ExtractInfo {
 	
 	private static String seperator = "\t";
+	// Document name store of the generation last looked up, reopened once another generation is published
+	private static DocumentNameStore documentNames;
+	private static File documentNameStoreFile;
+	private static long documentNameStoreStamp;
 	
 	/**
 	 * Get metadata for given document
@@ -28,7 +36,7 @@ public class ExtractInfo {
 	 * @param docIndexFile file object containing all the document index's
 	 */
 	public static void getDocumentMetadata (String filename, File docIdFile, File docIndexFile) {
-		String docId = FileUtilities.getID(docIdFile, filename);
+		String docId = getDocumentId(filename, docIdFile);
 		if(null != docId) {
 			try {
 				readMetaDataFromDocumentIndex(filename, docId, docIndexFile);
@@ -39,7 +47,8 @@ public class ExtractInfo {
 	}
 	
 	/**
-	 * Read document metadata using document indexes
+	 * Read document metadata using document indexes, from the fixed width per document offset table when it is
+	 * available, else by scanning the text document index
 	 * @param filename file name for which metadata needs to be extracted
 	 * @param docId document id for given filename
 	 * @param docIndexFile file object containing all the document index's
@@ -50,21 +59,31 @@ public class ExtractInfo {
 		int termsCount = 0;
 		int distinctTermsCount = 0;
 		
-		String line;
-		BufferedReader reader = new BufferedReader(new FileReader(docIndexFile));
-		while((line = reader.readLine()) != null) {
-			String[] temp = line.split(seperator);
-			if(temp[0].equals(docId)) {
-				distinctTermsCount++;					//One distinct term per line, increment distinct terms count
-				termsCount += temp.length - 2;			//Increment total terms count
+		HashMap<String, String> properties = IndexGenerations.loadCurrentProperties();
+		File docIndexBinaryFile = new File(properties.get("DOCUMENT_INDEX_BINARY_FILE")).getAbsoluteFile();
+		File docOffsetFile = new File(properties.get("DOCUMENT_OFFSET_FILE")).getAbsoluteFile();
+		
+		if (docOffsetFile.exists() && docIndexBinaryFile.exists()) {
+			ForwardIndex forwardIndex = new ForwardIndex(docIndexBinaryFile, docOffsetFile);
+			distinctTermsCount = forwardIndex.getDistinctTermCount(Integer.parseInt(docId));
+			termsCount = forwardIndex.getTotalTermCount(Integer.parseInt(docId));
+			forwardIndex.close();
+		} else {
+			String line;
+			BufferedReader reader = new BufferedReader(new FileReader(docIndexFile));
+			while((line = reader.readLine()) != null) {
+				String[] temp = line.split(seperator);
+				if(temp[0].equals(docId)) {
+					distinctTermsCount++;					//One distinct term per line, increment distinct terms count
+					termsCount += temp.length - 2;			//Increment total terms count
+				}
 			}
+			reader.close();
 		}
 		System.out.println("\n Listing for document: " + filename);
 		System.out.println("DOCID: " + docId);
 		System.out.println("Distinct terms: " + distinctTermsCount);
 		System.out.println("Total terms: " + termsCount);
-		
-		reader.close();
 	}
 	
 	
@@ -127,7 +146,7 @@ public class ExtractInfo {
 			File termsIdFile, File termIndexFile, File termInfoFile) {
 		String stemmed = getStemmedTerm(term);                                                                                                           
 		String termId = FileUtilities.getID(termsIdFile, stemmed);                                 
-		String docId = FileUtilities.getID(docIdFile, filename);
+		String docId = getDocumentId(filename, docIdFile);
 		
 		if(docId != null && termId != null){
 			long offset = getTermOffset(termId, termInfoFile);
@@ -185,11 +204,8 @@ public class ExtractInfo {
 	private static ArrayList<Integer> getAllPoitionsForTermInDocument (long offset, String docId, File termIndexFile) {
 		ArrayList<Integer> positions = new ArrayList<Integer>();
 		try {
-			//Randomly access terms_index file
-			RandomAccessFile indexFile = new RandomAccessFile(termIndexFile, "r");                                           		
-			indexFile.seek(offset);                                                                                                                              
-			                                                                                                                                                     
-	        String line = indexFile.readLine();                                             	
+			//Randomly access terms_index file through the block cache shared with the ranker
+	        String line = PostingBlockCache.getInstance().readLine(termIndexFile, offset);
 	    	String[] termOcurrence = line.split(seperator);                                                        	
 	    	String[] docOcurrence;                                                                                                                               
 	    	                                                                                                                                                                                                                                            
@@ -227,7 +243,6 @@ public class ExtractInfo {
 	    			positions.add(count);                                                                                                                        
 	    		}
 	    	}
-	    	indexFile.close();
 		}
 		catch(IOException e) {
 			System.err.println("Could not read file" + termIndexFile.getAbsolutePath());
@@ -235,6 +250,85 @@ public class ExtractInfo {
 		return positions;
 	}
 	
+	/**
+	 * Find document id for given file name using the memory mapped document name store
+	 * @param filename file name for which document id is needed
+	 * @param docIdFile file object containing all the document id's, used if the store can not be read
+	 * @return document id for given file name if present else null, with DEDUP_MODE collapse the id of the indexed
+	 *         document a near duplicate was collapsed into
+	 */
+	private static String getDocumentId (String filename, File docIdFile) {
+		HashMap<String, String> properties = IndexGenerations.loadCurrentProperties();
+		File storeFile = new File(properties.get("DOCUMENT_NAME_STORE_FILE")).getAbsoluteFile();
+		try {
+			int docId = getDocumentNameStore(storeFile, docIdFile).getId(filename);
+			if (docId > 0) {
+				return String.valueOf(docId);
+			}
+			String mode = properties.get("DEDUP_MODE");
+			if (null != mode && "collapse".equalsIgnoreCase(mode.trim())) {
+				File duplicateDocsFile = new File(properties.get("DUPLICATE_DOCS_FILE")).getAbsoluteFile();
+				String canonicalDocId = getCanonicalDocumentId(filename, duplicateDocsFile);
+				if (null != canonicalDocId) {
+					System.out.println(filename + " is a near duplicate of document " + canonicalDocId);
+					return canonicalDocId;
+				}
+			}
+			System.out.println(filename + " is not present in corpus");
+			return null;
+		} catch(IOException e) {
+			System.err.println("Could not read file" + storeFile.getAbsolutePath());
+		}
+		return FileUtilities.getID(docIdFile, filename);
+	}
+	
+	/**
+	 * Get the document name store of the current generation, mapped once and reused by the lookups until the store
+	 * file changes
+	 * @param storeFile file object of the document name store of the current generation
+	 * @param docIdFile file object containing all the document id's, used to build a missing store
+	 * @return document name store
+	 * @throws IOException
+	 */
+	private static synchronized DocumentNameStore getDocumentNameStore (File storeFile, File docIdFile) 
+			throws IOException {
+		long stamp = FileUtilities.getFileStamp(storeFile);
+		if(null == documentNames || !storeFile.equals(documentNameStoreFile) || stamp != documentNameStoreStamp) {
+			documentNames = DocumentNameStore.openOrBuild(storeFile, docIdFile);
+			documentNameStoreFile = storeFile;
+			documentNameStoreStamp = FileUtilities.getFileStamp(storeFile);
+		}
+		return documentNames;
+	}
+	
+	/**
+	 * Find the document a near duplicate was collapsed into
+	 * @param filename file name of the near duplicate
+	 * @param duplicateDocsFile file object containing the near duplicates along with their canonical document id's
+	 * @return document id of the canonical document if the file is a near duplicate else null
+	 */
+	private static String getCanonicalDocumentId (String filename, File duplicateDocsFile) {
+		if (!duplicateDocsFile.isFile()) {
+			return null;
+		}
+		String line;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(duplicateDocsFile));
+			while((line = reader.readLine()) != null) {
+				int tabIndex = line.indexOf(seperator);
+				if(line.substring(tabIndex + 1).equals(filename)) {
+					reader.close();
+					return line.substring(0, tabIndex);
+				}
+			}
+			reader.close();
+		}
+		catch(IOException e) {
+			System.err.println("Could not read file" + duplicateDocsFile.getAbsolutePath());
+		}
+		return null;
+	}
+	
 	/**
 	 * Get stemmed term for given term using snowball stemmer
 	 * @param term to be stemmed
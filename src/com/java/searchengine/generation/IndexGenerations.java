@@ -0,0 +1,242 @@
+package com.java.searchengine.generation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+
+import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Generations of the index: every full build writes all the index files into a new generation folder under
+ *          INDEX_FOLDER and only then switches the CURRENT file to name it. CURRENT is replaced in a single step, so
+ *          a reader resolves the files of either the previous or the new generation and never sees a partly built
+ *          index. Documents added, deleted or updated after a build go to the segments and tombstones of the current
+ *          generation. Without a CURRENT file the index files are directly in INDEX_FOLDER, as written before
+ *          generations
+ */
+public class IndexGenerations {
+
+    static final String CURRENT_FILE_NAME = "CURRENT";
+    private static final String GENERATION_PREFIX = "generation_";
+    // Generations kept before the current one, so that rankers still draining queries on them can read their files
+    private static final int RETAINED_GENERATIONS = 1;
+    private static final Object lock = new Object();
+
+    private final File indexFolder;
+    private final File currentFile;
+
+
+    /**
+     * Constructor
+     * @param indexFolder
+     *        folder holding the generations and the CURRENT file
+     */
+    public IndexGenerations (File indexFolder) {
+
+        this.indexFolder = indexFolder.getAbsoluteFile();
+        currentFile = new File(this.indexFolder, CURRENT_FILE_NAME);
+    }
+
+
+    /**
+     * @return configuration properties with the index files of the current generation
+     */
+    public static HashMap<String, String> loadCurrentProperties () {
+
+        return resolve(Utilities.loadProperties());
+    }
+
+
+    /**
+     * Locate the index files of the current generation
+     * @param properties
+     *        configuration properties with the index files in INDEX_FOLDER
+     * @return configuration properties with the index files of the current generation, the given properties if
+     *         there is no generation yet
+     */
+    public static HashMap<String, String> resolve (HashMap<String, String> properties) {
+
+        String indexFolder = properties.get("INDEX_FOLDER");
+        if (null == indexFolder) {
+            return properties;
+        }
+        return new IndexGenerations(new File(indexFolder)).resolveProperties(properties);
+    }
+
+
+    /**
+     * Locate the index files of the current generation
+     * @param properties
+     *        configuration properties with the index files in the index folder of these generations
+     * @return configuration properties with the index files of the current generation, the given properties if
+     *         there is no generation yet
+     */
+    public HashMap<String, String> resolveProperties (HashMap<String, String> properties) {
+
+        String generation = getCurrentGeneration();
+        return null == generation ? properties : getGenerationProperties(properties, generation);
+    }
+
+
+    /**
+     * Locate the index files of a generation
+     * @param properties
+     *        configuration properties with the index files in the index folder of these generations
+     * @param generation
+     *        name of the generation
+     * @return configuration properties with the index files in the folder of the generation
+     */
+    public HashMap<String, String> getGenerationProperties (HashMap<String, String> properties, String generation) {
+
+        return Utilities.relocateIndexProperties(properties, new File(properties.get("INDEX_FOLDER"), generation)
+                .getPath());
+    }
+
+
+    /**
+     * @return name of the current generation, null if no generation is published
+     */
+    public String getCurrentGeneration () {
+
+        if (!currentFile.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(currentFile));
+            try {
+                String generation = reader.readLine();
+                return null == generation || generation.trim().isEmpty() ? null : generation.trim();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read file" + currentFile.getAbsolutePath());
+        }
+        return null;
+    }
+
+
+    /**
+     * @return stamp of the CURRENT file, changing whenever a generation is published
+     */
+    public long getStamp () {
+
+        return FileUtilities.getFileStamp(currentFile);
+    }
+
+
+    /**
+     * Reserve the folder of a new generation, numbered after all the existing generations
+     * @return name of the new generation
+     * @throws IOException
+     */
+    public String createGeneration () throws IOException {
+
+        synchronized (lock) {
+            indexFolder.mkdirs();
+            ArrayList<Integer> numbers = getGenerationNumbers();
+            int number = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1) + 1;
+            // Another process may be building a generation in the same index folder
+            while (!new File(indexFolder, GENERATION_PREFIX + number).mkdir()) {
+                if (!indexFolder.isDirectory()) {
+                    throw new IOException("Could not create generation in " + indexFolder.getAbsolutePath());
+                }
+                number++;
+            }
+            return GENERATION_PREFIX + number;
+        }
+    }
+
+
+    /**
+     * Make a fully built generation the current generation, then delete the generations older than the retained ones
+     * @param generation
+     *        name of the generation
+     * @throws IOException
+     */
+    public void publish (String generation) throws IOException {
+
+        synchronized (lock) {
+            File writtenFile = new File(indexFolder, CURRENT_FILE_NAME + ".tmp");
+            BufferedWriter writer = new BufferedWriter(new FileWriter(writtenFile));
+            writer.write(generation);
+            writer.newLine();
+            writer.close();
+            FileUtilities.replaceFile(writtenFile, currentFile);
+            deleteRetiredGenerations(getGenerationNumber(generation));
+        }
+    }
+
+
+    /**
+     * Delete the folder of a generation which will not be published
+     * @param generation
+     *        name of the generation
+     */
+    public void discardGeneration (String generation) {
+
+        FileUtils.deleteQuietly(new File(indexFolder, generation));
+    }
+
+
+    /**
+     * Delete the generations before the current one, except the most recent retained ones. Generations after the
+     * current one may still be being built and are left alone
+     */
+    private void deleteRetiredGenerations (int currentNumber) {
+
+        ArrayList<Integer> numbers = getGenerationNumbers();
+        int retained = 0;
+        for (int i = numbers.size() - 1; i >= 0; i--) {
+            if (numbers.get(i) < currentNumber && ++retained > RETAINED_GENERATIONS) {
+                FileUtils.deleteQuietly(new File(indexFolder, GENERATION_PREFIX + numbers.get(i)));
+            }
+        }
+    }
+
+
+    /**
+     * @return numbers of the generation folders, in increasing order
+     */
+    private ArrayList<Integer> getGenerationNumbers () {
+
+        ArrayList<Integer> numbers = new ArrayList<Integer>();
+        File[] folders = indexFolder.listFiles();
+        if (null != folders) {
+            for (File folder : folders) {
+                int number = getGenerationNumber(folder.getName());
+                if (folder.isDirectory() && number > 0) {
+                    numbers.add(number);
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+
+    /**
+     * @return number of a generation, -1 if the name is not that of a generation
+     */
+    public static int getGenerationNumber (String generation) {
+
+        if (null == generation || !generation.startsWith(GENERATION_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(generation.substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
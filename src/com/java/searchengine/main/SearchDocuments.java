@@ -1,12 +1,15 @@
 package com.java.searchengine.main;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Scanner;
 
 import com.java.searchengine.buildindex.BuildIndexes;
 import com.java.searchengine.constants.Constants;
 import com.java.searchengine.extractinfo.ExtractInfo;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.metrics.PrometheusExporter;
 import com.java.searchengine.util.FileUtilities;
 import com.java.searchengine.util.Utilities;
 import com.rank_documents.DocumentPreProcessor;
@@ -25,7 +28,11 @@ public class SearchDocuments {
     public static void main (final String[] args) {
 
         propertyKeyToFileLocation = Utilities.loadProperties();
+        PrometheusExporter metricsExporter = PrometheusExporter.startIfConfigured(propertyKeyToFileLocation);
         checkContinueMenu("displayMainMenu", "Continue in main menu (y/n):");
+        if (null != metricsExporter) {
+            metricsExporter.stop();
+        }
         System.out.println(Constants.newline + "Program execution complete");
     }
 
@@ -41,7 +48,10 @@ public class SearchDocuments {
         System.out.println("1. Build indexes");
         System.out.println("2. Rank documents");
         System.out.println("3. Get Info");
-        System.out.println("4. Exit Program");
+        System.out.println("4. Add new documents to indexes");
+        System.out.println("5. Delete document from indexes");
+        System.out.println("6. Update document in indexes");
+        System.out.println("7. Exit Program");
         System.out.println("Note : You need to build indexes to rank documents or to get info");
 
         final String choice = new Scanner(System.in).next();
@@ -135,7 +145,10 @@ public class SearchDocuments {
      *        1 : Build indexes
      *        2 : Rank documents
      *        3 : Get Info
-     *        4 : Exit Program
+     *        4 : Add new documents in corpus to indexes
+     *        5 : Delete document from indexes
+     *        6 : Update document in indexes with its current contents in corpus
+     *        7 : Exit Program
      * @return boolean indicating whether to continue in menu
      */
     public static boolean processMainMenuChoice (final String choice) {
@@ -175,6 +188,34 @@ public class SearchDocuments {
                 break;
 
             case "4":
+                final String newCorpusPath = propertyKeyToFileLocation.get("INPUT_CORPUS_PATH");
+                stopList = propertyKeyToFileLocation.get("STOP_WORDS_FILE");
+
+                if (FileUtilities.isValidCorpusDirectory(newCorpusPath)
+                        && FileUtilities.isValidFile(stopList, Constants.TEXT_EXTENSION)) {
+                    new BuildIndexes(propertyKeyToFileLocation).addDocuments();
+                }
+                break;
+
+            case "5":
+                System.out.println(Constants.newline + "Enter document name");
+                final String deletedDocument = new Scanner(System.in).next();
+                new BuildIndexes(propertyKeyToFileLocation).deleteDocuments(Collections.singleton(deletedDocument));
+                break;
+
+            case "6":
+                final String updatedCorpusPath = propertyKeyToFileLocation.get("INPUT_CORPUS_PATH");
+                stopList = propertyKeyToFileLocation.get("STOP_WORDS_FILE");
+
+                if (FileUtilities.isValidCorpusDirectory(updatedCorpusPath)
+                        && FileUtilities.isValidFile(stopList, Constants.TEXT_EXTENSION)) {
+                    System.out.println(Constants.newline + "Enter document name");
+                    final String updatedDocument = new Scanner(System.in).next();
+                    new BuildIndexes(propertyKeyToFileLocation).updateDocuments(Collections.singleton(updatedDocument));
+                }
+                break;
+
+            case "7":
                 return true;
 
             default:
@@ -225,11 +266,12 @@ public class SearchDocuments {
      */
     public static boolean processReadMenuChoice (final String choice) {
 
-        final File documentIdFile = new File(propertyKeyToFileLocation.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
-        final File termIdFile = new File(propertyKeyToFileLocation.get("TERMS_ID_FILE")).getAbsoluteFile();
-        final File documentIndexFile = new File(propertyKeyToFileLocation.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
-        final File termIndexFile = new File(propertyKeyToFileLocation.get("TERM_INDEX_FILE")).getAbsoluteFile();
-        final File termInfoFile = new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile();
+        final HashMap<String, String> indexFiles = IndexGenerations.resolve(propertyKeyToFileLocation);
+        final File documentIdFile = new File(indexFiles.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        final File termIdFile = new File(indexFiles.get("TERMS_ID_FILE")).getAbsoluteFile();
+        final File documentIndexFile = new File(indexFiles.get("DOCUMENT_INDEX_FILE")).getAbsoluteFile();
+        final File termIndexFile = new File(indexFiles.get("TERM_INDEX_FILE")).getAbsoluteFile();
+        final File termInfoFile = new File(indexFiles.get("TERM_INFO_FILE")).getAbsoluteFile();
 
         switch (choice) {
             case "1":
@@ -0,0 +1,68 @@
+package com.java.searchengine.metrics;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Flight recorder event for a document added to the forward index, spanning term id assignment and flush.
+ *          Parsing and tokenizing run ahead on the parse workers of the indexing pipeline
+ */
+@Name("com.java.searchengine.DocumentIndexed")
+@Label("Document Indexed")
+@Category({ "Search Engine", "Indexing" })
+@Description("Parsed document written to the forward index")
+public class DocumentIndexedEvent extends Event {
+
+    @Label("Document Id")
+    private int docId;
+
+    @Label("Document Name")
+    private String documentName;
+
+    @Label("Document Size")
+    @DataAmount(DataAmount.BYTES)
+    private long bytes;
+
+    @Label("Terms")
+    @Description("Number of non stop word terms in the document")
+    private int terms;
+
+    @Label("Distinct Terms")
+    private int distinctTerms;
+
+
+    /**
+     * End the event and commit it if the event is enabled in the running recording
+     * @param docId
+     *        id of the document
+     * @param documentName
+     *        name of the document file
+     * @param bytes
+     *        size of the document file
+     * @param termIdToAllItsPositionsInDocument
+     *        positions of each term in the document
+     */
+    public void commit (int docId, String documentName, long bytes,
+            Map<Integer, ArrayList<Integer>> termIdToAllItsPositionsInDocument) {
+
+        end();
+        if (shouldCommit()) {
+            this.docId = docId;
+            this.documentName = documentName;
+            this.bytes = bytes;
+            for (ArrayList<Integer> positions : termIdToAllItsPositionsInDocument.values()) {
+                this.terms += positions.size();
+            }
+            this.distinctTerms = termIdToAllItsPositionsInDocument.size();
+            commit();
+        }
+    }
+}
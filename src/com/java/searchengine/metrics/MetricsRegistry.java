@@ -0,0 +1,510 @@
+package com.java.searchengine.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.java.searchengine.util.Utilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Registry of named timers, counters and histograms for the hot paths of indexing and ranking. Metrics are
+ *          only recorded if METRICS_ENABLED is true or the metrics endpoint is configured (METRICS_PORT), otherwise
+ *          every call returns after a single field check. Names may carry a label set, e.g.
+ *          rank.query_latency_seconds{function="3"}
+ */
+public class MetricsRegistry {
+
+    private static MetricsRegistry instance;
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+
+    /**
+     * Constructor
+     * @param enabled
+     *        true to record metrics
+     */
+    public MetricsRegistry (boolean enabled) {
+
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @return registry shared by the whole search engine, enabled by the METRICS_ENABLED or METRICS_PORT property
+     */
+    public static synchronized MetricsRegistry getInstance () {
+
+        if (null == instance) {
+            HashMap<String, String> properties = Utilities.loadProperties();
+            instance = new MetricsRegistry("true".equalsIgnoreCase(properties.get("METRICS_ENABLED"))
+                    || Utilities.parseIntProperty(properties.get("METRICS_PORT"), 0) > 0);
+        }
+        return instance;
+    }
+
+
+    /**
+     * @return true if metrics are recorded
+     */
+    public boolean isEnabled () {
+
+        return enabled;
+    }
+
+
+    /**
+     * Get the timer with the given name, registering it on first use
+     * @param name
+     *        name of the timer, prefixed by its area e.g. index.stem
+     * @return timer
+     */
+    public Timer timer (String name) {
+
+        Timer timer = timers.get(name);
+        if (null == timer) {
+            timers.putIfAbsent(name, new Timer(name, enabled));
+            timer = timers.get(name);
+        }
+        return timer;
+    }
+
+
+    /**
+     * Get the counter with the given name, registering it on first use
+     * @param name
+     *        name of the counter, prefixed by its area e.g. rank.postings
+     * @return counter
+     */
+    public Counter counter (String name) {
+
+        Counter counter = counters.get(name);
+        if (null == counter) {
+            counters.putIfAbsent(name, new Counter(name, enabled));
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+
+    /**
+     * Get the histogram with the given name, registering it on first use
+     * @param name
+     *        name of the histogram, including its unit e.g. rank.query_latency_seconds
+     * @param bounds
+     *        inclusive upper bounds of the buckets in increasing order, in recorded units
+     * @param unit
+     *        factor converting recorded values to the unit of the name, e.g. 1e-9 for nanoseconds to seconds
+     * @return histogram
+     */
+    public Histogram histogram (String name, long[] bounds, double unit) {
+
+        Histogram histogram = histograms.get(name);
+        if (null == histogram) {
+            histograms.putIfAbsent(name, new Histogram(name, enabled, bounds, unit));
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+
+    /**
+     * @return all the registered timers
+     */
+    public Map<String, Timer> getTimers () {
+
+        return Collections.unmodifiableMap(timers);
+    }
+
+
+    /**
+     * @return all the registered counters
+     */
+    public Map<String, Counter> getCounters () {
+
+        return Collections.unmodifiableMap(counters);
+    }
+
+
+    /**
+     * @return all the registered histograms
+     */
+    public Map<String, Histogram> getHistograms () {
+
+        return Collections.unmodifiableMap(histograms);
+    }
+
+
+    /**
+     * Number of counted events per second of time spent in a timer
+     * @param counterName
+     *        name of the counter
+     * @param timerName
+     *        name of the timer
+     * @return events per second, 0 if nothing is timed
+     */
+    public double getRate (String counterName, String timerName) {
+
+        double seconds = timer(timerName).getTotalNanos() / 1e9;
+        return seconds > 0 ? counter(counterName).get() / seconds : 0;
+    }
+
+
+    /**
+     * Reset all the timers and counters
+     */
+    public void reset () {
+
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+
+    /**
+     * Print all the timers and counters with the given prefix, sorted by name
+     * @param prefix
+     *        prefix of the metrics to print, e.g. index.
+     */
+    public void printReport (String prefix) {
+
+        if (!enabled) {
+            return;
+        }
+        ArrayList<String> timerNames = new ArrayList<String>(timers.keySet());
+        Collections.sort(timerNames);
+        for (String name : timerNames) {
+            if (name.startsWith(prefix)) {
+                System.out.println(timers.get(name));
+            }
+        }
+        ArrayList<String> counterNames = new ArrayList<String>(counters.keySet());
+        Collections.sort(counterNames);
+        for (String name : counterNames) {
+            if (name.startsWith(prefix)) {
+                System.out.println(counters.get(name));
+            }
+        }
+        ArrayList<String> histogramNames = new ArrayList<String>(histograms.keySet());
+        Collections.sort(histogramNames);
+        for (String name : histogramNames) {
+            if (name.startsWith(prefix)) {
+                System.out.println(histograms.get(name));
+            }
+        }
+    }
+
+
+    /**
+     * Accumulated time and number of calls of a stage
+     */
+    public static final class Timer {
+
+        private final String name;
+        private final boolean enabled;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+
+        Timer (String name, boolean enabled) {
+
+            this.name = name;
+            this.enabled = enabled;
+        }
+
+
+        /**
+         * @return start time to be passed to {@link #stop(long)}, 0 if metrics are disabled
+         */
+        public long start () {
+
+            return enabled ? System.nanoTime() : 0;
+        }
+
+
+        /**
+         * Record the time elapsed since the start
+         * @param startNanos
+         *        value returned by {@link #start()}
+         * @return elapsed nanoseconds, 0 if metrics are disabled
+         */
+        public long stop (long startNanos) {
+
+            if (!enabled || startNanos == 0) {
+                return 0;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            count.incrementAndGet();
+            totalNanos.addAndGet(elapsed);
+            long max;
+            while (elapsed > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsed)) {
+                // Retry until the maximum is updated or exceeded by another thread
+            }
+            return elapsed;
+        }
+
+
+        void reset () {
+
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+
+        /**
+         * @return name of the timer
+         */
+        public String getName () {
+
+            return name;
+        }
+
+
+        /**
+         * @return number of timed calls
+         */
+        public long getCount () {
+
+            return count.get();
+        }
+
+
+        /**
+         * @return total time of all the calls in nanoseconds
+         */
+        public long getTotalNanos () {
+
+            return totalNanos.get();
+        }
+
+
+        /**
+         * @return longest call in nanoseconds
+         */
+        public long getMaxNanos () {
+
+            return maxNanos.get();
+        }
+
+
+        @Override
+        public String toString () {
+
+            long calls = count.get();
+            return String.format("%-24s %10d calls %12.1f ms total %10.1f us mean %10.1f us max", name, calls,
+                    totalNanos.get() / 1e6, calls == 0 ? 0 : totalNanos.get() / 1e3 / calls, maxNanos.get() / 1e3);
+        }
+    }
+
+
+    /**
+     * Monotonic count of events or bytes
+     */
+    public static final class Counter {
+
+        private final String name;
+        private final boolean enabled;
+        private final AtomicLong value = new AtomicLong();
+
+
+        Counter (String name, boolean enabled) {
+
+            this.name = name;
+            this.enabled = enabled;
+        }
+
+
+        /**
+         * Add one to the counter
+         */
+        public void increment () {
+
+            if (enabled) {
+                value.incrementAndGet();
+            }
+        }
+
+
+        /**
+         * Add to the counter
+         * @param delta
+         *        amount to add
+         */
+        public void add (long delta) {
+
+            if (enabled) {
+                value.addAndGet(delta);
+            }
+        }
+
+
+        void reset () {
+
+            value.set(0);
+        }
+
+
+        /**
+         * @return name of the counter
+         */
+        public String getName () {
+
+            return name;
+        }
+
+
+        /**
+         * @return current value
+         */
+        public long get () {
+
+            return value.get();
+        }
+
+
+        @Override
+        public String toString () {
+
+            return String.format("%-24s %10d", name, value.get());
+        }
+    }
+
+
+    /**
+     * Distribution of recorded values over fixed buckets
+     */
+    public static final class Histogram {
+
+        private final String name;
+        private final boolean enabled;
+        private final long[] bounds;
+        private final double unit;
+        private final AtomicLongArray bucketCounts;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+
+
+        Histogram (String name, boolean enabled, long[] bounds, double unit) {
+
+            this.name = name;
+            this.enabled = enabled;
+            this.bounds = bounds.clone();
+            this.unit = unit;
+            // Last bucket holds the values above the highest bound
+            bucketCounts = new AtomicLongArray(bounds.length + 1);
+        }
+
+
+        /**
+         * Record a value
+         * @param value
+         *        value in recorded units
+         */
+        public void observe (long value) {
+
+            if (!enabled) {
+                return;
+            }
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            bucketCounts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+        }
+
+
+        void reset () {
+
+            for (int bucket = 0; bucket < bucketCounts.length(); bucket++) {
+                bucketCounts.set(bucket, 0);
+            }
+            count.set(0);
+            sum.set(0);
+        }
+
+
+        /**
+         * @return name of the histogram
+         */
+        public String getName () {
+
+            return name;
+        }
+
+
+        /**
+         * @return inclusive upper bounds of the buckets, in recorded units
+         */
+        public long[] getBounds () {
+
+            return bounds.clone();
+        }
+
+
+        /**
+         * @return factor converting recorded values to the unit of the name
+         */
+        public double getUnit () {
+
+            return unit;
+        }
+
+
+        /**
+         * @return number of values in each bucket, the last bucket holding values above the highest bound
+         */
+        public long[] getBucketCounts () {
+
+            long[] counts = new long[bucketCounts.length()];
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                counts[bucket] = bucketCounts.get(bucket);
+            }
+            return counts;
+        }
+
+
+        /**
+         * @return number of recorded values
+         */
+        public long getCount () {
+
+            return count.get();
+        }
+
+
+        /**
+         * @return sum of the recorded values, in recorded units
+         */
+        public long getSum () {
+
+            return sum.get();
+        }
+
+
+        @Override
+        public String toString () {
+
+            long values = count.get();
+            return String.format("%-24s %10d values %12.4f mean", name, values, values == 0 ? 0 : sum.get() * unit
+                    / values);
+        }
+    }
+}
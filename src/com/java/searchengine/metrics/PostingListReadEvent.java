@@ -0,0 +1,57 @@
+package com.java.searchengine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Flight recorder event for a posting list read through the posting block cache and decoded
+ */
+@Name("com.java.searchengine.PostingListRead")
+@Label("Posting List Read")
+@Category({ "Search Engine", "Ranking" })
+@Description("Posting list of a term read from the term index and decoded")
+public class PostingListReadEvent extends Event {
+
+    @Label("Term Id")
+    private String termId;
+
+    @Label("Offset")
+    @Description("Offset of the posting list in the term index")
+    private long offset;
+
+    @Label("Posting List Size")
+    @DataAmount(DataAmount.BYTES)
+    private long bytes;
+
+    @Label("Postings Decoded")
+    private int postingsDecoded;
+
+
+    /**
+     * End the event and commit it if the event is enabled in the running recording
+     * @param termId
+     *        id of the term
+     * @param offset
+     *        offset of the posting list in the term index
+     * @param bytes
+     *        length of the posting list
+     * @param postingsDecoded
+     *        number of documents in the posting list
+     */
+    public void commit (String termId, long offset, long bytes, int postingsDecoded) {
+
+        end();
+        if (shouldCommit()) {
+            this.termId = termId;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.postingsDecoded = postingsDecoded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.java.searchengine.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+import com.java.searchengine.cache.PostingBlockCache;
+import com.java.searchengine.cache.QueryResultCache;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.segment.SegmentManifest;
+import com.java.searchengine.util.Utilities;
+import com.rank_documents.DocumentRanker;
+import com.rank_documents.IndexMemoryBudget;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Expose the metrics registry and the state of the index in the Prometheus text format on
+ *          http://localhost:METRICS_PORT/metrics. Timers are exported as summaries, counters as counters and
+ *          histograms with cumulative buckets, all prefixed by search_ with dots replaced by underscores
+ */
+public class PrometheusExporter {
+
+    private static final String PREFIX = "search_";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // The text format requires line feeds, Constants.newline is a carriage return and line feed
+    private static final char LINE_END = '\n';
+
+    private final MetricsRegistry registry;
+    private final HashMap<String, String> properties;
+    private HttpServer server;
+
+
+    /**
+     * Constructor
+     * @param registry
+     *        registry of the exported metrics
+     * @param properties
+     *        configuration properties, locating the index
+     */
+    public PrometheusExporter (MetricsRegistry registry, HashMap<String, String> properties) {
+
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+
+    /**
+     * Start an exporter for the shared metrics registry if METRICS_PORT is configured
+     * @param properties
+     *        configuration properties
+     * @return started exporter, null if no port is configured or the port can not be bound
+     */
+    public static PrometheusExporter startIfConfigured (HashMap<String, String> properties) {
+
+        int port = Utilities.parseIntProperty(properties.get("METRICS_PORT"), 0);
+        if (port <= 0) {
+            return null;
+        }
+        PrometheusExporter exporter = new PrometheusExporter(MetricsRegistry.getInstance(), properties);
+        try {
+            exporter.start(port);
+            System.out.println("Metrics available on http://localhost:" + port + "/metrics");
+            return exporter;
+        } catch (IOException e) {
+            System.err.println("Could not start metrics endpoint on port " + port);
+            return null;
+        }
+    }
+
+
+    /**
+     * Serve the metrics on the loopback interface
+     * @param port
+     *        port to listen on
+     * @throws IOException
+     */
+    public synchronized void start (int port) throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+
+            @Override
+            public void handle (HttpExchange exchange) throws IOException {
+
+                try {
+                    String method = exchange.getRequestMethod();
+                    if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                        exchange.sendResponseHeaders(405, -1);
+                        return;
+                    }
+                    byte[] body = scrape().getBytes(UTF8);
+                    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                    if ("HEAD".equals(method)) {
+                        exchange.sendResponseHeaders(200, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream responseBody = exchange.getResponseBody();
+                    responseBody.write(body);
+                    responseBody.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+
+    /**
+     * Stop serving the metrics
+     */
+    public synchronized void stop () {
+
+        if (null != server) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+
+    /**
+     * Render all the metrics in the Prometheus text format
+     * @return exposition text
+     */
+    public String scrape () {
+
+        StringBuilder text = new StringBuilder();
+        appendIndexMetrics(text);
+        appendCacheMetrics(text);
+        appendMemoryMetrics(text);
+
+        TreeMap<String, List<MetricsRegistry.Timer>> timerFamilies =
+                new TreeMap<String, List<MetricsRegistry.Timer>>();
+        for (MetricsRegistry.Timer timer : registry.getTimers().values()) {
+            addToFamily(timerFamilies, familyName(timer.getName()) + "_seconds", timer);
+        }
+        for (Entry<String, List<MetricsRegistry.Timer>> family : timerFamilies.entrySet()) {
+            appendHeader(text, family.getKey(), "summary", "Time spent in " + baseName(family.getValue().get(0).getName()));
+            for (MetricsRegistry.Timer timer : family.getValue()) {
+                String labels = labels(timer.getName());
+                appendSample(text, family.getKey() + "_sum", labels, timer.getTotalNanos() / 1e9);
+                appendSample(text, family.getKey() + "_count", labels, timer.getCount());
+            }
+        }
+
+        TreeMap<String, List<MetricsRegistry.Counter>> counterFamilies =
+                new TreeMap<String, List<MetricsRegistry.Counter>>();
+        for (MetricsRegistry.Counter counter : registry.getCounters().values()) {
+            addToFamily(counterFamilies, familyName(counter.getName()) + "_total", counter);
+        }
+        for (Entry<String, List<MetricsRegistry.Counter>> family : counterFamilies.entrySet()) {
+            appendHeader(text, family.getKey(), "counter", "Count of " + baseName(family.getValue().get(0).getName()));
+            for (MetricsRegistry.Counter counter : family.getValue()) {
+                appendSample(text, family.getKey(), labels(counter.getName()), counter.get());
+            }
+        }
+
+        TreeMap<String, List<MetricsRegistry.Histogram>> histogramFamilies =
+                new TreeMap<String, List<MetricsRegistry.Histogram>>();
+        for (MetricsRegistry.Histogram histogram : registry.getHistograms().values()) {
+            addToFamily(histogramFamilies, familyName(histogram.getName()), histogram);
+        }
+        for (Entry<String, List<MetricsRegistry.Histogram>> family : histogramFamilies.entrySet()) {
+            appendHeader(text, family.getKey(), "histogram", "Distribution of " + baseName(family.getValue().get(0).getName()));
+            for (MetricsRegistry.Histogram histogram : family.getValue()) {
+                appendHistogram(text, family.getKey(), histogram);
+            }
+        }
+        return text.toString();
+    }
+
+
+    private void appendIndexMetrics (StringBuilder text) {
+
+        File indexFolder = new File(properties.get("INDEX_FOLDER"));
+        appendHeader(text, PREFIX + "index_size_bytes", "gauge", "Size of all the files in the index folder");
+        appendSample(text, PREFIX + "index_size_bytes", "", indexFolder.isDirectory() ? FileUtils
+                .sizeOfDirectory(indexFolder) : 0);
+
+        // The main inverted index of the current generation followed by the segments added since its build
+        HashMap<String, String> generationProperties = IndexGenerations.resolve(properties);
+        int segmentCount = new File(generationProperties.get("TERM_INDEX_FILE")).isFile() ? 1 : 0;
+        if (segmentCount > 0) {
+            segmentCount += new SegmentManifest(new File(generationProperties.get("SEGMENT_FOLDER"))).getSegments()
+                    .size();
+        }
+        appendHeader(text, PREFIX + "index_open_segments", "gauge", "Number of index segments queries are run on");
+        appendSample(text, PREFIX + "index_open_segments", "", segmentCount);
+        appendHeader(text, PREFIX + "index_generation", "gauge", "Generation of the index published by the last build");
+        appendSample(text, PREFIX + "index_generation", "", Math.max(IndexGenerations.getGenerationNumber(
+                new IndexGenerations(indexFolder).getCurrentGeneration()), 0));
+    }
+
+
+    private void appendCacheMetrics (StringBuilder text) {
+
+        PostingBlockCache postingCache = PostingBlockCache.getInstance();
+        QueryResultCache resultCache = DocumentRanker.getResultCache();
+
+        appendHeader(text, PREFIX + "cache_hit_ratio", "gauge", "Fraction of cache lookups served from the cache");
+        appendSample(text, PREFIX + "cache_hit_ratio", "{cache=\"posting_blocks\"}", postingCache.getHitRate());
+        if (null != resultCache) {
+            appendSample(text, PREFIX + "cache_hit_ratio", "{cache=\"query_results\"}", resultCache.getHitRate());
+        }
+        appendHeader(text, PREFIX + "posting_cache_hits_total", "counter", "Posting blocks read from the cache");
+        appendSample(text, PREFIX + "posting_cache_hits_total", "", postingCache.getHitCount());
+        appendHeader(text, PREFIX + "posting_cache_misses_total", "counter", "Posting blocks read from disk");
+        appendSample(text, PREFIX + "posting_cache_misses_total", "", postingCache.getMissCount());
+        appendHeader(text, PREFIX + "posting_cache_evictions_total", "counter", "Posting blocks evicted");
+        appendSample(text, PREFIX + "posting_cache_evictions_total", "", postingCache.getEvictionCount());
+    }
+
+
+    private void appendMemoryMetrics (StringBuilder text) {
+
+        IndexMemoryBudget memoryBudget = DocumentRanker.getIndexMemoryBudget();
+        appendHeader(text, PREFIX + "index_memory_bytes", "gauge",
+                "Memory held by the index structures used for ranking, estimated for the heap");
+        if (null != memoryBudget) {
+            for (IndexMemoryBudget.Allocation allocation : memoryBudget.getAllocations()) {
+                appendSample(text, PREFIX + "index_memory_bytes", "{structure=\"" + allocation.getStructure()
+                        + "\",location=\"" + allocation.getLocation().name().toLowerCase() + "\"}", allocation
+                        .getBytes());
+            }
+            appendHeader(text, PREFIX + "index_heap_budget_bytes", "gauge",
+                    "Heap the index structures may use, 0 for no limit");
+            appendSample(text, PREFIX + "index_heap_budget_bytes", "", Math.max(memoryBudget.getHeapBudget(), 0));
+        }
+        appendHeader(text, PREFIX + "jvm_heap_used_bytes", "gauge", "Heap used by the JVM");
+        appendSample(text, PREFIX + "jvm_heap_used_bytes", "", ManagementFactory.getMemoryMXBean()
+                .getHeapMemoryUsage().getUsed());
+    }
+
+
+    private void appendHistogram (StringBuilder text, String family, MetricsRegistry.Histogram histogram) {
+
+        String labels = labels(histogram.getName());
+        String labelPrefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long[] bounds = histogram.getBounds();
+        long[] bucketCounts = histogram.getBucketCounts();
+        long cumulativeCount = 0;
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            cumulativeCount += bucketCounts[bucket];
+            String bound = bucket < bounds.length ? formatValue(bounds[bucket] * histogram.getUnit()) : "+Inf";
+            appendSample(text, family + "_bucket", labelPrefix + "le=\"" + bound + "\"}", cumulativeCount);
+        }
+        appendSample(text, family + "_sum", labels, histogram.getSum() * histogram.getUnit());
+        appendSample(text, family + "_count", labels, cumulativeCount);
+    }
+
+
+    private static <T> void addToFamily (TreeMap<String, List<T>> families, String family, T metric) {
+
+        List<T> metrics = families.get(family);
+        if (null == metrics) {
+            metrics = new ArrayList<T>();
+            families.put(family, metrics);
+        }
+        metrics.add(metric);
+    }
+
+
+    /**
+     * @return exported name of a registry metric without its labels, e.g. search_rank_query for rank.query
+     */
+    private static String familyName (String name) {
+
+        return PREFIX + baseName(name).replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+
+    /**
+     * @return name of a registry metric without its labels
+     */
+    private static String baseName (String name) {
+
+        int labelStart = name.indexOf('{');
+        return labelStart < 0 ? name : name.substring(0, labelStart);
+    }
+
+
+    /**
+     * @return label set of a registry metric including the braces, empty if it has no labels
+     */
+    private static String labels (String name) {
+
+        int labelStart = name.indexOf('{');
+        return labelStart < 0 ? "" : name.substring(labelStart);
+    }
+
+
+    private static void appendHeader (StringBuilder text, String family, String type, String help) {
+
+        text.append("# HELP ").append(family).append(' ').append(help).append(LINE_END);
+        text.append("# TYPE ").append(family).append(' ').append(type).append(LINE_END);
+    }
+
+
+    private static void appendSample (StringBuilder text, String name, String labels, double value) {
+
+        text.append(name).append(labels).append(' ').append(formatValue(value)).append(LINE_END);
+    }
+
+
+    private static String formatValue (double value) {
+
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
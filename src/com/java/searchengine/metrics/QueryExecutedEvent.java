@@ -0,0 +1,75 @@
+package com.java.searchengine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Flight recorder event for a query ranked by the document ranker
+ */
+@Name("com.java.searchengine.QueryExecuted")
+@Label("Query Executed")
+@Category({ "Search Engine", "Ranking" })
+@Description("Query ranked from the index or served from the query result cache")
+public class QueryExecutedEvent extends Event {
+
+    @Label("Query")
+    private String query;
+
+    @Label("Scoring Function")
+    private String scoringFunction;
+
+    @Label("Query Terms")
+    @Description("Number of query terms found in the index")
+    private int queryTerms;
+
+    @Label("Postings Decoded")
+    private long postingsDecoded;
+
+    @Label("Documents Ranked")
+    private int documentsRanked;
+
+    @Label("Cache Hit")
+    private boolean cacheHit;
+
+    @Label("Approximate")
+    @Description("Query ran out of its time or posting budget")
+    private boolean approximate;
+
+
+    /**
+     * End the event and commit it if the event is enabled in the running recording
+     * @param query
+     *        query text
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @param queryTerms
+     *        number of query terms found in the index
+     * @param postingsDecoded
+     *        number of postings decoded or scored for the query
+     * @param documentsRanked
+     *        number of documents in the result
+     * @param cacheHit
+     *        true if the result was served from the query result cache
+     * @param approximate
+     *        true if the query ran out of its budget
+     */
+    public void commit (String query, String scoringFunction, int queryTerms, long postingsDecoded,
+            int documentsRanked, boolean cacheHit, boolean approximate) {
+
+        end();
+        if (shouldCommit()) {
+            this.query = query;
+            this.scoringFunction = scoringFunction;
+            this.queryTerms = queryTerms;
+            this.postingsDecoded = postingsDecoded;
+            this.documentsRanked = documentsRanked;
+            this.cacheHit = cacheHit;
+            this.approximate = approximate;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.java.searchengine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Flight recorder event for a sorted run of the document index written to disk during the external sort
+ */
+@Name("com.java.searchengine.RunFlushed")
+@Label("Run Flushed")
+@Category({ "Search Engine", "Indexing" })
+@Description("Sorted run of the document index written to disk")
+public class RunFlushedEvent extends Event {
+
+    @Label("Run Number")
+    private int runNumber;
+
+    @Label("Record Count")
+    @Description("Number of document index records in the run")
+    private int recordCount;
+
+    @Label("Run Size")
+    @DataAmount(DataAmount.BYTES)
+    private long bytes;
+
+    @Label("Path")
+    private String path;
+
+
+    /**
+     * End the event and commit it if the event is enabled in the running recording
+     * @param runNumber
+     *        number of the run, starting at 0
+     * @param recordCount
+     *        number of records in the run
+     * @param bytes
+     *        size of the run file
+     * @param path
+     *        path of the run file
+     */
+    public void commit (int runNumber, int recordCount, long bytes, String path) {
+
+        end();
+        if (shouldCommit()) {
+            this.runNumber = runNumber;
+            this.recordCount = recordCount;
+            this.bytes = bytes;
+            this.path = path;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.java.searchengine.segment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.java.searchengine.util.FileUtilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Tombstones of the deleted documents of a segment (or of the main index), one bit per document id from the
+ *          min doc id of the segment. The postings of a deleted document stay in the term index until a merge purges
+ *          them, its bit stays set so that deleting it again is a no op, and a second bit records that its postings
+ *          are purged so that the term info of the segment no longer counts it.
+ *
+ *          deleted_docs.bin: magic, min doc id, deleted document count, purged document count, word count, then the
+ *          deleted bits and the purged bits as longs
+ */
+public class LiveDocs {
+
+    static final String FILE_NAME = "deleted_docs.bin";
+    private static final int MAGIC = 0x4C445331;
+
+    private final int minDocId;
+    private long[] deletedBits;
+    private long[] purgedBits;
+    private int deletedCount = 0;
+    private int purgedCount = 0;
+
+
+    /**
+     * Constructor, all documents live
+     * @param minDocId
+     *        first document id of the segment
+     */
+    public LiveDocs (int minDocId) {
+
+        this.minDocId = minDocId;
+        deletedBits = new long[0];
+        purgedBits = new long[0];
+    }
+
+
+    /**
+     * Read the tombstones of a segment
+     * @param file
+     *        tombstone file of the segment, all documents are live if it is missing or empty
+     * @param minDocId
+     *        first document id of the segment
+     * @return tombstones of the segment
+     * @throws IOException
+     */
+    public static LiveDocs read (File file, int minDocId) throws IOException {
+
+        LiveDocs liveDocs = new LiveDocs(minDocId);
+        if (file.length() == 0) {
+            return liveDocs;
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != minDocId) {
+                throw new IOException("Not the deleted documents of this segment: " + file.getAbsolutePath());
+            }
+            liveDocs.deletedCount = input.readInt();
+            liveDocs.purgedCount = input.readInt();
+            int wordCount = input.readInt();
+            liveDocs.deletedBits = new long[wordCount];
+            liveDocs.purgedBits = new long[wordCount];
+            for (int word = 0; word < wordCount; word++) {
+                liveDocs.deletedBits[word] = input.readLong();
+            }
+            for (int word = 0; word < wordCount; word++) {
+                liveDocs.purgedBits[word] = input.readLong();
+            }
+        } finally {
+            input.close();
+        }
+        return liveDocs;
+    }
+
+
+    /**
+     * Write the tombstones to a temporary file and move it in place of the current file
+     * @param file
+     *        tombstone file of the segment
+     * @throws IOException
+     */
+    public void write (File file) throws IOException {
+
+        File writtenFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(writtenFile)));
+        output.writeInt(MAGIC);
+        output.writeInt(minDocId);
+        output.writeInt(deletedCount);
+        output.writeInt(purgedCount);
+        output.writeInt(deletedBits.length);
+        for (long word : deletedBits) {
+            output.writeLong(word);
+        }
+        for (long word : purgedBits) {
+            output.writeLong(word);
+        }
+        output.close();
+        FileUtilities.replaceFile(writtenFile, file);
+    }
+
+
+    /**
+     * @return true if the document is not deleted
+     */
+    public boolean isLive (int docId) {
+
+        int bit = docId - minDocId;
+        return bit < 0 || (bit >>> 6) >= deletedBits.length || (deletedBits[bit >>> 6] & (1L << bit)) == 0;
+    }
+
+
+    /**
+     * Mark a document deleted
+     * @param docId
+     *        document id, not before the min doc id of the segment
+     * @return true if the document was live
+     */
+    public boolean delete (int docId) {
+
+        int bit = docId - minDocId;
+        if ((bit >>> 6) >= deletedBits.length) {
+            int wordCount = Math.max((bit >>> 6) + 1, deletedBits.length * 2);
+            deletedBits = Arrays.copyOf(deletedBits, wordCount);
+            purgedBits = Arrays.copyOf(purgedBits, wordCount);
+        }
+        if ((deletedBits[bit >>> 6] & (1L << bit)) != 0) {
+            return false;
+        }
+        deletedBits[bit >>> 6] |= 1L << bit;
+        deletedCount++;
+        return true;
+    }
+
+
+    /**
+     * Mark deleted all the documents deleted in other tombstones
+     * @param other
+     *        tombstones of a segment whose document id's are not before the min doc id of this segment
+     */
+    public void deleteAll (LiveDocs other) {
+
+        for (int docId = other.nextDeletedDoc(other.minDocId); docId >= 0; docId = other.nextDeletedDoc(docId + 1)) {
+            delete(docId);
+        }
+    }
+
+
+    /**
+     * Mark deleted and purged all the documents deleted in other tombstones, once a merge has dropped their postings
+     * @param other
+     *        tombstones read by the merge, of a segment whose document id's are not before the min doc id of this
+     *        segment
+     */
+    public void purgeAll (LiveDocs other) {
+
+        for (int docId = other.nextDeletedDoc(other.minDocId); docId >= 0; docId = other.nextDeletedDoc(docId + 1)) {
+            purge(docId);
+        }
+    }
+
+
+    /**
+     * Mark a document deleted and purged, once a merge has dropped its postings
+     * @param docId
+     *        document id, not before the min doc id of the segment
+     */
+    public void purge (int docId) {
+
+        delete(docId);
+        int bit = docId - minDocId;
+        if ((purgedBits[bit >>> 6] & (1L << bit)) == 0) {
+            purgedBits[bit >>> 6] |= 1L << bit;
+            purgedCount++;
+        }
+    }
+
+
+    /**
+     * @return true if the document is deleted and its postings are purged from the segment
+     */
+    public boolean isPurged (int docId) {
+
+        int bit = docId - minDocId;
+        return bit >= 0 && (bit >>> 6) < purgedBits.length && (purgedBits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+
+    /**
+     * @return first deleted document id from the given one, -1 if none
+     */
+    public int nextDeletedDoc (int docId) {
+
+        int bit = Math.max(docId - minDocId, 0);
+        int word = bit >>> 6;
+        if (word >= deletedBits.length) {
+            return -1;
+        }
+        long remainingBits = deletedBits[word] & (-1L << bit);
+        while (remainingBits == 0) {
+            if (++word == deletedBits.length) {
+                return -1;
+            }
+            remainingBits = deletedBits[word];
+        }
+        return minDocId + word * 64 + Long.numberOfTrailingZeros(remainingBits);
+    }
+
+
+    /**
+     * @return number of deleted documents
+     */
+    public int getDeletedCount () {
+
+        return deletedCount;
+    }
+
+
+    /**
+     * @return number of deleted documents whose postings are purged
+     */
+    public int getPurgedCount () {
+
+        return purgedCount;
+    }
+
+
+    /**
+     * @return first document id of the segment
+     */
+    public int getMinDocId () {
+
+        return minDocId;
+    }
+}
@@ -0,0 +1,164 @@
+package com.java.searchengine.segment;
+
+import java.io.File;
+
+import com.java.searchengine.constants.Constants;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Immutable description of an index segment: a folder holding the term_index.txt and term_info.txt of the
+ *          documents min doc id to max doc id, added to the index after the last full build. Document id's, term
+ *          id's and the forward index are shared with the main index
+ */
+public class SegmentInfo {
+
+    static final String TERM_INDEX_FILE_NAME = "term_index.txt";
+    static final String TERM_INFO_FILE_NAME = "term_info.txt";
+
+    private final String name;
+    private final File folder;
+    private final int minDocId;
+    private final int maxDocId;
+    private final int documentCount;
+
+
+    /**
+     * Constructor
+     * @param name
+     *        name of the segment, also the name of its folder
+     * @param segmentFolder
+     *        folder holding all the segments
+     * @param minDocId
+     *        first document id in the segment
+     * @param maxDocId
+     *        last document id in the segment
+     * @param documentCount
+     *        number of documents in the segment
+     */
+    public SegmentInfo (String name, File segmentFolder, int minDocId, int maxDocId, int documentCount) {
+
+        this.name = name;
+        this.folder = new File(segmentFolder, name);
+        this.minDocId = minDocId;
+        this.maxDocId = maxDocId;
+        this.documentCount = documentCount;
+    }
+
+
+    /**
+     * Parse a line of the segment manifest
+     * @param line
+     *        name, min doc id, max doc id and document count separated by tab
+     * @param segmentFolder
+     *        folder holding all the segments
+     * @return segment described by the line
+     */
+    static SegmentInfo parse (String line, File segmentFolder) {
+
+        String[] tokens = line.split(Constants.tab);
+        return new SegmentInfo(tokens[0], segmentFolder, Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                Integer.parseInt(tokens[3]));
+    }
+
+
+    /**
+     * @return line of the segment manifest describing this segment
+     */
+    String toManifestLine () {
+
+        return name + Constants.tab + minDocId + Constants.tab + maxDocId + Constants.tab + documentCount;
+    }
+
+
+    /**
+     * @return name of the segment
+     */
+    public String getName () {
+
+        return name;
+    }
+
+
+    /**
+     * @return folder holding the files of the segment
+     */
+    public File getFolder () {
+
+        return folder;
+    }
+
+
+    /**
+     * @return inverted index of the segment, in the format of term_index.txt
+     */
+    public File getTermIndexFile () {
+
+        return new File(folder, TERM_INDEX_FILE_NAME);
+    }
+
+
+    /**
+     * @return term info of the segment, in the format of term_info.txt
+     */
+    public File getTermInfoFile () {
+
+        return new File(folder, TERM_INFO_FILE_NAME);
+    }
+
+
+    /**
+     * @return tombstones of the deleted documents of the segment, missing if none is deleted
+     */
+    public File getLiveDocsFile () {
+
+        return new File(folder, LiveDocs.FILE_NAME);
+    }
+
+
+    /**
+     * @return first document id in the segment
+     */
+    public int getMinDocId () {
+
+        return minDocId;
+    }
+
+
+    /**
+     * @return last document id in the segment
+     */
+    public int getMaxDocId () {
+
+        return maxDocId;
+    }
+
+
+    /**
+     * @return number of documents in the segment
+     */
+    public int getDocumentCount () {
+
+        return documentCount;
+    }
+
+
+    @Override
+    public boolean equals (Object other) {
+
+        return other instanceof SegmentInfo && name.equals(((SegmentInfo) other).name);
+    }
+
+
+    @Override
+    public int hashCode () {
+
+        return name.hashCode();
+    }
+
+
+    @Override
+    public String toString () {
+
+        return name + " (" + documentCount + " documents, " + minDocId + "-" + maxDocId + ")";
+    }
+}
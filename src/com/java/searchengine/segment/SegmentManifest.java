@@ -0,0 +1,320 @@
+package com.java.searchengine.segment;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import com.java.searchengine.constants.Constants;
+import com.java.searchengine.util.FileUtilities;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose List of the committed segments of the index, segments.txt in the segment folder: one line per segment in
+ *          increasing order of document id's (name, min doc id, max doc id, document count). The manifest is
+ *          rewritten in a single step on every change, a segment is part of the index only once it is listed.
+ *
+ *          Changes are serialized within the process, indexing and merging from separate processes is not supported
+ */
+public class SegmentManifest {
+
+    static final String MANIFEST_FILE_NAME = "segments.txt";
+    private static final String SEGMENT_PREFIX = "_";
+
+    // Guards the manifest and the segment folders being written, shared by all the manifests of the process
+    private static final Object lock = new Object();
+    private static final HashSet<File> pendingFolders = new HashSet<File>();
+
+    private final File segmentFolder;
+    private final File manifestFile;
+
+
+    /**
+     * Constructor
+     * @param segmentFolder
+     *        folder holding all the segments and the manifest
+     */
+    public SegmentManifest (File segmentFolder) {
+
+        this.segmentFolder = segmentFolder.getAbsoluteFile();
+        this.manifestFile = new File(this.segmentFolder, MANIFEST_FILE_NAME);
+    }
+
+
+    /**
+     * @return committed segments in increasing order of document id's, empty if there is no manifest
+     */
+    public List<SegmentInfo> getSegments () {
+
+        synchronized (lock) {
+            ArrayList<SegmentInfo> segments = new ArrayList<SegmentInfo>();
+            if (!manifestFile.exists()) {
+                return segments;
+            }
+            try {
+                String line;
+                BufferedReader reader = new BufferedReader(new FileReader(manifestFile));
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        segments.add(SegmentInfo.parse(line, segmentFolder));
+                    }
+                }
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Could not read file" + manifestFile.getAbsolutePath());
+            }
+            return segments;
+        }
+    }
+
+
+    /**
+     * Reserve a new segment folder, it is not part of the index until committed through addSegment or
+     * replaceSegments
+     * @return name of the new segment
+     * @throws IOException
+     */
+    public String createSegmentFolder () throws IOException {
+
+        synchronized (lock) {
+            int lastSegmentNumber = 0;
+            File[] folders = segmentFolder.listFiles();
+            if (null != folders) {
+                for (File folder : folders) {
+                    lastSegmentNumber = Math.max(lastSegmentNumber, parseSegmentNumber(folder.getName()));
+                }
+            }
+            for (SegmentInfo segment : getSegments()) {
+                lastSegmentNumber = Math.max(lastSegmentNumber, parseSegmentNumber(segment.getName()));
+            }
+            String name = SEGMENT_PREFIX + (lastSegmentNumber + 1);
+            File folder = new File(segmentFolder, name);
+            if (!folder.mkdirs()) {
+                throw new IOException("Could not create segment folder " + folder.getAbsolutePath());
+            }
+            pendingFolders.add(folder);
+            return name;
+        }
+    }
+
+
+    /**
+     * Commit a newly written segment, after all the existing segments
+     * @param segment
+     *        fully written segment
+     * @throws IOException
+     */
+    public void addSegment (SegmentInfo segment) throws IOException {
+
+        synchronized (lock) {
+            List<SegmentInfo> segments = getSegments();
+            segments.add(segment);
+            write(segments);
+            pendingFolders.remove(segment.getFolder());
+        }
+    }
+
+
+    /**
+     * Commit a merged segment in place of the adjacent segments it was merged from
+     * @param mergedSegments
+     *        adjacent segments in increasing order of document id's
+     * @param segment
+     *        fully written merged segment
+     * @return true if committed, false if any of the merged segments is no longer part of the index
+     * @throws IOException
+     */
+    public boolean replaceSegments (List<SegmentInfo> mergedSegments, SegmentInfo segment) throws IOException {
+
+        synchronized (lock) {
+            List<SegmentInfo> segments = getSegments();
+            int first = segments.indexOf(mergedSegments.get(0));
+            if (first < 0 || first + mergedSegments.size() > segments.size()
+                    || !segments.subList(first, first + mergedSegments.size()).equals(mergedSegments)) {
+                return false;
+            }
+            // The merged segment holds the documents purged by the merge, documents deleted while merging are purged
+            // by a later merge
+            LiveDocs liveDocs = LiveDocs.read(segment.getLiveDocsFile(), segment.getMinDocId());
+            for (SegmentInfo mergedSegment : mergedSegments) {
+                liveDocs.deleteAll(LiveDocs.read(mergedSegment.getLiveDocsFile(), mergedSegment.getMinDocId()));
+            }
+            if (liveDocs.getDeletedCount() > 0) {
+                liveDocs.write(segment.getLiveDocsFile());
+            }
+
+            segments.subList(first, first + mergedSegments.size()).clear();
+            segments.add(first, segment);
+            write(segments);
+            pendingFolders.remove(segment.getFolder());
+            return true;
+        }
+    }
+
+
+    /**
+     * Mark documents deleted in the tombstones of the segment holding them, documents before the first segment are
+     * held by the main index
+     * @param docIds
+     *        id's of the documents to be deleted
+     * @param mainIndexLiveDocsFile
+     *        tombstone file of the main index
+     * @return number of documents deleted, not counting those already deleted
+     * @throws IOException
+     */
+    public int deleteDocuments (Collection<Integer> docIds, File mainIndexLiveDocsFile) throws IOException {
+
+        synchronized (lock) {
+            List<SegmentInfo> segments = getSegments();
+            int firstSegmentDocId = segments.isEmpty() ? Integer.MAX_VALUE : segments.get(0).getMinDocId();
+            HashMap<File, LiveDocs> changedLiveDocs = new HashMap<File, LiveDocs>();
+            int deletedCount = 0;
+
+            for (int docId : docIds) {
+                File liveDocsFile = docId < firstSegmentDocId ? mainIndexLiveDocsFile : null;
+                int minDocId = 0;
+                for (SegmentInfo segment : segments) {
+                    if (docId >= segment.getMinDocId() && docId <= segment.getMaxDocId()) {
+                        liveDocsFile = segment.getLiveDocsFile();
+                        minDocId = segment.getMinDocId();
+                    }
+                }
+                if (null == liveDocsFile) {
+                    continue;
+                }
+                LiveDocs liveDocs = changedLiveDocs.get(liveDocsFile);
+                if (null == liveDocs) {
+                    liveDocs = LiveDocs.read(liveDocsFile, minDocId);
+                    changedLiveDocs.put(liveDocsFile, liveDocs);
+                }
+                if (liveDocs.delete(docId)) {
+                    deletedCount++;
+                }
+            }
+            for (Map.Entry<File, LiveDocs> liveDocs : changedLiveDocs.entrySet()) {
+                liveDocs.getValue().write(liveDocs.getKey());
+            }
+            return deletedCount;
+        }
+    }
+
+
+    /**
+     * Give up a reserved segment folder which will not be committed, deleting its files
+     * @param name
+     *        name of the segment
+     */
+    public void discardSegment (String name) {
+
+        synchronized (lock) {
+            File folder = new File(segmentFolder, name);
+            pendingFolders.remove(folder);
+            FileUtils.deleteQuietly(folder);
+        }
+    }
+
+
+    /**
+     * Remove all the segments from the index, their documents having been indexed by a full build
+     */
+    public void clear () {
+
+        synchronized (lock) {
+            FileUtils.deleteQuietly(manifestFile);
+            deleteUnreferencedSegments();
+        }
+    }
+
+
+    /**
+     * Delete the folders of segments replaced by a merge, and of segments never committed by an interrupted run
+     */
+    public void deleteUnreferencedSegments () {
+
+        synchronized (lock) {
+            File[] folders = segmentFolder.listFiles();
+            if (null == folders) {
+                return;
+            }
+            HashSet<File> referencedFolders = new HashSet<File>(pendingFolders);
+            for (SegmentInfo segment : getSegments()) {
+                referencedFolders.add(segment.getFolder());
+            }
+            for (File folder : folders) {
+                if (folder.isDirectory() && parseSegmentNumber(folder.getName()) > 0
+                        && !referencedFolders.contains(folder)) {
+                    FileUtils.deleteQuietly(folder);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return stamp changing whenever the manifest is rewritten
+     */
+    public long getStamp () {
+
+        return FileUtilities.getFileStamp(manifestFile);
+    }
+
+
+    /**
+     * @return manifest file
+     */
+    public File getManifestFile () {
+
+        return manifestFile;
+    }
+
+
+    /**
+     * @return folder holding all the segments
+     */
+    public File getSegmentFolder () {
+
+        return segmentFolder;
+    }
+
+
+    /**
+     * Write the manifest to a temporary file and move it in place of the current manifest
+     */
+    private void write (List<SegmentInfo> segments) throws IOException {
+
+        segmentFolder.mkdirs();
+        File writtenFile = new File(segmentFolder, MANIFEST_FILE_NAME + ".tmp");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(writtenFile));
+        for (SegmentInfo segment : segments) {
+            writer.write(segment.toManifestLine() + Constants.newline);
+        }
+        writer.close();
+        FileUtilities.replaceFile(writtenFile, manifestFile);
+    }
+
+
+    /**
+     * @return number of the segment, 0 if the name is not that of a segment
+     */
+    private static int parseSegmentNumber (String name) {
+
+        if (!name.startsWith(SEGMENT_PREFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.java.searchengine.segment;
+
+import java.util.List;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Logarithmic merge policy: a segment of n documents is on level floor(log(n) / log(merge factor)), and once
+ *          merge factor adjacent segments are on the same level they are merged into one segment of the next level.
+ *          Each document is merged about log(number of documents) times, while a query reads at most merge factor
+ *          segments per level
+ */
+public class SegmentMergePolicy {
+
+    private final int mergeFactor;
+
+
+    /**
+     * Constructor
+     * @param mergeFactor
+     *        number of segments on a level merged together, at least 2
+     */
+    public SegmentMergePolicy (int mergeFactor) {
+
+        this.mergeFactor = Math.max(mergeFactor, 2);
+    }
+
+
+    /**
+     * Find segments to be merged
+     * @param segments
+     *        committed segments in increasing order of document id's
+     * @return adjacent segments to be merged, null if no merge is needed
+     */
+    public List<SegmentInfo> findMerge (List<SegmentInfo> segments) {
+
+        int runStart = 0;
+        for (int i = 1; i <= segments.size(); i++) {
+            if (i == segments.size() || getLevel(segments.get(i)) != getLevel(segments.get(runStart))) {
+                runStart = i;
+                continue;
+            }
+            if (i - runStart + 1 == mergeFactor) {
+                return segments.subList(runStart, i + 1);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * @return level of the segment, segments of less than merge factor documents are on level 0
+     */
+    int getLevel (SegmentInfo segment) {
+
+        int level = 0;
+        long levelSize = mergeFactor;
+        while (segment.getDocumentCount() >= levelSize) {
+            level++;
+            levelSize *= mergeFactor;
+        }
+        return level;
+    }
+
+
+    /**
+     * @return number of segments on a level merged together
+     */
+    public int getMergeFactor () {
+
+        return mergeFactor;
+    }
+}
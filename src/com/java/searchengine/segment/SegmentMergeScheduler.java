@@ -0,0 +1,136 @@
+package com.java.searchengine.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.java.searchengine.metrics.MetricsRegistry;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Run the merges found by the merge policy on a background thread, one merge at a time. The thread ends once
+ *          there is nothing left to merge, it is not a daemon so that a merge in progress completes before the
+ *          program exits. Segments replaced by a merge are deleted by the next indexing run, once no query of the
+ *          current process reads them
+ */
+public class SegmentMergeScheduler {
+
+    private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private static final MetricsRegistry.Timer mergeTimer = metrics.timer("index.segment_merge");
+    private static final MetricsRegistry.Counter mergedDocumentCounter = metrics.counter("index.merged_documents");
+
+    private final SegmentManifest manifest;
+    private final SegmentMergePolicy policy;
+    private final ThreadPoolExecutor executor;
+
+
+    /**
+     * Constructor
+     * @param segmentFolder
+     *        folder holding all the segments and the manifest
+     * @param mergeFactor
+     *        number of segments on a level merged together
+     */
+    public SegmentMergeScheduler (File segmentFolder, int mergeFactor) {
+
+        manifest = new SegmentManifest(segmentFolder);
+        policy = new SegmentMergePolicy(mergeFactor);
+        executor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread (Runnable task) {
+
+                        return new Thread(task, "segment-merge");
+                    }
+                });
+    }
+
+
+    /**
+     * Merge segments in the background until the merge policy finds nothing to merge
+     */
+    public void maybeMerge () {
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run () {
+
+                mergeAll();
+            }
+        });
+    }
+
+
+    /**
+     * Merge segments on the calling thread until the merge policy finds nothing to merge
+     * @return number of merges committed
+     */
+    public int mergeAll () {
+
+        int mergeCount = 0;
+        List<SegmentInfo> merge;
+        while (null != (merge = policy.findMerge(manifest.getSegments()))) {
+            merge = new ArrayList<SegmentInfo>(merge);
+            if (!mergeSegments(merge)) {
+                break;
+            }
+            mergeCount++;
+        }
+        return mergeCount;
+    }
+
+
+    /**
+     * Merge and commit the given segments
+     * @return true if the merged segment is committed
+     */
+    private boolean mergeSegments (List<SegmentInfo> segments) {
+
+        long start = mergeTimer.start();
+        String name = null;
+        try {
+            name = manifest.createSegmentFolder();
+            SegmentInfo merged = new SegmentMerger().merge(segments, name, manifest.getSegmentFolder());
+            if (!manifest.replaceSegments(segments, merged)) {
+                manifest.discardSegment(name);
+                return false;
+            }
+            mergedDocumentCounter.add(merged.getDocumentCount());
+            System.out.println("Merged " + segments.size() + " segments into " + merged);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Unable to merge segments as I/O exception occured");
+            if (null != name) {
+                manifest.discardSegment(name);
+            }
+            return false;
+        } finally {
+            mergeTimer.stop(start);
+        }
+    }
+
+
+    /**
+     * Wait for the scheduled merges to complete
+     * @param timeoutSeconds
+     *        maximum time to wait
+     * @return true if all the merges completed
+     */
+    public boolean awaitMerges (long timeoutSeconds) {
+
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
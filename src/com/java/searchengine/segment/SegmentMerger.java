@@ -0,0 +1,276 @@
+package com.java.searchengine.segment;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import com.java.searchengine.constants.Constants;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Merge adjacent segments into a single segment. Term info of the segments is in increasing order of term id
+ *          and the term index lines are in the same order, so all the segments are read sequentially in one pass. The
+ *          posting lines of a term are concatenated in order of document id's, only the first document delta of each
+ *          appended line is rewritten relative to the last document of the previous line. Postings of the documents
+ *          deleted in a segment are purged and recorded as purged in the tombstones of the merged segment
+ */
+public class SegmentMerger {
+
+    /**
+     * Merge the given segments
+     * @param segments
+     *        adjacent segments in increasing order of document id's
+     * @param name
+     *        name of the reserved folder of the merged segment
+     * @param segmentFolder
+     *        folder holding all the segments
+     * @return merged segment, to be committed in place of the given segments
+     * @throws IOException
+     */
+    public SegmentInfo merge (List<SegmentInfo> segments, String name, File segmentFolder) throws IOException {
+
+        int documentCount = 0;
+        for (SegmentInfo segment : segments) {
+            documentCount += segment.getDocumentCount();
+        }
+        SegmentInfo merged = new SegmentInfo(name, segmentFolder, segments.get(0).getMinDocId(), segments.get(
+                segments.size() - 1).getMaxDocId(), documentCount);
+
+        LiveDocs[] liveDocs = new LiveDocs[segments.size()];
+        LiveDocs purgedDocs = new LiveDocs(merged.getMinDocId());
+        for (int i = 0; i < liveDocs.length; i++) {
+            liveDocs[i] = LiveDocs.read(segments.get(i).getLiveDocsFile(), segments.get(i).getMinDocId());
+            purgedDocs.purgeAll(liveDocs[i]);
+        }
+
+        TermCursor[] cursors = new TermCursor[segments.size()];
+        BufferedWriter termIndexWriter = new BufferedWriter(new FileWriter(merged.getTermIndexFile()));
+        BufferedWriter termInfoWriter = new BufferedWriter(new FileWriter(merged.getTermInfoFile()));
+        try {
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = new TermCursor(segments.get(i), liveDocs[i]);
+            }
+            mergeTerms(cursors, termIndexWriter, termInfoWriter);
+        } finally {
+            for (TermCursor cursor : cursors) {
+                if (null != cursor) {
+                    cursor.close();
+                }
+            }
+            termIndexWriter.close();
+            termInfoWriter.close();
+        }
+        if (purgedDocs.getDeletedCount() > 0) {
+            purgedDocs.write(merged.getLiveDocsFile());
+        }
+        return merged;
+    }
+
+
+    /**
+     * Write the merged term index and term info, terms are taken in increasing order of term id across the segments
+     */
+    private void mergeTerms (TermCursor[] cursors, BufferedWriter termIndexWriter, BufferedWriter termInfoWriter)
+            throws IOException {
+
+        long offset = 0;
+        StringBuilder mergedLine = new StringBuilder();
+        while (true) {
+            int termId = Integer.MAX_VALUE;
+            for (TermCursor cursor : cursors) {
+                if (cursor.hasTerm()) {
+                    termId = Math.min(termId, cursor.termId);
+                }
+            }
+            if (termId == Integer.MAX_VALUE) {
+                break;
+            }
+
+            mergedLine.setLength(0);
+            mergedLine.append(termId);
+            int[] counts = new int[2];
+            int lastDocId = 0;
+            for (TermCursor cursor : cursors) {
+                if (!cursor.hasTerm() || cursor.termId != termId) {
+                    continue;
+                }
+                if (cursor.liveDocs.getDeletedCount() == 0) {
+                    appendPostings(mergedLine, cursor.postingLine, lastDocId);
+                    lastDocId = getLastDocId(cursor.postingLine);
+                    counts[0] += cursor.positionCount;
+                    counts[1] += cursor.documentCount;
+                } else {
+                    lastDocId = appendLivePostings(mergedLine, cursor.postingLine, lastDocId, cursor.liveDocs, counts);
+                }
+                cursor.next();
+            }
+            // All the documents of the term are deleted
+            if (counts[1] == 0) {
+                continue;
+            }
+
+            // Lines are separated as in the main term index, the last line has no line break
+            if (offset > 0) {
+                termIndexWriter.write(Constants.newline);
+                offset += Constants.newline.length();
+            }
+            termIndexWriter.append(mergedLine);
+            termInfoWriter.write(termId + Constants.tab + offset + Constants.tab + counts[0] + Constants.tab
+                    + counts[1] + Constants.newline);
+            offset += mergedLine.length();
+        }
+    }
+
+
+    /**
+     * Append the postings of a line to a merged line, rewriting the first document delta
+     * @param mergedLine
+     *        line holding the postings of the previous segments
+     * @param postingLine
+     *        term index line of the next segment: termId (tab deltaDocId:position)+
+     * @param lastDocId
+     *        last document id of the merged line
+     */
+    public static void appendPostings (StringBuilder mergedLine, String postingLine, int lastDocId) {
+
+        int firstPosting = postingLine.indexOf('\t');
+        if (firstPosting < 0) {
+            return;
+        }
+        int separator = postingLine.indexOf(':', firstPosting);
+        int firstDocId = Integer.parseInt(postingLine.substring(firstPosting + 1, separator));
+        mergedLine.append(Constants.tab).append(firstDocId - lastDocId).append(postingLine, separator, postingLine
+                .length());
+    }
+
+
+    /**
+     * Append the postings of the live documents of a line to a merged line, delta encoding the document id's
+     * relative to the last document appended
+     * @param mergedLine
+     *        line holding the postings of the previous segments
+     * @param postingLine
+     *        term index line of the next segment: termId (tab deltaDocId:position)+
+     * @param lastDocId
+     *        last document id of the merged line
+     * @param liveDocs
+     *        tombstones of the segment
+     * @param counts
+     *        position and document counts of the merged line, incremented by the appended postings
+     * @return last document id of the merged line
+     */
+    public static int appendLivePostings (StringBuilder mergedLine, String postingLine, int lastDocId,
+            LiveDocs liveDocs, int[] counts) {
+
+        int docId = 0;
+        boolean live = false;
+        int index = postingLine.indexOf('\t');
+        int length = postingLine.length();
+        while (index >= 0 && index < length) {
+            int separator = postingLine.indexOf(':', index);
+            int next = postingLine.indexOf('\t', separator);
+            int end = next < 0 ? length : next;
+
+            int deltaDocId = Integer.parseInt(postingLine.substring(index + 1, separator));
+            if (deltaDocId != 0) {
+                docId += deltaDocId;
+                live = liveDocs.isLive(docId);
+                if (live) {
+                    mergedLine.append(Constants.tab).append(docId - lastDocId).append(postingLine, separator, end);
+                    lastDocId = docId;
+                    counts[1]++;
+                }
+            } else if (live) {
+                // Further position within the same document
+                mergedLine.append(postingLine, index, end);
+            }
+            if (live) {
+                counts[0]++;
+            }
+            index = next;
+        }
+        return lastDocId;
+    }
+
+
+    /**
+     * @return last document id of a term index line, the sum of its document deltas
+     */
+    public static int getLastDocId (String postingLine) {
+
+        int docId = 0;
+        int index = postingLine.indexOf('\t');
+        int length = postingLine.length();
+        while (index >= 0 && index < length) {
+            int deltaDocId = 0;
+            index++;
+            char current;
+            while (index < length && (current = postingLine.charAt(index)) != ':') {
+                deltaDocId = deltaDocId * 10 + (current - '0');
+                index++;
+            }
+            docId += deltaDocId;
+            index = postingLine.indexOf('\t', index);
+        }
+        return docId;
+    }
+
+
+    /**
+     * Sequential reader of the term info and term index of a segment, positioned on one term
+     */
+    private static final class TermCursor {
+
+        private final BufferedReader termInfoReader;
+        private final BufferedReader termIndexReader;
+        private final LiveDocs liveDocs;
+        private int termId;
+        private int positionCount;
+        private int documentCount;
+        private String postingLine;
+
+
+        TermCursor (SegmentInfo segment, LiveDocs liveDocs) throws IOException {
+
+            this.liveDocs = liveDocs;
+            termInfoReader = new BufferedReader(new FileReader(segment.getTermInfoFile()));
+            termIndexReader = new BufferedReader(new FileReader(segment.getTermIndexFile()));
+            next();
+        }
+
+
+        boolean hasTerm () {
+
+            return null != postingLine;
+        }
+
+
+        void next () throws IOException {
+
+            String termInfo = termInfoReader.readLine();
+            if (null == termInfo) {
+                postingLine = null;
+                return;
+            }
+            String[] tokens = termInfo.split(Constants.tab);
+            termId = Integer.parseInt(tokens[0]);
+            positionCount = Integer.parseInt(tokens[2]);
+            documentCount = Integer.parseInt(tokens[3]);
+            postingLine = termIndexReader.readLine();
+            if (null == postingLine) {
+                throw new IOException("Term index is shorter than term info for term " + termId);
+            }
+        }
+
+
+        void close () throws IOException {
+
+            termInfoReader.close();
+            termIndexReader.close();
+        }
+    }
+}
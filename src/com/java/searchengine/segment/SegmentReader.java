@@ -0,0 +1,134 @@
+package com.java.searchengine.segment;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.java.searchengine.constants.Constants;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Term dictionary of a segment held in sorted primitive arrays, giving the offset of a term in the term
+ *          index of the segment by binary search. Segments are small, so their term info is kept on the heap
+ */
+public class SegmentReader {
+
+    private final SegmentInfo segment;
+    private int[] termIds;
+    private long[] offsets;
+    private int[] positionCounts;
+    private int[] documentCounts;
+    private int termCount = 0;
+
+
+    /**
+     * Constructor, reads the term info of the segment
+     * @param segment
+     *        committed segment
+     * @throws IOException
+     */
+    public SegmentReader (SegmentInfo segment) throws IOException {
+
+        this.segment = segment;
+        termIds = new int[256];
+        offsets = new long[256];
+        positionCounts = new int[256];
+        documentCounts = new int[256];
+
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(segment.getTermInfoFile()));
+        try {
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(Constants.tab);
+                addTerm(Integer.parseInt(tokens[0]), Long.parseLong(tokens[1]), Integer.parseInt(tokens[2]), Integer
+                        .parseInt(tokens[3]));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    private void addTerm (int termId, long offset, int positionCount, int documentCount) {
+
+        if (termCount == termIds.length) {
+            termIds = Arrays.copyOf(termIds, termCount * 2);
+            offsets = Arrays.copyOf(offsets, termCount * 2);
+            positionCounts = Arrays.copyOf(positionCounts, termCount * 2);
+            documentCounts = Arrays.copyOf(documentCounts, termCount * 2);
+        }
+        termIds[termCount] = termId;
+        offsets[termCount] = offset;
+        positionCounts[termCount] = positionCount;
+        documentCounts[termCount] = documentCount;
+        termCount++;
+    }
+
+
+    /**
+     * Find a term in the segment, term info is written in increasing order of term id
+     * @param termId
+     *        id of the term
+     * @return index of the term in the dictionary, negative if the term is not in the segment
+     */
+    public int findTerm (int termId) {
+
+        return Arrays.binarySearch(termIds, 0, termCount, termId);
+    }
+
+
+    /**
+     * @return offset of the posting list in the term index of the segment, for the term at given index
+     */
+    public long getOffset (int termIndex) {
+
+        return offsets[termIndex];
+    }
+
+
+    /**
+     * @return number of occurrences in the segment, for the term at given index
+     */
+    public int getPositionCount (int termIndex) {
+
+        return positionCounts[termIndex];
+    }
+
+
+    /**
+     * @return number of documents of the segment containing the term at given index
+     */
+    public int getDocumentCount (int termIndex) {
+
+        return documentCounts[termIndex];
+    }
+
+
+    /**
+     * @return number of terms in the segment
+     */
+    public int getTermCount () {
+
+        return termCount;
+    }
+
+
+    /**
+     * @return term index of the segment
+     */
+    public File getTermIndexFile () {
+
+        return segment.getTermIndexFile();
+    }
+
+
+    /**
+     * @return description of the segment
+     */
+    public SegmentInfo getSegment () {
+
+        return segment;
+    }
+}
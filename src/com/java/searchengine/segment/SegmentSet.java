@@ -0,0 +1,98 @@
+package com.java.searchengine.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Readers for all the segments committed at the time it was opened, in increasing order of document id's.
+ *          Queries are run on the main index followed by these segments
+ */
+public class SegmentSet {
+
+    private final SegmentManifest manifest;
+    private final long stamp;
+    private final List<SegmentReader> readers;
+
+
+    private SegmentSet (SegmentManifest manifest, long stamp, List<SegmentReader> readers) {
+
+        this.manifest = manifest;
+        this.stamp = stamp;
+        this.readers = Collections.unmodifiableList(readers);
+    }
+
+
+    /**
+     * Open the committed segments
+     * @param segmentFolder
+     *        folder holding all the segments and the manifest
+     * @return opened segments, empty if there is no manifest
+     */
+    public static SegmentSet open (File segmentFolder) {
+
+        SegmentManifest manifest = new SegmentManifest(segmentFolder);
+        long stamp = manifest.getStamp();
+        ArrayList<SegmentReader> readers = new ArrayList<SegmentReader>();
+        for (SegmentInfo segment : manifest.getSegments()) {
+            try {
+                readers.add(new SegmentReader(segment));
+            } catch (IOException e) {
+                System.err.println("Could not read file" + segment.getTermInfoFile().getAbsolutePath());
+            }
+        }
+        return new SegmentSet(manifest, stamp, readers);
+    }
+
+
+    /**
+     * @return true if the manifest changed since the segments were opened
+     */
+    public boolean isStale () {
+
+        return manifest.getStamp() != stamp;
+    }
+
+
+    /**
+     * @return stamp of the manifest the segments were opened from
+     */
+    public long getStamp () {
+
+        return stamp;
+    }
+
+
+    /**
+     * @return readers of the segments in increasing order of document id's
+     */
+    public List<SegmentReader> getReaders () {
+
+        return readers;
+    }
+
+
+    /**
+     * @return true if the index has no segment
+     */
+    public boolean isEmpty () {
+
+        return readers.isEmpty();
+    }
+
+
+    /**
+     * @return term info files of the segments
+     */
+    public List<File> getTermInfoFiles () {
+
+        ArrayList<File> termInfoFiles = new ArrayList<File>();
+        for (SegmentReader reader : readers) {
+            termInfoFiles.add(reader.getSegment().getTermInfoFile());
+        }
+        return termInfoFiles;
+    }
+}
@@ -6,6 +6,9 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Scanner;
@@ -82,22 +85,6 @@ public class FileUtilities {
 	}
 	
 	
-	/**
-	 * Extract all the filenames in given folder
-	 * @param folderPath path to the folder from where files need to extracted
-	 * @return File[] containing all the files in given folder
-	 */
-	public static File[] getFileHandlers(String folderPath) {
-		File folder = new File(folderPath);
-		File[] listOfFiles = folder.listFiles();
-		
-		if(null == listOfFiles) {
-			System.out.println("No files found at : " + folderPath);
-		}
-		return listOfFiles;
-	}                                                                                                                           
-	                                                                                                                                  
-	                                                                                                                                  
 	/**
 	 * Extract document id's and name from text file into a hash map                                                                   
 	 * @param docIDFile File containing the document id's
@@ -147,4 +134,36 @@ public class FileUtilities {
 		System.out.println(parameterName + " is not present in corpus");  		                 							
 		return null;                                                                                                                  
 	} 
+	
+	
+	/**
+	 * Compute a stamp identifying the current version of the given files, changes whenever any of them is rewritten
+	 * @param files files to be stamped
+	 * @return stamp built from last modified time and length of each file
+	 */
+	public static long getFileStamp(File... files) {
+		long stamp = 17;
+		for (File file : files) {
+			stamp = 31 * stamp + file.lastModified();
+			stamp = 31 * stamp + file.length();
+		}
+		return stamp;
+	}
+	
+	
+	/**
+	 * Replace a file by a fully written temporary file in a single step, so that readers never see a partly written file
+	 * and readers having the old file open or memory mapped keep reading the old contents
+	 * @param writtenFile fully written temporary file, in the same folder as the target
+	 * @param targetFile file to be replaced
+	 * @throws IOException
+	 */
+	public static void replaceFile(File writtenFile, File targetFile) throws IOException {
+		try {
+			Files.move(writtenFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(writtenFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 }
\ No newline at end of file
@@ -35,13 +35,26 @@ public class Utilities {
 	 * @param documentScore Map to be sorted
 	 * @return sorted map
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static Map<Integer,Double> rankDocuments(Map<Integer,Double> documentScore) {
+		return rankDocuments(documentScore, null);
+	}
+	
+	/**
+	 * Sort the documents by decreasing score, documents of equal score in the order of the tie breaker
+	 * @param documentScore map of document id's to their scores
+	 * @param tieBreaker order of documents of equal score, null keeps the order of the map
+	 * @return map of document id's to their scores in order of decreasing score
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Map<Integer,Double> rankDocuments(Map<Integer,Double> documentScore, final Comparator<Integer> tieBreaker) {
 		List list = new LinkedList(documentScore.entrySet());
  
 		Collections.sort(list, new Comparator() {
 			public int compare(Object o1, Object o2){
-				return ((Comparable) ((Map.Entry) (o2)).getValue()).compareTo(((Map.Entry) (o1)).getValue());
+				int order = ((Comparable) ((Map.Entry) (o2)).getValue()).compareTo(((Map.Entry) (o1)).getValue());
+				if(order != 0 || null == tieBreaker)
+					return order;
+				return tieBreaker.compare((Integer) ((Map.Entry) (o1)).getKey(), (Integer) ((Map.Entry) (o2)).getKey());
 			}
 		});
 
@@ -67,6 +80,7 @@ public class Utilities {
 			System.err.println("I/O exception occured in opening: properties file");
 		}
 		propertiesMap.put("INPUT_CORPUS_PATH", properties.getProperty("INPUT_CORPUS_PATH"));
+		propertiesMap.put("CORPUS_SLICE", properties.getProperty("CORPUS_SLICE"));
 		propertiesMap.put("STOP_WORDS_FILE", properties.getProperty("STOP_WORDS_FILE"));
 		propertiesMap.put("QUERY_XML", properties.getProperty("QUERY_XML"));
 		
@@ -74,12 +88,101 @@ public class Utilities {
 		
 		propertiesMap.put("DOCUMENT_ID_FILE", properties.getProperty("DOCUMENT_ID_FILE"));
 		propertiesMap.put("DOCUMENT_INDEX_FILE", properties.getProperty("DOCUMENT_INDEX_FILE"));
+		propertiesMap.put("DOCUMENT_INDEX_BINARY_FILE", properties.getProperty("DOCUMENT_INDEX_BINARY_FILE"));
+		propertiesMap.put("DOCUMENT_OFFSET_FILE", properties.getProperty("DOCUMENT_OFFSET_FILE"));
 		propertiesMap.put("SORTED_DOCUMENT_INDEX_FILE", properties.getProperty("SORTED_DOCUMENT_INDEX_FILE"));
 		
 		propertiesMap.put("TERMS_ID_FILE", properties.getProperty("TERMS_ID_FILE"));
 		propertiesMap.put("TERM_INDEX_FILE", properties.getProperty("TERM_INDEX_FILE"));
 		propertiesMap.put("TERM_INFO_FILE", properties.getProperty("TERM_INFO_FILE"));
+		propertiesMap.put("IMPACT_INDEX_FILE", properties.getProperty("IMPACT_INDEX_FILE"));
+		propertiesMap.put("IMPACT_OFFSET_FILE", properties.getProperty("IMPACT_OFFSET_FILE"));
+		
+		propertiesMap.put("DOCUMENT_NAME_STORE_FILE", properties.getProperty("DOCUMENT_NAME_STORE_FILE"));
+		propertiesMap.put("DOCUMENT_FREQUENCY_FILE", properties.getProperty("DOCUMENT_FREQUENCY_FILE"));
+		propertiesMap.put("SEGMENT_FOLDER", properties.getProperty("SEGMENT_FOLDER"));
+		propertiesMap.put("SEGMENT_MERGE_FACTOR", properties.getProperty("SEGMENT_MERGE_FACTOR"));
+		propertiesMap.put("INDEX_PARSE_THREADS", properties.getProperty("INDEX_PARSE_THREADS"));
+		propertiesMap.put("INDEX_QUEUE_CAPACITY", properties.getProperty("INDEX_QUEUE_CAPACITY"));
+		propertiesMap.put("SORT_RUN_SIZE_MB", properties.getProperty("SORT_RUN_SIZE_MB"));
+		propertiesMap.put("SORT_THREADS", properties.getProperty("SORT_THREADS"));
+		propertiesMap.put("DELETED_DOCS_FILE", properties.getProperty("DELETED_DOCS_FILE"));
+		propertiesMap.put("DEDUP_MODE", properties.getProperty("DEDUP_MODE"));
+		propertiesMap.put("DEDUP_THRESHOLD", properties.getProperty("DEDUP_THRESHOLD"));
+		propertiesMap.put("DUPLICATE_DOCS_FILE", properties.getProperty("DUPLICATE_DOCS_FILE"));
+		propertiesMap.put("DOC_REORDER", properties.getProperty("DOC_REORDER"));
+		
+		propertiesMap.put("POSTING_CACHE_SIZE_MB", properties.getProperty("POSTING_CACHE_SIZE_MB"));
+		propertiesMap.put("POSTING_CACHE_BLOCK_SIZE_KB", properties.getProperty("POSTING_CACHE_BLOCK_SIZE_KB"));
+		propertiesMap.put("QUERY_CACHE_SIZE", properties.getProperty("QUERY_CACHE_SIZE"));
+		propertiesMap.put("RESULT_DEPTH", properties.getProperty("RESULT_DEPTH"));
+		propertiesMap.put("BLOCK_SCORING", properties.getProperty("BLOCK_SCORING"));
+		propertiesMap.put("IMPACT_INDEX", properties.getProperty("IMPACT_INDEX"));
+		propertiesMap.put("QUERY_TIME_BUDGET_MS", properties.getProperty("QUERY_TIME_BUDGET_MS"));
+		propertiesMap.put("QUERY_POSTING_BUDGET", properties.getProperty("QUERY_POSTING_BUDGET"));
+		propertiesMap.put("RANKER_MEMORY_BUDGET_MB", properties.getProperty("RANKER_MEMORY_BUDGET_MB"));
+		propertiesMap.put("LIVE_COLLECTION_STATISTICS", properties.getProperty("LIVE_COLLECTION_STATISTICS"));
+		
+		propertiesMap.put("METRICS_ENABLED", properties.getProperty("METRICS_ENABLED"));
+		propertiesMap.put("METRICS_PORT", properties.getProperty("METRICS_PORT"));
 		
 		return propertiesMap;
 	}
+	
+	/**
+	 * Copy the configuration properties, moving all the index files from INDEX_FOLDER to another folder
+	 * @param propertiesMap configuration properties
+	 * @param indexFolder folder to hold the index files
+	 * @return configuration properties with the relocated index files
+	 */
+	public static HashMap<String, String> relocateIndexProperties(HashMap<String, String> propertiesMap, String indexFolder) {
+		HashMap<String, String> relocatedMap = new HashMap<String, String>(propertiesMap);
+		String currentFolder = propertiesMap.get("INDEX_FOLDER");
+		if (!indexFolder.endsWith("/")) {
+			indexFolder = indexFolder + "/";
+		}
+		for (Map.Entry<String, String> entry : propertiesMap.entrySet()) {
+			String value = entry.getValue();
+			if (null != value && null != currentFolder && value.startsWith(currentFolder)) {
+				relocatedMap.put(entry.getKey(), indexFolder + value.substring(currentFolder.length()));
+			}
+		}
+		return relocatedMap;
+	}
+	
+	/**
+	 * Parse an integer valued configuration property
+	 * @param value property value, may be null if the property is not configured
+	 * @param defaultValue value to be used if property is not configured or is not a number
+	 * @return parsed property value
+	 */
+	public static int parseIntProperty(String value, int defaultValue) {
+		if (null == value) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid numeric property value: " + value);
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Parse a decimal configuration property
+	 * @param value property value, may be null if the property is not configured
+	 * @param defaultValue value to be used if property is not configured or is not a number
+	 * @return parsed property value
+	 */
+	public static double parseDoubleProperty(String value, double defaultValue) {
+		if (null == value) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid numeric property value: " + value);
+		}
+		return defaultValue;
+	}
 }
@@ -0,0 +1,211 @@
+package com.rank_documents;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Block oriented Okapi BM-25 scoring over decoded posting lists.
+ *          Document length normalization is precomputed once per document and the idf once per query term, so the
+ *          per posting work is the saturation formula alone. Postings are processed in fixed size blocks: document
+ *          length factors are gathered into a block array, the saturation is computed by a branch free loop over
+ *          primitive arrays (which the JIT compiles to SIMD instructions), and the block is then scattered into a
+ *          dense score accumulator.
+ *
+ *          Scores are identical to ScoringFunctions.computeBM25Score as every term is evaluated with the same
+ *          expressions and in the same order.
+ *
+ */
+public class BM25BlockScorer {
+
+    private static final int BLOCK_SIZE = 128;
+    // Blocks scored between two checks of the time budget of the query
+    private static final int BUDGET_CHECK_BLOCKS = 8;
+
+    private static final double k1 = 1.2;
+    private static final double k2 = 100;
+    private static final double b = 0.75;
+    private static final double logBase2 = Math.log(2);
+
+    private final int documentCount;
+    private final double[] docIdToLengthFactor;
+
+    // Reused across queries, only the entries of touched documents are reset
+    private double[] scoreAccumulator;
+    private int[] touchedDocIds;
+    private boolean[] isTouched;
+    private int touchedCount;
+
+    private final double[] blockLengthFactors = new double[BLOCK_SIZE];
+    private final double[] blockSaturations = new double[BLOCK_SIZE];
+
+
+    /**
+     * Constructor, precomputes the document length factor K for every document
+     * @param docLengths
+     *        length of each document keyed by document id
+     * @param avgDocLength
+     *        average document length in corpus
+     * @param documentCount
+     *        total number of documents in corpus
+     */
+    public BM25BlockScorer (Map<Integer, Integer> docLengths, double avgDocLength, int documentCount) {
+
+        this.documentCount = documentCount;
+
+        int maxDocId = 0;
+        for (int docId : docLengths.keySet()) {
+            maxDocId = Math.max(maxDocId, docId);
+        }
+        docIdToLengthFactor = new double[maxDocId + 1];
+        for (int docId = 0; docId <= maxDocId; docId++) {
+            Integer docLength = docLengths.get(docId);
+            docIdToLengthFactor[docId] = null == docLength ? k1 : k1 * ((1 - b) + (b * (docLength / avgDocLength)));
+        }
+
+        scoreAccumulator = new double[maxDocId + 1];
+        isTouched = new boolean[maxDocId + 1];
+        touchedDocIds = new int[1024];
+    }
+
+
+    /**
+     * @param documentCount
+     *        total number of documents in corpus
+     * @return estimated heap size of a scorer, its per document arrays dominate
+     */
+    public static long estimateHeapSize (int documentCount) {
+
+        // Length factor and score accumulator doubles, touched flag
+        return (documentCount + 1L) * (8 + 8 + 1);
+    }
+
+
+    /**
+     * Score all the documents present in the posting lists of the query terms
+     * @param postingLists
+     *        posting list for each distinct query term, in query order
+     * @param queryTermFrequency
+     *        frequency of each term in the query keyed by term id
+     * @param termDocumentOccurence
+     *        number of documents containing each term keyed by term id
+     * @return BM-25 score keyed by document id
+     */
+    public HashMap<Integer, Double> score (List<PostingList> postingLists, Map<String, Integer> queryTermFrequency,
+            Map<String, Integer> termDocumentOccurence) {
+
+        return score(postingLists, queryTermFrequency, termDocumentOccurence, null);
+    }
+
+
+    /**
+     * Score the documents present in the posting lists of the query terms within the time budget of a query, scoring
+     * stops with the documents scored so far once the budget is spent
+     * @param postingLists
+     *        posting list for each distinct query term, in query order
+     * @param queryTermFrequency
+     *        frequency of each term in the query keyed by term id
+     * @param termDocumentOccurence
+     *        number of documents containing each term keyed by term id
+     * @param budget
+     *        budget of the query, null to score all the postings
+     * @return BM-25 score keyed by document id
+     */
+    public HashMap<Integer, Double> score (List<PostingList> postingLists, Map<String, Integer> queryTermFrequency,
+            Map<String, Integer> termDocumentOccurence, QueryBudget budget) {
+
+        touchedCount = 0;
+        for (PostingList postingList : postingLists) {
+            String termId = postingList.getTermId();
+            int termQueryFrequency = queryTermFrequency.get(termId);
+
+            double idf = Math.log((documentCount + 0.5) / (termDocumentOccurence.get(termId) + 0.5)) / logBase2;
+            double queryFactor = (((1 + k2) * termQueryFrequency) / (k2 + termQueryFrequency));
+            if (!scorePostingList(postingList, idf, queryFactor, budget)) {
+                break;
+            }
+        }
+
+        HashMap<Integer, Double> bm25ScoredDocuments = new HashMap<Integer, Double>(touchedCount * 2);
+        for (int touched = 0; touched < touchedCount; touched++) {
+            int docId = touchedDocIds[touched];
+            bm25ScoredDocuments.put(docId, scoreAccumulator[docId]);
+            scoreAccumulator[docId] = 0.0;
+            isTouched[docId] = false;
+        }
+        return bm25ScoredDocuments;
+    }
+
+
+    /**
+     * Add the contribution of one term to the score accumulator, one block of postings at a time
+     * @return false if the time budget was spent before all the postings were scored
+     */
+    private boolean scorePostingList (PostingList postingList, double idf, double queryFactor, QueryBudget budget) {
+
+        int[] docIds = postingList.getDocIds();
+        int[] termFrequencies = postingList.getTermFrequencies();
+        int size = postingList.size();
+
+        for (int blockStart = 0; blockStart < size; blockStart += BLOCK_SIZE) {
+            if (null != budget && blockStart % (BLOCK_SIZE * BUDGET_CHECK_BLOCKS) == 0 && budget.isPastDeadline()) {
+                return false;
+            }
+            int blockLength = Math.min(BLOCK_SIZE, size - blockStart);
+
+            // Gather
+            for (int i = 0; i < blockLength; i++) {
+                int docId = docIds[blockStart + i];
+                blockLengthFactors[i] = docId < docIdToLengthFactor.length ? docIdToLengthFactor[docId] : k1;
+            }
+
+            // Saturation, a straight line loop over primitive arrays
+            for (int i = 0; i < blockLength; i++) {
+                double termDocumentFrequency = termFrequencies[blockStart + i];
+                blockSaturations[i] = ((1 + k1) * termDocumentFrequency) / (blockLengthFactors[i] + termDocumentFrequency);
+            }
+
+            // Scatter
+            for (int i = 0; i < blockLength; i++) {
+                int docId = docIds[blockStart + i];
+                ensureCapacity(docId);
+                if (!isTouched[docId]) {
+                    isTouched[docId] = true;
+                    addTouched(docId);
+                }
+                scoreAccumulator[docId] += idf * blockSaturations[i] * queryFactor;
+            }
+        }
+        return true;
+    }
+
+
+    private void addTouched (int docId) {
+
+        if (touchedCount == touchedDocIds.length) {
+            int[] grown = new int[touchedCount * 2];
+            System.arraycopy(touchedDocIds, 0, grown, 0, touchedCount);
+            touchedDocIds = grown;
+        }
+        touchedDocIds[touchedCount++] = docId;
+    }
+
+
+    /**
+     * Grow the accumulator for document id's beyond the ones known at construction
+     */
+    private void ensureCapacity (int docId) {
+
+        if (docId >= scoreAccumulator.length) {
+            int capacity = Math.max(docId + 1, scoreAccumulator.length * 2);
+            double[] grownAccumulator = new double[capacity];
+            boolean[] grownTouched = new boolean[capacity];
+            System.arraycopy(scoreAccumulator, 0, grownAccumulator, 0, scoreAccumulator.length);
+            System.arraycopy(isTouched, 0, grownTouched, 0, isTouched.length);
+            scoreAccumulator = grownAccumulator;
+            isTouched = grownTouched;
+        }
+    }
+}
@@ -4,9 +4,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -18,7 +20,8 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.java.searchengine.constants.Constants;
-import com.java.searchengine.util.Utilities;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.generation.IndexGenerations;
 
 /**
  * 
@@ -30,19 +33,31 @@ public class DocumentPreProcessor {
 
     // Document length
     private HashMap<Integer, Integer> docIdToItsTermCount;
-    private static HashMap<String, String> propertyKeyToFileLocation;
+    private final HashMap<String, String> propertyKeyToFileLocation;
 
     private int vocabularySize = 0;
     private int termCountInCorpus = 0;
     private int totalDocumentCount = 1;
     private int termCountInDocument = 0;
+    private long distinctTermCountInCorpus = 0;
     private double avgDocLength = 0.0;
     private double avgQueryLength = 0.0;
 
 
     public DocumentPreProcessor () {
 
-        propertyKeyToFileLocation = Utilities.loadProperties();
+        this(IndexGenerations.loadCurrentProperties());
+    }
+
+
+    /**
+     * Constructor for pre processing the index files of a given generation
+     * @param propertyKeyToFileLocation
+     *        configuration properties locating the index files
+     */
+    public DocumentPreProcessor (HashMap<String, String> propertyKeyToFileLocation) {
+
+        this.propertyKeyToFileLocation = propertyKeyToFileLocation;
     }
 
 
@@ -148,7 +163,7 @@ public class DocumentPreProcessor {
         try {
             BufferedReader documentIndexReader = new BufferedReader(new FileReader(documentIndexFile));
             docToTermToTermCountInDoc = computeTermCountPerDocument(documentIndexReader);
-            setAvgDocLength((double) termCountInCorpus / totalDocumentCount);
+            setAvgDocLength(totalDocumentCount == 0 ? 0 : (double) termCountInCorpus / totalDocumentCount);
 
         } catch (IOException e) {
             System.err.println("Could not read file" + documentIndexFile.getAbsolutePath());
@@ -168,7 +183,10 @@ public class DocumentPreProcessor {
     HashMap<Integer, HashMap<String, Integer>> computeTermCountPerDocument (BufferedReader documentIndexReader)
             throws NumberFormatException, IOException {
 
-        HashMap<String, Integer> termCount;
+        HashMap<String, Integer> termCount = null;
+        int docId = 0;
+        totalDocumentCount = 0;
+        termCountInCorpus = 0;
         docIdToItsTermCount = new HashMap<Integer, Integer>();
         HashMap<Integer, HashMap<String, Integer>> docToTermToTermCountInDoc = new HashMap<Integer, HashMap<String, Integer>>();
 
@@ -179,31 +197,99 @@ public class DocumentPreProcessor {
             // -2 as first element is docId and second is termId
             int termFrequency = temp.length - 2;
 
-            // Parse term-positions for same document
-            if (Integer.parseInt(temp[0]) == totalDocumentCount) {
-                if (!docToTermToTermCountInDoc.containsKey(totalDocumentCount)) {
-                    termCount = new HashMap<String, Integer>();
-                } else {
-                    termCount = docToTermToTermCountInDoc.get(totalDocumentCount);
-                    termCount.put(temp[1], termFrequency);
-                    docToTermToTermCountInDoc.put(totalDocumentCount, termCount);
-                    termCountInDocument += termFrequency;
+            // Lines of a document are contiguous, a new docId starts the next document
+            if (null == termCount || Integer.parseInt(temp[0]) != docId) {
+                if (null != termCount) {
+                    termCountInCorpus += termCountInDocument;
+                    docIdToItsTermCount.put(docId, termCountInDocument);
                 }
-            } else {
-                termCountInCorpus += termCountInDocument;
-                docIdToItsTermCount.put(totalDocumentCount, termCountInDocument);
+                docId = Integer.parseInt(temp[0]);
+                termCount = new HashMap<String, Integer>();
+                docToTermToTermCountInDoc.put(docId, termCount);
                 totalDocumentCount++;
-                termCountInDocument = termFrequency;
+                termCountInDocument = 0;
             }
+            termCount.put(temp[1], termFrequency);
+            termCountInDocument += termFrequency;
+        }
+        if (null != termCount) {
+            termCountInCorpus += termCountInDocument;
+            docIdToItsTermCount.put(docId, termCountInDocument);
         }
-        termCountInCorpus += termCountInDocument;
-        docIdToItsTermCount.put(totalDocumentCount, termCountInDocument);
 
         documentIndexReader.close();
         return docToTermToTermCountInDoc;
     }
 
 
+    /**
+     * Compute document count, term count in corpus and average document length from the offset table of the forward
+     * index, without decoding any document
+     * @param forwardIndex
+     *        binary forward index
+     */
+    public void computeDocumentStatistics (ForwardIndex forwardIndex) {
+
+        totalDocumentCount = 0;
+        termCountInCorpus = 0;
+        distinctTermCountInCorpus = 0;
+        for (int docId = 1; docId <= forwardIndex.getMaxDocId(); docId++) {
+            int distinctTermCount = forwardIndex.getDistinctTermCount(docId);
+            if (distinctTermCount > 0) {
+                totalDocumentCount++;
+                termCountInCorpus += forwardIndex.getTotalTermCount(docId);
+                distinctTermCountInCorpus += distinctTermCount;
+            }
+        }
+        setAvgDocLength(totalDocumentCount == 0 ? 0 : (double) termCountInCorpus / totalDocumentCount);
+    }
+
+
+    /**
+     * Load the length of every document from the forward index
+     * @param forwardIndex
+     *        binary forward index
+     * @return docIdToItsTermCount, format <docId, document length>
+     */
+    public HashMap<Integer, Integer> getDocLengths (ForwardIndex forwardIndex) {
+
+        docIdToItsTermCount = new HashMap<Integer, Integer>();
+        for (int docId = 1; docId <= forwardIndex.getMaxDocId(); docId++) {
+            if (forwardIndex.getDistinctTermCount(docId) > 0) {
+                docIdToItsTermCount.put(docId, forwardIndex.getTotalTermCount(docId));
+            }
+        }
+        return docIdToItsTermCount;
+    }
+
+
+    /**
+     * Load term count for each term in a document, for all documents, from the forward index
+     * @param forwardIndex
+     *        binary forward index
+     * @return docToTermToTermCountInDoc, format <docId, <termId, termCount>>
+     */
+    public HashMap<Integer, HashMap<String, Integer>> getTermCountPerDocument (ForwardIndex forwardIndex) {
+
+        HashMap<Integer, HashMap<String, Integer>> docToTermToTermCountInDoc = new HashMap<Integer, HashMap<String, Integer>>();
+        try {
+            for (int docId = 1; docId <= forwardIndex.getMaxDocId(); docId++) {
+                if (forwardIndex.getDistinctTermCount(docId) == 0) {
+                    continue;
+                }
+                HashMap<String, Integer> termCount = new HashMap<String, Integer>();
+                for (Map.Entry<Integer, Integer> term : forwardIndex.getTermFrequencies(docId).entrySet()) {
+                    termCount.put(String.valueOf(term.getKey()), term.getValue());
+                }
+                docToTermToTermCountInDoc.put(docId, termCount);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read file" + propertyKeyToFileLocation.get("DOCUMENT_INDEX_BINARY_FILE"));
+        }
+        return docToTermToTermCountInDoc;
+    }
+
+
     /**
      * Extract total count of documents in which term occurs
      * @return termToItsContainingDocCount, format: <term, doc count containing the term
@@ -211,20 +297,36 @@ public class DocumentPreProcessor {
     public LinkedHashMap<String, Integer> extractTermOccurenceInDocuments () {
 
         File termInfoFile = new File(propertyKeyToFileLocation.get("TERM_INFO_FILE")).getAbsoluteFile();
+        return extractTermOccurenceInDocuments(Collections.singletonList(termInfoFile));
+    }
+
+
+    /**
+     * Extract total count of documents in which term occurs, adding up the counts of the main index and the segments
+     * @param termInfoFiles
+     *        term_info.txt of the main index and of each segment
+     * @return termToItsContainingDocCount, format: <term, doc count containing the term
+     */
+    public LinkedHashMap<String, Integer> extractTermOccurenceInDocuments (List<File> termInfoFiles) {
+
         LinkedHashMap<String, Integer> termToItsContainingDocCount = new LinkedHashMap<String, Integer>();
 
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(termInfoFile));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] tokens = line.split(Constants.tab);
-                String termId = tokens[0];
-                int termDocCount = Integer.parseInt(tokens[3]);
-                termToItsContainingDocCount.put(termId, termDocCount);
+        for (File termInfoFile : termInfoFiles) {
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(termInfoFile));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] tokens = line.split(Constants.tab);
+                    String termId = tokens[0];
+                    int termDocCount = Integer.parseInt(tokens[3]);
+                    Integer previousDocCount = termToItsContainingDocCount.get(termId);
+                    termToItsContainingDocCount.put(termId, null == previousDocCount ? termDocCount : previousDocCount
+                            + termDocCount);
+                }
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Could not read file" + termInfoFile.getAbsolutePath());
             }
-            reader.close();
-        } catch (IOException e) {
-            System.err.println("Could not read file" + termInfoFile.getAbsolutePath());
         }
         return termToItsContainingDocCount;
     }
@@ -249,6 +351,15 @@ public class DocumentPreProcessor {
     }
 
 
+    /**
+     * @return sum over all the documents of the number of distinct terms in the document
+     */
+    public long getDistinctTermCountInCorpus () {
+
+        return distinctTermCountInCorpus;
+    }
+
+
     /**
      * @return the totalDocumentCount
      */
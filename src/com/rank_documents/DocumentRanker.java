@@ -6,18 +6,32 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.tartarus.snowball.EnglishSnowballStemmerFactory;
 import org.tartarus.snowball.util.StemmerException;
 
+import com.java.searchengine.cache.PostingBlockCache;
+import com.java.searchengine.cache.QueryResultCache;
+import com.java.searchengine.generation.IndexGenerations;
+import com.java.searchengine.metrics.MetricsRegistry;
+import com.java.searchengine.metrics.PostingListReadEvent;
+import com.java.searchengine.metrics.QueryExecutedEvent;
+import com.java.searchengine.segment.SegmentReader;
 import com.java.searchengine.util.FileUtilities;
 import com.java.searchengine.util.Utilities;
+import com.rank_documents.query.BooleanQueryEvaluator;
+import com.rank_documents.query.QueryNode;
+import com.rank_documents.query.QueryParser;
 
 /**
  * 
@@ -27,28 +41,76 @@ import com.java.searchengine.util.Utilities;
  */
 public class DocumentRanker {
 
-    private static ScoringFunctions scoringFn;
-    private static File termIndexFile;
+    private ScoringFunctions scoringFn;
+    private BM25BlockScorer bm25BlockScorer;
+    private ImpactScorer impactScorer;
+    private static boolean blockScoring;
+    private static boolean resultCaching = true;
+    private static boolean liveCollectionStatistics;
+    private static PostingBlockCache postingCache;
+    private static QueryResultCache resultCache;
+    private static int resultDepth;
+    private static int queryTimeBudget;
+    private static int queryPostingBudget;
     private static HashMap<String, String> properties;
 
+    // Stages of ranking a query, score excludes posting read and decode except for impact scoring
+    private static final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private static final MetricsRegistry.Timer queryTimer = metrics.timer("rank.query");
+    private static final MetricsRegistry.Timer lookupTimer = metrics.timer("rank.term_lookup");
+    private static final MetricsRegistry.Timer readTimer = metrics.timer("rank.posting_read");
+    private static final MetricsRegistry.Timer decodeTimer = metrics.timer("rank.decode");
+    private static final MetricsRegistry.Timer scoreTimer = metrics.timer("rank.score");
+    private static final MetricsRegistry.Timer topKTimer = metrics.timer("rank.top_k");
+    private static final MetricsRegistry.Counter queryCounter = metrics.counter("rank.queries");
+    private static final MetricsRegistry.Counter postingCounter = metrics.counter("rank.postings");
+    private static final MetricsRegistry.Counter bytesReadCounter = metrics.counter("rank.posting_bytes");
+    private static final MetricsRegistry.Histogram queryPostingsHistogram = metrics.histogram(
+            "rank.postings_per_query", new long[] { 10, 100, 1000, 10000, 100000, 1000000, 10000000 }, 1);
+    // BM-25 constants ordering the postings of a term cut short by the query budget
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+    // Postings gathered between two checks of the time budget of the query
+    private static final int BUDGET_CHECK_INTERVAL = 1024;
+    // Query latency buckets in nanoseconds, from half a millisecond to ten seconds
+    private static final long[] LATENCY_BOUNDS = { 500000L, 1000000L, 2500000L, 5000000L, 10000000L, 25000000L,
+            50000000L, 100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L, 5000000000L, 10000000000L };
+
     /******************************* Pre Processed data structures and variables ***************************************/
-    private static int totalDocumentCount;
-    private static double totalTermCount;
-    private static double avgDocLength;
     private static double avgQueryLength;
-    private static double vocabularySize;
-
     private static HashSet<String> stopWords;
-
     private static LinkedHashMap<String, String> queries;
-    private static HashMap<Integer, Integer> docLengths;
-    private static HashMap<Integer, Double> documentMagnitudes;
-    private static HashMap<Integer, HashMap<String, Integer>> allTermsCountInDocument;
+
+    // Pre processed index of the current generation, replaced by a newly loaded snapshot once a full build publishes
+    // the next generation. Rankers pin the snapshot while ranking a query, so a query never mixes two generations
+    private static volatile IndexSnapshot current;
+    private static IndexGenerations generations;
+    private static volatile long generationStamp;
+    private static boolean reloading;
     /*****************************************************************************************************************/
 
     /******************************** Data structures created for individual query *************************************/
-    private static double queryTermsOccurencesInCorpous = 0;
-    private static LinkedHashMap<String, Integer> termOccurenceInDocuments;
+    // Kept per ranker, so that concurrent queries are ranked with one ranker per thread (see createWorker)
+    private double queryTermsOccurencesInCorpous = 0;
+    private ArrayList<String> queryTermIds;
+    // Term id of each term of the query as typed, null for the terms not in the vocabulary
+    private HashMap<String, String> queryTermIdsByTerm;
+    private boolean lastQueryApproximate;
+    private long queryPostingsDecoded;
+    private boolean reference = false;
+    // Snapshot pinned by the ranker, and the snapshot its block scorer was created for
+    private IndexSnapshot index;
+    private IndexSnapshot scorerIndex;
+    private int pinCount = 0;
+    // Documents of equal score are ranked by name, so that the ranking does not depend on the document id's
+    private final Comparator<Integer> documentNameOrder = new Comparator<Integer>() {
+
+        @Override
+        public int compare (Integer docId1, Integer docId2) {
+
+            return getDocumentName(docId1).compareTo(getDocumentName(docId2));
+        }
+    };
 
 
     /*****************************************************************************************************************/
@@ -57,7 +119,166 @@ public class DocumentRanker {
 
         properties = Utilities.loadProperties();
         scoringFn = new ScoringFunctions();
-        termIndexFile = new File(properties.get("TERM_INDEX_FILE")).getAbsoluteFile();
+        generations = new IndexGenerations(new File(properties.get("INDEX_FOLDER")));
+        liveCollectionStatistics = !"false".equalsIgnoreCase(properties.get("LIVE_COLLECTION_STATISTICS"));
+        postingCache = PostingBlockCache.getInstance();
+        resultCache = new QueryResultCache(Utilities.parseIntProperty(properties.get("QUERY_CACHE_SIZE"), 1024));
+        resultDepth = Utilities.parseIntProperty(properties.get("RESULT_DEPTH"), 0);
+        blockScoring = !"false".equalsIgnoreCase(properties.get("BLOCK_SCORING"));
+        queryTimeBudget = Utilities.parseIntProperty(properties.get("QUERY_TIME_BUDGET_MS"), 0);
+        queryPostingBudget = Utilities.parseIntProperty(properties.get("QUERY_POSTING_BUDGET"), 0);
+    }
+
+
+    /**
+     * Constructor for a ranker sharing the configuration and pre processed data of an existing ranker
+     * @param scoringFn
+     *        scoring functions of the new ranker
+     */
+    private DocumentRanker (ScoringFunctions scoringFn) {
+
+        this.scoringFn = scoringFn;
+    }
+
+
+    /**
+     * Create a ranker sharing the pre processed data of this ranker, with its own scorers and per query state, so that
+     * queries can be ranked concurrently with one ranker per thread
+     * @return ranker ready to rank queries
+     */
+    public DocumentRanker createWorker () {
+
+        DocumentRanker worker = new DocumentRanker(new ScoringFunctions());
+        worker.scorerIndex = null;
+        return worker;
+    }
+
+
+    /**
+     * Create a ranker sharing the pre processed data of this ranker which always uses the reference implementation
+     * of the scoring functions: no block or impact scoring, no query budget and no result cache
+     * @return reference ranker, to check the rankings of the optimized paths against
+     */
+    public DocumentRanker createReferenceWorker () {
+
+        DocumentRanker worker = new DocumentRanker(new ScoringFunctions());
+        worker.reference = true;
+        return worker;
+    }
+
+
+    /**
+     * Pin the current snapshot of the index for the duration of a query, nested calls share the outer pin. The block
+     * scorer is created again whenever the pinned snapshot is a newly loaded generation, and an impact scorer of the
+     * snapshot is borrowed until the pin is released
+     */
+    private void pin () {
+
+        if (pinCount++ > 0) {
+            return;
+        }
+        index = acquireCurrentSnapshot();
+        if (index != scorerIndex && !reference) {
+            bm25BlockScorer = index.blockScoring ? new BM25BlockScorer(index.docLengths, index.avgDocLength,
+                    index.totalDocumentCount) : null;
+            scorerIndex = index;
+        }
+        impactScorer = reference ? null : index.borrowImpactScorer();
+    }
+
+
+    /**
+     * Release the snapshot pinned by {@link #pin()} once the outermost call returns
+     */
+    private void unpin () {
+
+        if (--pinCount == 0) {
+            index.returnImpactScorer(impactScorer);
+            impactScorer = null;
+            index.release();
+        }
+    }
+
+
+    /**
+     * Acquire the current snapshot, starting to load the current generation in the background if a full build
+     * published a generation since the snapshot was loaded. Queries keep ranking on the previous snapshot until the
+     * new one is loaded
+     * @return snapshot pinned until released
+     */
+    private static IndexSnapshot acquireCurrentSnapshot () {
+
+        long stamp = generations.getStamp();
+        if (stamp != generationStamp) {
+            reloadGeneration(stamp);
+        }
+        while (true) {
+            IndexSnapshot snapshot = current;
+            if (snapshot.acquire()) {
+                return snapshot;
+            }
+        }
+    }
+
+
+    /**
+     * Load the current generation on a background thread and swap it in as the current snapshot. The previous
+     * snapshot is closed once the queries pinning it are ranked
+     * @param stamp
+     *        stamp of the CURRENT file
+     */
+    private static synchronized void reloadGeneration (long stamp) {
+
+        if (reloading || stamp == generationStamp) {
+            return;
+        }
+        // A generation failing to load is not retried until the next one is published
+        generationStamp = stamp;
+        final String generation = generations.getCurrentGeneration();
+        if (null == generation || generation.equals(current.generation)) {
+            return;
+        }
+        reloading = true;
+        Thread reloader = new Thread(new Runnable() {
+
+            @Override
+            public void run () {
+
+                IndexSnapshot snapshot = null;
+                try {
+                    snapshot = new IndexSnapshot(generation, generations.getGenerationProperties(properties,
+                            generation), postingCache);
+                    snapshot.load(new DocumentPreProcessor(snapshot.properties), blockScoring,
+                            liveCollectionStatistics);
+                    System.out.println("Ranking over index " + generation);
+                } finally {
+                    IndexSnapshot retired = snapshot;
+                    synchronized (DocumentRanker.class) {
+                        if (null != snapshot && snapshot.loaded) {
+                            retired = current;
+                            current = snapshot;
+                        }
+                        reloading = false;
+                    }
+                    if (null != retired) {
+                        retired.release();
+                    }
+                }
+            }
+        }, "index-reload");
+        reloader.setDaemon(true);
+        reloader.start();
+    }
+
+
+    /**
+     * Enable or disable the query result cache, e.g. to measure ranking latency for repeated queries
+     * @param enabled
+     *        false to rank every query from the index
+     */
+    public static void setResultCaching (boolean enabled) {
+
+        resultCaching = enabled;
     }
 
 
@@ -76,21 +297,169 @@ public class DocumentRanker {
 
         try {
             BufferedWriter outputWriter = new BufferedWriter(new FileWriter(outputFile.getAbsoluteFile(), true));
+            int approximateQueryCount = 0;
 
             for (Map.Entry<String, String> query : queries.entrySet()) {
-                Map<Integer, Double> scoredDocuments = scoreRelevantDocumentsForEachQuery(query.getValue(),
-                        scoringFunction);
-                Map<Integer, Double> rankedDocuments = Utilities.rankDocuments(scoredDocuments);
-                writeOutput(query.getKey(), rankedDocuments, outputWriter);
+                // Document names are written from the generation the query was ranked on
+                pin();
+                try {
+                    Map<Integer, Double> rankedDocuments = rankDocumentsForQuery(query.getValue(), scoringFunction);
+                    writeOutput(query.getKey(), rankedDocuments, outputWriter);
+                } finally {
+                    unpin();
+                }
+                if (lastQueryApproximate) {
+                    approximateQueryCount++;
+                }
             }
             outputWriter.close();
             System.out.println(outputFile + " has been created");
+            if (approximateQueryCount > 0) {
+                System.out.println(approximateQueryCount + " of " + queries.size()
+                        + " queries ran out of their budget, their results are approximate");
+            }
+            postingCache.printStatistics();
+            resultCache.printStatistics();
+            if (metrics.isEnabled()) {
+                metrics.printReport("rank.");
+                System.out.println(String.format("Ranked %.0f postings/sec of query time",
+                        metrics.getRate("rank.postings", "rank.query")));
+            }
         } catch (IOException e) {
             System.err.println("Could not create output file : " + outputFile.getAbsolutePath());
         }
     }
 
 
+    /**
+     * Rank the relevant documents for a query in order of decreasing relevance, serving repeated queries from the
+     * query result cache. Queries using AND, OR, NOT or parentheses only rank the documents matching the boolean
+     * expression, scored on the non negated terms. If the query runs out of its time or posting budget the best
+     * documents found so far are returned and {@link #isLastQueryApproximate()} is set
+     * @param queryText
+     *        Query to find relevant documents
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @return relevant documents for the query in order of decreasing relevance, limited to the result depth
+     */
+    public Map<Integer, Double> rankDocumentsForQuery (String queryText, String scoringFunction) {
+
+        pin();
+        try {
+            QueryExecutedEvent queryEvent = new QueryExecutedEvent();
+            queryEvent.begin();
+            long queryStart = queryTimer.start();
+            queryPostingsDecoded = 0;
+            QueryBudget budget = reference ? QueryBudget.unlimited() : new QueryBudget(queryTimeBudget,
+                    queryPostingBudget);
+            lastQueryApproximate = false;
+            QueryNode booleanQuery = null;
+            String scoringText = queryText;
+            if (QueryParser.isBooleanQuery(queryText)) {
+                booleanQuery = new QueryParser().parse(queryText);
+                scoringText = getScoringText(booleanQuery);
+            }
+            long start = lookupTimer.start();
+            LinkedHashMap<String, Long> termOffsetForEachTermInQuery = computeOffsetForEachTermInQuery(scoringText,
+                    stopWords);
+            lookupTimer.stop(start);
+
+            String queryStructure = null == booleanQuery ? "" : booleanQuery.toString();
+            String cacheKey = QueryResultCache.buildKey(queryTermIds, scoringFunction, resultDepth, queryStructure);
+            long indexGeneration = 31 * (31 * IndexGenerations.getGenerationNumber(index.generation) + FileUtilities
+                    .getFileStamp(index.termInfoFile, index.termIndexFile)) + index.getTombstones().stamp;
+            boolean useResultCache = resultCaching && !reference;
+            Map<Integer, Double> rankedDocuments = useResultCache ? resultCache.get(cacheKey, indexGeneration) : null;
+            boolean cacheHit = null != rankedDocuments;
+
+            if (null == rankedDocuments) {
+                int[] candidateDocIds = null;
+                HashMap<String, PostingList> decodedPostingLists = null;
+                if (null != booleanQuery) {
+                    decodedPostingLists = new HashMap<String, PostingList>();
+                    candidateDocIds = evaluateBooleanQuery(booleanQuery, termOffsetForEachTermInQuery,
+                            decodedPostingLists);
+                }
+                Map<Integer, Double> scoredDocuments = scoreRelevantDocuments(termOffsetForEachTermInQuery,
+                        scoringFunction, candidateDocIds, decodedPostingLists, budget);
+                start = topKTimer.start();
+                rankedDocuments = limitToResultDepth(Utilities.rankDocuments(scoredDocuments, documentNameOrder));
+                topKTimer.stop(start);
+
+                // Approximate results depend on the load at the time of the query, only exact results are reused
+                lastQueryApproximate = budget.isApproximate();
+                if (useResultCache && !lastQueryApproximate) {
+                    resultCache.put(cacheKey, indexGeneration, rankedDocuments);
+                }
+            }
+            queryCounter.increment();
+            long queryNanos = queryTimer.stop(queryStart);
+            if (metrics.isEnabled()) {
+                metrics.histogram("rank.query_latency_seconds{function=\"" + scoringFunction + "\"}", LATENCY_BOUNDS,
+                        1e-9).observe(queryNanos);
+                queryPostingsHistogram.observe(queryPostingsDecoded);
+            }
+            queryEvent.commit(queryText, scoringFunction, queryTermIds.size(), queryPostingsDecoded,
+                    rankedDocuments.size(), cacheHit, lastQueryApproximate);
+            return rankedDocuments;
+        } finally {
+            unpin();
+        }
+    }
+
+
+    /**
+     * Build the bag of words text scored for a boolean query
+     * @param booleanQuery
+     *        root of the boolean query tree, may be null
+     * @return non negated terms of the query separated by space
+     */
+    String getScoringText (QueryNode booleanQuery) {
+
+        StringBuilder scoringText = new StringBuilder();
+        if (null != booleanQuery) {
+            List<String> scoringTerms = new ArrayList<String>();
+            booleanQuery.collectScoringTerms(scoringTerms);
+            for (String term : scoringTerms) {
+                scoringText.append(term).append(' ');
+            }
+        }
+        return scoringText.toString().trim();
+    }
+
+
+    /**
+     * @return name of the document in the pinned snapshot, empty if the document is not known
+     */
+    private String getDocumentName (int docId) {
+
+        String documentName = index.getDocumentName(docId);
+        return null == documentName ? "" : documentName;
+    }
+
+
+    /**
+     * Retain only the top result depth documents
+     * @param rankedDocuments
+     *        documents in order of decreasing relevance
+     * @return top ranked documents, all of them if result depth is not configured
+     */
+    Map<Integer, Double> limitToResultDepth (Map<Integer, Double> rankedDocuments) {
+
+        if (resultDepth <= 0 || rankedDocuments.size() <= resultDepth) {
+            return rankedDocuments;
+        }
+        LinkedHashMap<Integer, Double> topRankedDocuments = new LinkedHashMap<Integer, Double>();
+        for (Map.Entry<Integer, Double> document : rankedDocuments.entrySet()) {
+            if (topRankedDocuments.size() == resultDepth) {
+                break;
+            }
+            topRankedDocuments.put(document.getKey(), document.getValue());
+        }
+        return topRankedDocuments;
+    }
+
+
     /**
      * Score relevant documents for each query in the given set
      * @param queryText
@@ -101,12 +470,86 @@ public class DocumentRanker {
      */
     public Map<Integer, Double> scoreRelevantDocumentsForEachQuery (String queryText, String scoringFunction) {
 
+        pin();
+        try {
+            return scoreRelevantDocuments(computeOffsetForEachTermInQuery(queryText, stopWords), scoringFunction);
+        } finally {
+            unpin();
+        }
+    }
+
+
+    /**
+     * Score relevant documents for a query whose terms have been looked up in the index
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @return relevant documents for the query
+     */
+    Map<Integer, Double> scoreRelevantDocuments (LinkedHashMap<String, Long> termOffsetForEachTermInQuery,
+            String scoringFunction) {
+
+        return scoreRelevantDocuments(termOffsetForEachTermInQuery, scoringFunction, null, null, new QueryBudget(
+                queryTimeBudget, queryPostingBudget));
+    }
+
+
+    /**
+     * Score relevant documents for a query whose terms have been looked up in the index, restricted to the
+     * candidate documents matching a boolean query
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @param scoringFunction
+     *        String literal indicating the choice of scoring function
+     * @param candidateDocIds
+     *        documents matching the boolean query in increasing order, null to score all relevant documents
+     * @param decodedPostingLists
+     *        posting lists already decoded to evaluate the boolean query keyed by term id, null if none
+     * @param budget
+     *        time and posting budget of the query
+     * @return relevant documents for the query
+     */
+    Map<Integer, Double> scoreRelevantDocuments (LinkedHashMap<String, Long> termOffsetForEachTermInQuery,
+            String scoringFunction, int[] candidateDocIds, Map<String, PostingList> decodedPostingLists,
+            QueryBudget budget) {
+
         Map<Integer, Double> scoredDocuments;
+        HashMap<Integer, Double> documentMagnitudes;
         HashMap<String, Double> queryVector;
         HashMap<Integer, HashMap<String, Double>> documentVector;
         LinkedHashMap<String, Integer> termFrequencyInQuery;
-        LinkedHashMap<String, Long> termOffsetForEachTermInQuery = computeOffsetForEachTermInQuery(queryText, stopWords);
-        LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery = findRelevantDocumentsForAllTermsQuery(termOffsetForEachTermInQuery);
+
+        // Okapi BM-25 over precomputed impacts, or over decoded posting lists, does not need the per document term
+        // frequency maps
+        // The impact index only covers the documents of the last full build, and its impacts are computed with the
+        // statistics of the full collection
+        if (scoringFunction.equals("3") && null != impactScorer && index.getVisibleSegments().isEmpty()
+                && index.deletedDocumentCount == 0) {
+            try {
+                long start = scoreTimer.start();
+                scoredDocuments = impactScorer.score(computeQueryTermFrequencies(termOffsetForEachTermInQuery),
+                        budget);
+                removeDeleted(scoredDocuments);
+                scoreTimer.stop(start);
+                postingCounter.add(impactScorer.getPostingsScored());
+                queryPostingsDecoded += impactScorer.getPostingsScored();
+                return retainCandidates(scoredDocuments, candidateDocIds);
+            } catch (IOException e) {
+                System.err.println("Could not read impact index");
+            }
+        }
+        ArrayList<PostingList> postingLists = readPostingLists(termOffsetForEachTermInQuery, budget,
+                decodedPostingLists, candidateDocIds);
+        long start = scoreTimer.start();
+        if (scoringFunction.equals("3") && null != bm25BlockScorer) {
+            termFrequencyInQuery = scoringFn.computeTermFrequencyInQuery(termOffsetForEachTermInQuery);
+            scoredDocuments = bm25BlockScorer.score(postingLists, termFrequencyInQuery, index.termOccurenceInDocuments,
+                    budget);
+            scoreTimer.stop(start);
+            return scoredDocuments;
+        }
+        LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery = findRelevantDocumentsForPostingLists(postingLists, budget);
 
         switch (scoringFunction) {
             case "1": // Okapi TF
@@ -114,7 +557,7 @@ public class DocumentRanker {
 
                 queryVector = scoringFn.buildQueryVector(termFrequencyInQuery, avgQueryLength);
                 documentVector = scoringFn.buildTFDocumentVector(relevantDocumentsWithTermFrequenciesForQuery,
-                        allTermsCountInDocument, docLengths, avgDocLength);
+                        index.allTermsCountInDocument, index.docLengths, index.avgDocLength);
                 documentMagnitudes = scoringFn.getDocumentMagnitudes();
                 scoredDocuments = scoringFn.computeOkapiScore(documentVector, queryVector, documentMagnitudes);
                 break;
@@ -122,10 +565,10 @@ public class DocumentRanker {
             case "2": // TF-IDF
                 termFrequencyInQuery = scoringFn.computeTermFrequencyInQuery(termOffsetForEachTermInQuery);
                 queryVector = scoringFn.buildQueryVector(termFrequencyInQuery, avgQueryLength);
-                LinkedHashMap<String, Double> termTfIdfScore = scoringFn.getTermTfIdfScores(termOccurenceInDocuments,
-                        docLengths.size());
+                LinkedHashMap<String, Double> termTfIdfScore = scoringFn.getTermTfIdfScores(
+                        index.termOccurenceInDocuments, index.docLengths.size() - index.deletedDocumentCount);
                 documentVector = scoringFn.buildTFIDFDocumentVector(relevantDocumentsWithTermFrequenciesForQuery,
-                        termTfIdfScore, allTermsCountInDocument, docLengths, avgDocLength);
+                        termTfIdfScore, index.allTermsCountInDocument, index.docLengths, index.avgDocLength);
                 documentMagnitudes = scoringFn.getDocumentMagnitudes();
                 scoredDocuments = scoringFn.computeOkapiScore(documentVector, queryVector, documentMagnitudes);
                 break;
@@ -133,24 +576,56 @@ public class DocumentRanker {
             case "3": // Okapi BM-25
                 termFrequencyInQuery = scoringFn.computeTermFrequencyInQuery(termOffsetForEachTermInQuery);
                 scoredDocuments = scoringFn.computeBM25Score(relevantDocumentsWithTermFrequenciesForQuery,
-                        termFrequencyInQuery, termOccurenceInDocuments, docLengths, avgDocLength, totalDocumentCount);
+                        termFrequencyInQuery, index.termOccurenceInDocuments, index.docLengths, index.avgDocLength,
+                        index.totalDocumentCount);
                 break;
 
             case "4": // Language model with Laplace Smoothing
                 scoredDocuments = scoringFn.computeLaplaceScore(relevantDocumentsWithTermFrequenciesForQuery,
-                        termOffsetForEachTermInQuery, docLengths, vocabularySize);
+                        termOffsetForEachTermInQuery, index.docLengths, index.vocabularySize);
                 break;
 
             case "5": // Language model with Jelinek-Mercer Smoothing
             default:
-                double queryJMConstant = queryTermsOccurencesInCorpous / totalTermCount;
+                double queryJMConstant = queryTermsOccurencesInCorpous / index.totalTermCount;
                 scoredDocuments = scoringFn.computeJMScore(relevantDocumentsWithTermFrequenciesForQuery,
-                        termOffsetForEachTermInQuery, docLengths, queryJMConstant);
+                        termOffsetForEachTermInQuery, index.docLengths, queryJMConstant);
         }
+        scoreTimer.stop(start);
         return scoredDocuments;
     }
 
 
+    /**
+     * Count the occurrences of each term of the current query, so that the query frequency factor weighing the
+     * impacts of a term counts its repeats. The term offsets hold each term once
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @return frequency of each term in the query keyed by term id, in query order
+     */
+    LinkedHashMap<String, Integer> computeQueryTermFrequencies (
+            LinkedHashMap<String, Long> termOffsetForEachTermInQuery) {
+
+        LinkedHashMap<String, Integer> termFrequencyInQuery = scoringFn.computeTermFrequencyInQuery(
+                termOffsetForEachTermInQuery);
+        if (null == queryTermIds) {
+            return termFrequencyInQuery;
+        }
+        HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (String termId : queryTermIds) {
+            Integer count = occurrences.get(termId);
+            occurrences.put(termId, null == count ? 1 : count + 1);
+        }
+        for (Map.Entry<String, Integer> termFrequency : termFrequencyInQuery.entrySet()) {
+            Integer count = occurrences.get(termFrequency.getKey());
+            if (null != count) {
+                termFrequency.setValue(count);
+            }
+        }
+        return termFrequencyInQuery;
+    }
+
+
     /**
      * Get term offsets for all the terms in query
      * @param query
@@ -161,27 +636,51 @@ public class DocumentRanker {
      */
     public LinkedHashMap<String, Long> computeOffsetForEachTermInQuery (String query, HashSet<String> stopWords) {
 
-        File termIdFile = new File(properties.get("TERMS_ID_FILE")).getAbsoluteFile();
-        LinkedHashMap<String, Long> termOffsetForEachTermInQuery = new LinkedHashMap<String, Long>();
+        pin();
+        try {
+            File termIdFile = new File(index.properties.get("TERMS_ID_FILE")).getAbsoluteFile();
+            LinkedHashMap<String, Long> termOffsetForEachTermInQuery = new LinkedHashMap<String, Long>();
+
+            // Reset the data structures created for individual query
+            queryTermsOccurencesInCorpous = 0;
+            queryTermIds = new ArrayList<String>();
+            queryTermIdsByTerm = new HashMap<String, String>();
+
+            for (String term : query.split(" ")) {
+                term = term.toLowerCase();
+                if (!stopWords.contains(term)) {
+                    try {
+                        String queryTerm = term;
+                        term = stem(term);
+                        String termId = FileUtilities.getID(termIdFile, term);
+                        queryTermIdsByTerm.put(queryTerm, termId);
+                        computeOffsetForSingleTermInQuery(termId, termOffsetForEachTermInQuery);
+                    } catch (StemmerException e) {
+                        System.out.println("Stemming failed for term: " + term);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Could not read file : " + termIdFile.getAbsolutePath());
+                    } catch (IOException e) {
+                        System.err.println("Could not read file : " + termIdFile.getAbsolutePath());
+                    }
 
-        for (String term : query.split(" ")) {
-            term = term.toLowerCase();
-            if (!stopWords.contains(term)) {
-                try {
-                    term = EnglishSnowballStemmerFactory.getInstance().process(term);
-                    String termId = FileUtilities.getID(termIdFile, term);
-                    computeOffsetForSingleTermInQuery(termId, termOffsetForEachTermInQuery);
-                } catch (StemmerException e) {
-                    System.out.println("Stemming failed for term: " + term);
-                } catch (NumberFormatException e) {
-                    System.err.println("Could not read file : " + termIdFile.getAbsolutePath());
-                } catch (IOException e) {
-                    System.err.println("Could not read file : " + termIdFile.getAbsolutePath());
                 }
-
             }
+            return termOffsetForEachTermInQuery;
+        } finally {
+            unpin();
+        }
+    }
+
+
+    /**
+     * Stem a query term, the stemmer is shared by all the rankers and is not thread safe
+     */
+    private static String stem (String term) throws StemmerException {
+
+        EnglishSnowballStemmerFactory stemmer = EnglishSnowballStemmerFactory.getInstance();
+        synchronized (stemmer) {
+            return stemmer.process(term);
         }
-        return termOffsetForEachTermInQuery;
     }
 
 
@@ -197,19 +696,41 @@ public class DocumentRanker {
             throws NumberFormatException, IOException {
 
         String line;
-        File termInfoFile = new File(properties.get("TERM_INFO_FILE")).getAbsoluteFile();
-        BufferedReader reader = new BufferedReader(new FileReader(termInfoFile));
+        long offset = -1;
+        int positionCount = 0;
+        boolean found = false;
+        BufferedReader reader = new BufferedReader(new FileReader(index.termInfoFile));
 
         while ((line = reader.readLine()) != null) {
             String[] tokens = line.split("\t");
             if (tokens[0].equals(termId)) {
-                long offset = Long.parseLong(tokens[1]);
-                termOffsetInIndex.put(tokens[0], offset);
-                queryTermsOccurencesInCorpous += Integer.parseInt(tokens[2]);
+                offset = Long.parseLong(tokens[1]);
+                positionCount += Integer.parseInt(tokens[2]);
+                found = true;
                 break;
             }
         }
         reader.close();
+
+        // Terms first seen after the last full build are only present in segments, with no offset in the main index
+        if (null != termId) {
+            for (SegmentReader segment : index.getVisibleSegments()) {
+                int termIndex = segment.findTerm(Integer.parseInt(termId));
+                if (termIndex >= 0) {
+                    positionCount += segment.getPositionCount(termIndex);
+                    found = true;
+                }
+            }
+        }
+        if (found) {
+            Integer deletedTermCount = index.deletedTermCounts.get(termId);
+            if (null != deletedTermCount) {
+                positionCount -= deletedTermCount;
+            }
+            termOffsetInIndex.put(termId, offset);
+            queryTermIds.add(termId);
+            queryTermsOccurencesInCorpous += positionCount;
+        }
     }
 
 
@@ -222,86 +743,477 @@ public class DocumentRanker {
     public LinkedHashMap<Integer, LinkedHashMap<String, Integer>> findRelevantDocumentsForAllTermsQuery (
             HashMap<String, Long> termOffsetForEachTermInQuery) {
 
-        LinkedHashMap<String, Integer> termFrequencyPairs = new LinkedHashMap<String, Integer>();
+        pin();
+        try {
+            return findRelevantDocumentsForPostingLists(readPostingLists(termOffsetForEachTermInQuery));
+        } finally {
+            unpin();
+        }
+    }
+
+
+    /**
+     * Find relevant documents for the decoded posting lists of the terms in the current query
+     * @param postingLists
+     *        posting list for each term in query
+     * @return All the relevant documents for a query
+     */
+    LinkedHashMap<Integer, LinkedHashMap<String, Integer>> findRelevantDocumentsForPostingLists (
+            List<PostingList> postingLists) {
+
+        return findRelevantDocumentsForPostingLists(postingLists, null);
+    }
+
+
+    /**
+     * Find relevant documents for the decoded posting lists of the terms in the current query within the time budget
+     * of the query, only the documents found until the budget is spent are scored
+     * @param postingLists
+     *        posting list for each term in query
+     * @param budget
+     *        budget of the query, null to find the documents of all the postings
+     * @return relevant documents for a query
+     */
+    LinkedHashMap<Integer, LinkedHashMap<String, Integer>> findRelevantDocumentsForPostingLists (
+            List<PostingList> postingLists, QueryBudget budget) {
+
         LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery = new LinkedHashMap<Integer, LinkedHashMap<String, Integer>>();
 
-        try {
-            for (Map.Entry<String, Long> termOffset : termOffsetForEachTermInQuery.entrySet()) {
-                findRelevantDocumentsForATermInQuery(termOffset, termFrequencyPairs,
-                        relevantDocumentsWithTermFrequenciesForQuery);
+        for (PostingList postingList : postingLists) {
+            if (!findRelevantDocumentsForATermInQuery(postingList, relevantDocumentsWithTermFrequenciesForQuery,
+                    budget)) {
+                break;
             }
-        } catch (IOException e) {
-            System.err.println("Could not read file : " + termIndexFile.getAbsolutePath());
         }
         return relevantDocumentsWithTermFrequenciesForQuery;
     }
 
 
+    /**
+     * Restrict the scored documents to the candidate documents of a boolean query
+     * @param scoredDocuments
+     *        scored documents
+     * @param candidateDocIds
+     *        candidate documents in increasing order, null to retain all documents
+     * @return scored documents with only the candidate documents
+     */
+    Map<Integer, Double> retainCandidates (Map<Integer, Double> scoredDocuments, int[] candidateDocIds) {
+
+        if (null == candidateDocIds) {
+            return scoredDocuments;
+        }
+        HashMap<Integer, Double> retainedDocuments = new HashMap<Integer, Double>();
+        for (int docId : candidateDocIds) {
+            Double score = scoredDocuments.get(docId);
+            if (null != score) {
+                retainedDocuments.put(docId, score);
+            }
+        }
+        return retainedDocuments;
+    }
+
+
     /**
      * Find relevant documents for single term in the current query
-     * @param termOffset
-     * @param termFrequencyPairs
+     * @param postingList
+     *        decoded posting list of the term
      * @param relevantDocumentsWithTermFrequenciesForQuery
-     * @throws IOException
+     *        term frequency of each query term keyed by relevant document id
      */
-    void findRelevantDocumentsForATermInQuery (Map.Entry<String, Long> termOffset,
-            LinkedHashMap<String, Integer> termFrequencyPairs,
-            LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery)
-            throws IOException {
+    void findRelevantDocumentsForATermInQuery (PostingList postingList,
+            LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery) {
 
-        String termId = termOffset.getKey();
-        long offset = termOffset.getValue();
+        findRelevantDocumentsForATermInQuery(postingList, relevantDocumentsWithTermFrequenciesForQuery, null);
+    }
 
-        RandomAccessFile indexFile = new RandomAccessFile(termIndexFile, "r");
-        indexFile.seek(offset);
 
-        String line = indexFile.readLine();
-        String[] termPoisitons = line.split("\t");
+    /**
+     * Find relevant documents for single term in the current query within the time budget of the query
+     * @param postingList
+     *        decoded posting list of the term
+     * @param relevantDocumentsWithTermFrequenciesForQuery
+     *        term frequency of each query term keyed by relevant document id
+     * @param budget
+     *        budget of the query, null to find the documents of all the postings
+     * @return false if the time budget was spent before all the postings were found
+     */
+    boolean findRelevantDocumentsForATermInQuery (PostingList postingList,
+            LinkedHashMap<Integer, LinkedHashMap<String, Integer>> relevantDocumentsWithTermFrequenciesForQuery,
+            QueryBudget budget) {
+
+        int[] docIds = postingList.getDocIds();
+        int[] termFrequencies = postingList.getTermFrequencies();
+
+        for (int i = 0; i < postingList.size(); i++) {
+            if (null != budget && i % BUDGET_CHECK_INTERVAL == 0 && budget.isPastDeadline()) {
+                return false;
+            }
+            LinkedHashMap<String, Integer> termFrequencyPairs = relevantDocumentsWithTermFrequenciesForQuery
+                    .get(docIds[i]);
+            if (null == termFrequencyPairs) {
+                termFrequencyPairs = new LinkedHashMap<String, Integer>();
+                relevantDocumentsWithTermFrequenciesForQuery.put(docIds[i], termFrequencyPairs);
+            }
+            termFrequencyPairs.put(postingList.getTermId(), termFrequencies[i]);
+        }
+        return true;
+    }
 
-        int previousDocId = Integer.parseInt(termPoisitons[1].split(":")[0]);
-        int termFrequency = 0;
 
-        String[] deltaDocId;
+    /**
+     * Read and decode the posting lists for all the terms in the current query
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @return posting list for each term, in query order
+     */
+    public ArrayList<PostingList> readPostingLists (HashMap<String, Long> termOffsetForEachTermInQuery) {
 
-        int docId = 0;
-        for (int i = 1; i < termPoisitons.length; i++) {
+        return readPostingLists(termOffsetForEachTermInQuery, QueryBudget.unlimited());
+    }
 
-            // Split term document-position pairs
-            deltaDocId = termPoisitons[i].split(":");
 
-            // Update document id for unique documents it is non 0 while for different positions within the same
-            // document it is 0 so no effect of summation
-            docId += Integer.parseInt(deltaDocId[0]);
+    /**
+     * Evaluate a boolean query over the posting lists of its terms. The terms scored by the query are looked up by
+     * the term id's already resolved for the query, and each posting list is decoded once for the query
+     * @param booleanQuery
+     *        root of the boolean query tree
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each scored term in query
+     * @param decodedPostingLists
+     *        filled with the posting lists decoded for the query keyed by term id
+     * @return document id's matching the query in increasing order
+     */
+    int[] evaluateBooleanQuery (QueryNode booleanQuery, final HashMap<String, Long> termOffsetForEachTermInQuery,
+            final HashMap<String, PostingList> decodedPostingLists) {
 
-            // Update frequency as traversing same document
-            if (docId == previousDocId) {
-                termFrequency++;
-                // New doc id found for given term
+        BooleanQueryEvaluator.PostingListSource postingListSource = new BooleanQueryEvaluator.PostingListSource() {
+
+            @Override
+            public PostingList getPostingList (String term) {
+
+                return readPostingListForQueryTerm(term, termOffsetForEachTermInQuery, decodedPostingLists);
+            }
+        };
+        return BooleanQueryEvaluator.evaluate(booleanQuery, postingListSource);
+    }
+
+
+    /**
+     * Read the posting list of a boolean query term, without changing the data structures of the current query. Only
+     * the negated terms, which are not scored, are looked up in the index here
+     * @param term
+     *        query term as written in the query
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each scored term in query
+     * @param decodedPostingLists
+     *        posting lists decoded for the query keyed by term id
+     * @return decoded posting list, empty if the term is not in the corpus and null for a stop word
+     */
+    PostingList readPostingListForQueryTerm (String term, HashMap<String, Long> termOffsetForEachTermInQuery,
+            HashMap<String, PostingList> decodedPostingLists) {
+
+        term = term.toLowerCase();
+        if (stopWords.contains(term)) {
+            return null;
+        }
+        String termId = null;
+        try {
+            if (queryTermIdsByTerm.containsKey(term)) {
+                termId = queryTermIdsByTerm.get(term);
             } else {
-                if (!relevantDocumentsWithTermFrequenciesForQuery.containsKey(previousDocId)) {
-                    termFrequencyPairs = new LinkedHashMap<String, Integer>();
-                } else {
+                File termIdFile = new File(index.properties.get("TERMS_ID_FILE")).getAbsoluteFile();
+                termId = FileUtilities.getID(termIdFile, stem(term));
+                queryTermIdsByTerm.put(term, termId);
+            }
+            PostingList postingList = decodedPostingLists.get(termId);
+            if (null != postingList) {
+                return postingList;
+            }
+            Long offset = termOffsetForEachTermInQuery.get(termId);
+            if (null == offset) {
+                offset = findTermOffset(termId);
+            }
+            if (offset >= 0 || isInSegments(termId)) {
+                postingList = readPostingList(termId, offset);
+                decodedPostingLists.put(termId, postingList);
+                return postingList;
+            }
+        } catch (StemmerException e) {
+            System.out.println("Stemming failed for term: " + term);
+        } catch (IOException e) {
+            System.err.println("Could not read file : " + index.termIndexFile.getAbsolutePath());
+        }
+        return new PostingList(termId, 0);
+    }
 
-                    termFrequencyPairs = relevantDocumentsWithTermFrequenciesForQuery.get(previousDocId);
-                    termFrequencyPairs.put(termId, termFrequency);
-                    relevantDocumentsWithTermFrequenciesForQuery.put(previousDocId, termFrequencyPairs);
 
-                    termFrequency = 1;
-                    previousDocId = docId;
+    /**
+     * Find offset of the posting list for a term in the inverted index
+     * @param termId
+     *        id of the term
+     * @return offset in term index, -1 if term is not in the corpus
+     * @throws IOException
+     */
+    long findTermOffset (String termId) throws IOException {
+
+        if (null == termId) {
+            return -1;
+        }
+        String line;
+        BufferedReader reader = new BufferedReader(new FileReader(index.termInfoFile));
+        try {
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                if (tokens[0].equals(termId)) {
+                    return Long.parseLong(tokens[1]);
                 }
             }
+        } finally {
+            reader.close();
         }
+        return -1;
+    }
+
+
+    /**
+     * Read and decode the posting list of a term, posting lists are shared across queries through the block cache.
+     * Postings of the term in the segments follow those of the main index
+     * @param termId
+     *        id of the term
+     * @param offset
+     *        offset of the posting list in the term index, -1 if the term is only present in segments
+     * @return decoded posting list
+     * @throws IOException
+     */
+    PostingList readPostingList (String termId, long offset) throws IOException {
 
-        // Add the values for last document
-        if (!relevantDocumentsWithTermFrequenciesForQuery.containsKey(previousDocId)) {
-            termFrequencyPairs = new LinkedHashMap<String, Integer>();
-        } else {
-            termFrequencyPairs = relevantDocumentsWithTermFrequenciesForQuery.get(previousDocId);
+        return readPostingList(termId, offset, null);
+    }
+
+
+    /**
+     * Read and decode the posting list of a term within the budget of a query, decoding stops once the budget is spent
+     * @param termId
+     *        id of the term
+     * @param offset
+     *        offset of the posting list in the term index, -1 if the term is only present in segments
+     * @param budget
+     *        budget of the query, null to decode the whole posting list
+     * @return decoded posting list
+     * @throws IOException
+     */
+    PostingList readPostingList (String termId, long offset, QueryBudget budget) throws IOException {
+
+        PostingListReadEvent readEvent = new PostingListReadEvent();
+        readEvent.begin();
+        long start = readTimer.start();
+        String line = offset >= 0 ? postingCache.readLine(index.termIndexFile, offset) : "";
+        readTimer.stop(start);
+
+        start = decodeTimer.start();
+        PostingList postingList = offset >= 0 ? PostingList.decode(termId, line, budget) : new PostingList(termId,
+                16);
+        decodeTimer.stop(start);
+
+        long bytesRead = line.length();
+        for (SegmentReader segment : index.getVisibleSegments()) {
+            if (null != budget && budget.isPastDeadline()) {
+                break;
+            }
+            int termIndex = segment.findTerm(Integer.parseInt(termId));
+            if (termIndex >= 0) {
+                start = readTimer.start();
+                String segmentLine = postingCache.readLine(segment.getTermIndexFile(), segment.getOffset(termIndex));
+                readTimer.stop(start);
+
+                start = decodeTimer.start();
+                postingList.append(PostingList.decode(termId, segmentLine, budget), index.maxVisibleDocId);
+                decodeTimer.stop(start);
+                bytesRead += segmentLine.length();
+            }
+        }
+        Tombstones currentTombstones = index.getTombstones();
+        if (currentTombstones.deletedCount > 0) {
+            postingList.removeDeleted(currentTombstones.deletedBits);
         }
-        termFrequencyPairs.put(termId, termFrequency);
-        relevantDocumentsWithTermFrequenciesForQuery.put(previousDocId, termFrequencyPairs);
 
-        indexFile.close(); // Close term_index RandomAccess Reader
+        postingCounter.add(postingList.size());
+        bytesReadCounter.add(bytesRead);
+        queryPostingsDecoded += postingList.size();
+        readEvent.commit(termId, offset, bytesRead, postingList.size());
+        return postingList;
+    }
+
+
+    /**
+     * @return true if the term is present in any of the segments
+     */
+    private boolean isInSegments (String termId) {
+
+        if (null == termId) {
+            return false;
+        }
+        for (SegmentReader segment : index.getVisibleSegments()) {
+            if (segment.findTerm(Integer.parseInt(termId)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Remove the deleted documents from the documents scored over the impact index
+     * @param scoredDocuments
+     *        score keyed by document id
+     */
+    private void removeDeleted (Map<Integer, Double> scoredDocuments) {
+
+        Tombstones currentTombstones = index.getTombstones();
+        if (currentTombstones.deletedCount == 0) {
+            return;
+        }
+        Iterator<Integer> docIds = scoredDocuments.keySet().iterator();
+        while (docIds.hasNext()) {
+            if (currentTombstones.isDeleted(docIds.next())) {
+                docIds.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Read and decode the posting lists of the query terms within the budget of the query. With a limited budget the
+     * rarest terms are read first, and once the budget is spent the remaining terms are skipped. The list running out
+     * of postings keeps those of highest BM-25 impact, a list running out of time while decoded keeps the postings
+     * decoded so far
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @param budget
+     *        time and posting budget of the query
+     * @return posting list for each term read within the budget
+     */
+    public ArrayList<PostingList> readPostingLists (HashMap<String, Long> termOffsetForEachTermInQuery,
+            QueryBudget budget) {
+
+        return readPostingLists(termOffsetForEachTermInQuery, budget, null, null);
+    }
+
+
+    /**
+     * Read and decode the posting lists of the query terms within the budget of the query, restricted to the
+     * candidate documents of a boolean query. The posting lists decoded to evaluate the boolean query are reused,
+     * and the budget is granted to the candidate postings only
+     * @param termOffsetForEachTermInQuery
+     *        term offset for each term in query
+     * @param budget
+     *        time and posting budget of the query
+     * @param decodedPostingLists
+     *        posting lists already decoded for the query keyed by term id, null if none
+     * @param candidateDocIds
+     *        candidate documents in increasing order, null to retain all documents
+     * @return posting list for each term read within the budget, in query order unless the budget is limited
+     */
+    ArrayList<PostingList> readPostingLists (HashMap<String, Long> termOffsetForEachTermInQuery, QueryBudget budget,
+            Map<String, PostingList> decodedPostingLists, int[] candidateDocIds) {
+
+        pin();
+        try {
+            ArrayList<Map.Entry<String, Long>> termsByRarity = new ArrayList<Map.Entry<String, Long>>(
+                    termOffsetForEachTermInQuery.entrySet());
+            boolean limited = budget.isLimited();
+            if (limited) {
+                Collections.sort(termsByRarity, new Comparator<Map.Entry<String, Long>>() {
+
+                    @Override
+                    public int compare (Entry<String, Long> term1, Entry<String, Long> term2) {
+
+                        return Integer.compare(getDocumentFrequency(term1.getKey()), getDocumentFrequency(term2
+                                .getKey()));
+                    }
+                });
+            }
+
+            ArrayList<PostingList> postingLists = new ArrayList<PostingList>();
+            try {
+                for (Map.Entry<String, Long> termOffset : termsByRarity) {
+                    if (limited && budget.shouldStop()) {
+                        break;
+                    }
+                    PostingList postingList = null == decodedPostingLists ? null : decodedPostingLists.get(termOffset
+                            .getKey());
+                    if (null == postingList) {
+                        postingList = readPostingList(termOffset.getKey(), termOffset.getValue(), limited ? budget
+                                : null);
+                    }
+                    if (null != candidateDocIds) {
+                        postingList = postingList.retainAll(candidateDocIds);
+                    }
+                    postingLists.add(limited ? retainHighestImpacts(postingList, budget.grant(postingList.size()))
+                            : postingList);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read file : " + index.termIndexFile.getAbsolutePath());
+            }
+            return postingLists;
+        } finally {
+            unpin();
+        }
+    }
+
+
+    /**
+     * Cut a posting list to its postings of highest impact, the BM-25 term frequency saturation which orders the
+     * documents of a term as their score contributions do
+     * @param postingList
+     *        decoded posting list
+     * @param count
+     *        number of postings to keep
+     * @return posting list with at most count documents
+     */
+    private PostingList retainHighestImpacts (PostingList postingList, int count) {
+
+        if (count >= postingList.size()) {
+            return postingList;
+        }
+        int[] docIds = postingList.getDocIds();
+        int[] termFrequencies = postingList.getTermFrequencies();
+        double[] impacts = new double[postingList.size()];
+        for (int i = 0; i < impacts.length; i++) {
+            Integer docLength = index.docLengths.get(docIds[i]);
+            double lengthFactor = null == docLength ? BM25_K1 : BM25_K1 * ((1 - BM25_B) + (BM25_B * (docLength
+                    / index.avgDocLength)));
+            impacts[i] = termFrequencies[i] / (lengthFactor + termFrequencies[i]);
+        }
+        return postingList.retainHighest(impacts, count);
+    }
+
+
+    /**
+     * @return number of documents containing the term, 0 if unknown
+     */
+    private int getDocumentFrequency (String termId) {
+
+        Integer documentFrequency = index.termOccurenceInDocuments.get(termId);
+        return null == documentFrequency ? 0 : documentFrequency;
+    }
+
+
+    /**
+     * @return queries extracted from the query xml during pre processing, keyed by query id
+     */
+    public LinkedHashMap<String, String> getQueries () {
+
+        return queries;
+    }
+
+
+    /**
+     * @return true if the last ranked query ran out of its budget and its result is approximate
+     */
+    public boolean isLastQueryApproximate () {
+
+        return lastQueryApproximate;
     }
 
 
@@ -316,20 +1228,24 @@ public class DocumentRanker {
      */
     public void writeOutput (String queryNumber, Map<Integer, Double> rankedDocuments, BufferedWriter outputWriter) {
 
-        File documentIdFile = new File(properties.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
-        HashMap<Integer, String> docIds = FileUtilities.getDocNames(documentIdFile);
-        int rank = 1;
+        pin();
+        try {
+            int rank = 1;
 
-        for (Entry<Integer, Double> entry : rankedDocuments.entrySet()) {
-            double score = entry.getValue();
-            int docID = entry.getKey();
-            String documentName = docIds.get(docID);
+            for (Entry<Integer, Double> entry : rankedDocuments.entrySet()) {
+                double score = entry.getValue();
+                int docID = entry.getKey();
+                String documentName = index.getDocumentName(docID);
 
-            try {
-                outputWriter.write(queryNumber + " 0 " + documentName + " " + rank++ + " " + score + " run1" + "\n");
-            } catch (IOException e) {
-                System.err.println("Could not write to file" + documentIdFile.getAbsolutePath());
+                try {
+                    outputWriter.write(queryNumber + " 0 " + documentName + " " + rank++ + " " + score + " run1"
+                            + "\n");
+                } catch (IOException e) {
+                    System.err.println("Could not write ranked documents for query " + queryNumber);
+                }
             }
+        } finally {
+            unpin();
         }
     }
 
@@ -351,15 +1267,39 @@ public class DocumentRanker {
         preProcess.computeAvgQueryLength(queries, stopWords);
         avgQueryLength = preProcess.getAvgQueryLength();
 
-        allTermsCountInDocument = preProcess.getTermCountPerDocument();
-        docLengths = preProcess.getDocLengths();
-        avgDocLength = preProcess.getAvgDocLength();
-        preProcess.computeVocabularySize();
-        vocabularySize = preProcess.getVocabularySize();
-        termOccurenceInDocuments = preProcess.extractTermOccurenceInDocuments();
+        // The pre processor reads the generation current as of its creation
+        generationStamp = generations.getStamp();
+        String generation = generations.getCurrentGeneration();
+        IndexSnapshot snapshot = new IndexSnapshot(generation, null == generation ? properties : generations
+                .getGenerationProperties(properties, generation), postingCache);
+        snapshot.load(preProcess, blockScoring, liveCollectionStatistics);
+
+        IndexSnapshot retired;
+        synchronized (DocumentRanker.class) {
+            retired = current;
+            current = snapshot;
+        }
+        if (null != retired) {
+            retired.release();
+        }
+    }
+
+
+    /**
+     * @return memory accounting of the pre processed index structures, null if nothing is pre processed
+     */
+    public static IndexMemoryBudget getIndexMemoryBudget () {
 
-        totalDocumentCount = preProcess.getotalDocumentCount();
-        totalTermCount = preProcess.getTermCountInCorpus();
+        IndexSnapshot snapshot = current;
+        return null == snapshot ? null : snapshot.memoryBudget;
     }
 
+
+    /**
+     * @return cache of ranked results shared by all the rankers, null if no ranker is created
+     */
+    public static QueryResultCache getResultCache () {
+
+        return resultCache;
+    }
 }
@@ -0,0 +1,321 @@
+package com.rank_documents;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.java.searchengine.buildindex.ImpactIndexWriter;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Score-at-a-time Okapi BM-25 evaluation over the impact ordered index.
+ *          Segments of all the query terms are processed in decreasing order of impact, so a document's score is a sum
+ *          of integer impacts, each weighted by the query frequency factor of its term and rounded once per segment at
+ *          query time, and the highest contributions are accumulated first. Evaluation can be stopped
+ *          after a given number of postings while still having accumulated the most important ones.
+ *
+ */
+public class ImpactScorer {
+
+    // Postings scored between two checks of the time budget of the query
+    private static final int BUDGET_CHECK_INTERVAL = 1024;
+    private static final double k2 = 100;
+
+    private final MappedByteBuffer offsetTable;
+    private final FileChannel impactChannel;
+    private final double impactScale;
+    private final int maxTermId;
+
+    // Reused across queries, only the entries of touched documents are reset
+    private int[] scoreAccumulator = new int[1024];
+    private boolean[] isTouched = new boolean[1024];
+    private int[] touchedDocIds = new int[1024];
+    private int touchedCount;
+
+    private long postingsScored;
+    private boolean terminatedEarly;
+
+
+    /**
+     * Constructor
+     * @param impactFile
+     *        impact ordered postings
+     * @param impactOffsetFile
+     *        per term offset table
+     * @throws IOException
+     */
+    public ImpactScorer (File impactFile, File impactOffsetFile) throws IOException {
+
+        RandomAccessFile offsets = new RandomAccessFile(impactOffsetFile, "r");
+        try {
+            offsetTable = offsets.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, offsets.length());
+        } finally {
+            offsets.close();
+        }
+        if (offsetTable.getInt(0) != ImpactIndexWriter.MAGIC) {
+            throw new IOException("Not an impact offset table: " + impactOffsetFile.getAbsolutePath());
+        }
+        impactScale = offsetTable.getDouble(4);
+        maxTermId = (offsetTable.capacity() - ImpactIndexWriter.HEADER_SIZE) / ImpactIndexWriter.ENTRY_SIZE - 1;
+        impactChannel = new RandomAccessFile(impactFile, "r").getChannel();
+    }
+
+
+    /**
+     * @return size of the memory mapped offset table in bytes
+     */
+    public long getMappedSize () {
+
+        return offsetTable.capacity();
+    }
+
+
+    /**
+     * Close the impact ordered postings file
+     * @throws IOException
+     */
+    public void close () throws IOException {
+
+        impactChannel.close();
+    }
+
+
+    /**
+     * Score all the documents containing any of the query terms
+     * @param termIds
+     *        distinct term id's of the query
+     * @return approximate BM-25 score (sum of quantized impacts times the impact scale) keyed by document id
+     * @throws IOException
+     */
+    public HashMap<Integer, Double> score (Collection<String> termIds) throws IOException {
+
+        return score(termIds, QueryBudget.unlimited());
+    }
+
+
+    /**
+     * Score documents segment by segment in decreasing order of impact, stopping once the posting budget is spent.
+     * A segment is always scored completely so that documents of equal impact are treated alike
+     * @param termIds
+     *        distinct term id's of the query
+     * @param postingBudget
+     *        number of postings after which evaluation stops
+     * @return approximate BM-25 score keyed by document id
+     * @throws IOException
+     */
+    public HashMap<Integer, Double> score (Collection<String> termIds, long postingBudget) throws IOException {
+
+        return score(termIds, new QueryBudget(0, postingBudget));
+    }
+
+
+    /**
+     * Score documents segment by segment in decreasing order of impact, stopping once the time or the posting budget
+     * of the query is spent. The time budget is also checked within a segment
+     * @param termIds
+     *        distinct term id's of the query
+     * @param budget
+     *        budget of the query
+     * @return approximate BM-25 score keyed by document id
+     * @throws IOException
+     */
+    public HashMap<Integer, Double> score (Collection<String> termIds, QueryBudget budget) throws IOException {
+
+        HashMap<String, Integer> queryTermFrequency = new HashMap<String, Integer>();
+        for (String termId : termIds) {
+            queryTermFrequency.put(termId, 1);
+        }
+        return score(queryTermFrequency, budget);
+    }
+
+
+    /**
+     * Score documents segment by segment in decreasing order of weighted impact, stopping once the time or the
+     * posting budget of the query is spent. The impacts of a term are weighted by its BM-25 query frequency factor
+     * and rounded to integers, so the accumulated scores stay integer sums of impacts
+     * @param queryTermFrequency
+     *        frequency of each distinct term in the query keyed by term id
+     * @param budget
+     *        budget of the query
+     * @return approximate BM-25 score keyed by document id
+     * @throws IOException
+     */
+    public HashMap<Integer, Double> score (Map<String, Integer> queryTermFrequency, QueryBudget budget)
+            throws IOException {
+
+        ArrayList<ImpactSegment> segments = new ArrayList<ImpactSegment>();
+        for (Map.Entry<String, Integer> termFrequency : queryTermFrequency.entrySet()) {
+            int termQueryFrequency = termFrequency.getValue();
+            double queryFactor = ((1 + k2) * termQueryFrequency) / (k2 + termQueryFrequency);
+            readSegments(Integer.parseInt(termFrequency.getKey()), queryFactor, segments);
+        }
+        Collections.sort(segments, new Comparator<ImpactSegment>() {
+
+            @Override
+            public int compare (ImpactSegment segment1, ImpactSegment segment2) {
+
+                return Integer.compare(segment2.weightedImpact, segment1.weightedImpact);
+            }
+        });
+
+        touchedCount = 0;
+        postingsScored = 0;
+        for (ImpactSegment segment : segments) {
+            if (budget.shouldStop()) {
+                break;
+            }
+            budget.spend(scoreSegment(segment, budget));
+        }
+        terminatedEarly = budget.isApproximate();
+
+        HashMap<Integer, Double> scoredDocuments = new HashMap<Integer, Double>(touchedCount * 2);
+        for (int touched = 0; touched < touchedCount; touched++) {
+            int docId = touchedDocIds[touched];
+            scoredDocuments.put(docId, scoreAccumulator[docId] * impactScale);
+            scoreAccumulator[docId] = 0;
+            isTouched[docId] = false;
+        }
+        return scoredDocuments;
+    }
+
+
+    /**
+     * Add the weighted impact of a segment to its documents, until the time budget is spent
+     * @return number of postings scored
+     */
+    private int scoreSegment (ImpactSegment segment, QueryBudget budget) {
+
+        ByteBuffer record = segment.record;
+        record.position(segment.docIdsStart);
+        int docId = 0;
+        int posting;
+        for (posting = 0; posting < segment.postingCount; posting++) {
+            if (posting % BUDGET_CHECK_INTERVAL == BUDGET_CHECK_INTERVAL - 1 && budget.isPastDeadline()) {
+                break;
+            }
+            docId += readVInt(record);
+            if (docId >= scoreAccumulator.length) {
+                int capacity = Math.max(docId + 1, scoreAccumulator.length * 2);
+                scoreAccumulator = Arrays.copyOf(scoreAccumulator, capacity);
+                isTouched = Arrays.copyOf(isTouched, capacity);
+            }
+            if (!isTouched[docId]) {
+                isTouched[docId] = true;
+                addTouched(docId);
+            }
+            scoreAccumulator[docId] += segment.weightedImpact;
+        }
+        postingsScored += posting;
+        return posting;
+    }
+
+
+    /**
+     * Read the record of a term with one positioned read and locate its segments
+     */
+    private void readSegments (int termId, double queryFactor, ArrayList<ImpactSegment> segments) throws IOException {
+
+        if (termId <= 0 || termId > maxTermId) {
+            return;
+        }
+        int entry = ImpactIndexWriter.HEADER_SIZE + termId * ImpactIndexWriter.ENTRY_SIZE;
+        long start = offsetTable.getLong(entry);
+        int segmentCount = offsetTable.getInt(entry + 8);
+        long end = termId < maxTermId ? offsetTable.getLong(entry + ImpactIndexWriter.ENTRY_SIZE) : impactChannel
+                .size();
+
+        ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+        while (record.hasRemaining()) {
+            if (impactChannel.read(record, start + record.position()) < 0) {
+                break;
+            }
+        }
+        record.flip();
+
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int impact = record.get() & 0xFF;
+            int postingCount = readVInt(record);
+            int byteLength = readVInt(record);
+            segments.add(new ImpactSegment(record, (int) Math.round(impact * queryFactor), postingCount, record
+                    .position()));
+            record.position(record.position() + byteLength);
+        }
+    }
+
+
+    private void addTouched (int docId) {
+
+        if (touchedCount == touchedDocIds.length) {
+            int[] grown = new int[touchedCount * 2];
+            System.arraycopy(touchedDocIds, 0, grown, 0, touchedCount);
+            touchedDocIds = grown;
+        }
+        touchedDocIds[touchedCount++] = docId;
+    }
+
+
+    /**
+     * Read a variable length integer
+     */
+    private static int readVInt (ByteBuffer record) {
+
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = record.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+
+    /**
+     * @return number of postings scored by the last query
+     */
+    public long getPostingsScored () {
+
+        return postingsScored;
+    }
+
+
+    /**
+     * @return true if the last query stopped before scoring all the segments
+     */
+    public boolean isTerminatedEarly () {
+
+        return terminatedEarly;
+    }
+
+    /**
+     * Postings of a term sharing the same impact
+     */
+    private static final class ImpactSegment {
+
+        private final ByteBuffer record;
+        private final int weightedImpact;
+        private final int postingCount;
+        private final int docIdsStart;
+
+
+        ImpactSegment (ByteBuffer record, int weightedImpact, int postingCount, int docIdsStart) {
+
+            this.record = record;
+            this.weightedImpact = weightedImpact;
+            this.postingCount = postingCount;
+            this.docIdsStart = docIdsStart;
+        }
+    }
+}
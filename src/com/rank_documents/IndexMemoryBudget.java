@@ -0,0 +1,214 @@
+package com.rank_documents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Swapnil Gupta
+ * @purpose Accounting of the memory held by the index structures loaded for ranking. Structures are admitted to the
+ *          heap while their estimated size fits in the budget, the others are to be served from memory mapped files.
+ *          Off heap structures (mapped files, the direct posting cache) are recorded but not charged to the budget
+ */
+public class IndexMemoryBudget {
+
+    /**
+     * Where the memory of a structure lives
+     */
+    public enum Location {
+        HEAP, MAPPED, DIRECT
+    }
+
+    // Rough heap cost of a hash map entry with boxed integer key and value, including its share of the table
+    static final long MAP_ENTRY_BYTES = 64;
+    // Rough heap cost of a hash map entry keyed by a term id string, with a boxed integer value
+    static final long TERM_ENTRY_BYTES = 96;
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final long heapBudget;
+    private long heapUsed = 0;
+    private final List<Allocation> allocations = new ArrayList<Allocation>();
+
+
+    /**
+     * Constructor
+     * @param heapBudget
+     *        bytes of heap the index structures may use, 0 or less for no limit
+     */
+    public IndexMemoryBudget (long heapBudget) {
+
+        this.heapBudget = heapBudget;
+    }
+
+
+    /**
+     * Admit a structure to the heap if its estimated size fits in the remaining budget
+     * @param structure
+     *        name of the structure
+     * @param estimatedBytes
+     *        estimated heap size of the structure
+     * @return true if the structure is to be loaded on the heap, false if it must be served from a mapped file
+     */
+    public synchronized boolean reserveHeap (String structure, long estimatedBytes) {
+
+        if (heapBudget > 0 && heapUsed + estimatedBytes > heapBudget) {
+            return false;
+        }
+        heapUsed += estimatedBytes;
+        allocations.add(new Allocation(structure, Location.HEAP, estimatedBytes));
+        return true;
+    }
+
+
+    /**
+     * Charge a structure which could only be loaded on the heap, whether or not it fits in the budget
+     * @param structure
+     *        name of the structure
+     * @param estimatedBytes
+     *        estimated heap size of the structure
+     */
+    public synchronized void recordHeap (String structure, long estimatedBytes) {
+
+        heapUsed += estimatedBytes;
+        allocations.add(new Allocation(structure, Location.HEAP, estimatedBytes));
+    }
+
+
+    /**
+     * Record a structure held outside the heap
+     * @param structure
+     *        name of the structure
+     * @param location
+     *        MAPPED or DIRECT
+     * @param bytes
+     *        size of the mapping or direct buffer
+     */
+    public synchronized void recordOffHeap (String structure, Location location, long bytes) {
+
+        allocations.add(new Allocation(structure, location, bytes));
+    }
+
+
+    /**
+     * @return all the recorded structures in order of loading
+     */
+    public synchronized List<Allocation> getAllocations () {
+
+        return Collections.unmodifiableList(new ArrayList<Allocation>(allocations));
+    }
+
+
+    /**
+     * @return estimated heap held by the admitted structures
+     */
+    public synchronized long getHeapUsed () {
+
+        return heapUsed;
+    }
+
+
+    /**
+     * @return heap budget in bytes, 0 or less for no limit
+     */
+    public long getHeapBudget () {
+
+        return heapBudget;
+    }
+
+
+    /**
+     * @param entries
+     *        number of entries
+     * @return estimated heap size of a map with boxed integer keys and values
+     */
+    public static long estimateIntegerMap (long entries) {
+
+        return entries * MAP_ENTRY_BYTES;
+    }
+
+
+    /**
+     * @param entries
+     *        number of entries
+     * @return estimated heap size of a map keyed by term id strings with boxed integer values
+     */
+    public static long estimateTermMap (long entries) {
+
+        return entries * TERM_ENTRY_BYTES;
+    }
+
+
+    /**
+     * Print where the memory of the index structures goes
+     */
+    public synchronized void printReport () {
+
+        System.out.println("Index memory, heap budget " + (heapBudget > 0 ? String.format("%.1f MB", heapBudget / MB)
+                : "unlimited") + ":");
+        long mapped = 0;
+        long direct = 0;
+        for (Allocation allocation : allocations) {
+            System.out.println(allocation);
+            if (allocation.getLocation() == Location.MAPPED) {
+                mapped += allocation.getBytes();
+            } else if (allocation.getLocation() == Location.DIRECT) {
+                direct += allocation.getBytes();
+            }
+        }
+        System.out.println(String.format("Total: %.1f MB heap (estimated), %.1f MB mapped, %.1f MB direct",
+                heapUsed / MB, mapped / MB, direct / MB));
+    }
+
+
+    /**
+     * Memory of one index structure
+     */
+    public static final class Allocation {
+
+        private final String structure;
+        private final Location location;
+        private final long bytes;
+
+
+        Allocation (String structure, Location location, long bytes) {
+
+            this.structure = structure;
+            this.location = location;
+            this.bytes = bytes;
+        }
+
+
+        /**
+         * @return name of the structure
+         */
+        public String getStructure () {
+
+            return structure;
+        }
+
+
+        /**
+         * @return where the memory of the structure lives
+         */
+        public Location getLocation () {
+
+            return location;
+        }
+
+
+        /**
+         * @return size in bytes, estimated for heap structures
+         */
+        public long getBytes () {
+
+            return bytes;
+        }
+
+
+        @Override
+        public String toString () {
+
+            return String.format("  %-24s %-8s %12.1f KB", structure, location.name().toLowerCase(), bytes / 1024.0);
+        }
+    }
+}
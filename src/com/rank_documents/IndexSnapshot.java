@@ -0,0 +1,491 @@
+package com.rank_documents;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.java.searchengine.cache.PostingBlockCache;
+import com.java.searchengine.docstore.DocumentFrequencyStore;
+import com.java.searchengine.docstore.DocumentLengthMap;
+import com.java.searchengine.docstore.DocumentNameStore;
+import com.java.searchengine.docstore.ForwardIndex;
+import com.java.searchengine.docstore.LiveDocumentFrequencies;
+import com.java.searchengine.docstore.TermCountMap;
+import com.java.searchengine.segment.SegmentReader;
+import com.java.searchengine.segment.SegmentSet;
+import com.java.searchengine.util.FileUtilities;
+import com.java.searchengine.util.Utilities;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Pre processed data structures of a single generation of the index, ranked by the document rankers. The
+ *          snapshot is reference counted: one reference is held while it is the current snapshot and every query pins
+ *          another, and the mapped forward index, the impact scorers and the cached blocks of the generation are
+ *          released once the last reference is gone
+ *
+ */
+final class IndexSnapshot {
+
+    final String generation;
+    final HashMap<String, String> properties;
+    final File termIndexFile;
+    final File termInfoFile;
+    private final File segmentFolder;
+    private final File deletedDocsFile;
+    boolean loaded = false;
+    private int referenceCount = 1;
+
+    int totalDocumentCount;
+    double totalTermCount;
+    double avgDocLength;
+    double vocabularySize;
+    private DocumentNameStore documentNames;
+    // Names read from the document id file if the name store could not be opened
+    private HashMap<Integer, String> documentIdToName;
+    // On the heap or served from memory mapped files, depending on the memory budget
+    Map<Integer, Integer> docLengths;
+    Map<Integer, ? extends Map<String, Integer>> allTermsCountInDocument;
+    Map<String, Integer> termOccurenceInDocuments;
+    private ForwardIndex forwardIndex;
+    IndexMemoryBudget memoryBudget;
+    boolean blockScoring;
+    // Segments added after the last full build, only documents up to the max doc id pre processed are ranked
+    private volatile SegmentSet segments;
+    int maxVisibleDocId = Integer.MAX_VALUE;
+    // Deleted documents are filtered from every posting list, and excluded from the collection statistics as of
+    // pre processing
+    private volatile Tombstones tombstones;
+    int deletedDocumentCount;
+    Map<String, Integer> deletedTermCounts = Collections.emptyMap();
+    // Impact scorers not used by a query, opened as needed by the queries ranking concurrently
+    private boolean impactScoring;
+    private final ArrayDeque<ImpactScorer> idleImpactScorers = new ArrayDeque<ImpactScorer>();
+    // Block cache shared by the rankers, holding the blocks of the posting lists of the generation
+    private final PostingBlockCache postingCache;
+
+
+    /**
+     * Constructor
+     * @param generation
+     *        name of the generation, null for index files written directly in the index folder
+     * @param properties
+     *        configuration properties with the index files of the generation
+     * @param postingCache
+     *        block cache of the posting lists, may be null
+     */
+    IndexSnapshot (String generation, HashMap<String, String> properties, PostingBlockCache postingCache) {
+
+        this.generation = generation;
+        this.properties = properties;
+        this.postingCache = postingCache;
+        termIndexFile = new File(properties.get("TERM_INDEX_FILE")).getAbsoluteFile();
+        termInfoFile = new File(properties.get("TERM_INFO_FILE")).getAbsoluteFile();
+        segmentFolder = new File(properties.get("SEGMENT_FOLDER")).getAbsoluteFile();
+        deletedDocsFile = new File(properties.get("DELETED_DOCS_FILE")).getAbsoluteFile();
+    }
+
+
+    /**
+     * Pre process the documents of the generation
+     * @param preProcess
+     *        pre processor reading the index files of the generation
+     * @param blockScoringEnabled
+     *        true to score BM-25 by blocks of postings if the block scorer fits in the memory budget
+     * @param liveCollectionStatistics
+     *        true to exclude the deleted documents from the collection statistics
+     */
+    void load (DocumentPreProcessor preProcess, boolean blockScoringEnabled, boolean liveCollectionStatistics) {
+
+        File documentIdFile = new File(properties.get("DOCUMENT_ID_FILE")).getAbsoluteFile();
+        File documentNameStoreFile = new File(properties.get("DOCUMENT_NAME_STORE_FILE")).getAbsoluteFile();
+        try {
+            documentNames = DocumentNameStore.openOrBuild(documentNameStoreFile, documentIdFile);
+        } catch (IOException e) {
+            System.err.println("Could not read file" + documentNameStoreFile.getAbsolutePath()
+                    + ", document names are read from " + documentIdFile.getName());
+            documentIdToName = FileUtilities.getDocNames(documentIdFile);
+        }
+
+        memoryBudget = new IndexMemoryBudget(Utilities.parseIntProperty(properties.get(
+                "RANKER_MEMORY_BUDGET_MB"), 0) * 1024L * 1024L);
+        preProcess.computeVocabularySize();
+        vocabularySize = preProcess.getVocabularySize();
+        segments = SegmentSet.open(segmentFolder);
+        loadDocumentStructures(preProcess);
+        loadDocumentFrequencies(preProcess);
+        computeLiveCollectionStatistics(liveCollectionStatistics);
+        if (!segments.isEmpty()) {
+            System.out.println("Ranking over the main index and " + segments.getReaders().size() + " segments");
+        }
+
+        blockScoring = blockScoringEnabled && memoryBudget.reserveHeap("bm25_block_scorer",
+                BM25BlockScorer.estimateHeapSize(totalDocumentCount));
+        if (null != postingCache) {
+            memoryBudget.recordOffHeap("posting_cache", IndexMemoryBudget.Location.DIRECT, postingCache
+                    .getCapacityInBytes());
+        }
+        if (null != documentNames) {
+            memoryBudget.recordOffHeap("document_names", IndexMemoryBudget.Location.MAPPED, documentNames
+                    .getMappedSize());
+        }
+        ImpactScorer impactScorer = openImpactScorer();
+        if (null != impactScorer) {
+            memoryBudget.recordOffHeap("impact_offsets", IndexMemoryBudget.Location.MAPPED, impactScorer
+                    .getMappedSize());
+            impactScoring = true;
+            idleImpactScorers.add(impactScorer);
+        }
+        memoryBudget.printReport();
+        loaded = true;
+    }
+
+
+    /**
+     * Get name of the document with given id, from the name store or from the document id file if the name store
+     * could not be opened
+     * @param docId
+     *        document id
+     * @return document name, null if there is no document with given id
+     */
+    String getDocumentName (int docId) {
+
+        return null != documentNames ? documentNames.getName(docId) : documentIdToName.get(docId);
+    }
+
+
+    /**
+     * Take a reference to the snapshot
+     * @return false if the snapshot is already closed
+     */
+    synchronized boolean acquire () {
+
+        if (referenceCount == 0) {
+            return false;
+        }
+        referenceCount++;
+        return true;
+    }
+
+
+    /**
+     * Drop a reference to the snapshot, closing it with the last reference
+     */
+    void release () {
+
+        synchronized (this) {
+            if (--referenceCount > 0) {
+                return;
+            }
+        }
+        if (null != forwardIndex) {
+            try {
+                forwardIndex.close();
+            } catch (IOException e) {
+                System.err.println("Could not close forward index of " + generation);
+            }
+        }
+        synchronized (this) {
+            while (!idleImpactScorers.isEmpty()) {
+                closeImpactScorer(idleImpactScorers.poll());
+            }
+        }
+        // Files of the legacy layout are rewritten in place and their blocks are replaced by the next build
+        if (null != generation && null != postingCache) {
+            postingCache.invalidate(termIndexFile.getParentFile());
+        }
+    }
+
+
+    /**
+     * Deleted documents of the main index and the visible segments, reloaded whenever any of their tombstone files
+     * changes
+     * @return deleted documents as of now
+     */
+    Tombstones getTombstones () {
+
+        List<SegmentReader> visibleSegments = getVisibleSegments();
+        File[] liveDocsFiles = new File[visibleSegments.size() + 1];
+        liveDocsFiles[0] = deletedDocsFile;
+        for (int i = 0; i < visibleSegments.size(); i++) {
+            liveDocsFiles[i + 1] = visibleSegments.get(i).getSegment().getLiveDocsFile();
+        }
+        long stamp = FileUtilities.getFileStamp(liveDocsFiles);
+
+        Tombstones currentTombstones = tombstones;
+        if (null == currentTombstones || currentTombstones.stamp != stamp) {
+            synchronized (this) {
+                if (null == tombstones || tombstones.stamp != stamp) {
+                    tombstones = Tombstones.load(stamp, deletedDocsFile, visibleSegments, maxVisibleDocId);
+                }
+                currentTombstones = tombstones;
+            }
+        }
+        return currentTombstones;
+    }
+
+
+    /**
+     * Segments holding documents pre processed for ranking, reopened whenever the segment manifest changes so that
+     * merged segments replace the segments they were merged from
+     * @return segment readers in increasing order of document id's
+     */
+    List<SegmentReader> getVisibleSegments () {
+
+        SegmentSet currentSegments = segments;
+        if (null == currentSegments) {
+            return Collections.emptyList();
+        }
+        if (currentSegments.isStale()) {
+            synchronized (this) {
+                if (segments.isStale()) {
+                    segments = SegmentSet.open(segmentFolder);
+                }
+                currentSegments = segments;
+            }
+        }
+        ArrayList<SegmentReader> visibleSegments = new ArrayList<SegmentReader>();
+        for (SegmentReader segment : currentSegments.getReaders()) {
+            if (segment.getSegment().getMinDocId() <= maxVisibleDocId) {
+                visibleSegments.add(segment);
+            }
+        }
+        return visibleSegments;
+    }
+
+
+    /**
+     * Load document lengths and per document term counts, on the heap while they fit in the memory budget and
+     * otherwise served from the memory mapped forward index. Falls back to the text document index if there is no
+     * forward index
+     * @param preProcess
+     *        reference to pre processed documents
+     */
+    private void loadDocumentStructures (DocumentPreProcessor preProcess) {
+
+        File forwardIndexFile = new File(properties.get("DOCUMENT_INDEX_BINARY_FILE")).getAbsoluteFile();
+        File offsetFile = new File(properties.get("DOCUMENT_OFFSET_FILE")).getAbsoluteFile();
+        try {
+            if (null != forwardIndex) {
+                forwardIndex.close();
+            }
+            forwardIndex = new ForwardIndex(forwardIndexFile, offsetFile);
+        } catch (IOException e) {
+            System.err.println("Could not read file" + forwardIndexFile.getAbsolutePath());
+            forwardIndex = null;
+            maxVisibleDocId = Integer.MAX_VALUE;
+            allTermsCountInDocument = preProcess.getTermCountPerDocument();
+            docLengths = preProcess.getDocLengths();
+            avgDocLength = preProcess.getAvgDocLength();
+            totalDocumentCount = preProcess.getotalDocumentCount();
+            totalTermCount = preProcess.getTermCountInCorpus();
+            memoryBudget.recordHeap("doc_lengths", IndexMemoryBudget.estimateIntegerMap(docLengths.size()));
+            memoryBudget.recordHeap("term_counts", IndexMemoryBudget.estimateIntegerMap(docLengths.size())
+                    + IndexMemoryBudget.estimateTermMap((long) totalTermCount));
+            return;
+        }
+        preProcess.computeDocumentStatistics(forwardIndex);
+        maxVisibleDocId = forwardIndex.getMaxDocId();
+        avgDocLength = preProcess.getAvgDocLength();
+        totalDocumentCount = preProcess.getotalDocumentCount();
+        totalTermCount = preProcess.getTermCountInCorpus();
+
+        // Document lengths are read for every scored document, term counts only by the TF and TF-IDF functions. The
+        // mapped document lengths count the documents of the offset table, so they are only built when served mapped
+        DocumentLengthMap mappedDocLengths = null;
+        if (memoryBudget.reserveHeap("doc_lengths", IndexMemoryBudget.estimateIntegerMap(totalDocumentCount))) {
+            docLengths = preProcess.getDocLengths(forwardIndex);
+        } else {
+            mappedDocLengths = new DocumentLengthMap(forwardIndex);
+            docLengths = mappedDocLengths;
+            memoryBudget.recordOffHeap("doc_lengths", IndexMemoryBudget.Location.MAPPED, forwardIndex
+                    .getOffsetTableSize());
+        }
+        if (memoryBudget.reserveHeap("term_counts", IndexMemoryBudget.estimateIntegerMap(totalDocumentCount)
+                + IndexMemoryBudget.estimateTermMap(preProcess.getDistinctTermCountInCorpus()))) {
+            allTermsCountInDocument = preProcess.getTermCountPerDocument(forwardIndex);
+        } else {
+            if (null == mappedDocLengths) {
+                mappedDocLengths = new DocumentLengthMap(forwardIndex);
+            }
+            allTermsCountInDocument = new TermCountMap(forwardIndex, mappedDocLengths);
+            try {
+                memoryBudget.recordOffHeap("term_counts", IndexMemoryBudget.Location.MAPPED, forwardIndex
+                        .mapRecords());
+            } catch (IOException e) {
+                System.err.println("Could not read file" + forwardIndexFile.getAbsolutePath());
+            }
+        }
+    }
+
+
+    /**
+     * Load the number of documents containing each term, on the heap if it fits in the memory budget and otherwise
+     * served from a memory mapped document frequency store built from the term info files of the main index and
+     * the segments
+     * @param preProcess
+     *        reference to pre processed documents
+     */
+    private void loadDocumentFrequencies (DocumentPreProcessor preProcess) {
+
+        ArrayList<File> termInfoFiles = new ArrayList<File>();
+        termInfoFiles.add(termInfoFile);
+        termInfoFiles.addAll(segments.getTermInfoFiles());
+
+        long estimatedBytes = IndexMemoryBudget.estimateTermMap((long) vocabularySize);
+        if (memoryBudget.reserveHeap("document_frequencies", estimatedBytes)) {
+            termOccurenceInDocuments = preProcess.extractTermOccurenceInDocuments(termInfoFiles);
+            return;
+        }
+        File storeFile = new File(properties.get("DOCUMENT_FREQUENCY_FILE")).getAbsoluteFile();
+        try {
+            DocumentFrequencyStore documentFrequencies = DocumentFrequencyStore.openOrBuild(storeFile,
+                    termInfoFiles);
+            memoryBudget.recordOffHeap("document_frequencies", IndexMemoryBudget.Location.MAPPED,
+                    documentFrequencies.getMappedSize());
+            termOccurenceInDocuments = documentFrequencies;
+        } catch (IOException e) {
+            System.err.println("Could not read file" + storeFile.getAbsolutePath());
+            termOccurenceInDocuments = preProcess.extractTermOccurenceInDocuments(termInfoFiles);
+        }
+    }
+
+
+    /**
+     * Exclude the documents deleted as of pre processing from the document count, the corpus length, the document
+     * frequencies and the corpus frequencies of the terms, unless LIVE_COLLECTION_STATISTICS is false. Term info no
+     * longer counts the documents purged by a merge, so only the documents not yet purged are taken off the term
+     * statistics. Documents deleted later are only filtered from the results
+     * @param liveCollectionStatistics
+     *        false to keep the deleted documents in the collection statistics
+     */
+    private void computeLiveCollectionStatistics (boolean liveCollectionStatistics) {
+
+        deletedDocumentCount = 0;
+        deletedTermCounts = Collections.emptyMap();
+        Tombstones currentTombstones = getTombstones();
+        if (!liveCollectionStatistics || currentTombstones.deletedCount == 0) {
+            return;
+        }
+        long deletedTermCount = 0;
+        long[] deletedBits = currentTombstones.deletedBits;
+        for (int word = 0; word < deletedBits.length; word++) {
+            for (long bits = deletedBits[word]; bits != 0; bits &= bits - 1) {
+                Integer docLength = docLengths.get(word * 64 + Long.numberOfTrailingZeros(bits));
+                if (null != docLength) {
+                    deletedDocumentCount++;
+                    deletedTermCount += docLength;
+                }
+            }
+        }
+
+        HashMap<String, Integer> deletedDocumentFrequencies = new HashMap<String, Integer>();
+        HashMap<String, Integer> unpurgedTermCounts = new HashMap<String, Integer>();
+        long[] unpurgedBits = currentTombstones.unpurgedBits;
+        for (int word = 0; word < unpurgedBits.length; word++) {
+            for (long bits = unpurgedBits[word]; bits != 0; bits &= bits - 1) {
+                Map<String, Integer> termCounts = allTermsCountInDocument.get(word * 64
+                        + Long.numberOfTrailingZeros(bits));
+                if (null == termCounts) {
+                    continue;
+                }
+                for (Map.Entry<String, Integer> termCount : termCounts.entrySet()) {
+                    Integer documentFrequency = deletedDocumentFrequencies.get(termCount.getKey());
+                    deletedDocumentFrequencies.put(termCount.getKey(), null == documentFrequency ? 1
+                            : documentFrequency + 1);
+                    Integer count = unpurgedTermCounts.get(termCount.getKey());
+                    unpurgedTermCounts.put(termCount.getKey(), null == count ? termCount.getValue() : count
+                            + termCount.getValue());
+                }
+            }
+        }
+
+        totalDocumentCount -= deletedDocumentCount;
+        totalTermCount -= deletedTermCount;
+        avgDocLength = totalDocumentCount == 0 ? 0 : totalTermCount / totalDocumentCount;
+        termOccurenceInDocuments = new LiveDocumentFrequencies(termOccurenceInDocuments,
+                deletedDocumentFrequencies);
+        deletedTermCounts = unpurgedTermCounts;
+        System.out.println("Collection statistics exclude " + deletedDocumentCount + " deleted documents");
+    }
+
+
+    /**
+     * Borrow an impact scorer for a query pinning the snapshot, opening another one if all of them are in use
+     * @return impact scorer to be returned with {@link #returnImpactScorer(ImpactScorer)}, null if the impact
+     *         index is not available
+     */
+    ImpactScorer borrowImpactScorer () {
+
+        synchronized (this) {
+            if (!impactScoring) {
+                return null;
+            }
+            if (!idleImpactScorers.isEmpty()) {
+                return idleImpactScorers.poll();
+            }
+        }
+        return openImpactScorer();
+    }
+
+
+    /**
+     * Return an impact scorer borrowed by a query, to be reused by the next queries until the snapshot is closed
+     * @param impactScorer
+     *        impact scorer borrowed from this snapshot, may be null
+     */
+    void returnImpactScorer (ImpactScorer impactScorer) {
+
+        if (null == impactScorer) {
+            return;
+        }
+        synchronized (this) {
+            if (referenceCount > 0) {
+                idleImpactScorers.add(impactScorer);
+                return;
+            }
+        }
+        closeImpactScorer(impactScorer);
+    }
+
+
+    private void closeImpactScorer (ImpactScorer impactScorer) {
+
+        try {
+            impactScorer.close();
+        } catch (IOException e) {
+            System.err.println("Could not close impact index of " + generation);
+        }
+    }
+
+
+    /**
+     * Open the impact ordered index if impact scoring is enabled and the impact index is as recent as the inverted
+     * index
+     * @return impact scorer, null if not available
+     */
+    ImpactScorer openImpactScorer () {
+
+        if (!"true".equalsIgnoreCase(properties.get("IMPACT_INDEX"))) {
+            return null;
+        }
+        File impactIndexFile = new File(properties.get("IMPACT_INDEX_FILE")).getAbsoluteFile();
+        File impactOffsetFile = new File(properties.get("IMPACT_OFFSET_FILE")).getAbsoluteFile();
+        if (!impactOffsetFile.exists() || impactOffsetFile.lastModified() < termIndexFile.lastModified()) {
+            System.out.println("Impact index is missing or older than " + termIndexFile.getName()
+                    + ", rebuild indexes with IMPACT_INDEX = true to use it");
+            return null;
+        }
+        try {
+            return new ImpactScorer(impactIndexFile, impactOffsetFile);
+        } catch (IOException e) {
+            System.err.println("Could not read file" + impactOffsetFile.getAbsolutePath());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,248 @@
+package com.rank_documents;
+
+import java.util.Arrays;
+
+import com.rank_documents.query.PostingIterator;
+import com.rank_documents.query.TermIterator;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Posting list of a single term decoded into primitive arrays: document id's in increasing order along with
+ *          the term frequency in each document
+ *
+ */
+public class PostingList {
+
+    // Postings decoded between two checks of the time budget of the query
+    private static final int BUDGET_CHECK_INTERVAL = 1024;
+
+    private final String termId;
+    private int[] docIds;
+    private int[] termFrequencies;
+    private int size = 0;
+
+
+    public PostingList (String termId, int capacity) {
+
+        this.termId = termId;
+        docIds = new int[Math.max(capacity, 1)];
+        termFrequencies = new int[Math.max(capacity, 1)];
+    }
+
+
+    /**
+     * Decode a term_index line of the form termId (tab deltaDocId:position)+ where the delta document id is 0 for
+     * further positions within the same document
+     * @param termId
+     *        term id the line belongs to
+     * @param line
+     *        line read from term_index at the term offset
+     * @return decoded posting list
+     */
+    public static PostingList decode (String termId, String line) {
+
+        return decode(termId, line, null);
+    }
+
+
+    /**
+     * Decode a term_index line within the budget of a query, decoding stops with the leading postings once the budget
+     * is spent
+     * @param termId
+     *        term id the line belongs to
+     * @param line
+     *        line read from term_index at the term offset
+     * @param budget
+     *        budget of the query, null to decode the whole line
+     * @return decoded posting list
+     */
+    public static PostingList decode (String termId, String line, QueryBudget budget) {
+
+        PostingList postingList = new PostingList(termId, 16);
+        int length = line.length();
+        int index = line.indexOf('\t');
+        int docId = 0;
+
+        while (index >= 0 && index < length) {
+            // Parse delta document id up to ':' and skip the position up to next tab
+            int deltaDocId = 0;
+            index++;
+            char current;
+            while (index < length && (current = line.charAt(index)) != ':') {
+                deltaDocId = deltaDocId * 10 + (current - '0');
+                index++;
+            }
+            index = line.indexOf('\t', index);
+
+            if (deltaDocId != 0) {
+                if (null != budget && postingList.size % BUDGET_CHECK_INTERVAL == BUDGET_CHECK_INTERVAL - 1
+                        && budget.isPastDeadline()) {
+                    break;
+                }
+                docId += deltaDocId;
+                postingList.add(docId, 1);
+            } else if (postingList.size > 0) {
+                postingList.termFrequencies[postingList.size - 1]++;
+            }
+        }
+        return postingList;
+    }
+
+
+    /**
+     * Append a document to the posting list
+     * @param docId
+     *        document id, greater than the last added document id
+     * @param termFrequency
+     *        frequency of the term in the document
+     */
+    public void add (int docId, int termFrequency) {
+
+        if (size == docIds.length) {
+            int[] grownDocIds = new int[size * 2];
+            int[] grownTermFrequencies = new int[size * 2];
+            System.arraycopy(docIds, 0, grownDocIds, 0, size);
+            System.arraycopy(termFrequencies, 0, grownTermFrequencies, 0, size);
+            docIds = grownDocIds;
+            termFrequencies = grownTermFrequencies;
+        }
+        docIds[size] = docId;
+        termFrequencies[size] = termFrequency;
+        size++;
+    }
+
+
+    /**
+     * Append the postings of a list holding later documents, such as the list of the same term in a segment
+     * @param other
+     *        posting list whose documents follow the last document of this list
+     * @param maxDocId
+     *        documents beyond this id are not appended
+     */
+    public void append (PostingList other, int maxDocId) {
+
+        for (int i = 0; i < other.size && other.docIds[i] <= maxDocId; i++) {
+            add(other.docIds[i], other.termFrequencies[i]);
+        }
+    }
+
+
+    /**
+     * Drop the postings of deleted documents in place. Every posting is copied down and the write position only moves
+     * past live documents, so the loop has no data dependent branch
+     * @param deletedBits
+     *        one bit per document id, set for the deleted documents
+     */
+    public void removeDeleted (long[] deletedBits) {
+
+        int live = 0;
+        int wordCount = deletedBits.length;
+        for (int i = 0; i < size; i++) {
+            int docId = docIds[i];
+            docIds[live] = docId;
+            termFrequencies[live] = termFrequencies[i];
+            int word = docId >>> 6;
+            long deleted = word < wordCount ? (deletedBits[word] >>> docId) & 1L : 0L;
+            live += 1 - (int) deleted;
+        }
+        size = live;
+    }
+
+
+    /**
+     * Restrict the posting list to the given candidate documents
+     * @param candidateDocIds
+     *        candidate document id's in increasing order
+     * @return posting list with only the candidate documents
+     */
+    public PostingList retainAll (int[] candidateDocIds) {
+
+        PostingList retained = new PostingList(termId, Math.min(size, candidateDocIds.length));
+        TermIterator candidates = new TermIterator(candidateDocIds, candidateDocIds.length);
+
+        for (int i = 0; i < size; i++) {
+            int candidate = candidates.docId() < docIds[i] ? candidates.advance(docIds[i]) : candidates.docId();
+            if (candidate == PostingIterator.NO_MORE_DOCS) {
+                break;
+            }
+            if (candidate == docIds[i]) {
+                retained.add(docIds[i], termFrequencies[i]);
+            }
+        }
+        return retained;
+    }
+
+
+    /**
+     * Keep only the postings of highest impact, in document order. Among postings of equal impact the lower document
+     * id's are kept
+     * @param impacts
+     *        impact of each posting of the list
+     * @param count
+     *        number of postings to keep
+     * @return posting list with the count documents of highest impact
+     */
+    public PostingList retainHighest (double[] impacts, int count) {
+
+        if (count >= size) {
+            return this;
+        }
+        PostingList retained = new PostingList(termId, count);
+        if (count <= 0) {
+            return retained;
+        }
+        double[] sortedImpacts = Arrays.copyOf(impacts, size);
+        Arrays.sort(sortedImpacts);
+        double threshold = sortedImpacts[size - count];
+        int aboveThreshold = 0;
+        for (int i = 0; i < size; i++) {
+            if (impacts[i] > threshold) {
+                aboveThreshold++;
+            }
+        }
+        int atThreshold = count - aboveThreshold;
+        for (int i = 0; i < size; i++) {
+            if (impacts[i] > threshold || impacts[i] == threshold && atThreshold-- > 0) {
+                retained.add(docIds[i], termFrequencies[i]);
+            }
+        }
+        return retained;
+    }
+
+
+    /**
+     * @return the termId
+     */
+    public String getTermId () {
+
+        return termId;
+    }
+
+
+    /**
+     * @return document id's, only the first size entries are valid
+     */
+    public int[] getDocIds () {
+
+        return docIds;
+    }
+
+
+    /**
+     * @return term frequencies, only the first size entries are valid
+     */
+    public int[] getTermFrequencies () {
+
+        return termFrequencies;
+    }
+
+
+    /**
+     * @return number of documents in the posting list
+     */
+    public int size () {
+
+        return size;
+    }
+}
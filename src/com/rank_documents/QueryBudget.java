@@ -0,0 +1,125 @@
+package com.rank_documents;
+
+/**
+ *
+ * @author Swapnil Gupta
+ * @purpose Time and posting budget of a single query. Scoring stops once either budget is spent and the best
+ *          documents found so far are returned, flagged as approximate
+ *
+ */
+public class QueryBudget {
+
+    private final long deadlineNanos;
+    private final long postingBudget;
+    private long postingsConsumed = 0;
+    private boolean approximate = false;
+
+
+    /**
+     * Constructor, starts the clock of the time budget
+     * @param timeBudgetMillis
+     *        time allowed for the query in milliseconds, 0 or less for no time limit
+     * @param postingBudget
+     *        number of postings allowed to be scored, 0 or less for no limit
+     */
+    public QueryBudget (long timeBudgetMillis, long postingBudget) {
+
+        this.deadlineNanos = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1000000L : Long.MAX_VALUE;
+        this.postingBudget = postingBudget > 0 ? postingBudget : Long.MAX_VALUE;
+    }
+
+
+    /**
+     * @return budget without any limit
+     */
+    public static QueryBudget unlimited () {
+
+        return new QueryBudget(0, 0);
+    }
+
+
+    /**
+     * @return true if either a time or a posting limit is configured
+     */
+    public boolean isLimited () {
+
+        return deadlineNanos != Long.MAX_VALUE || postingBudget != Long.MAX_VALUE;
+    }
+
+
+    /**
+     * Check whether the query has to stop before doing further work, the result is approximate if it does
+     * @return true if the time or the posting budget is spent
+     */
+    public boolean shouldStop () {
+
+        if (postingsConsumed >= postingBudget
+                || (deadlineNanos != Long.MAX_VALUE && System.nanoTime() >= deadlineNanos)) {
+            approximate = true;
+        }
+        return approximate;
+    }
+
+
+    /**
+     * Check whether the time budget is spent while postings already granted are decoded or scored, the result is
+     * approximate if it is
+     * @return true if the time budget is spent
+     */
+    public boolean isPastDeadline () {
+
+        if (deadlineNanos == Long.MAX_VALUE || System.nanoTime() < deadlineNanos) {
+            return false;
+        }
+        approximate = true;
+        return true;
+    }
+
+
+    /**
+     * Grant as many of the requested postings as the posting budget allows, the result is approximate if fewer
+     * are granted
+     * @param requestedPostings
+     *        number of postings to be scored
+     * @return number of postings which may be scored
+     */
+    public int grant (int requestedPostings) {
+
+        long remaining = postingBudget - postingsConsumed;
+        int granted = remaining < requestedPostings ? (int) Math.max(remaining, 0) : requestedPostings;
+        if (granted < requestedPostings) {
+            approximate = true;
+        }
+        postingsConsumed += granted;
+        return granted;
+    }
+
+
+    /**
+     * Record postings scored without asking for a grant, e.g. a segment which is always scored completely
+     * @param postings
+     *        number of postings scored
+     */
+    public void spend (long postings) {
+
+        postingsConsumed += postings;
+    }
+
+
+    /**
+     * @return number of postings scored so far
+     */
+    public long getPostingsConsumed () {
+
+        return postingsConsumed;
+    }
+
+
+    /**
+     * @return true if scoring stopped before all the postings were scored
+     */
+    public boolean isApproximate () {
+
+        return approximate;
+    }
+}
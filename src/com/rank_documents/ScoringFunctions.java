@@ -56,13 +56,13 @@ public class ScoringFunctions {
 	
 	//Create and return the Okapi TF document vector for all the relevant documents for current query
 	public HashMap<Integer, HashMap<String,Double>> buildTFDocumentVector(LinkedHashMap<Integer,LinkedHashMap<String,Integer>> relevantDocuments,
-																		  HashMap<Integer, HashMap<String,Integer>> docTermCount,
-																		  HashMap<Integer,Integer> docLengths, double avgDocLength){
+																		  Map<Integer, ? extends Map<String,Integer>> docTermCount,
+																		  Map<Integer,Integer> docLengths, double avgDocLength){
 		
 		int docId, termFrequency;																					//Define variables to hold intermediate values
 		double ratio, magnitude, termOkapiComponent;
 		
-		HashMap<String,Integer> termCounts;																			//Track document term counts
+		Map<String,Integer> termCounts;																				//Track document term counts
 		HashMap<String,Double> termVector;																			//Track query-term okapi component
 		documentMagnitudes = new HashMap<Integer, Double>();														//Track document magnitudes
 		
@@ -106,15 +106,15 @@ public class ScoringFunctions {
 	//Create and return the TF IDF document vector for all the relevant documents for current query
 	public HashMap<Integer, HashMap<String,Double>> buildTFIDFDocumentVector(LinkedHashMap<Integer,LinkedHashMap<String,Integer>> relevantDocuments, 
 																			 LinkedHashMap<String,Double> termTfIdfScore,
-																			 HashMap<Integer, HashMap<String, Integer>> docTermCount,
-			   																 HashMap<Integer,Integer> docLengths, double avgDocLength){
+																			 Map<Integer, ? extends Map<String, Integer>> docTermCount,
+			   																 Map<Integer,Integer> docLengths, double avgDocLength){
 		
 		String termId;
 		int docId, termFrequency;																					//Define variables to hold intermediate values
 		double ratio, termOkapiComponent, tfidfFactor, tfIdfScore, magnitude;
 		
 		documentMagnitudes = new HashMap<Integer, Double>();														//Store document magnitudes
-		HashMap<String, Integer> termCounts = new HashMap<String, Integer>();										//Stor term frequency in documents
+		Map<String, Integer> termCounts;																			//Stor term frequency in documents
 		
 		HashMap<String,Double> termVector;																			//Track query-term okapi component
 		HashMap<Integer, HashMap<String,Double>> documentVector = new HashMap<Integer, HashMap<String,Double>>();	//Initialize new documentVector object				
@@ -154,7 +154,7 @@ public class ScoringFunctions {
 	
 	
 	//Get constant tf-idf factor for each query-term log base 2
-	public LinkedHashMap<String,Double> getTermTfIdfScores(LinkedHashMap<String,Integer> termOccurenceInDocuments, int documentCount){
+	public LinkedHashMap<String,Double> getTermTfIdfScores(Map<String,Integer> termOccurenceInDocuments, int documentCount){
 		
 		LinkedHashMap<String,Double> termTfIdfScore = new LinkedHashMap<String,Double>();							//Initialize termTfIdf score hash map
 		
@@ -211,8 +211,8 @@ public class ScoringFunctions {
 	
 	//Compute document rank using BM 25 algorithm
 	public HashMap<Integer,Double> computeBM25Score(LinkedHashMap<Integer,LinkedHashMap<String,Integer>> relevantDocuments, 
-														   LinkedHashMap<String,Integer> queryTermFrequency, LinkedHashMap<String,Integer> termDocumentOccurence, 
-														   HashMap<Integer,Integer> docLengths, double avgDocLength, int documentCount){
+														   LinkedHashMap<String,Integer> queryTermFrequency, Map<String,Integer> termDocumentOccurence, 
+														   Map<Integer,Integer> docLengths, double avgDocLength, int documentCount){
 		
 		double k1 = 1.2;																							//BM 25 constant values
 		double k2 = 100;
@@ -249,7 +249,7 @@ public class ScoringFunctions {
 	
 	//Compute document rank using Language model with Laplace Smoothing algorithm
 	public HashMap<Integer,Double> computeLaplaceScore(LinkedHashMap<Integer, LinkedHashMap<String,Integer>> relevantDocuments, 
-													   LinkedHashMap<String, Long> termOffsetInIndex, HashMap<Integer, Integer> docLengths, double vocabularySize){
+													   LinkedHashMap<String, Long> termOffsetInIndex, Map<Integer, Integer> docLengths, double vocabularySize){
 		
 		int termFrequency, docId;
 		double denominator, probability, score;
@@ -280,7 +280,7 @@ public class ScoringFunctions {
 	
 	//Compute document rank using Language model with Jelinek-Mercer Smoothing algorithm
 	public HashMap<Integer,Double> computeJMScore(LinkedHashMap<Integer,LinkedHashMap<String,Integer>> relevantDocuments,
-												  LinkedHashMap<String,Long> termOffsetInIndex, HashMap<Integer,Integer> docLengths, double JMConstant){
+												  LinkedHashMap<String,Long> termOffsetInIndex, Map<Integer,Integer> docLengths, double JMConstant){
 		
 		int docId, termFrequency, documentLength;																	//Define intermediate variable
 		double probability, score;																					
@@ -0,0 +1,88 @@
+package com.rank_documents;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.java.searchengine.segment.LiveDocs;
+import com.java.searchengine.segment.SegmentReader;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Deleted documents of the main index and of the visible segments, merged into one bitset indexed by
+ *          document id
+ *
+ */
+final class Tombstones {
+
+    final long stamp;
+    final long[] deletedBits;
+    // Deleted documents whose postings are not purged, still counted by the term info
+    final long[] unpurgedBits;
+    final int deletedCount;
+
+
+    private Tombstones (long stamp, long[] deletedBits, long[] unpurgedBits, int deletedCount) {
+
+        this.stamp = stamp;
+        this.deletedBits = deletedBits;
+        this.unpurgedBits = unpurgedBits;
+        this.deletedCount = deletedCount;
+    }
+
+
+    /**
+     * Read the tombstone files of the main index and the given segments, documents beyond the max visible doc id
+     * are never ranked and are left out
+     */
+    static Tombstones load (long stamp, File deletedDocsFile, List<SegmentReader> visibleSegments,
+            int maxVisibleDocId) {
+
+        ArrayList<LiveDocs> allLiveDocs = new ArrayList<LiveDocs>();
+        try {
+            allLiveDocs.add(LiveDocs.read(deletedDocsFile, 0));
+        } catch (IOException e) {
+            System.err.println("Could not read file" + deletedDocsFile.getAbsolutePath());
+        }
+        for (SegmentReader segment : visibleSegments) {
+            File liveDocsFile = segment.getSegment().getLiveDocsFile();
+            try {
+                allLiveDocs.add(LiveDocs.read(liveDocsFile, segment.getSegment().getMinDocId()));
+            } catch (IOException e) {
+                System.err.println("Could not read file" + liveDocsFile.getAbsolutePath());
+            }
+        }
+
+        long[] deletedBits = new long[0];
+        long[] unpurgedBits = new long[0];
+        int deletedCount = 0;
+        for (LiveDocs liveDocs : allLiveDocs) {
+            for (int docId = liveDocs.nextDeletedDoc(liveDocs.getMinDocId()); docId >= 0
+                    && docId <= maxVisibleDocId; docId = liveDocs.nextDeletedDoc(docId + 1)) {
+                int word = docId >>> 6;
+                if (word >= deletedBits.length) {
+                    deletedBits = Arrays.copyOf(deletedBits, Math.max(word + 1, deletedBits.length * 2));
+                    unpurgedBits = Arrays.copyOf(unpurgedBits, deletedBits.length);
+                }
+                if ((deletedBits[word] & (1L << docId)) == 0) {
+                    deletedBits[word] |= 1L << docId;
+                    deletedCount++;
+                }
+                if (!liveDocs.isPurged(docId)) {
+                    unpurgedBits[word] |= 1L << docId;
+                }
+            }
+        }
+        return new Tombstones(stamp, deletedBits, unpurgedBits, deletedCount);
+    }
+
+
+    boolean isDeleted (int docId) {
+
+        int word = docId >>> 6;
+        return word < deletedBits.length && (deletedBits[word] & (1L << docId)) != 0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.rank_documents.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rank_documents.PostingList;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Evaluates a boolean query tree into the set of matching documents, by building a tree of posting
+ *          iterators over the decoded posting lists of its terms.
+ *          Negations are evaluated as exclusions from the conjunction they appear in. A negation without anything to
+ *          exclude from (e.g. "a OR NOT b") matches no document, as the complement of a posting list is not
+ *          enumerated.
+ *
+ */
+public class BooleanQueryEvaluator {
+
+    private static final int[] NO_DOCUMENTS = new int[0];
+
+    /**
+     * Source of posting lists for the query terms
+     */
+    public interface PostingListSource {
+
+        /**
+         * @param term
+         *        query term as typed
+         * @return posting list of the term (empty if the term is not in the index), null if the term is to be ignored
+         *         (stop word)
+         */
+        public PostingList getPostingList (String term);
+    }
+
+
+    /**
+     * Evaluate the query
+     * @param root
+     *        root of the query tree
+     * @param source
+     *        source of posting lists for the query terms
+     * @return matching document id's in increasing order
+     */
+    public static int[] evaluate (QueryNode root, PostingListSource source) {
+
+        PostingIterator iterator = buildIterator(root, source);
+        if (null == iterator) {
+            return NO_DOCUMENTS;
+        }
+
+        int[] docIds = new int[16];
+        int count = 0;
+        for (int docId = iterator.nextDoc(); docId != PostingIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+            if (count == docIds.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(docIds, 0, grown, 0, count);
+                docIds = grown;
+            }
+            docIds[count++] = docId;
+        }
+        int[] matchedDocIds = new int[count];
+        System.arraycopy(docIds, 0, matchedDocIds, 0, count);
+        return matchedDocIds;
+    }
+
+
+    /**
+     * Build the posting iterator for a node
+     * @return iterator for the node, null if the node is to be ignored (only stop words)
+     */
+    static PostingIterator buildIterator (QueryNode node, PostingListSource source) {
+
+        switch (node.getOperator()) {
+            case TERM:
+                PostingList postingList = source.getPostingList(node.getTerm());
+                return null == postingList ? null : new TermIterator(postingList.getDocIds(), postingList.size());
+
+            case AND:
+                List<PostingIterator> included = new ArrayList<PostingIterator>();
+                List<PostingIterator> excluded = new ArrayList<PostingIterator>();
+                for (QueryNode child : node.getChildren()) {
+                    boolean negated = child.getOperator() == QueryNode.Operator.NOT;
+                    PostingIterator iterator = buildIterator(negated ? child.getChildren().get(0) : child, source);
+                    if (null != iterator) {
+                        (negated ? excluded : included).add(iterator);
+                    }
+                }
+                if (included.isEmpty()) {
+                    return excluded.isEmpty() ? null : new TermIterator(NO_DOCUMENTS, 0);
+                }
+                PostingIterator conjunction = included.size() == 1 ? included.get(0) : new ConjunctionIterator(
+                        included);
+                if (excluded.isEmpty()) {
+                    return conjunction;
+                }
+                return new ExclusionIterator(conjunction, excluded.size() == 1 ? excluded.get(0)
+                        : new DisjunctionIterator(excluded));
+
+            case OR:
+                List<PostingIterator> iterators = new ArrayList<PostingIterator>();
+                for (QueryNode child : node.getChildren()) {
+                    PostingIterator iterator = buildIterator(child, source);
+                    if (null != iterator) {
+                        iterators.add(iterator);
+                    }
+                }
+                if (iterators.isEmpty()) {
+                    return null;
+                }
+                return iterators.size() == 1 ? iterators.get(0) : new DisjunctionIterator(iterators);
+
+            case NOT:
+            default:
+                return new TermIterator(NO_DOCUMENTS, 0);
+        }
+    }
+}
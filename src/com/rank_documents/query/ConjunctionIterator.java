@@ -0,0 +1,86 @@
+package com.rank_documents.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Documents matching all of the sub iterators (AND). The cheapest iterator leads and the others are advanced
+ *          to its candidates, so the rarest term bounds the amount of work
+ *
+ */
+public class ConjunctionIterator implements PostingIterator {
+
+    private final PostingIterator lead;
+    private final PostingIterator[] others;
+    private int docId = -1;
+
+
+    public ConjunctionIterator (List<PostingIterator> iterators) {
+
+        PostingIterator[] sorted = iterators.toArray(new PostingIterator[iterators.size()]);
+        Arrays.sort(sorted, new Comparator<PostingIterator>() {
+
+            @Override
+            public int compare (PostingIterator iterator1, PostingIterator iterator2) {
+
+                return Long.valueOf(iterator1.cost()).compareTo(iterator2.cost());
+            }
+        });
+        lead = sorted[0];
+        others = Arrays.copyOfRange(sorted, 1, sorted.length);
+    }
+
+
+    @Override
+    public int docId () {
+
+        return docId;
+    }
+
+
+    @Override
+    public int nextDoc () {
+
+        return docId = align(lead.nextDoc());
+    }
+
+
+    @Override
+    public int advance (int target) {
+
+        return docId = align(lead.advance(target));
+    }
+
+
+    /**
+     * Leapfrog the iterators until all of them agree on a document
+     */
+    private int align (int candidate) {
+
+        while (candidate != NO_MORE_DOCS) {
+            boolean matched = true;
+            for (PostingIterator other : others) {
+                int otherDocId = other.docId() < candidate ? other.advance(candidate) : other.docId();
+                if (otherDocId > candidate) {
+                    candidate = lead.advance(otherDocId);
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return candidate;
+            }
+        }
+        return NO_MORE_DOCS;
+    }
+
+
+    @Override
+    public long cost () {
+
+        return lead.cost();
+    }
+}
@@ -0,0 +1,58 @@
+package com.rank_documents.query;
+
+import java.util.List;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Documents matching any of the sub iterators (OR)
+ *
+ */
+public class DisjunctionIterator implements PostingIterator {
+
+    private final PostingIterator[] iterators;
+    private int docId = -1;
+
+
+    public DisjunctionIterator (List<PostingIterator> iterators) {
+
+        this.iterators = iterators.toArray(new PostingIterator[iterators.size()]);
+    }
+
+
+    @Override
+    public int docId () {
+
+        return docId;
+    }
+
+
+    @Override
+    public int nextDoc () {
+
+        return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+    }
+
+
+    @Override
+    public int advance (int target) {
+
+        int minimum = NO_MORE_DOCS;
+        for (PostingIterator iterator : iterators) {
+            int current = iterator.docId() < target ? iterator.advance(target) : iterator.docId();
+            minimum = Math.min(minimum, current);
+        }
+        return docId = minimum;
+    }
+
+
+    @Override
+    public long cost () {
+
+        long cost = 0;
+        for (PostingIterator iterator : iterators) {
+            cost += iterator.cost();
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,62 @@
+package com.rank_documents.query;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Documents matching the included iterator but not the excluded one (AND NOT)
+ *
+ */
+public class ExclusionIterator implements PostingIterator {
+
+    private final PostingIterator included;
+    private final PostingIterator excluded;
+    private int docId = -1;
+
+
+    public ExclusionIterator (PostingIterator included, PostingIterator excluded) {
+
+        this.included = included;
+        this.excluded = excluded;
+    }
+
+
+    @Override
+    public int docId () {
+
+        return docId;
+    }
+
+
+    @Override
+    public int nextDoc () {
+
+        return docId = skipExcluded(included.nextDoc());
+    }
+
+
+    @Override
+    public int advance (int target) {
+
+        return docId = skipExcluded(included.advance(target));
+    }
+
+
+    private int skipExcluded (int candidate) {
+
+        while (candidate != NO_MORE_DOCS) {
+            int excludedDocId = excluded.docId() < candidate ? excluded.advance(candidate) : excluded.docId();
+            if (excludedDocId != candidate) {
+                return candidate;
+            }
+            candidate = included.nextDoc();
+        }
+        return NO_MORE_DOCS;
+    }
+
+
+    @Override
+    public long cost () {
+
+        return included.cost();
+    }
+}
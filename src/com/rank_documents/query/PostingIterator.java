@@ -0,0 +1,43 @@
+package com.rank_documents.query;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Iterator over the document id's matching a node of a boolean query, in increasing document id order
+ *
+ */
+public interface PostingIterator {
+
+    /**
+     * Document id returned once the iterator is exhausted
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+
+    /**
+     * @return current document id, -1 before the first call to nextDoc or advance
+     */
+    public int docId ();
+
+
+    /**
+     * Move to the next matching document
+     * @return next document id, NO_MORE_DOCS if exhausted
+     */
+    public int nextDoc ();
+
+
+    /**
+     * Move to the first matching document greater than or equal to target
+     * @param target
+     *        document id greater than the current document id
+     * @return document id reached, NO_MORE_DOCS if exhausted
+     */
+    public int advance (int target);
+
+
+    /**
+     * @return upper bound on the number of matching documents, used to order conjunctions
+     */
+    public long cost ();
+}
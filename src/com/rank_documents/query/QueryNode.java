@@ -0,0 +1,122 @@
+package com.rank_documents.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Node of a parsed boolean query: a term, or a conjunction, disjunction or negation of child nodes
+ *
+ */
+public class QueryNode {
+
+    public enum Operator {
+        TERM, AND, OR, NOT
+    }
+
+    private final Operator operator;
+    private final String term;
+    private final List<QueryNode> children;
+
+
+    private QueryNode (Operator operator, String term, List<QueryNode> children) {
+
+        this.operator = operator;
+        this.term = term;
+        this.children = children;
+    }
+
+
+    public static QueryNode term (String term) {
+
+        return new QueryNode(Operator.TERM, term, new ArrayList<QueryNode>());
+    }
+
+
+    public static QueryNode and (List<QueryNode> children) {
+
+        return children.size() == 1 ? children.get(0) : new QueryNode(Operator.AND, null, children);
+    }
+
+
+    public static QueryNode or (List<QueryNode> children) {
+
+        return children.size() == 1 ? children.get(0) : new QueryNode(Operator.OR, null, children);
+    }
+
+
+    public static QueryNode not (QueryNode child) {
+
+        List<QueryNode> children = new ArrayList<QueryNode>();
+        children.add(child);
+        return new QueryNode(Operator.NOT, null, children);
+    }
+
+
+    /**
+     * Collect the terms which contribute to the score of a matching document, i.e. terms not under a negation
+     * @param scoringTerms
+     *        list the terms are added to
+     */
+    public void collectScoringTerms (List<String> scoringTerms) {
+
+        if (operator == Operator.TERM) {
+            scoringTerms.add(term);
+        } else if (operator != Operator.NOT) {
+            for (QueryNode child : children) {
+                child.collectScoringTerms(scoringTerms);
+            }
+        }
+    }
+
+
+    /**
+     * @return the operator
+     */
+    public Operator getOperator () {
+
+        return operator;
+    }
+
+
+    /**
+     * @return the term, null unless this is a term node
+     */
+    public String getTerm () {
+
+        return term;
+    }
+
+
+    /**
+     * @return the children
+     */
+    public List<QueryNode> getChildren () {
+
+        return children;
+    }
+
+
+    /**
+     * @return canonical, fully parenthesized form of the query
+     */
+    @Override
+    public String toString () {
+
+        if (operator == Operator.TERM) {
+            return term;
+        }
+        if (operator == Operator.NOT) {
+            return "NOT " + children.get(0);
+        }
+        StringBuilder text = new StringBuilder("(");
+        for (int child = 0; child < children.size(); child++) {
+            if (child > 0) {
+                text.append(' ').append(operator).append(' ');
+            }
+            text.append(children.get(child));
+        }
+        return text.append(')').toString();
+    }
+}
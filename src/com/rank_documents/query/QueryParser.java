@@ -0,0 +1,156 @@
+package com.rank_documents.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Parses query text into a tree of query nodes.
+ *          Operators are the upper case words AND, OR and NOT along with parentheses. Adjacent terms without an
+ *          operator are combined with OR, so a plain bag of words query keeps its meaning. NOT binds tighter than AND,
+ *          which binds tighter than OR.
+ *
+ *          query := and (OR? and)*
+ *          and := unary (AND unary)*
+ *          unary := NOT unary | ( query ) | term
+ *
+ */
+public class QueryParser {
+
+    private List<String> tokens;
+    private int position;
+
+
+    /**
+     * Check whether the query text uses any boolean operator
+     * @param queryText
+     *        query text
+     * @return true if query needs to be parsed as a boolean query
+     */
+    public static boolean isBooleanQuery (String queryText) {
+
+        for (String token : tokenize(queryText)) {
+            if (isOperator(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Parse the query text
+     * @param queryText
+     *        query text
+     * @return root of the query tree, null if the query has no terms
+     */
+    public QueryNode parse (String queryText) {
+
+        tokens = tokenize(queryText);
+        position = 0;
+        QueryNode root = parseOr();
+
+        // Unbalanced closing parentheses, parse the remainder as further disjuncts
+        while (position < tokens.size()) {
+            position++;
+            QueryNode remainder = parseOr();
+            if (null != remainder) {
+                List<QueryNode> children = new ArrayList<QueryNode>();
+                if (null != root) {
+                    children.add(root);
+                }
+                children.add(remainder);
+                root = QueryNode.or(children);
+            }
+        }
+        return root;
+    }
+
+
+    private QueryNode parseOr () {
+
+        List<QueryNode> children = new ArrayList<QueryNode>();
+        while (position < tokens.size() && !tokens.get(position).equals(")")) {
+            if (tokens.get(position).equals("OR")) {
+                position++;
+                continue;
+            }
+            QueryNode child = parseAnd();
+            if (null != child) {
+                children.add(child);
+            }
+        }
+        return children.isEmpty() ? null : QueryNode.or(children);
+    }
+
+
+    private QueryNode parseAnd () {
+
+        List<QueryNode> children = new ArrayList<QueryNode>();
+        QueryNode child = parseUnary();
+        if (null != child) {
+            children.add(child);
+        }
+        while (position < tokens.size() && tokens.get(position).equals("AND")) {
+            position++;
+            child = parseUnary();
+            if (null != child) {
+                children.add(child);
+            }
+        }
+        return children.isEmpty() ? null : QueryNode.and(children);
+    }
+
+
+    private QueryNode parseUnary () {
+
+        if (position >= tokens.size()) {
+            return null;
+        }
+        String token = tokens.get(position++);
+        if (token.equals("NOT")) {
+            QueryNode child = parseUnary();
+            return null == child ? null : QueryNode.not(child);
+        }
+        if (token.equals("(")) {
+            QueryNode child = parseOr();
+            if (position < tokens.size() && tokens.get(position).equals(")")) {
+                position++;
+            }
+            return child;
+        }
+        if (token.equals(")")) {
+            // Closing parenthesis is consumed by the enclosing group
+            position--;
+            return null;
+        }
+        if (isOperator(token)) {
+            // Misplaced operator, skip it
+            return null;
+        }
+        return QueryNode.term(token);
+    }
+
+
+    private static boolean isOperator (String token) {
+
+        return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals("(")
+                || token.equals(")");
+    }
+
+
+    /**
+     * Split query text on white space, with parentheses as separate tokens
+     */
+    private static List<String> tokenize (String queryText) {
+
+        List<String> tokens = new ArrayList<String>();
+        for (String word : queryText.replace("(", " ( ").replace(")", " ) ").trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+        }
+        return tokens;
+    }
+}
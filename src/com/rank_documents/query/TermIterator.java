@@ -0,0 +1,96 @@
+package com.rank_documents.query;
+
+/**
+ * 
+ * @author Swapnil Gupta
+ * @purpose Iterator over a sorted array of document id's (a decoded posting list). advance gallops: it probes
+ *          exponentially growing distances from the current position and then binary searches the last interval, so
+ *          skipping k postings costs O(log k) comparisons
+ *
+ */
+public class TermIterator implements PostingIterator {
+
+    private final int[] docIds;
+    private final int size;
+    private int index = -1;
+
+
+    /**
+     * Constructor
+     * @param docIds
+     *        document id's in increasing order
+     * @param size
+     *        number of valid entries in docIds
+     */
+    public TermIterator (int[] docIds, int size) {
+
+        this.docIds = docIds;
+        this.size = size;
+    }
+
+
+    @Override
+    public int docId () {
+
+        if (index < 0) {
+            return -1;
+        }
+        return index < size ? docIds[index] : NO_MORE_DOCS;
+    }
+
+
+    @Override
+    public int nextDoc () {
+
+        if (index < size) {
+            index++;
+        }
+        return docId();
+    }
+
+
+    @Override
+    public int advance (int target) {
+
+        int low = index + 1;
+        if (low >= size) {
+            index = size;
+            return NO_MORE_DOCS;
+        }
+
+        // Gallop until the target is bracketed by (low - 1, high]
+        int step = 1;
+        int high = low;
+        while (high < size && docIds[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        if (high >= size) {
+            high = size - 1;
+            if (docIds[high] < target) {
+                index = size;
+                return NO_MORE_DOCS;
+            }
+        }
+
+        // Binary search for the first entry >= target in [low, high]
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (docIds[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        index = low;
+        return docIds[index];
+    }
+
+
+    @Override
+    public long cost () {
+
+        return size;
+    }
+}